@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+
+/**
+ * The outcome of adding several stories to the backlog at once (see
+ * {@link IBacklog#addAll(java.util.Collection)}):  how many were added and
+ * why the rest weren't.  Like {@link Story}, the fields are used directly.
+ */
+public class AddAllResult
+{
+    /**
+     * The number of stories added.
+     */
+    public int Added;
+    
+    /**
+     * Why each story that wasn't added wasn't, by the story's position in
+     * the collection (in iteration order).
+     */
+    public SortedMap<Integer, TaskTrackerException> Failures;
+    
+    
+    
+    /**
+     * Default Constructor
+     */
+    public AddAllResult()
+    {
+        this.Failures = new TreeMap<>();
+    }
+    
+    
+    /**
+     * Checks whether every story was added.
+     * @return  true if none of the stories failed.
+     */
+    public boolean isComplete()
+    {
+        return this.Failures.isEmpty();
+    }
+}
@@ -8,6 +8,7 @@
  */
 package uk.co.bbc.iplayer.tracking;
 
+import java.util.Collection;
 import java.util.List;
 
 import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
@@ -33,6 +34,19 @@ public interface IBacklog
      */
     public void Add(Story s) throws TaskTrackerException;
     
+    /**
+     * Adds several stories to the product backlog at once, which is much
+     * faster than adding them one at a time.  Every story is checked as
+     * {@link #Add(Story)} would check it before any are added.  A story that
+     * can't be added (because it is invalid or its Id is already taken) is
+     * reported in the result rather than stopping the others.
+     * @param stories  the stories to add.
+     * @return  how many stories were added and why the rest weren't.
+     * @throws TaskTrackerException  if there was a problem with the product
+     *      backlog itself (some of the stories may have been added).
+     */
+    public AddAllResult addAll(Collection<Story> stories) throws TaskTrackerException;
+    
     /**
      * Removes a story with the given id from the backlog.
      * @param id  the id of the story to remove.
@@ -59,4 +73,120 @@ public interface IBacklog
      *      sprint.
      */
     public List<Story> getSprint(int totalPointsAchievable) throws TaskTrackerException;
+    
+    /**
+     * Gets the same plan as {@link #getSprint(int)}, along with how close it
+     * is to the optimal plan.  When the backlog is too big to plan exactly,
+     * the plan is approximated, and this reports the guaranteed error
+     * (epsilon) and the bound the approximation actually achieved.
+     * 
+     * @param totalPointsAchievable  the number of points that can be achieved
+     *      in the sprint.
+     * @return  the sprint plan.
+     * @throws TaskTrackerException  if there was a problem planning out the
+     *      sprint.
+     */
+    public SprintPlan getSprintPlan(int totalPointsAchievable) throws TaskTrackerException;
+    
+    
+    /**
+     * Gets the best sprint plan that can be found within a time limit.  A
+     * greedy plan is ready almost immediately and is improved until the time
+     * runs out; if the optimal plan is found in time, it is the same plan
+     * {@link #getSprint(int)} returns.  {@link SprintPlan#isOptimal()} tells
+     * whether the plan is proven to be optimal.
+     * 
+     * @param totalPointsAchievable  the number of points that can be achieved
+     *      in the sprint.
+     * @param timeLimitMillis  how long to spend planning, in milliseconds.
+     * @return  the sprint plan.
+     * @throws TaskTrackerException  if there was a problem planning out the
+     *      sprint.
+     */
+    public SprintPlan getSprintPlan(int totalPointsAchievable,
+                                    long timeLimitMillis) throws TaskTrackerException;
+    
+    
+    /**
+     * Gets the sprint plans for several sprint capacities at once, along with
+     * the value of the optimal plan at every capacity up to the largest one.
+     * Each plan is the same as {@link #getSprint(int)} returns for its
+     * capacity, but the backlog is only read and planned once.
+     * 
+     * @param capacities  the numbers of points that can be achieved in the
+     *      sprint.
+     * @return  the plan for each capacity and the value-versus-capacity curve.
+     * @throws TaskTrackerException  if any of the capacities is invalid,
+     *      there are too many of them, or there was a problem planning out
+     *      the sprints.
+     */
+    public SprintPlanCurve getSprints(Collection<Integer> capacities) throws TaskTrackerException;
+    
+    
+    /**
+     * Gets the sprint plans for every sprint capacity in a range (see
+     * {@link #getSprints(Collection)}).
+     * 
+     * @param lowestPointsAchievable  the smallest capacity (inclusive).
+     * @param highestPointsAchievable  the largest capacity (inclusive).
+     * @return  the plan for each capacity and the value-versus-capacity curve.
+     * @throws TaskTrackerException  if any of the capacities is invalid,
+     *      there are too many of them, or there was a problem planning out
+     *      the sprints.
+     */
+    public SprintPlanCurve getSprints(int lowestPointsAchievable,
+                                      int highestPointsAchievable) throws TaskTrackerException;
+    
+    
+    /**
+     * Plans several sprints at once (consecutive sprints, or sprints for
+     * several teams) without changing the backlog, maximizing the total value
+     * of the stories planned.  No story is planned for more than one sprint.
+     * Nothing is removed from the backlog until the plan is committed with
+     * {@link #commitSprints(MultiSprintPlan)}.
+     * 
+     * @param capacities  the number of points that can be achieved in each
+     *      sprint.
+     * @return  the plan, with the stories for each sprint in the same order
+     *      as the capacities.
+     * @throws TaskTrackerException  if the capacities or any of them are
+     *      null or invalid, there are too many of them, or there was a
+     *      problem planning out the sprints.
+     */
+    public MultiSprintPlan planSprints(List<Integer> capacities) throws TaskTrackerException;
+    
+    
+    /**
+     * Removes the stories in a plan from {@link #planSprints(List)} from the
+     * backlog.  Either all of them are removed or, if any of them can't be
+     * (for example, because it was removed after the plan was made), none of
+     * them are.
+     * 
+     * @param plan  the plan to commit.
+     * @throws TaskTrackerException  if there was a problem removing the
+     *      stories from the backlog.
+     */
+    public void commitSprints(MultiSprintPlan plan) throws TaskTrackerException;
+    
+    
+    /**
+     * Gets a page of the backlog, in business priority order (ties are in
+     * the order the stories were added).  The first page is got without a
+     * continuation token; each page comes with the token for the next one.
+     * Getting a page costs the same however deep into the backlog it is.
+     * 
+     * Paging picks up after the last story on the previous page, so stories
+     * are never repeated or skipped because others were added or removed in
+     * between.  A story added before that point won't be seen until paging
+     * starts again.
+     * 
+     * @param pageSize  the most stories to put on the page.
+     * @param continuationToken  the token from the previous page, or null for
+     *      the first page.
+     * @return  the page.
+     * @throws TaskTrackerException  if the page size or token is invalid or
+     *      there was a problem reading the backlog.
+     */
+    public StoryPage getStoryPage(int pageSize,
+                                  String continuationToken) throws TaskTrackerException;
 }
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+/**
+ * A strategy for planning a single sprint.  The backlog asks each registered
+ * solver what planning a sprint would cost it, then tries the cheapest of the
+ * most accurate solvers first, falling back to the next one if a solver gives
+ * up.  Custom solvers can be registered with the backlog alongside the built-in
+ * ones (see {@link uk.co.bbc.iplayer.tracking.impl.Backlog#registerSolver(ISprintSolver)}).
+ * 
+ * Exact solvers should return the same plan the built-in ones do:  of the
+ * plans with the highest value, the one that prefers stories earlier in the
+ * backlog.
+ */
+public interface ISprintSolver
+{
+    /**
+     * Gets the name of the solver.  Registering a solver replaces any solver
+     * with the same name.
+     * @return  the name of the solver.
+     */
+    public String getName();
+    
+    /**
+     * Estimates what it would cost to plan the sprint.
+     * @param problem  the sprint to plan.
+     * @return  the estimated cost and accuracy of the plan, or null if this
+     *      solver can't (or shouldn't) plan this sprint.
+     */
+    public SolverEstimate estimateCost(SprintProblem problem);
+    
+    /**
+     * Plans the sprint.
+     * @param problem  the sprint to plan.
+     * @return  the sprint plan, with its stories ordered by business priority,
+     *      or null if the solver gave up.
+     */
+    public SprintPlan solve(SprintProblem problem);
+}
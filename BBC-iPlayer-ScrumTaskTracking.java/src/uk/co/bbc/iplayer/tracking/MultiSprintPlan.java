@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A plan for several sprints (consecutive sprints, or sprints for several
+ * teams) from the backlog (an instance of {@link IBacklog}), along with how
+ * close it is to the optimal plan.  No story is in more than one sprint.
+ * 
+ * Values are measured the same way as {@link SprintPlan#Value}.  Like
+ * {@link Story}, the fields are used directly.
+ */
+public class MultiSprintPlan
+{
+    /**
+     * The stories in each sprint, in the same order as the capacities the
+     * plan was made for.  Each sprint's stories are ordered by business
+     * priority.
+     */
+    public List<List<Story>> Sprints;
+    
+    /**
+     * The value of the plan (all of the sprints together).
+     */
+    public long Value;
+    
+    /**
+     * An upper bound on the value of the optimal plan.
+     */
+    public long UpperBound;
+    
+    
+    
+    /**
+     * Default Constructor
+     */
+    public MultiSprintPlan()
+    {
+        this.Sprints = new ArrayList<>();
+    }
+    
+    
+    /**
+     * Initializing Constructor
+     * @param sprints  the stories in each sprint.
+     * @param value  the value of the plan.
+     * @param upperBound  an upper bound on the value of the optimal plan.
+     */
+    public MultiSprintPlan(List<List<Story>> sprints, long value, long upperBound)
+    {
+        this.Sprints = sprints;
+        this.Value = value;
+        this.UpperBound = upperBound;
+    }
+    
+    
+    /**
+     * Gets the bound the plan achieved:  the plan's value over the upper
+     * bound on the optimal plan's value (see
+     * {@link SprintPlan#getAchievedBound()}).
+     * @return  the achieved bound, between 0 and 1.
+     */
+    public double getAchievedBound()
+    {
+        if(this.UpperBound <= 0)
+        {
+            return 1.0;
+        }
+        
+        return (double) this.Value / (double) this.UpperBound;
+    }
+    
+    
+    /**
+     * Checks whether the plan is proven to be optimal.
+     * @return  true if the plan is optimal, false if it might not be.
+     */
+    public boolean isOptimal()
+    {
+        return this.Value >= this.UpperBound;
+    }
+}
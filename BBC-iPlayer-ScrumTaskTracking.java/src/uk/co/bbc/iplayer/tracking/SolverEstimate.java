@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+/**
+ * What a solver (an instance of {@link ISprintSolver}) expects planning a
+ * sprint to cost, and how good the plan will be.  Like {@link Story}, the
+ * fields are used directly.
+ */
+public class SolverEstimate
+{
+    /**
+     * The estimated number of basic steps (e.g. table cells or search nodes)
+     * the solver will take.
+     */
+    public long Operations;
+    
+    /**
+     * The estimated number of bytes of heap the solver needs.  This is
+     * reserved before the solver runs, so two solvers can't run the heap out
+     * between them.
+     */
+    public long MemoryBytes;
+    
+    /**
+     * The guaranteed relative error of the plan (see
+     * {@link SprintPlan#Epsilon}).  This is 0 for an exact solver and 1 if
+     * there is no guarantee.
+     */
+    public double Epsilon;
+    
+    
+    
+    /**
+     * Initializing Constructor
+     * @param operations  the estimated number of basic steps.
+     * @param memoryBytes  the estimated number of bytes of heap needed.
+     * @param epsilon  the guaranteed relative error of the plan.
+     */
+    public SolverEstimate(long operations, long memoryBytes, double epsilon)
+    {
+        this.Operations = operations;
+        this.MemoryBytes = memoryBytes;
+        this.Epsilon = epsilon;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sprint plan from the backlog (an instance of {@link IBacklog}), along with
+ * how close it is to the optimal plan.
+ * 
+ * A plan's value is the sum of (Integer.MAX_VALUE - Priority) over its
+ * stories, so higher priority stories are worth more.  Like {@link Story},
+ * the fields are used directly.
+ */
+public class SprintPlan
+{
+    /**
+     * The stories in the plan, ordered by business priority.
+     */
+    public List<Story> Stories;
+    
+    /**
+     * The guaranteed relative error of the plan:  its value is at least
+     * (1 - Epsilon) times the value of the optimal plan.  This is 0 if the
+     * plan is optimal and 1 if there is no guarantee.
+     */
+    public double Epsilon;
+    
+    /**
+     * The value of the plan.
+     */
+    public long Value;
+    
+    /**
+     * An upper bound on the value of the optimal plan.
+     */
+    public long UpperBound;
+    
+    
+    
+    /**
+     * Default Constructor
+     */
+    public SprintPlan()
+    {
+        this.Stories = new ArrayList<>();
+    }
+    
+    
+    /**
+     * Initializing Constructor
+     * @param stories  the stories in the plan.
+     * @param epsilon  the guaranteed relative error of the plan.
+     * @param value  the value of the plan.
+     * @param upperBound  an upper bound on the value of the optimal plan.
+     */
+    public SprintPlan(List<Story> stories, double epsilon, long value, long upperBound)
+    {
+        this.Stories = stories;
+        this.Epsilon = epsilon;
+        this.Value = value;
+        this.UpperBound = upperBound;
+    }
+    
+    
+    /**
+     * Initializing Constructor.  Works out the value of the plan from its
+     * stories.
+     * @param stories  the stories in the plan.
+     * @param epsilon  the guaranteed relative error of the plan.
+     * @param upperBound  an upper bound on the value of the optimal plan.  If
+     *          this is less than the plan's value (e.g. 0 for an optimal
+     *          plan), the plan's value is used.
+     */
+    public SprintPlan(List<Story> stories, double epsilon, long upperBound)
+    {
+        this.Stories = stories;
+        this.Epsilon = epsilon;
+        for(Story story : stories)
+        {
+            this.Value += Integer.MAX_VALUE - story.Priority;
+        }
+        this.UpperBound = Math.max(this.Value, upperBound);
+    }
+    
+    
+    /**
+     * Gets the bound the plan actually achieved:  the plan's value over the
+     * upper bound on the optimal plan's value.  The plan is at least this
+     * fraction of optimal, which is usually much better than
+     * (1 - Epsilon).
+     * @return  the achieved bound, between 0 and 1.
+     */
+    public double getAchievedBound()
+    {
+        if(this.UpperBound <= 0)
+        {
+            return 1.0;
+        }
+        
+        return (double) this.Value / (double) this.UpperBound;
+    }
+    
+    
+    /**
+     * Checks whether the plan is proven to be optimal.
+     * @return  true if the plan is optimal, false if it might not be.
+     */
+    public boolean isOptimal()
+    {
+        return this.Value >= this.UpperBound;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import uk.co.bbc.iplayer.tracking.messages.Messages;
+
+/**
+ * The sprint plans from the backlog (an instance of {@link IBacklog}) for
+ * several sprint capacities, along with the value of the optimal plan at
+ * every capacity (the value-versus-capacity curve).
+ * 
+ * Values are measured the same way as {@link SprintPlan#Value}.  Like
+ * {@link Story}, the fields are used directly.
+ */
+public class SprintPlanCurve
+{
+    /**
+     * The plan for each capacity asked for, keyed by the capacity.  Each plan
+     * is ordered by business priority.
+     */
+    public SortedMap<Integer, List<Story>> Plans;
+    
+    /**
+     * The value of the optimal plan at each capacity from 0 up.  The curve is
+     * flat past its end (everything fits), so it may be shorter than the
+     * largest capacity asked for.  This is null if the backlog was too big to
+     * plan exactly.
+     */
+    public long[] Values;
+    
+    
+    
+    /**
+     * Default Constructor
+     */
+    public SprintPlanCurve()
+    {
+        this.Plans = new TreeMap<>();
+        this.Values = new long[] {0};
+    }
+    
+    
+    /**
+     * Initializing Constructor
+     * @param plans  the plan for each capacity.
+     * @param values  the value of the optimal plan at each capacity from 0 up.
+     */
+    public SprintPlanCurve(SortedMap<Integer, List<Story>> plans, long[] values)
+    {
+        this.Plans = plans;
+        this.Values = values;
+    }
+    
+    
+    /**
+     * Gets the value of the optimal plan at a capacity.
+     * @param capacity  the capacity of the sprint.  This must be
+     *          non-negative.
+     * @return  the value of the optimal plan.
+     * @throws IllegalStateException  if the curve is not available.
+     */
+    public long getValue(int capacity)
+    {
+        if(this.Values == null)
+        {
+            throw new IllegalStateException(Messages.getString("SprintCurveUnavailable"));
+        }
+        
+        return this.Values[Math.min(capacity, this.Values.length - 1)];
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sprint to plan, along with the facts about it that solvers (instances of
+ * {@link ISprintSolver}) use to estimate their costs.  Like {@link Story},
+ * the fields are used directly.
+ */
+public class SprintProblem
+{
+    /**
+     * The stories to consider, ordered by business priority.  None of them
+     * are bigger than the capacity.
+     */
+    public List<Story> Stories;
+    
+    /**
+     * The capacity of the sprint.
+     */
+    public int Capacity;
+    
+    /**
+     * The number of basic steps (see {@link SolverEstimate#Operations}) a
+     * solver may take to plan the sprint exactly.  Solvers that need more
+     * should approximate or not offer to plan the sprint.
+     */
+    public long OperationBudget;
+    
+    /**
+     * The number of bytes of heap available when the problem was set up.
+     */
+    public long AvailableMemory;
+    
+    /**
+     * The total number of points in the stories.
+     */
+    public long TotalPoints;
+    
+    /**
+     * The smallest point value of the stories (0 if there are none).
+     */
+    public int MinPoints;
+    
+    /**
+     * The largest point value of the stories (0 if there are none).
+     */
+    public int MaxPoints;
+    
+    /**
+     * The most stories that fit in the sprint together.
+     */
+    public int MaxStories;
+    
+    /**
+     * The largest (lowest business priority) priority of the stories (0 if
+     * there are none).
+     */
+    public int MaxPriority;
+    
+    /**
+     * The greatest common divisor of the point values of the stories (0 if
+     * there are none).  Every plan's total points is a multiple of this.
+     */
+    public int PointsDivisor;
+    
+    
+    
+    /**
+     * Initializing Constructor.  Works out the facts about the stories and
+     * how much heap is available.
+     * @param stories  the stories to consider, ordered by business priority.
+     * @param capacity  the capacity of the sprint.
+     * @param operationBudget  the number of basic steps a solver may take to
+     *          plan the sprint exactly.
+     */
+    public SprintProblem(List<Story> stories, int capacity, long operationBudget)
+    {
+        this.Stories = stories;
+        this.Capacity = capacity;
+        this.OperationBudget = operationBudget;
+        
+        Runtime runtime = Runtime.getRuntime();
+        this.AvailableMemory = runtime.maxMemory()
+                                - (runtime.totalMemory() - runtime.freeMemory());
+        
+        StoryBatch batch = StoryBatch.of(stories);
+        int[] points = new int[batch.size()];
+        for(int k = 0; k < points.length; k++)
+        {
+            points[k] = batch.getPoints(k);
+            this.TotalPoints += points[k];
+            this.MaxPriority = Math.max(this.MaxPriority, batch.getPriority(k));
+            this.PointsDivisor = SprintProblem.gcd(this.PointsDivisor, points[k]);
+        }
+        Arrays.sort(points);
+        
+        if(points.length > 0)
+        {
+            this.MinPoints = points[0];
+            this.MaxPoints = points[points.length - 1];
+        }
+        
+        //Taking the smallest stories first fits the most.
+        long pointsUsed = 0;
+        while(this.MaxStories < points.length
+                && pointsUsed + points[this.MaxStories] <= capacity)
+        {
+            pointsUsed += points[this.MaxStories];
+            this.MaxStories++;
+        }
+    }
+    
+    
+    /**
+     * Finds the greatest common divisor of two non-negative numbers.
+     * @param a  the first number.
+     * @param b  the second number.
+     * @return  the greatest common divisor (the other number if one is 0).
+     */
+    private static int gcd(int a, int b)
+    {
+        while(b != 0)
+        {
+            int remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        
+        return a;
+    }
+    
+    
+    /**
+     * Gets the number of stories to consider.
+     * @return  the number of stories.
+     */
+    public int size()
+    {
+        return this.Stories.size();
+    }
+}
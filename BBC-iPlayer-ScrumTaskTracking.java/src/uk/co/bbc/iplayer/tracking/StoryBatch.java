@@ -0,0 +1,316 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A batch of stories from the backlog (an instance of {@link IBacklog}) kept
+ * column by column:  the point values, priorities and database OIDs are
+ * primitive arrays and the Ids are kept in a side table.  Planning a sprint
+ * only needs the points and priorities, so solvers read the columns directly
+ * and a {@link Story} is only built when one is asked for (usually just for
+ * the stories in the plan).
+ * 
+ * The batch is a read-only list of stories, so it can be handed to code that
+ * works on lists.  Each call to get builds a new story, so code that reads a
+ * lot of stories should use the columns instead.  Sub-lists are batches that
+ * share the parent's columns.
+ */
+public class StoryBatch extends AbstractList<Story> implements RandomAccess
+{
+    /**
+     * The OID of stories that did not come from the database.
+     */
+    public static final long NO_OID = -1;
+    
+    /**
+     * The number of stories an empty batch has room for.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    
+    
+    /**
+     * The stories' point values.
+     */
+    private int[] points;
+    
+    /**
+     * The stories' priorities.
+     */
+    private int[] priorities;
+    
+    /**
+     * The stories' database OIDs.
+     */
+    private long[] oids;
+    
+    /**
+     * The stories' Ids.
+     */
+    private String[] ids;
+    
+    /**
+     * The index in the columns of the first story in the batch.
+     */
+    private final int offset;
+    
+    /**
+     * The number of stories in the batch.
+     */
+    private int length;
+    
+    /**
+     * Whether the batch shares its parent's columns (so can't be added to).
+     */
+    private final boolean view;
+    
+    
+    
+    /**
+     * Default Constructor
+     */
+    public StoryBatch()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    
+    /**
+     * Constructor
+     * @param capacity  the number of stories to make room for.  The batch
+     *          grows past this if more are added.
+     */
+    public StoryBatch(int capacity)
+    {
+        this.points = new int[capacity];
+        this.priorities = new int[capacity];
+        this.oids = new long[capacity];
+        this.ids = new String[capacity];
+        this.offset = 0;
+        this.length = 0;
+        this.view = false;
+    }
+    
+    
+    /**
+     * Creates a view of part of another batch.
+     * @param parent  the batch to share the columns of.
+     * @param fromIndex  the index in the parent of the first story.
+     * @param toIndex  the index in the parent after the last story.
+     */
+    private StoryBatch(StoryBatch parent, int fromIndex, int toIndex)
+    {
+        this.points = parent.points;
+        this.priorities = parent.priorities;
+        this.oids = parent.oids;
+        this.ids = parent.ids;
+        this.offset = parent.offset + fromIndex;
+        this.length = toIndex - fromIndex;
+        this.view = true;
+    }
+    
+    
+    /**
+     * Gets the stories as a batch, copying them into one if they aren't a
+     * batch already.  Stories that are copied have no OID.
+     * @param stories  the stories.  This may be null (for an empty batch).
+     * @return  the stories as a batch.
+     */
+    public static StoryBatch of(List<Story> stories)
+    {
+        if(stories instanceof StoryBatch)
+        {
+            return (StoryBatch) stories;
+        }
+        
+        if(stories == null)
+        {
+            return new StoryBatch(0);
+        }
+        
+        StoryBatch batch = new StoryBatch(stories.size());
+        for(Story story : stories)
+        {
+            batch.add(story.Id, story.Points, story.Priority, NO_OID);
+        }
+        
+        return batch;
+    }
+    
+    
+    /**
+     * Adds a story to the end of the batch.
+     * @param id  the Id of the story.
+     * @param storyPoints  the point value of the story.
+     * @param priority  the priority of the story.
+     * @param oid  the database OID of the story, or NO_OID.
+     * @throws UnsupportedOperationException  if the batch is a sub-list of
+     *          another batch.
+     */
+    public void add(String id, int storyPoints, int priority, long oid)
+    {
+        if(this.view)
+        {
+            throw new UnsupportedOperationException();
+        }
+        
+        if(this.length == this.points.length)
+        {
+            int newCapacity = Math.max(DEFAULT_CAPACITY, this.length * 2);
+            this.points = Arrays.copyOf(this.points, newCapacity);
+            this.priorities = Arrays.copyOf(this.priorities, newCapacity);
+            this.oids = Arrays.copyOf(this.oids, newCapacity);
+            this.ids = Arrays.copyOf(this.ids, newCapacity);
+        }
+        
+        this.points[this.length] = storyPoints;
+        this.priorities[this.length] = priority;
+        this.oids[this.length] = oid;
+        this.ids[this.length] = id;
+        this.length++;
+        this.modCount++;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(Story story)
+    {
+        this.add(story.Id, story.Points, story.Priority, NO_OID);
+        return true;
+    }
+    
+    
+    /**
+     * Builds the story at an index.
+     * @param index  the index of the story.
+     * @return  a new story with the story's fields.
+     */
+    @Override
+    public Story get(int index)
+    {
+        int column = this.getColumn(index);
+        return new Story(this.ids[column],
+                         this.points[column],
+                         this.priorities[column]);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return this.length;
+    }
+    
+    
+    /**
+     * Gets a batch that shares this batch's columns for part of it.
+     * @param fromIndex  the index of the first story (inclusive).
+     * @param toIndex  the index after the last story (exclusive).
+     * @return  the part of the batch.
+     */
+    @Override
+    public StoryBatch subList(int fromIndex, int toIndex)
+    {
+        if(fromIndex < 0 || toIndex > this.length || fromIndex > toIndex)
+        {
+            throw new IndexOutOfBoundsException(fromIndex + ", " + toIndex);
+        }
+        
+        return new StoryBatch(this, fromIndex, toIndex);
+    }
+    
+    
+    /**
+     * Gets the point value of the story at an index.
+     * @param index  the index of the story.
+     * @return  the point value.
+     */
+    public int getPoints(int index)
+    {
+        return this.points[this.getColumn(index)];
+    }
+    
+    
+    /**
+     * Gets the priority of the story at an index.
+     * @param index  the index of the story.
+     * @return  the priority.
+     */
+    public int getPriority(int index)
+    {
+        return this.priorities[this.getColumn(index)];
+    }
+    
+    
+    /**
+     * Gets the database OID of the story at an index.
+     * @param index  the index of the story.
+     * @return  the OID, or NO_OID if the story didn't come from the
+     *          database.
+     */
+    public long getOid(int index)
+    {
+        return this.oids[this.getColumn(index)];
+    }
+    
+    
+    /**
+     * Gets the Id of the story at an index.
+     * @param index  the index of the story.
+     * @return  the Id.
+     */
+    public String getId(int index)
+    {
+        return this.ids[this.getColumn(index)];
+    }
+    
+    
+    /**
+     * Gets the total number of points in the batch.
+     * @return  the total number of points.
+     */
+    public long getTotalPoints()
+    {
+        long totalPoints = 0;
+        for(int column = this.offset; column < this.offset + this.length; column++)
+        {
+            totalPoints += this.points[column];
+        }
+        
+        return totalPoints;
+    }
+    
+    
+    /**
+     * Converts an index in the batch into an index in the columns.
+     * @param index  the index of the story.
+     * @return  the index in the columns.
+     * @throws IndexOutOfBoundsException  if the index is not in the batch.
+     */
+    private int getColumn(int index)
+    {
+        if(index < 0 || index >= this.length)
+        {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        
+        return this.offset + index;
+    }
+}
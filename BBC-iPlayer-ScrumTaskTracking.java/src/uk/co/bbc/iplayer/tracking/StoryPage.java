@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the backlog (an instance of {@link IBacklog}) in business
+ * priority order, along with the token to get the next page with.  Like
+ * {@link Story}, the fields are used directly.
+ */
+public class StoryPage
+{
+    /**
+     * The stories on the page, ordered by business priority (ties are in
+     * the order they were added).
+     */
+    public List<Story> Stories;
+    
+    /**
+     * The token to pass to {@link IBacklog#getStoryPage(int, String)} to get
+     * the next page, or null if this is the last page.  The token should be
+     * treated as opaque.
+     */
+    public String ContinuationToken;
+    
+    
+    
+    /**
+     * Default Constructor
+     */
+    public StoryPage()
+    {
+        this.Stories = new ArrayList<>();
+    }
+    
+    
+    /**
+     * Initializing Constructor
+     * @param stories  the stories on the page.
+     * @param continuationToken  the token to get the next page with, or null
+     *          if this is the last page.
+     */
+    public StoryPage(List<Story> stories, String continuationToken)
+    {
+        this.Stories = stories;
+        this.ContinuationToken = continuationToken;
+    }
+    
+    
+    /**
+     * Checks whether this is the last page of the backlog.
+     * @return  true if there are no more stories after this page.
+     */
+    public boolean isLastPage()
+    {
+        return this.ContinuationToken == null;
+    }
+}
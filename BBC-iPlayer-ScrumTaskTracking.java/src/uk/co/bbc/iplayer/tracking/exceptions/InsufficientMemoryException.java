@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.exceptions;
+
+/**
+ * Thrown when a request is turned away because the memory it would need is
+ * not available (and did not become available while it waited).
+ */
+@SuppressWarnings("serial")
+public class InsufficientMemoryException extends TaskTrackerException
+{
+    /**
+     * The number of bytes the request needed.
+     */
+    private final long requestedBytes;
+    
+    /**
+     * The number of bytes that were available.
+     */
+    private final long availableBytes;
+    
+    
+    
+    /**
+     * @param message  the error message.
+     * @param requestedBytes  the number of bytes the request needed.
+     * @param availableBytes  the number of bytes that were available.
+     */
+    public InsufficientMemoryException(String message,
+                                       long requestedBytes,
+                                       long availableBytes)
+    {
+        super(message);
+        this.requestedBytes = requestedBytes;
+        this.availableBytes = availableBytes;
+    }
+    
+    
+    /**
+     * Gets the number of bytes the request needed.
+     * @return  the requested bytes.
+     */
+    public long getRequestedBytes()
+    {
+        return this.requestedBytes;
+    }
+    
+    
+    /**
+     * Gets the number of bytes that were available.
+     * @return  the available bytes.
+     */
+    public long getAvailableBytes()
+    {
+        return this.availableBytes;
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Finds the best plan it can before a deadline.
+ * 
+ * We start with the greedy plan (best value per point first), which is ready
+ * almost immediately, and improve it with a local search (fill the sprint,
+ * then swap stories in the plan for better ones that fit) while there is
+ * time.  Then we run an exact solver ({@link BitPackedKnapsackProblemSolver}
+ * if its table is small enough, {@link BranchAndBoundKnapsackProblemSolver}
+ * otherwise), which gives up if the deadline passes.  If it finishes, we
+ * return exactly the plan getSprint would; otherwise we return the best plan
+ * from the local search, along with the LP bound on how far from optimal it
+ * might be.
+ */
+public class AnytimeKnapsackProblemSolver
+{
+    /**
+     * Hides the constructor
+     */
+    private AnytimeKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds the best plan it can before the deadline.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @param deadline  when to stop improving the plan (compared with
+     *          System.nanoTime()).  The greedy plan is always returned, even
+     *          if the deadline has already passed.
+     * @return  the best plan found.  {@link SprintPlan#isOptimal()} tells
+     *          whether it is proven to be optimal.
+     */
+    public static SprintPlan solve(List<Story> stories,
+                                   int sprintCapacity,
+                                   long deadline)
+    {
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return new SprintPlan();
+        }
+        
+        //The greedy plan is always ready.  Improve it while there is time.
+        boolean[] inPlan = AnytimeKnapsackProblemSolver.getGreedyPlan(stories,
+                                                                      sprintCapacity);
+        AnytimeKnapsackProblemSolver.improve(stories,
+                                             sprintCapacity,
+                                             inPlan,
+                                             deadline);
+        
+        List<Story> plan = new ArrayList<>();
+        for(int k = 0; k < inPlan.length; k++)
+        {
+            if(inPlan[k])
+            {
+                plan.add(stories.get(k));
+            }
+        }
+        
+        //Now try for the optimal plan.
+        if(!KnapsackProblemSolver.isPastDeadline(deadline))
+        {
+            long capacity = Math.min(sprintCapacity,
+                                     KnapsackProblemSolver.getTotalPoints(stories));
+            List<Story> optimalPlan;
+            if((long) stories.size() * (capacity + 1) <= DecisionTable.BOUNDED_TABLE_BITS)
+            {
+                optimalPlan = BitPackedKnapsackProblemSolver.solve(stories,
+                                                                   sprintCapacity,
+                                                                   deadline);
+            }
+            else
+            {
+                optimalPlan = BranchAndBoundKnapsackProblemSolver.solve(stories,
+                                                                        sprintCapacity,
+                                                                        Long.MAX_VALUE,
+                                                                        deadline);
+            }
+            
+            if(optimalPlan != null)
+            {
+                long value = KnapsackProblemSolver.getTotalValue(optimalPlan);
+                return new SprintPlan(optimalPlan, 0, value, value);
+            }
+        }
+        
+        //Out of time.  The LP bound tells us how good the plan is.
+        long value = KnapsackProblemSolver.getTotalValue(plan);
+        long upperBound = Math.max(value,
+                                   KnapsackProblemSolver.getUpperBound(stories,
+                                                                       sprintCapacity));
+        double epsilon = (upperBound == 0) ? 0 : 1 - (double) value / (double) upperBound;
+        return new SprintPlan(plan, epsilon, value, upperBound);
+    }
+    
+    
+    /**
+     * Gets the greedy plan:  take the stories with the best value per point
+     * first, if they fit.
+     * @param stories  the stories to consider.
+     * @param sprintCapacity  the capacity of the sprint.
+     * @return  which stories are in the plan.
+     */
+    private static boolean[] getGreedyPlan(final List<Story> stories,
+                                           int sprintCapacity)
+    {
+        Integer[] byDensity = AnytimeKnapsackProblemSolver.getIndices(stories.size());
+        Arrays.sort(byDensity, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer thisIndex, Integer thatIndex)
+            {
+                //Compare value / points without dividing.  Both sides are
+                //  less than 2^62, so this can't overflow.
+                Story thisStory = stories.get(thisIndex);
+                Story thatStory = stories.get(thatIndex);
+                return Long.compare(KnapsackProblemSolver.getValue(thatStory) * thisStory.Points,
+                                    KnapsackProblemSolver.getValue(thisStory) * thatStory.Points);
+            }
+        });
+        
+        boolean[] inPlan = new boolean[stories.size()];
+        long capacityLeft = sprintCapacity;
+        for(int index : byDensity)
+        {
+            Story story = stories.get(index);
+            if(story.Points <= capacityLeft && KnapsackProblemSolver.getValue(story) > 0)
+            {
+                inPlan[index] = true;
+                capacityLeft -= story.Points;
+            }
+        }
+        
+        return inPlan;
+    }
+    
+    
+    /**
+     * Improves a plan with a local search until it can't find an improvement
+     * or the deadline passes.  Each pass fills the sprint with any stories
+     * that still fit, then swaps each story in the plan for the most
+     * valuable story that is worth more and fits in its place.
+     * @param stories  the stories to consider.
+     * @param sprintCapacity  the capacity of the sprint.
+     * @param inPlan  which stories are in the plan.  This is updated.
+     * @param deadline  when to stop.
+     */
+    private static void improve(final List<Story> stories,
+                                int sprintCapacity,
+                                boolean[] inPlan,
+                                long deadline)
+    {
+        //Most valuable first (that is, highest priority first).
+        Integer[] byValue = AnytimeKnapsackProblemSolver.getIndices(stories.size());
+        Arrays.sort(byValue, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer thisIndex, Integer thatIndex)
+            {
+                return Integer.compare(stories.get(thisIndex).Priority,
+                                       stories.get(thatIndex).Priority);
+            }
+        });
+        
+        long capacityLeft = sprintCapacity;
+        for(int k = 0; k < inPlan.length; k++)
+        {
+            if(inPlan[k])
+            {
+                capacityLeft -= stories.get(k).Points;
+            }
+        }
+        
+        boolean improved = true;
+        while(improved && !KnapsackProblemSolver.isPastDeadline(deadline))
+        {
+            improved = false;
+            
+            //Fill the sprint.
+            for(int index : byValue)
+            {
+                Story story = stories.get(index);
+                if(!inPlan[index] && story.Points <= capacityLeft
+                        && KnapsackProblemSolver.getValue(story) > 0)
+                {
+                    inPlan[index] = true;
+                    capacityLeft -= story.Points;
+                    improved = true;
+                }
+            }
+            
+            //Swap each story in the plan for a better one.
+            for(int out = 0; out < inPlan.length; out++)
+            {
+                if(!inPlan[out])
+                {
+                    continue;
+                }
+                
+                if(KnapsackProblemSolver.isPastDeadline(deadline))
+                {
+                    return;
+                }
+                
+                Story outStory = stories.get(out);
+                for(int in : byValue)
+                {
+                    Story inStory = stories.get(in);
+                    if(inStory.Priority >= outStory.Priority)
+                    {
+                        //Nothing after this is worth more.
+                        break;
+                    }
+                    
+                    if(!inPlan[in] && inStory.Points <= capacityLeft + outStory.Points)
+                    {
+                        inPlan[out] = false;
+                        inPlan[in] = true;
+                        capacityLeft += outStory.Points - inStory.Points;
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Gets the indices 0 to (size - 1), boxed so they can be sorted with a
+     * comparator.
+     * @param size  the number of indices.
+     * @return  the indices.
+     */
+    private static Integer[] getIndices(int size)
+    {
+        Integer[] indices = new Integer[size];
+        for(int k = 0; k < size; k++)
+        {
+            indices[k] = k;
+        }
+        
+        return indices;
+    }
+}
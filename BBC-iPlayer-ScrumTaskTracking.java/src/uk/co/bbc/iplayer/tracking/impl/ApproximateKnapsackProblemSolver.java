@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.messages.Messages;
+
+/**
+ * Approximately solves the knapsack problem with the classic fully polynomial
+ * approximation scheme (FPTAS):  we scale the stories' values down and run
+ * the dynamic programming algorithm over the (small) scaled values instead of
+ * the capacity.
+ * 
+ * If the greedy plan is worth L (so the optimal plan is worth between L and
+ * 2L), we divide every value by K = epsilon * L / n (rounding down).  Each
+ * story loses less than K of value, so the plan we find loses less than
+ * n * K = epsilon * L of value, which is within (1 - epsilon) of optimal.  The
+ * optimal plan is worth at most about 2n / epsilon scaled units, so the table
+ * has O(n^2 / epsilon) cells no matter what the capacity is.
+ * 
+ * Like {@link BitPackedKnapsackProblemSolver}, we keep a single row (here,
+ * the fewest points needed to reach each scaled value) and one bit per cell
+ * for the backtrack.
+ */
+public class ApproximateKnapsackProblemSolver
+{
+    /**
+     * The number of bits in each word of the decision table.
+     */
+    private static final int BITS_PER_WORD = Long.SIZE;
+    
+    /**
+     * The shift that converts a bit index into a word index.
+     */
+    private static final int WORD_INDEX_SHIFT = 6;
+    
+    /**
+     * Marks a scaled value that no set of stories reaches.
+     */
+    private static final long UNREACHABLE = Long.MAX_VALUE;
+    
+    
+    
+    /**
+     * Hides the constructor
+     */
+    private ApproximateKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds a set of stories that fit in a sprint and whose value is at least
+     * (1 - epsilon) times the value of the optimal set.  This takes
+     * O(stories.size()^2 / epsilon) time and bits.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.
+     * @param epsilon  how far from optimal the plan may be.  This must be
+     *          strictly between 0 and 1.
+     * @return  the set of stories, in the same order as they were given.
+     * @throws IllegalArgumentException  if epsilon is out of range or the
+     *          table would be too big to index with an array.
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity,
+                                    double epsilon)
+    {
+        List<Story> solution = new ArrayList<>();
+        
+        if(!(epsilon > 0 && epsilon < 1))
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("ApproximationEpsilonInvalid", epsilon));
+        }
+        
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return solution;
+        }
+        
+        //Stories that don't fit on their own (or are worth nothing) can't be
+        //  in any plan, and would only throw off the scaling.
+        List<Story> candidates = new ArrayList<>();
+        for(Story story : stories)
+        {
+            if(story.Points <= sprintCapacity && KnapsackProblemSolver.getValue(story) > 0)
+            {
+                candidates.add(story);
+            }
+        }
+        
+        if(candidates.isEmpty())
+        {
+            return solution;
+        }
+        
+        int numStories = candidates.size();
+        long scale = Math.max(1, (long) (epsilon
+                                            * ApproximateKnapsackProblemSolver.getLowerBound(candidates,
+                                                                                             sprintCapacity)
+                                            / numStories));
+        
+        long[] scaledValues = new long[numStories];
+        long totalScaledValue = 0;
+        for(int k = 0; k < numStories; k++)
+        {
+            scaledValues[k] = KnapsackProblemSolver.getValue(candidates.get(k)) / scale;
+            totalScaledValue += scaledValues[k];
+        }
+        
+        //No plan is worth more than the LP bound, so there is no need for
+        //  columns past it.
+        long maxScaledValue = Math.min(totalScaledValue,
+                                       KnapsackProblemSolver.getUpperBound(candidates,
+                                                                           sprintCapacity) / scale);
+        long valueBound = maxScaledValue + 1;
+        long numWords = ((long) numStories * valueBound + BITS_PER_WORD - 1) >>> WORD_INDEX_SHIFT;
+        if(valueBound > Integer.MAX_VALUE || numWords > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("ApproximationTooBig", epsilon, numStories));
+        }
+        
+        //minPoints[v] is the fewest points needed to reach scaled value v.
+        //  Go from the highest value down so minPoints[v - value] still holds
+        //  the previous row's points when we read it.
+        long[] minPoints = new long[(int) valueBound];
+        Arrays.fill(minPoints, UNREACHABLE);
+        minPoints[0] = 0;
+        long[] decisions = new long[(int) numWords];
+        
+        for(int row = 0; row < numStories; row++)
+        {
+            int value = (int) scaledValues[row];
+            int points = candidates.get(row).Points;
+            long rowStart = (long) row * valueBound;
+            
+            for(int v = (int) maxScaledValue; v >= value; v--)
+            {
+                long reached = minPoints[v - value];
+                if(reached != UNREACHABLE && reached + points < minPoints[v])
+                {
+                    minPoints[v] = reached + points;
+                    
+                    long bit = rowStart + v;
+                    decisions[(int) (bit >>> WORD_INDEX_SHIFT)] |= 1L << bit;
+                }
+            }
+        }
+        
+        //The best plan is the highest scaled value that fits.
+        int v = (int) maxScaledValue;
+        while(minPoints[v] > sprintCapacity)
+        {
+            v--;
+        }
+        
+        //Backtrack through the decisions from the last story to the first.
+        for(int row = numStories - 1; row >= 0; row--)
+        {
+            long bit = (long) row * valueBound + v;
+            if((decisions[(int) (bit >>> WORD_INDEX_SHIFT)] & (1L << bit)) != 0)
+            {
+                solution.add(candidates.get(row));
+                v -= (int) scaledValues[row];
+            }
+        }
+        
+        //Reverse the order of the list so the highest priority stories come
+        //  first.
+        Collections.reverse(solution);
+        
+        return solution;
+    }
+    
+    
+    /**
+     * Gets the smallest epsilon we can approximate a sprint with, given a
+     * limit on the size of the table.  This is conservative (it assumes the
+     * scaling rounds as badly as it can).
+     * @param numStories  the number of stories to consider.
+     * @param tableBits  the most bits the table may take.
+     * @return  the smallest epsilon.  This is 1 or more if no epsilon will
+     *          do.
+     */
+    public static double getSmallestEpsilon(int numStories,
+                                            long tableBits)
+    {
+        //The table has at most numStories * (4 * numStories / epsilon + 1)
+        //  bits (the scale rounds down to as little as half).
+        double spareBits = tableBits - (double) numStories;
+        if(spareBits <= 0)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        
+        return 4.0 * numStories * numStories / spareBits;
+    }
+    
+    
+    /**
+     * Gets a lower bound on the value of the optimal plan that is at least
+     * half of it:  the better of the greedy plan (best value per point first)
+     * and the most valuable story on its own.
+     * @param stories  the stories to consider.  They must all fit on their
+     *          own.
+     * @param sprintCapacity  the capacity of the sprint.
+     * @return  the lower bound.
+     */
+    private static long getLowerBound(List<Story> stories,
+                                      int sprintCapacity)
+    {
+        //The LP bound is worth no more than the greedy plan plus the first
+        //  story that doesn't fit, so one of them is worth at least half.
+        long greedyValue = 0;
+        long mostValuable = 0;
+        long capacityLeft = sprintCapacity;
+        for(Story story : KnapsackProblemSolver.sortByDensity(stories))
+        {
+            long value = KnapsackProblemSolver.getValue(story);
+            mostValuable = Math.max(mostValuable, value);
+            if(story.Points <= capacityLeft)
+            {
+                greedyValue += value;
+                capacityLeft -= story.Points;
+            }
+        }
+        
+        return Math.max(greedyValue, mostValuable);
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Approximates the sprint plan to within (1 - epsilon) of optimal (see
+ * {@link ApproximateKnapsackProblemSolver}).  If the epsilon asked for would
+ * need a bigger table than allowed, this guarantees as much as the table
+ * allows.
+ */
+public class ApproximateSprintSolver implements ISprintSolver
+{
+    /**
+     * The name of the solver.
+     */
+    public static final String NAME = "fptas";
+    
+    
+    
+    /**
+     * The epsilon asked for.
+     */
+    protected final double epsilon;
+    
+    /**
+     * The most bits the table may take.
+     */
+    protected final long tableBits;
+    
+    
+    
+    /**
+     * Constructor
+     * @param epsilon  the epsilon asked for.  This must be strictly between
+     *          0 and 1.
+     * @param tableBits  the most bits the table may take.
+     */
+    public ApproximateSprintSolver(double epsilon, long tableBits)
+    {
+        this.epsilon = epsilon;
+        this.tableBits = tableBits;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SolverEstimate estimateCost(SprintProblem problem)
+    {
+        double guarantee = this.getGuarantee(problem);
+        if(!(guarantee < 1))
+        {
+            return null;
+        }
+        
+        //The table has at most (stories * (4 * stories / epsilon + 1)) cells
+        //  (see ApproximateKnapsackProblemSolver.getSmallestEpsilon).
+        long columns = (long) Math.ceil(4.0 * problem.size() / guarantee) + 1;
+        long cells = Math.min(this.tableBits, problem.size() * columns);
+        return new SolverEstimate(cells,
+                                  cells / Byte.SIZE + columns * (Long.SIZE / Byte.SIZE),
+                                  guarantee);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan solve(SprintProblem problem)
+    {
+        double guarantee = this.getGuarantee(problem);
+        if(!(guarantee < 1))
+        {
+            return null;
+        }
+        
+        List<Story> plan = ApproximateKnapsackProblemSolver.solve(problem.Stories,
+                                                                  problem.Capacity,
+                                                                  guarantee);
+        
+        //The plan is worth at least (1 - guarantee) of optimal, which bounds
+        //  the optimal plan's value too.
+        long value = KnapsackProblemSolver.getTotalValue(plan);
+        long upperBound = Math.min(KnapsackProblemSolver.getUpperBound(problem.Stories,
+                                                                       problem.Capacity),
+                                   (long) Math.ceil(value / (1 - guarantee)));
+        return new SprintPlan(plan, guarantee, upperBound);
+    }
+    
+    
+    /**
+     * Gets the epsilon asked for.
+     * @return  the epsilon.
+     */
+    public double getEpsilon()
+    {
+        return this.epsilon;
+    }
+    
+    
+    /**
+     * Gets the epsilon we can guarantee for the sprint:  the epsilon asked
+     * for, or the smallest the table allows if that is bigger.
+     * @param problem  the sprint to plan.
+     * @return  the guaranteed epsilon.  This is 1 or more if no epsilon will
+     *          do.
+     */
+    protected double getGuarantee(SprintProblem problem)
+    {
+        return Math.max(this.epsilon,
+                        ApproximateKnapsackProblemSolver.getSmallestEpsilon(problem.size(),
+                                                                            this.tableBits));
+    }
+}
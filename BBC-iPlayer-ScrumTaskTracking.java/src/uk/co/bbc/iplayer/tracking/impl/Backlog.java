@@ -9,12 +9,27 @@
 package uk.co.bbc.iplayer.tracking.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import uk.co.bbc.iplayer.tracking.AddAllResult;
 import uk.co.bbc.iplayer.tracking.IBacklog;
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.MultiSprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintPlanCurve;
 import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+import uk.co.bbc.iplayer.tracking.StoryPage;
+import uk.co.bbc.iplayer.tracking.exceptions.InsufficientMemoryException;
 import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
 import uk.co.bbc.iplayer.tracking.messages.LogConfig;
 import uk.co.bbc.iplayer.tracking.messages.Messages;
@@ -45,12 +60,143 @@ public class Backlog implements IBacklog
     
     /**
      * If the number of (stories * capacity) exceeds this threshold, we want to
-     * do some approximating so we don't run out of memory.
+     * do some approximating so we don't run out of memory.  The solver only
+     * keeps one bit per (story, capacity) pair, so this is about 2MB of table.
      */
-    public static final int PACKING_APPROXIMATION_THRESHOLD = 1000000;
+    public static final int PACKING_APPROXIMATION_THRESHOLD = 16000000;
+    
+    /**
+     * The plans for several capacities at once, and pipelined plans, need
+     * the whole table, but tables too big for the heap are kept in direct
+     * buffers or a memory-mapped file (see {@link DecisionTable}).  Only the
+     * rows of values take heap, so these tables may have up to this many
+     * bits (2GB), as long as filling them in is within the planner's
+     * operation budget.
+     */
+    public static final long OFF_HEAP_TABLE_BITS = 1L << 34;
+    
+    /**
+     * If the table would be bigger than PACKING_APPROXIMATION_THRESHOLD, we
+     * first search for the optimal plan with branch-and-bound, which doesn't
+     * depend on the capacity.  The search can take exponential time, so we
+     * give up and approximate after it visits this many nodes.
+     */
+    public static final long BRANCH_AND_BOUND_NODE_LIMIT = 1000000;
+    
+    /**
+     * Sprints whose table is too big for memory can still be planned exactly
+     * by recomputing its rows instead of keeping them (see
+     * {@link LinearSpaceSprintSolver}), which only takes
+     * O(capacity * log(stories)) memory.  We only do that if it takes no more
+     * than this many steps (a few seconds' work).
+     */
+    public static final long LINEAR_SPACE_OPERATION_LIMIT = 1L << 31;
+    
+    /**
+     * When the point values share a large common divisor, few point totals
+     * can be reached and we plan the sprint by keeping only the undominated
+     * states (see {@link ParetoSprintSolver}).  The number of states also
+     * depends on the priorities, so we give up after keeping this many.
+     */
+    public static final long PARETO_STATE_LIMIT = 2000000;
+    
+    /**
+     * Backlogs with no more than this many stories (including what is left
+     * after taking stories greedily) can be planned exactly whatever the
+     * capacity by matching up the subsets of each half (see
+     * {@link MeetInTheMiddleSprintSolver}).  That takes O(2^(stories / 2))
+     * time and memory, which is about 2 million subsets for this many.
+     */
+    public static final int MEET_IN_THE_MIDDLE_STORY_LIMIT = 40;
+    
+    /**
+     * The default epsilon for the FPTAS approximation (plans are within 10% of
+     * optimal).
+     */
+    public static final double DEFAULT_EPSILON = 0.1;
+    
+    /**
+     * The number of sprint capacities we keep incremental planning state for.
+     * When a new capacity is planned, the least recently used one is dropped.
+     */
+    public static final int MAX_INCREMENTAL_CAPACITIES = 4;
+    
+    /**
+     * The most sprint capacities getSprints will plan in one call.
+     */
+    public static final int MAX_SPRINT_CAPACITIES = 10000;
+    
+    /**
+     * If the backlog is too big to plan every capacity in one table,
+     * getSprints plans each capacity separately from the same stories.  It
+     * plans no more than this many capacities that way.
+     */
+    public static final int MAX_SEPARATE_SPRINT_PLANS = 16;
+    
+    /**
+     * The most stories a page of the backlog may have.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    
+    /**
+     * Separates the priority and OID of the last story on a page in a
+     * continuation token.
+     */
+    private static final String PAGE_TOKEN_SEPARATOR = ".";
+    
+    /**
+     * The radix the numbers in a continuation token are written in.
+     */
+    private static final int PAGE_TOKEN_RADIX = Character.MAX_RADIX;
 
     
     
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * The solvers that getSprint can use to find the optimal part of the 
+     * sprint plan.  They all find the same plan.
+     */
+    public enum SolverMode
+    {
+        /**
+         * The {0,1}-knapsack dynamic programming algorithm over the sprint's
+         * capacity (see {@link ParallelKnapsackProblemSolver}).
+         */
+        DYNAMIC_PROGRAMMING,
+        
+        /**
+         * Fit as many stories as possible, then minimize their priorities 
+         * (see {@link CardinalityFirstKnapsackProblemSolver}).  This is much 
+         * cheaper when the stories' point values are close together.
+         */
+        CARDINALITY_FIRST;
+    }
+    
+    
+    /**
+     * How getSprint approximates the plan when the backlog is too big to plan
+     * exactly.
+     */
+    public enum ApproximationMode
+    {
+        /**
+         * Take the highest priority stories that fit until the rest of the
+         * backlog is small enough to plan exactly.  There is no guarantee on
+         * how good the plan is.
+         */
+        GREEDY_PREFIX,
+        
+        /**
+         * Approximate the whole plan to within (1 - epsilon) of optimal (see
+         * {@link ApproximateKnapsackProblemSolver}).
+         */
+        FPTAS;
+    }
+    
+    
+    
     //-------------------------------------------------------------------------
     //  DATA MEMBERS
     //-------------------------------------------------------------------------
@@ -67,6 +213,79 @@ public class Backlog implements IBacklog
     protected Logger logger;
     
     
+    /**
+     * The solver used to find the optimal part of the sprint plan.
+     */
+    protected SolverMode solverMode = SolverMode.DYNAMIC_PROGRAMMING;
+    
+    
+    /**
+     * How to approximate the plan when the backlog is too big to plan
+     * exactly.
+     */
+    protected ApproximationMode approximationMode = ApproximationMode.GREEDY_PREFIX;
+    
+    
+    /**
+     * The epsilon for the FPTAS approximation.
+     */
+    protected double epsilon = DEFAULT_EPSILON;
+    
+    
+    /**
+     * Whether to keep the planning state between calls to getSprint and
+     * update it as stories are added and removed.
+     */
+    protected boolean incrementalPlanning = false;
+    
+    
+    /**
+     * Whether to compute the table while the stories are still being read
+     * from the database.
+     */
+    protected boolean pipelinedPlanning = false;
+    
+    
+    /**
+     * The incremental planning state for each sprint capacity, least recently
+     * used first.
+     */
+    protected Map<Integer, IncrementalKnapsackProblemSolver> incrementalSolvers =
+            new LinkedHashMap<Integer, IncrementalKnapsackProblemSolver>(16, 0.75f, true)
+            {
+                private static final long serialVersionUID = 1L;
+                
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, IncrementalKnapsackProblemSolver> eldest)
+                {
+                    return this.size() > MAX_INCREMENTAL_CAPACITIES;
+                }
+            };
+    
+    
+    /**
+     * The story database's change count when the incremental planning state
+     * was last known to match the stories.
+     */
+    protected long incrementalChangeCount = 0;
+    
+    
+    
+    /**
+     * The solver the planner uses to plan sprints exactly with dynamic
+     * programming.
+     */
+    protected DynamicProgrammingSprintSolver dynamicProgrammingSolver =
+            new DynamicProgrammingSprintSolver(SolverMode.DYNAMIC_PROGRAMMING);
+    
+    
+    /**
+     * Picks the solver to plan each sprint with.
+     */
+    protected SprintSolverPlanner solverPlanner =
+            new SprintSolverPlanner(PACKING_APPROXIMATION_THRESHOLD);
+    
+    
     
     //-------------------------------------------------------------------------
     //  CONSTRUCTOR
@@ -78,6 +297,16 @@ public class Backlog implements IBacklog
     {
         LogConfig.setUpLogger();
         this.logger = Logger.getLogger(this.getClass().getPackage().getName());
+        
+        this.solverPlanner.register(this.dynamicProgrammingSolver);
+        this.solverPlanner.register(new LinearSpaceSprintSolver(LINEAR_SPACE_OPERATION_LIMIT));
+        this.solverPlanner.register(new ParetoSprintSolver(PARETO_STATE_LIMIT));
+        MeetInTheMiddleSprintSolver meetInTheMiddleSolver =
+                new MeetInTheMiddleSprintSolver(MEET_IN_THE_MIDDLE_STORY_LIMIT);
+        this.solverPlanner.register(meetInTheMiddleSolver);
+        this.solverPlanner.register(new BranchAndBoundSprintSolver(BRANCH_AND_BOUND_NODE_LIMIT));
+        this.solverPlanner.register(new GreedyPrefixSprintSolver(this.dynamicProgrammingSolver,
+                                                                 meetInTheMiddleSolver));
     }
     
     
@@ -113,6 +342,7 @@ public class Backlog implements IBacklog
         
         
         // Add the story to the backlog
+        long changeCount = this.storyDB.getChangeCount();
         try
         {
             this.storyDB.addStory(story);
@@ -128,6 +358,84 @@ public class Backlog implements IBacklog
             //Would this be better done in the story DB code?
             throw new TaskTrackerException(errorMessage, e);
         }
+        
+        if(this.trackIncrementalChange(changeCount))
+        {
+            //Only one row of each incremental plan changes.
+            for(IncrementalKnapsackProblemSolver solver : this.incrementalSolvers.values())
+            {
+                solver.add(story);
+            }
+        }
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AddAllResult addAll(Collection<Story> stories) throws TaskTrackerException
+    {
+        logger.fine(Messages.getString("LogAddAll",
+                                         stories.size()));
+        
+        //Check the fields of every story before adding any.  positions maps
+        //  the valid stories back to where they were in the collection.
+        AddAllResult result = new AddAllResult();
+        List<Story> validStories = new ArrayList<>(stories.size());
+        int[] positions = new int[stories.size()];
+        int position = 0;
+        for(Story story : stories)
+        {
+            try
+            {
+                checkId(story.Id);
+                checkPointValue(story.Points);
+                checkPriorityValue(story.Priority);
+                
+                positions[validStories.size()] = position;
+                validStories.add(story);
+            }
+            catch(TaskTrackerException e)
+            {
+                logger.log(Level.INFO, e.getMessage(), e);
+                result.Failures.put(position, e);
+            }
+            position++;
+        }
+        
+        
+        // Add the stories to the backlog
+        SortedMap<Integer, TaskTrackerException> failures;
+        try
+        {
+            failures = this.storyDB.addStories(validStories);
+        }
+        catch(TaskTrackerException e)
+        {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw e;
+        }
+        
+        for(Map.Entry<Integer, TaskTrackerException> failure : failures.entrySet())
+        {
+            String errorMessage = Messages.getString("DBErrorAdd",
+                                                     validStories.get(failure.getKey()).Id);
+            logger.log(Level.INFO, errorMessage, failure.getValue());
+            
+            result.Failures.put(positions[failure.getKey()],
+                                new TaskTrackerException(errorMessage, failure.getValue()));
+        }
+        result.Added = validStories.size() - failures.size();
+        
+        //Updating each incremental plan a story at a time would cost more
+        //  than rebuilding it the next time it is needed.
+        if(result.Added > 0)
+        {
+            this.incrementalSolvers.clear();
+        }
+        
+        return result;
     }
 
     
@@ -156,8 +464,17 @@ public class Backlog implements IBacklog
         {
             //Get the story.  We will not return this until the delete succeeds.
             Story story = this.storyDB.selectStory(id);
+            long changeCount = this.storyDB.getChangeCount();
             this.storyDB.deleteStory(id);
             
+            if(this.trackIncrementalChange(changeCount))
+            {
+                for(IncrementalKnapsackProblemSolver solver : this.incrementalSolvers.values())
+                {
+                    solver.remove(id);
+                }
+            }
+            
             return story;
         }
         catch(TaskTrackerException e)
@@ -174,28 +491,62 @@ public class Backlog implements IBacklog
     @Override
     public List<Story> getSprint(int totalPointsAchievable) throws TaskTrackerException
     {
-        logger.fine(Messages.getString("LogSprintPlan", 
+        return this.getSprintPlan(totalPointsAchievable).Stories;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan getSprintPlan(int totalPointsAchievable) throws TaskTrackerException
+    {
+        logger.fine(Messages.getString("LogSprintPlan",
                                          totalPointsAchievable));
         
-        try
+        if(this.incrementalPlanning)
         {
-            //If the totalPointsAchievable is impossible (non-positive), throw 
-            //  an exception.  This indicates something is wrong rather than the 
-            //  value is correct but we didn't find anything.
-            checkPointValue(totalPointsAchievable);
+            List<Story> plan = this.getIncrementalPlan(totalPointsAchievable);
+            if(plan != null)
+            {
+                return new SprintPlan(plan, 0, 0);
+            }
         }
-        catch(TaskTrackerException e)
+        
+        if(this.pipelinedPlanning)
         {
-            logger.log(Level.INFO, e.getMessage(), e);
-            throw e;
+            List<Story> plan = this.getPipelinedPlan(totalPointsAchievable);
+            if(plan != null)
+            {
+                return new SprintPlan(plan, 0, 0);
+            }
         }
         
-            
-        List<Story> orderedStories;
+        List<Story> orderedStories = this.getCandidateStories(totalPointsAchievable);
+        
+        /**
+         * OK, so the idea here is that we can formulate the problem as the
+         * {0,1}-knapsack problem and get the highest possible value in the
+         * sprint (in Scrum, we use priority as a proxy for how much value the
+         * customer places on the story).  However, we needed to finesse the
+         * problem a little to make it work, so we bounded the priority and
+         * point-values so they are strictly positive.
+         * 
+         * Further, because this problem is NP-complete it is possible that we
+         * will take up too much time and space (it takes
+         * O(|orderedStories| * totalPointsAchievable) time and space, so the
+         * planner picks a solver based on the size of the problem:  the
+         * dynamic programming algorithm if its table is small enough, a
+         * branch-and-bound search if not, the same algorithm recomputing its
+         * rows instead of keeping the table if the search gives up, and an
+         * approximation if even that would take too long.  Custom solvers can
+         * be registered alongside these.
+         */
+        SprintPlan plan;
         try
         {
-            //Ordered stories is never null.
-            orderedStories = this.storyDB.getAllStoriesInPriorityOrder();
+            plan = this.solverPlanner.solve(orderedStories,
+                                            totalPointsAchievable);
         }
         catch(TaskTrackerException e)
         {
@@ -203,80 +554,982 @@ public class Backlog implements IBacklog
             throw e;
         }
         
-        /**
-         * OK, so the idea here is that we can formulate the problem as the 
-         * {0,1}-knapsack problem and get the highest possible value in the 
-         * sprint (in Scrum, we use priority as a proxy for how much value the 
-         * customer places on the story).  However, we needed to finesse the 
-         * problem a little to make it work, so we bounded the priority and 
-         * point-values so they are strictly positive.
-         * 
-         * Further, because this problem is NP-complete it is possible that we 
-         * will take up too much time and space (it takes 
-         * O(|orderedStories| * totalPointsAchievable) time and space, so we 
-         * will do some approximation if our problem is too big.  Our very
-         * naive approximation takes the highest priority items and just adds 
-         * them to the proposed solution until we have made the 
-         * potential-solution space small enough to run the knapsack algorithm.
-         */
+        if(plan.Epsilon > 0)
+        {
+            logger.fine(Messages.getString("LogSprintApproximation",
+                                             plan.Epsilon,
+                                             plan.getAchievedBound()));
+        }
+        
+        return plan;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan getSprintPlan(int totalPointsAchievable,
+                                    long timeLimitMillis) throws TaskTrackerException
+    {
+        //Start the clock before we go to the database; the time limit covers
+        //  the whole call.
+        long deadline = System.nanoTime() 
+                + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeLimitMillis));
         
-        int pointsRemainingInSprint = totalPointsAchievable;
-        List<Story> sprintPlan = new ArrayList<>();
+        logger.fine(Messages.getString("LogSprintPlanDeadline", 
+                                         totalPointsAchievable,
+                                         timeLimitMillis));
+        
+        List<Story> orderedStories = this.getCandidateStories(totalPointsAchievable);
+        long memoryBytes = Backlog.getBoundedTableSolveHeapBytes(orderedStories,
+                                                                 totalPointsAchievable);
+        this.reserveMemory(memoryBytes);
+        try
+        {
+            return AnytimeKnapsackProblemSolver.solve(orderedStories,
+                                                      totalPointsAchievable,
+                                                      deadline);
+        }
+        finally
+        {
+            this.solverPlanner.getMemoryBudget().release(memoryBytes);
+        }
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlanCurve getSprints(Collection<Integer> capacities) throws TaskTrackerException
+    {
+        logger.fine(Messages.getString("LogSprints",
+                                         capacities));
         
+        int[] sprintCapacities = this.checkSprintCapacities(capacities);
+        int maxCapacity = 0;
+        for(int capacity : sprintCapacities)
+        {
+            maxCapacity = Math.max(maxCapacity, capacity);
+        }
         
+        if(sprintCapacities.length == 0)
+        {
+            return new SprintPlanCurve();
+        }
         
-        //Approximate until we get to a small enough value that we can use 
-        //  the optimal solution.
-        //Delete is expensive, so we are going to drop the element from the list
-        //      by passing a sublist into the solver.  The story was either 
-        //      added or it is too big.  Don't bother the Knapsack problem
-        //      solver with it.
-        int position = 0;
-        for(position = 0; position < orderedStories.size(); position++)
+        //The stories pruned for the largest capacity can't be in the plan for
+        //  any smaller one either.  The table takes as many steps to fill in
+        //  as getSprint's would, so it gets the same operation budget (it
+        //  may just be kept outside the heap).
+        List<Story> orderedStories = this.getPrunedStories(maxCapacity);
+        long capacityBound = Math.min(maxCapacity,
+                                      KnapsackProblemSolver.getTotalPoints(orderedStories)) + 1;
+        long tableBits = orderedStories.size() * capacityBound;
+        if(tableBits <= this.solverPlanner.getOperationBudget()
+                && tableBits <= OFF_HEAP_TABLE_BITS)
         {
-            //If we are small enough that we can do the rest using the 
-            //      optimal solution finder, then do that.
-            long tableSize = (long)(orderedStories.size() - position) * (long)pointsRemainingInSprint;
-            if(tableSize <= PACKING_APPROXIMATION_THRESHOLD)
+            long memoryBytes = Backlog.getTableSolveHeapBytes(orderedStories.size(),
+                                                              capacityBound);
+            this.reserveMemory(memoryBytes);
+            try
             {
-                break;
+                return BitPackedKnapsackProblemSolver.solve(orderedStories,
+                                                            sprintCapacities);
             }
-            
-            Story story = orderedStories.get(position);
-            
-            if(story.Points <= (pointsRemainingInSprint))
+            finally
             {
-                sprintPlan.add(story);
+                this.solverPlanner.getMemoryBudget().release(memoryBytes);
             }
         }
         
-        //Finds the set of stories that fills up the sprint and maximizes the
-        //  value to the customer (as defined by the priority of the story).
-        List<Story> optimalSolution;
+        //Too slow to plan exactly in one table, so plan each capacity the way
+        //  getSprint would, from the stories we already have.  Each one is a
+        //  separate solve, so only a few are allowed.  There is no curve in
+        //  this case.
+        if(sprintCapacities.length > MAX_SEPARATE_SPRINT_PLANS)
+        {
+            TaskTrackerException e = new TaskTrackerException(
+                    Messages.getString("BacklogTooManySeparatePlans",
+                                       MAX_SEPARATE_SPRINT_PLANS,
+                                       sprintCapacities.length));
+            logger.log(Level.INFO, e.getMessage(), e);
+            throw e;
+        }
+        
+        SprintPlanCurve curve = new SprintPlanCurve(new TreeMap<Integer, List<Story>>(),
+                                                    null);
         try
         {
-            optimalSolution = KnapsackProblemSolver.solve(orderedStories.subList(position, orderedStories.size()), 
-                                                          totalPointsAchievable);
+            for(int capacity : sprintCapacities)
+            {
+                curve.Plans.put(capacity, this.solverPlanner.solve(orderedStories,
+                                                                   capacity).Stories);
+            }
         }
-        catch(OutOfMemoryError e)
+        catch(TaskTrackerException e)
         {
             logger.log(Level.SEVERE, e.getMessage(), e);
             throw e;
         }
         
-        //Insert the stories from the approximation into the optimal solution 
-        //      set so they are ordered by priority (then age).  Since we took 
-        //      the stories that will fit in order from the list of stories,
-        //      we know that the contents of orderedStories should come first. 
-        sprintPlan.addAll(optimalSolution);
-        return sprintPlan;
+        return curve;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlanCurve getSprints(int lowestPointsAchievable,
+                                      int highestPointsAchievable) throws TaskTrackerException
+    {
+        //Flip them if they come in in incorrect order.
+        if(lowestPointsAchievable > highestPointsAchievable)
+        {
+            int temp = highestPointsAchievable;
+            highestPointsAchievable = lowestPointsAchievable;
+            lowestPointsAchievable = temp;
+        }
+        
+        //Check the range before we make a list of it.
+        this.checkSprintCapacity(lowestPointsAchievable);
+        this.checkSprintCapacity(highestPointsAchievable);
+        this.checkSprintCapacityCount((long) highestPointsAchievable - lowestPointsAchievable + 1);
+        
+        List<Integer> capacities = new ArrayList<>();
+        for(long capacity = lowestPointsAchievable; capacity <= highestPointsAchievable; capacity++)
+        {
+            capacities.add((int) capacity);
+        }
+        
+        return this.getSprints(capacities);
     }
     
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MultiSprintPlan planSprints(List<Integer> capacities) throws TaskTrackerException
+    {
+        logger.fine(Messages.getString("LogPlanSprints",
+                                         capacities));
+        
+        int[] sprintCapacities = this.checkSprintCapacities(capacities);
+        long totalCapacity = 0;
+        for(int capacity : sprintCapacities)
+        {
+            totalCapacity += capacity;
+        }
+        
+        //No more of each point class than fit in all of the sprints together
+        //  can be planned, so we can prune for the total capacity.
+        List<Story> orderedStories = this.getPrunedStories((int) Math.min(totalCapacity,
+                                                                          Integer.MAX_VALUE - 1));
+        long memoryBytes = Backlog.getBoundedTableSolveHeapBytes(orderedStories,
+                                                                 sprintCapacities);
+        this.reserveMemory(memoryBytes);
+        try
+        {
+            return MultipleKnapsackProblemSolver.solve(orderedStories,
+                                                       sprintCapacities);
+        }
+        finally
+        {
+            this.solverPlanner.getMemoryBudget().release(memoryBytes);
+        }
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void commitSprints(MultiSprintPlan plan) throws TaskTrackerException
+    {
+        List<String> ids = new ArrayList<>();
+        for(List<Story> sprint : plan.Sprints)
+        {
+            for(Story story : sprint)
+            {
+                ids.add(story.Id);
+            }
+        }
+        
+        logger.fine(Messages.getString("LogCommitSprints",
+                                         ids));
+        
+        long changeCount = this.storyDB.getChangeCount();
+        try
+        {
+            this.storyDB.deleteStories(ids);
+        }
+        catch(TaskTrackerException e)
+        {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw e;
+        }
+        
+        if(this.trackIncrementalChange(changeCount))
+        {
+            for(IncrementalKnapsackProblemSolver solver : this.incrementalSolvers.values())
+            {
+                for(String id : ids)
+                {
+                    solver.remove(id);
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StoryPage getStoryPage(int pageSize,
+                                  String continuationToken) throws TaskTrackerException
+    {
+        logger.fine(Messages.getString("LogStoryPage",
+                                         pageSize,
+                                         continuationToken));
+        
+        if(pageSize <= 0 || pageSize > MAX_PAGE_SIZE)
+        {
+            TaskTrackerException e = new TaskTrackerException(
+                    Messages.getString("BacklogPageSizeInvalid",
+                                       MAX_PAGE_SIZE,
+                                       pageSize));
+            logger.log(Level.INFO, e.getMessage(), e);
+            throw e;
+        }
+        
+        //The token is the priority and OID of the last story on the previous
+        //  page; the first page starts before every (positive) priority.
+        int priority = PRIORITY_LOWER_BOUND;
+        long oid = StoryBatch.NO_OID;
+        if(continuationToken != null)
+        {
+            String[] position = continuationToken.split(Pattern.quote(PAGE_TOKEN_SEPARATOR), -1);
+            if(position.length == 2)
+            {
+                try
+                {
+                    priority = Integer.parseInt(position[0], PAGE_TOKEN_RADIX);
+                    oid = Long.parseLong(position[1], PAGE_TOKEN_RADIX);
+                }
+                catch(NumberFormatException parseError)
+                {
+                    TaskTrackerException e = new TaskTrackerException(
+                            Messages.getString("BacklogPageTokenInvalid",
+                                               continuationToken),
+                            parseError);
+                    logger.log(Level.INFO, e.getMessage(), e);
+                    throw e;
+                }
+            }
+            
+            if(priority <= PRIORITY_LOWER_BOUND || oid < 0)
+            {
+                TaskTrackerException e = new TaskTrackerException(
+                        Messages.getString("BacklogPageTokenInvalid",
+                                           continuationToken));
+                logger.log(Level.INFO, e.getMessage(), e);
+                throw e;
+            }
+        }
+        
+        //Get one more story than fits so we know whether there is another page.
+        StoryBatch stories;
+        try
+        {
+            stories = this.storyDB.getStoryBatchAfter(priority, oid, pageSize + 1);
+        }
+        catch(TaskTrackerException e)
+        {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw e;
+        }
+        
+        if(stories.size() <= pageSize)
+        {
+            return new StoryPage(new ArrayList<Story>(stories), null);
+        }
+        
+        int last = pageSize - 1;
+        return new StoryPage(new ArrayList<Story>(stories.subList(0, pageSize)),
+                             Integer.toString(stories.getPriority(last), PAGE_TOKEN_RADIX)
+                                 + PAGE_TOKEN_SEPARATOR
+                                 + Long.toString(stories.getOid(last), PAGE_TOKEN_RADIX));
+    }
+    
+    
+    /**
+     * Checks the number of points in the sprint and gets the stories that
+     * could be part of its plan, in priority order.
+     * @param totalPointsAchievable  the number of points that can be achieved
+     *      in the sprint.
+     * @return  the stories that could be part of the plan.  This is never 
+     *      null.
+     * @throws TaskTrackerException  if the number of points is invalid or 
+     *      there was a problem getting the stories.
+     */
+    private List<Story> getCandidateStories(int totalPointsAchievable) throws TaskTrackerException
+    {
+        this.checkSprintCapacity(totalPointsAchievable);
+        
+        //Ordered stories is never null.  Drop the stories that can't be part
+        //  of the plan before we decide how to solve it.
+        return this.getPrunedStories(totalPointsAchievable);
+    }
+    
+    
+    /**
+     * Gets the optimal plan from the incremental planning state for the
+     * sprint's capacity, building the state if we don't have it (or the
+     * database has changed behind our back).
+     * @param totalPointsAchievable  the number of points that can be achieved
+     *      in the sprint.
+     * @return  the optimal plan, or null if the backlog is too big to keep
+     *      the planning state for.
+     * @throws TaskTrackerException  if the number of points is invalid or
+     *      there was a problem getting the stories.
+     */
+    private List<Story> getIncrementalPlan(int totalPointsAchievable) throws TaskTrackerException
+    {
+        this.checkSprintCapacity(totalPointsAchievable);
+        
+        //Stories added or removed without going through this backlog leave
+        //  the change count ahead of ours.
+        long changeCount = this.storyDB.getChangeCount();
+        if(changeCount != this.incrementalChangeCount)
+        {
+            this.incrementalSolvers.clear();
+            this.incrementalChangeCount = changeCount;
+        }
+        
+        IncrementalKnapsackProblemSolver solver = this.incrementalSolvers.get(totalPointsAchievable);
+        if(solver == null)
+        {
+            int storyCount;
+            try
+            {
+                storyCount = this.storyDB.getStoryCount();
+            }
+            catch(TaskTrackerException e)
+            {
+                logger.log(Level.SEVERE, e.getMessage(), e);
+                throw e;
+            }
+            
+            //The state isn't pruned (removing a story can bring back one that
+            //  was pruned), so it needs to fit as is.
+            if((long) storyCount * ((long) totalPointsAchievable + 1) > PACKING_APPROXIMATION_THRESHOLD)
+            {
+                return null;
+            }
+            
+            solver = new IncrementalKnapsackProblemSolver(this.getAllStories(),
+                                                          totalPointsAchievable);
+            this.incrementalSolvers.put(totalPointsAchievable, solver);
+        }
+        else if((long) solver.size() * ((long) totalPointsAchievable + 1) > PACKING_APPROXIMATION_THRESHOLD)
+        {
+            //Stories were added until the state got too big.
+            this.incrementalSolvers.remove(totalPointsAchievable);
+            return null;
+        }
+        
+        return solver.solve();
+    }
+    
+    
+    /**
+     * Checks whether the incremental planning state can be updated for a
+     * change just made through this backlog, dropping it if any other change
+     * was made since it was last brought up to date.
+     * @param changeCountBefore  the story database's change count before the
+     *      change was made.
+     * @return  true if the state should be updated for the change.
+     */
+    private boolean trackIncrementalChange(long changeCountBefore)
+    {
+        long changeCount = this.storyDB.getChangeCount();
+        boolean inStep = this.incrementalChangeCount == changeCountBefore
+                         && changeCount == changeCountBefore + 1;
+        if(!inStep)
+        {
+            this.incrementalSolvers.clear();
+        }
+        this.incrementalChangeCount = changeCount;
+        
+        return inStep;
+    }
+    
+    
+    /**
+     * Gets the optimal plan by computing the table while the stories are read
+     * from the database (see {@link PipelinedKnapsackProblemSolver}).  The
+     * table needs a row for every story that might be read and a column for
+     * every capacity (the total number of points isn't known until the end),
+     * so we only do this if that table is within the planner's operation
+     * budget, as getSprint's would have to be.  Bigger backlogs are left to
+     * the planner's faster solvers.
+     * @param totalPointsAchievable  the number of points that can be achieved
+     *      in the sprint.
+     * @return  the plan, or null if the table would be too big (or more
+     *      stories were added while we were reading them).
+     * @throws TaskTrackerException  if the number of points is invalid or
+     *      there was a problem getting the stories.
+     */
+    private List<Story> getPipelinedPlan(int totalPointsAchievable) throws TaskTrackerException
+    {
+        this.checkSprintCapacity(totalPointsAchievable);
+        
+        try
+        {
+            int storyCount = this.storyDB.getStoryCount();
+            long capacityBound = (long) totalPointsAchievable + 1;
+            long tableBits = storyCount * capacityBound;
+            if(tableBits > this.solverPlanner.getOperationBudget()
+                    || tableBits > OFF_HEAP_TABLE_BITS)
+            {
+                return null;
+            }
+            
+            //The solver reads the cursor to the end and closes it.
+            long memoryBytes = Backlog.getTableSolveHeapBytes(storyCount, capacityBound);
+            this.reserveMemory(memoryBytes);
+            try
+            {
+                return PipelinedKnapsackProblemSolver.solve(this.storyDB.openStoryCursor(),
+                                                            totalPointsAchievable,
+                                                            storyCount);
+            }
+            finally
+            {
+                this.solverPlanner.getMemoryBudget().release(memoryBytes);
+            }
+        }
+        catch(TaskTrackerException e)
+        {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw e;
+        }
+    }
+    
+    
+    /**
+     * Checks the number of points in the sprint.
+     * @param totalPointsAchievable  the number of points that can be achieved
+     *      in the sprint.
+     * @throws TaskTrackerException  if the number of points is invalid.
+     */
+    private void checkSprintCapacity(int totalPointsAchievable) throws TaskTrackerException
+    {
+        try
+        {
+            //If the totalPointsAchievable is impossible (non-positive), throw
+            //  an exception.  This indicates something is wrong rather than the
+            //  value is correct but we didn't find anything.
+            checkPointValue(totalPointsAchievable);
+        }
+        catch(TaskTrackerException e)
+        {
+            logger.log(Level.INFO, e.getMessage(), e);
+            throw e;
+        }
+    }
+    
+    
+    /**
+     * Checks several sprint capacities asked for at once:  that there aren't
+     * too many of them, and that each is there and valid.
+     * @param capacities  the capacities.
+     * @return  the capacities, in the same order.
+     * @throws TaskTrackerException  if the capacities or any of them are
+     *      null or invalid, or there are more than MAX_SPRINT_CAPACITIES.
+     */
+    private int[] checkSprintCapacities(Collection<Integer> capacities) throws TaskTrackerException
+    {
+        if(capacities == null)
+        {
+            TaskTrackerException e = new TaskTrackerException(
+                    Messages.getString("BacklogNullCapacities"));
+            logger.log(Level.INFO, e.getMessage(), e);
+            throw e;
+        }
+        
+        this.checkSprintCapacityCount(capacities.size());
+        int[] sprintCapacities = new int[capacities.size()];
+        int index = 0;
+        for(Integer capacity : capacities)
+        {
+            if(capacity == null)
+            {
+                TaskTrackerException e = new TaskTrackerException(
+                        Messages.getString("BacklogNullCapacity",
+                                           index));
+                logger.log(Level.INFO, e.getMessage(), e);
+                throw e;
+            }
+            
+            this.checkSprintCapacity(capacity);
+            sprintCapacities[index++] = capacity;
+        }
+        
+        return sprintCapacities;
+    }
+    
+    
+    /**
+     * Checks the number of sprint capacities asked for at once.
+     * @param numCapacities  the number of capacities.
+     * @throws TaskTrackerException  if there are more than
+     *      MAX_SPRINT_CAPACITIES.
+     */
+    private void checkSprintCapacityCount(long numCapacities) throws TaskTrackerException
+    {
+        if(numCapacities > MAX_SPRINT_CAPACITIES)
+        {
+            TaskTrackerException e = new TaskTrackerException(
+                    Messages.getString("BacklogTooManyCapacities",
+                                       MAX_SPRINT_CAPACITIES,
+                                       numCapacities));
+            logger.log(Level.INFO, e.getMessage(), e);
+            throw e;
+        }
+    }
+    
+    
+    /**
+     * Gets all of the stories from the database in priority order.  They come
+     * back as a {@link uk.co.bbc.iplayer.tracking.StoryBatch}, so the solvers
+     * read their columns and only the stories in the plan are built.
+     * @return  the stories.  This is never null.
+     * @throws TaskTrackerException  if there was a problem getting the
+     *      stories.
+     */
+    private List<Story> getAllStories() throws TaskTrackerException
+    {
+        try
+        {
+            return this.storyDB.getStoryBatchInPriorityOrder();
+        }
+        catch(TaskTrackerException e)
+        {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw e;
+        }
+    }
+    
+    
+    /**
+     * Gets the stories from the database that could be part of a plan for
+     * the capacity, in priority order (see {@link WeightClassPruner}).  The
+     * stories are streamed from the database and pruned as they are read, so
+     * only the ones that are kept are ever on the heap.
+     * @param capacity  the capacity to prune for.
+     * @return  the stories.  This is never null.
+     * @throws TaskTrackerException  if there was a problem getting the
+     *      stories.
+     */
+    private List<Story> getPrunedStories(int capacity) throws TaskTrackerException
+    {
+        try(StoryCursor stories = this.storyDB.openStoryCursor())
+        {
+            return WeightClassPruner.pruneFrom(stories, capacity);
+        }
+        catch(TaskTrackerException e)
+        {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw e;
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  ACCESSORS
+    //-------------------------------------------------------------------------
+    /**
+     * Gets the solver used to find the optimal part of the sprint plan.
+     * @return  the solver mode.
+     */
+    public SolverMode getSolverMode()
+    {
+        return this.solverMode;
+    }
+    
+    
+    /**
+     * Sets the solver used to find the optimal part of the sprint plan.
+     * @param solverMode  the solver mode.  This must not be null.
+     */
+    public void setSolverMode(SolverMode solverMode)
+    {
+        this.solverMode = solverMode;
+        this.dynamicProgrammingSolver.setSolverMode(solverMode);
+    }
+    
+    
+    /**
+     * Gets how the plan is approximated when the backlog is too big to plan
+     * exactly.
+     * @return  the approximation mode.
+     */
+    public ApproximationMode getApproximationMode()
+    {
+        return this.approximationMode;
+    }
+    
+    
+    /**
+     * Sets how the plan is approximated when the backlog is too big to plan
+     * exactly.
+     * @param approximationMode  the approximation mode.  This must not be
+     *          null.
+     */
+    public void setApproximationMode(ApproximationMode approximationMode)
+    {
+        this.approximationMode = approximationMode;
+        this.registerApproximation();
+    }
+    
+    
+    /**
+     * Gets the epsilon for the FPTAS approximation.
+     * @return  the epsilon.
+     */
+    public double getEpsilon()
+    {
+        return this.epsilon;
+    }
+    
+    
+    /**
+     * Sets the epsilon for the FPTAS approximation.  Plans are within
+     * (1 - epsilon) of optimal.
+     * @param epsilon  the epsilon.  This must be strictly between 0 and 1.
+     * @throws IllegalArgumentException  if epsilon is out of range.
+     */
+    public void setEpsilon(double epsilon)
+    {
+        if(!(epsilon > 0 && epsilon < 1))
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("ApproximationEpsilonInvalid", epsilon));
+        }
+        
+        this.epsilon = epsilon;
+        this.registerApproximation();
+    }
+    
+    
+    
+    /**
+     * Gets whether the planning state is kept between calls to getSprint.
+     * @return  true if planning is incremental.
+     */
+    public boolean isIncrementalPlanning()
+    {
+        return this.incrementalPlanning;
+    }
+    
+    
+    /**
+     * Sets whether to keep the planning state between calls to getSprint and
+     * update it as stories are added and removed through this backlog.
+     * Re-planning after one story is added to the end of the backlog then
+     * only costs O(totalPointsAchievable).  Every change made through a
+     * StoryDB on the same data source (including other backlogs) is noticed
+     * by its change count (see {@link StoryDB#getChangeCount()}), and the
+     * state is rebuilt.  Only changes written to the database directly with
+     * JDBC are not noticed.
+     * @param incrementalPlanning  true to plan incrementally.
+     */
+    public void setIncrementalPlanning(boolean incrementalPlanning)
+    {
+        this.incrementalPlanning = incrementalPlanning;
+        this.incrementalSolvers.clear();
+    }
+    
+    
+    /**
+     * Gets whether getSprint computes the table while the stories are still
+     * being read from the database.
+     * @return  true if planning is pipelined.
+     */
+    public boolean isPipelinedPlanning()
+    {
+        return this.pipelinedPlanning;
+    }
+    
+    
+    /**
+     * Sets whether getSprint computes the table while the stories are still
+     * being read from the database, so the time spent waiting on the
+     * database overlaps with the time spent planning.  This is only done
+     * when the table for the whole backlog is within the operation budget;
+     * otherwise (and when planning is incremental and the state is
+     * available) the stories are read first as usual.
+     * @param pipelinedPlanning  true to pipeline planning.
+     */
+    public void setPipelinedPlanning(boolean pipelinedPlanning)
+    {
+        this.pipelinedPlanning = pipelinedPlanning;
+    }
+    
+    
+    /**
+     * Registers a solver for getSprint to choose from.  Each solver estimates
+     * what a sprint would cost it, and the solvers are tried from the most
+     * accurate to the least (cheapest first among equally accurate solvers)
+     * until one of them returns a plan.  A solver with the same name as a
+     * built-in one (e.g. {@link DynamicProgrammingSprintSolver#NAME})
+     * replaces it.
+     * @param solver  the solver to register.  This must not be null.
+     */
+    public void registerSolver(ISprintSolver solver)
+    {
+        this.solverPlanner.register(solver);
+    }
+    
+    
+    /**
+     * Unregisters a solver so getSprint no longer chooses it.
+     * @param name  the name of the solver to unregister.
+     * @return  true if the solver was registered.
+     */
+    public boolean unregisterSolver(String name)
+    {
+        return this.solverPlanner.unregister(name);
+    }
+    
+    
+    /**
+     * Gets the budget getSprint reserves each solver's memory from.  By
+     * default, this is shared by every backlog in the JVM (see
+     * {@link MemoryBudget#getShared()}).
+     * @return  the memory budget.
+     */
+    public MemoryBudget getMemoryBudget()
+    {
+        return this.solverPlanner.getMemoryBudget();
+    }
+    
+    
+    /**
+     * Sets the budget getSprint reserves each solver's memory from.  A solver
+     * whose memory isn't available is skipped for a cheaper one, and if no
+     * cheaper one plans the sprint, getSprint waits up to the memory wait
+     * time before rejecting the request with an
+     * {@link uk.co.bbc.iplayer.tracking.exceptions.InsufficientMemoryException}.
+     * @param memoryBudget  the memory budget.  This must not be null.
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget)
+    {
+        this.solverPlanner.setMemoryBudget(memoryBudget);
+    }
+    
+    
+    /**
+     * Gets the number of steps a solver may take to plan a sprint.  getSprints
+     * only plans several capacities in one table if the table is within it.
+     * @return  the operation budget.
+     */
+    public long getOperationBudget()
+    {
+        return this.solverPlanner.getOperationBudget();
+    }
+    
+    
+    /**
+     * Sets the number of steps a solver may take to plan a sprint.  Solvers
+     * that would take more steps are passed over for faster (possibly
+     * approximate) ones.
+     * @param operationBudget  the operation budget.
+     */
+    public void setOperationBudget(long operationBudget)
+    {
+        this.solverPlanner.setOperationBudget(operationBudget);
+    }
+    
+    
+    /**
+     * Gets the longest time getSprint waits for memory before rejecting a
+     * request.
+     * @return  the time to wait, in milliseconds.
+     */
+    public long getMemoryWaitMillis()
+    {
+        return this.solverPlanner.getMemoryWaitMillis();
+    }
+    
+    
+    /**
+     * Sets the longest time getSprint waits for memory before rejecting a
+     * request.
+     * @param memoryWaitMillis  the time to wait, in milliseconds.
+     */
+    public void setMemoryWaitMillis(long memoryWaitMillis)
+    {
+        this.solverPlanner.setMemoryWaitMillis(memoryWaitMillis);
+    }
+    
+    
+    /**
+     * Gets the number of stories read from the database at a time while
+     * planning.
+     * @return  the fetch size.
+     */
+    public int getFetchSize()
+    {
+        return this.storyDB.getFetchSize();
+    }
+    
+    
+    /**
+     * Sets the number of stories read from the database at a time while
+     * planning (see {@link StoryDB#setFetchSize(int)}).
+     * @param fetchSize  the fetch size (0 lets the driver decide).
+     */
+    public void setFetchSize(int fetchSize)
+    {
+        this.storyDB.setFetchSize(fetchSize);
+    }
+    
+    
+    /**
+     * Gets the number of stories addAll inserts and commits at a time.
+     * @return  the batch size.
+     */
+    public int getBatchSize()
+    {
+        return this.storyDB.getBatchSize();
+    }
+    
+    
+    /**
+     * Sets the number of stories addAll inserts and commits at a time (see
+     * {@link StoryDB#setBatchSize(int)}).
+     * @param batchSize  the batch size.
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.storyDB.setBatchSize(batchSize);
+    }
+    
+    
+    /**
+     * Gets the solvers getSprint chooses from.
+     * @return  the solvers, in the order they were registered.
+     */
+    public List<ISprintSolver> getSolvers()
+    {
+        return this.solverPlanner.getSolvers();
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  HELPER METHODS
+    //-------------------------------------------------------------------------
+    /**
+     * Registers the FPTAS approximation with the current epsilon if it is the
+     * approximation mode, or unregisters it if not.
+     */
+    private void registerApproximation()
+    {
+        if(this.approximationMode == ApproximationMode.FPTAS)
+        {
+            this.solverPlanner.register(new ApproximateSprintSolver(this.epsilon,
+                                                                    DecisionTable.BOUNDED_TABLE_BITS));
+        }
+        else
+        {
+            this.solverPlanner.unregister(ApproximateSprintSolver.NAME);
+        }
+    }
+    
+    
+    /**
+     * Reserves memory for a solve that doesn't go through the solver planner
+     * from the planner's budget, waiting as long as the planner would.  The
+     * memory must be released when the solve is done.
+     * @param bytes  the number of bytes to reserve.
+     * @throws InsufficientMemoryException  if the memory didn't become
+     *      available in time.
+     */
+    private void reserveMemory(long bytes) throws InsufficientMemoryException
+    {
+        MemoryBudget memoryBudget = this.solverPlanner.getMemoryBudget();
+        if(!memoryBudget.reserve(bytes, this.solverPlanner.getMemoryWaitMillis()))
+        {
+            long availableBytes = memoryBudget.getAvailableBytes();
+            InsufficientMemoryException e = new InsufficientMemoryException(
+                    Messages.getString("SprintSolverNoMemory",
+                                       bytes,
+                                       availableBytes),
+                    bytes,
+                    availableBytes);
+            logger.log(Level.SEVERE, e.getMessage(), e);
+            throw e;
+        }
+    }
+    
+    
+    /**
+     * Gets the heap a dynamic programming solve that keeps its whole table
+     * takes:  the table if it is small enough to be kept on the heap, and two
+     * rows of values.
+     * @param rows  the number of rows (stories).
+     * @param columns  the number of columns (capacities).
+     * @return  the number of bytes.
+     */
+    private static long getTableSolveHeapBytes(long rows,
+                                               long columns)
+    {
+        return DecisionTable.getHeapBytes(rows, columns)
+                + 2 * columns * (Long.SIZE / Byte.SIZE);
+    }
+    
+    
+    /**
+     * Gets the heap the anytime and multi-sprint solvers take.  They only
+     * keep a table for a sprint if it takes no more than
+     * DecisionTable.BOUNDED_TABLE_BITS, so this is the heap of the biggest
+     * table that could be for any of the sprints (later sprints are planned
+     * from fewer stories).  Their other searches take memory in proportion to
+     * the number of stories, which we don't count.
+     * @param stories  the stories to plan.
+     * @param capacities  the capacities of the sprints.
+     * @return  the number of bytes.
+     */
+    private static long getBoundedTableSolveHeapBytes(List<Story> stories,
+                                                      int... capacities)
+    {
+        long totalPoints = KnapsackProblemSolver.getTotalPoints(stories);
+        long memoryBytes = 0;
+        for(int capacity : capacities)
+        {
+            long capacityBound = Math.min(capacity, totalPoints) + 1;
+            long rows = Math.min(stories.size(),
+                                 DecisionTable.BOUNDED_TABLE_BITS / capacityBound);
+            if(rows > 0)
+            {
+                memoryBytes = Math.max(memoryBytes,
+                                       Backlog.getTableSolveHeapBytes(rows,
+                                                                      capacityBound));
+            }
+        }
+        
+        return memoryBytes;
+    }
+    
     
-    //-------------------------------------------------------------------------
-    //  HELPER METHODS
-    //-------------------------------------------------------------------------
     /**
      * Check that a story Id is valid with respect to the constraints we imposed
      * on Story Ids for database storage.  These seem generally applicable (to 
@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.SprintPlanCurve;
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+
+/**
+ * Solves the knapsack problem with the same dynamic programming algorithm as
+ * {@link KnapsackProblemSolver}, but only stores one bit per table cell.
+ * 
+ * Backtracking through the table only needs to know whether the story in each
+ * row was taken at each capacity (that is, whether the cell differs from the
+ * cell below it).  So, we keep a single row of values that we update in place
+ * (from the highest capacity down, so we only ever read values from the
+ * previous row) and record a bit for every cell where the story was taken.
+ * The bits are packed 64 to a long, which is 1/64th of the memory the full
+ * table of longs takes.  They are kept in a {@link DecisionTable}, so big
+ * tables live outside the heap.  Only the points and priorities are read
+ * while filling in the table, so stories given as a {@link StoryBatch} are
+ * read straight from its columns and only the stories in the plan are built.
+ * 
+ * Because the bits record exactly the cells where the full table differs from
+ * the row below, backtracking through them returns exactly the same plan as
+ * {@link KnapsackProblemSolver#solve(List, int)}.
+ */
+public class BitPackedKnapsackProblemSolver
+{
+    /**
+     * The shift that converts a column into a word index.
+     */
+    private static final int WORD_INDEX_SHIFT = 6;
+    
+    
+    
+    /**
+     * Hides the constructor
+     */
+    private BitPackedKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint (optimal being the
+     * set of stories with the highest possible priority that will fit in the
+     * sprint).  This is O(stories.size() * sprintCapacity) in time, but the
+     * table only takes (stories.size() * sprintCapacity) bits.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities)
+     * @throws IllegalStateException  if the decision table is too big for
+     *          memory and its temporary file could not be created.
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity)
+    {
+        return BitPackedKnapsackProblemSolver.solve(stories,
+                                                    sprintCapacity,
+                                                    KnapsackProblemSolver.NO_DEADLINE);
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint, giving up if the
+     * deadline passes first (see {@link #solve(List, int)}).
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @param deadline  when to give up (compared with System.nanoTime()), or
+     *          KnapsackProblemSolver.NO_DEADLINE.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities), or null if the deadline
+     *          passed first.
+     * @throws IllegalStateException  if the decision table is too big for
+     *          memory and its temporary file could not be created.
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity,
+                                    long deadline)
+    {
+        List<Story> solution = new ArrayList<>();
+        
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return solution;
+        }
+        
+        //Columns past the total number of points in the backlog all look the
+        //  same (everything fits), so there is no point computing them.
+        StoryBatch batch = StoryBatch.of(stories);
+        int capacity = (int) Math.min(sprintCapacity,
+                                      batch.getTotalPoints());
+        int capacityBound = capacity + 1;
+        
+        try(DecisionTable decisions = DecisionTable.allocate(stories.size(),
+                                                             capacityBound))
+        {
+            if(BitPackedKnapsackProblemSolver.setUpDecisions(batch,
+                                                             capacityBound,
+                                                             decisions,
+                                                             deadline) == null)
+            {
+                return null;
+            }
+            
+            return BitPackedKnapsackProblemSolver.getOptimalSolution(stories,
+                                                                     decisions,
+                                                                     capacity);
+        }
+    }
+    
+    
+    /**
+     * Finds the optimal plans for several sprint capacities from one table.
+     * Columns up to a capacity are the same no matter how many columns come
+     * after them, so the table for the largest capacity gives exactly the
+     * plan {@link #solve(List, int)} would for each smaller one:  we just
+     * start backtracking from that capacity's column.  Its last row is the
+     * value of the optimal plan at every capacity.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacities  the capacities of the sprint.  These must be
+     *          non-negative and less than Integer.MAX_VALUE.
+     * @return  the plan for each capacity and the value-versus-capacity
+     *          curve.
+     * @throws IllegalStateException  if the decision table is too big for
+     *          memory and its temporary file could not be created.
+     */
+    public static SprintPlanCurve solve(List<Story> stories,
+                                        int[] sprintCapacities)
+    {
+        int maxCapacity = 0;
+        for(int sprintCapacity : sprintCapacities)
+        {
+            maxCapacity = Math.max(maxCapacity, sprintCapacity);
+        }
+        
+        SprintPlanCurve curve = new SprintPlanCurve();
+        if(stories == null || stories.size() == 0)
+        {
+            for(int sprintCapacity : sprintCapacities)
+            {
+                curve.Plans.put(sprintCapacity, new ArrayList<Story>());
+            }
+            
+            return curve;
+        }
+        
+        StoryBatch batch = StoryBatch.of(stories);
+        int capacity = (int) Math.min(maxCapacity,
+                                      batch.getTotalPoints());
+        int capacityBound = capacity + 1;
+        
+        try(DecisionTable decisions = DecisionTable.allocate(stories.size(),
+                                                             capacityBound))
+        {
+            curve.Values = BitPackedKnapsackProblemSolver.setUpDecisions(batch,
+                                                                         capacityBound,
+                                                                         decisions,
+                                                                         KnapsackProblemSolver.NO_DEADLINE);
+            for(int sprintCapacity : sprintCapacities)
+            {
+                curve.Plans.put(sprintCapacity,
+                                BitPackedKnapsackProblemSolver.getOptimalSolution(stories,
+                                                                                  decisions,
+                                                                                  Math.min(sprintCapacity,
+                                                                                           capacity)));
+            }
+        }
+        
+        return curve;
+    }
+    
+    
+    /**
+     * Backtracks through the decisions from the last story to the first.
+     * @param stories  the stories that were considered.
+     * @param decisions  the bit table from
+     *          {@link #setUpDecisions(StoryBatch, int, DecisionTable, long)}.
+     * @param capacity  the column to start backtracking from.
+     * @return  the stories in the optimal plan, in priority order.
+     */
+    protected static List<Story> getOptimalSolution(List<Story> stories,
+                                                    DecisionTable decisions,
+                                                    int capacity)
+    {
+        List<Story> solution = new ArrayList<>();
+        
+        int col = capacity;
+        for(int row = stories.size() - 1; row >= 0; row--)
+        {
+            if(decisions.isSet(row, col))
+            {
+                Story storyToAdd = stories.get(row);
+                solution.add(storyToAdd);
+                col -= storyToAdd.Points;
+            }
+        }
+        
+        //Reverse the order of the list so the highest priority stories come
+        //  first.
+        Collections.reverse(solution);
+        
+        return solution;
+    }
+    
+    
+    /**
+     * Runs the dynamic programming algorithm using a single row of values and
+     * records, for each story and capacity, whether the story was taken.
+     * @param stories  the stories to consider scheduling.  Only their
+     *          columns are read, so no stories are built.
+     * @param capacityBound  the number of columns in the table (the capacity
+     *          + 1).
+     * @param decisions  the bit table to fill in.  The bit for (row, col) is
+     *          set if stories[row] was taken at capacity col.  This must be
+     *          zeroed.
+     * @param deadline  when to give up (compared with System.nanoTime()), or
+     *          KnapsackProblemSolver.NO_DEADLINE.
+     * @return  the last row of values (the value of the optimal plan at each
+     *          capacity), or null if the deadline passed first.
+     */
+    protected static long[] setUpDecisions(StoryBatch stories,
+                                            int capacityBound,
+                                            DecisionTable decisions,
+                                            long deadline)
+    {
+        long[] values = new long[capacityBound];
+        long[] rowDecisions = new long[DecisionTable.getWordsPerRow(capacityBound)];
+        
+        for(int row = 0; row < stories.size(); row++)
+        {
+            if(KnapsackProblemSolver.isPastDeadline(deadline))
+            {
+                return null;
+            }
+            
+            BitPackedKnapsackProblemSolver.computeRow(values,
+                                                      rowDecisions,
+                                                      stories.getPoints(row),
+                                                      KnapsackProblemSolver.getValue(stories.getPriority(row)));
+            decisions.setRow(row, rowDecisions);
+        }
+        
+        return values;
+    }
+    
+    
+    /**
+     * Updates the row of values in place for the next story and records the
+     * capacities where the story was taken.
+     * @param values  the row of values for the stories before this one.  It
+     *          holds the row including this story when we are done.
+     * @param rowDecisions  the decision bits for this story's row.  These are
+     *          cleared first.
+     * @param weight  the story's point value.
+     * @param value  the story's value.
+     */
+    protected static void computeRow(long[] values,
+                                     long[] rowDecisions,
+                                     int weight,
+                                     long value)
+    {
+        Arrays.fill(rowDecisions, 0);
+        
+        //Go from the highest capacity down so values[j - weight] still
+        //  holds the previous row's value when we read it.
+        for(int j = values.length - 1; j >= weight; j--)
+        {
+            long candidate = values[j - weight] + value;
+            if(candidate > values[j])
+            {
+                values[j] = candidate;
+                rowDecisions[j >>> WORD_INDEX_SHIFT] |= 1L << j;
+            }
+        }
+    }
+}
@@ -0,0 +1,850 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Solves the knapsack problem with a depth-first branch-and-bound search
+ * (along the lines of Martello and Toth) instead of a table, so the cost does
+ * not depend on the sprint's capacity.
+ * 
+ * Each node of the search decides whether the next story is in the plan, and
+ * we drop any node whose upper bound can't beat the best plan found so far.
+ * The bound is the smaller of:
+ *  - the LP relaxation of the stories that are left (fill the remaining
+ *    capacity with the stories with the best value per point, then take a
+ *    fraction of the next one), and
+ *  - the Lagrangian bound with a cardinality constraint.  If only k more
+ *    stories can fit, then for any multiplier m >= 0 the plan can't gain more
+ *    than m * (capacity left) plus the k best (positive) values of
+ *    (value - m * points) that are left.
+ * Story values are all close to Integer.MAX_VALUE, so the plan is mostly about
+ * how many stories fit, and the LP bound alone can't tell apart plans with
+ * the same number of stories.  The Lagrangian bound can, so we pick the
+ * multiplier that makes it tightest for the whole problem and use it at every
+ * node.  We start from the greedy plan (best value per point first), which is
+ * usually close to optimal.
+ * 
+ * To return exactly the same plan as {@link KnapsackProblemSolver}, we decide
+ * the stories from the last to the first and try leaving each story out
+ * before putting it in, and we only keep a plan if it is strictly better than
+ * the best one so far.  The first optimal plan the search finds is then the
+ * one the table's backtrack finds.  The undecided stories are kept in Fenwick
+ * trees so each bound is O(log(stories.size())).
+ * 
+ * The search can take exponential time, so it gives up after a given number
+ * of nodes.
+ */
+public class BranchAndBoundKnapsackProblemSolver
+{
+    /**
+     * The search is exploring the child that leaves the story out.
+     */
+    private static final int EXPLORING_EXCLUDED = 1;
+    
+    /**
+     * The search is exploring the child that puts the story in.
+     */
+    private static final int EXPLORING_INCLUDED = 2;
+    
+    /**
+     * The search checks the deadline every (DEADLINE_CHECK_MASK + 1) nodes.
+     */
+    private static final long DEADLINE_CHECK_MASK = (1 << 10) - 1;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * Fenwick trees of the points, values, number, and (optionally) keys of
+     * the undecided stories, indexed by each story's rank in some order.
+     */
+    private static final class RankedSums
+    {
+        /**
+         * The rank of each story.
+         */
+        private final int[] rankOfStory;
+        
+        /**
+         * The story with each rank.
+         */
+        private final int[] storyOfRank;
+        
+        /**
+         * The Fenwick tree of the points of the undecided stories.
+         */
+        private final long[] points;
+        
+        /**
+         * The Fenwick tree of the values of the undecided stories.
+         */
+        private final long[] values;
+        
+        /**
+         * The Fenwick tree of the number of undecided stories.
+         */
+        private final long[] counts;
+        
+        /**
+         * The key of each story, or null if we don't keep keys.
+         */
+        private final long[] keyOfStory;
+        
+        /**
+         * The Fenwick tree of the keys of the undecided stories, or null if we
+         * don't keep keys.
+         */
+        private final long[] keys;
+        
+        /**
+         * The highest power of 2 no bigger than the number of stories.
+         */
+        private final int highestStep;
+        
+        
+        /**
+         * Ranks the stories and adds them all to the trees.
+         * @param stories  the stories to rank.
+         * @param order  the order of the stories' indices.
+         * @param keyOfStory  the key of each story, or null if we don't need
+         *          to total keys.
+         */
+        RankedSums(List<Story> stories,
+                   Comparator<Integer> order,
+                   long[] keyOfStory)
+        {
+            int numStories = stories.size();
+            Integer[] ranked = new Integer[numStories];
+            for(int k = 0; k < numStories; k++)
+            {
+                ranked[k] = k;
+            }
+            Arrays.sort(ranked, order);
+            
+            this.rankOfStory = new int[numStories];
+            this.storyOfRank = new int[numStories];
+            this.points = new long[numStories + 1];
+            this.values = new long[numStories + 1];
+            this.counts = new long[numStories + 1];
+            this.keyOfStory = keyOfStory;
+            this.keys = (keyOfStory == null) ? null : new long[numStories + 1];
+            this.highestStep = Integer.highestOneBit(numStories);
+            
+            for(int rank = 0; rank < numStories; rank++)
+            {
+                this.storyOfRank[rank] = ranked[rank];
+                this.rankOfStory[ranked[rank]] = rank;
+                this.update(ranked[rank], stories.get(ranked[rank]), 1);
+            }
+        }
+        
+        
+        /**
+         * Adds a story to, or removes a story from, the trees.
+         * @param story  the index of the story.
+         * @param currentStory  the story.
+         * @param sign  1 to add the story, -1 to remove it.
+         */
+        void update(int story,
+                    Story currentStory,
+                    int sign)
+        {
+            long storyPoints = sign * (long) currentStory.Points;
+            long storyValue = sign * KnapsackProblemSolver.getValue(currentStory);
+            
+            for(int k = this.rankOfStory[story] + 1; k < this.points.length; k += k & -k)
+            {
+                this.points[k] += storyPoints;
+                this.values[k] += storyValue;
+                this.counts[k] += sign;
+                if(this.keys != null)
+                {
+                    this.keys[k] += sign * this.keyOfStory[story];
+                }
+            }
+        }
+        
+        
+        /**
+         * Finds the longest run of ranks whose total (in the given tree) is no
+         * more than the limit.  Decided stories add nothing, so they are
+         * skipped over.
+         * @param tree  the tree to total.
+         * @param limit  the most the run can total.
+         * @return  the number of ranks in the run.
+         */
+        int findPrefix(long[] tree,
+                       long limit)
+        {
+            int position = 0;
+            long left = limit;
+            for(int step = this.highestStep; step > 0; step >>= 1)
+            {
+                int next = position + step;
+                if(next < tree.length && tree[next] <= left)
+                {
+                    position = next;
+                    left -= tree[next];
+                }
+            }
+            
+            return position;
+        }
+        
+        
+        /**
+         * Totals the first ranks in the given tree.
+         * @param tree  the tree to total.
+         * @param length  the number of ranks to total.
+         * @return  the total.
+         */
+        long getPrefixSum(long[] tree,
+                          int length)
+        {
+            long sum = 0;
+            for(int k = length; k > 0; k -= k & -k)
+            {
+                sum += tree[k];
+            }
+            
+            return sum;
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  DATA MEMBERS
+    //-------------------------------------------------------------------------
+    /**
+     * The stories to consider.
+     */
+    private final List<Story> stories;
+    
+    /**
+     * The capacity of the sprint.
+     */
+    private final int capacity;
+    
+    /**
+     * The undecided stories by value per point (best first).
+     */
+    private final RankedSums byDensity;
+    
+    /**
+     * The undecided stories by points (smallest first).
+     */
+    private final RankedSums byPoints;
+    
+    /**
+     * The Lagrangian multiplier (value per point) for the capacity.
+     */
+    private final long multiplier;
+    
+    /**
+     * The undecided stories by their Lagrangian keys (value - multiplier *
+     * points, best first).
+     */
+    private final RankedSums byKey;
+    
+    /**
+     * The number of ranks in byKey with positive keys.
+     */
+    private final int positiveKeys;
+    
+    /**
+     * The number of nodes the search has visited.
+     */
+    private long nodesVisited = 0;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  CONSTRUCTOR
+    //-------------------------------------------------------------------------
+    /**
+     * Sets up the search.
+     * @param stories  the stories to consider.
+     * @param capacity  the capacity of the sprint.
+     */
+    private BranchAndBoundKnapsackProblemSolver(final List<Story> stories,
+                                                int capacity)
+    {
+        this.stories = stories;
+        this.capacity = capacity;
+        
+        this.byDensity = new RankedSums(stories, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer thisIndex, Integer thatIndex)
+            {
+                //Compare value / points without dividing.  Both sides are
+                //  less than 2^62, so this can't overflow.
+                Story thisStory = stories.get(thisIndex);
+                Story thatStory = stories.get(thatIndex);
+                return Long.compare(KnapsackProblemSolver.getValue(thatStory) * thisStory.Points,
+                                    KnapsackProblemSolver.getValue(thisStory) * thatStory.Points);
+            }
+        }, null);
+        
+        this.byPoints = new RankedSums(stories, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer thisIndex, Integer thatIndex)
+            {
+                return Integer.compare(stories.get(thisIndex).Points,
+                                       stories.get(thatIndex).Points);
+            }
+        }, null);
+        
+        this.multiplier = this.getBestMultiplier();
+        final long[] keyOfStory = this.getKeys(this.multiplier);
+        this.byKey = new RankedSums(stories, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer thisIndex, Integer thatIndex)
+            {
+                return Long.compare(keyOfStory[thatIndex], keyOfStory[thisIndex]);
+            }
+        }, keyOfStory);
+        
+        int positive = 0;
+        while(positive < stories.size()
+                && keyOfStory[this.byKey.storyOfRank[positive]] > 0)
+        {
+            positive++;
+        }
+        this.positiveKeys = positive;
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  SOLVER
+    //-------------------------------------------------------------------------
+    /**
+     * Finds the optimal set of stories that fit in a sprint (optimal being the
+     * set of stories with the highest possible priority that will fit in the
+     * sprint).  This takes O(stories.size()) space regardless of the
+     * capacity, and at most O(nodeLimit * log(stories.size())) time after
+     * setting up.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.
+     * @param nodeLimit  the most search nodes to visit before giving up.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities), or null if the search
+     *          gave up before it could prove the plan was optimal.
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity,
+                                    long nodeLimit)
+    {
+        return BranchAndBoundKnapsackProblemSolver.solve(stories,
+                                                         sprintCapacity,
+                                                         nodeLimit,
+                                                         KnapsackProblemSolver.NO_DEADLINE);
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint, giving up if the
+     * deadline passes first (see {@link #solve(List, int, long)}).
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.
+     * @param nodeLimit  the most search nodes to visit before giving up.
+     * @param deadline  when to give up (compared with System.nanoTime()), or
+     *          KnapsackProblemSolver.NO_DEADLINE.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities), or null if the search
+     *          gave up before it could prove the plan was optimal.
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity,
+                                    long nodeLimit,
+                                    long deadline)
+    {
+        List<Story> solution = new ArrayList<>();
+        
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return solution;
+        }
+        
+        //Fix the stories that the bounds say are in (or out of) every optimal
+        //  plan, so we only search over the rest.
+        BranchAndBoundKnapsackProblemSolver root =
+                new BranchAndBoundKnapsackProblemSolver(stories, sprintCapacity);
+        long lowerBound = root.getGreedyValue();
+        boolean[] inPlan = new boolean[stories.size()];
+        int[] free = root.reduce(lowerBound, inPlan);
+        long nodesLeft = nodeLimit;
+        
+        if(free.length > 0)
+        {
+            //Find the optimal value first.  Deciding the stories with the
+            //  worst keys first (and leaving them out first) finds good plans
+            //  quickly, but breaks ties the wrong way.
+            BranchAndBoundKnapsackProblemSolver valueSearch = root.restrict(root.sortByKey(free),
+                                                                            inPlan);
+            int[] plan = valueSearch.search(nodesLeft,
+                                            lowerBound - root.getPlanValue(inPlan) - 1,
+                                            deadline);
+            if(plan == null)
+            {
+                return null;
+            }
+            lowerBound = Math.max(lowerBound,
+                                  root.getPlanValue(inPlan) + valueSearch.getPlanValue(plan));
+            nodesLeft -= valueSearch.nodesVisited;
+            
+            //Knowing the optimal value fixes a lot more stories.
+            Arrays.fill(inPlan, false);
+            free = root.reduce(lowerBound, inPlan);
+        }
+        
+        if(free.length > 0)
+        {
+            //Now find the optimal plan that breaks ties the same way as the
+            //  table.
+            BranchAndBoundKnapsackProblemSolver planSearch = root.restrict(free, inPlan);
+            int[] plan = planSearch.search(nodesLeft,
+                                           lowerBound - root.getPlanValue(inPlan) - 1,
+                                           deadline);
+            if(plan == null)
+            {
+                return null;
+            }
+            
+            for(int index : plan)
+            {
+                inPlan[free[index]] = true;
+            }
+        }
+        
+        for(int k = 0; k < inPlan.length; k++)
+        {
+            if(inPlan[k])
+            {
+                solution.add(stories.get(k));
+            }
+        }
+        
+        return solution;
+    }
+    
+    
+    /**
+     * Sets up a search over some of the stories, with the stories that are
+     * fixed in the plan taking up their share of the capacity.
+     * @param free  the indices of the stories to search over, in the order
+     *          to search them (the last is decided first).
+     * @param inPlan  which stories are fixed in the plan.
+     * @return  the search.
+     */
+    private BranchAndBoundKnapsackProblemSolver restrict(int[] free,
+                                                         boolean[] inPlan)
+    {
+        List<Story> freeStories = new ArrayList<>(free.length);
+        for(int index : free)
+        {
+            freeStories.add(this.stories.get(index));
+        }
+        
+        int capacityLeft = this.capacity;
+        for(int k = 0; k < inPlan.length; k++)
+        {
+            if(inPlan[k])
+            {
+                capacityLeft -= this.stories.get(k).Points;
+            }
+        }
+        
+        return new BranchAndBoundKnapsackProblemSolver(freeStories, capacityLeft);
+    }
+    
+    
+    /**
+     * Sorts story indices by their Lagrangian keys (best first).
+     * @param indices  the indices to sort.
+     * @return  the sorted indices.
+     */
+    private int[] sortByKey(int[] indices)
+    {
+        int[] ranks = new int[indices.length];
+        for(int k = 0; k < indices.length; k++)
+        {
+            ranks[k] = this.byKey.rankOfStory[indices[k]];
+        }
+        Arrays.sort(ranks);
+        
+        int[] sorted = new int[indices.length];
+        for(int k = 0; k < ranks.length; k++)
+        {
+            sorted[k] = this.byKey.storyOfRank[ranks[k]];
+        }
+        
+        return sorted;
+    }
+    
+    
+    /**
+     * Totals the value of the stories in a plan.
+     * @param inPlan  which stories are in the plan.
+     * @return  the value of the plan.
+     */
+    private long getPlanValue(boolean[] inPlan)
+    {
+        long value = 0;
+        for(int k = 0; k < inPlan.length; k++)
+        {
+            if(inPlan[k])
+            {
+                value += KnapsackProblemSolver.getValue(this.stories.get(k));
+            }
+        }
+        
+        return value;
+    }
+    
+    
+    /**
+     * Totals the value of the stories in a plan.
+     * @param plan  the indices of the stories in the plan.
+     * @return  the value of the plan.
+     */
+    private long getPlanValue(int[] plan)
+    {
+        long value = 0;
+        for(int index : plan)
+        {
+            value += KnapsackProblemSolver.getValue(this.stories.get(index));
+        }
+        
+        return value;
+    }
+    
+    
+    /**
+     * Fixes the stories that are in (or out of) every optimal plan.  A story
+     * is out if the bound with it in can't reach the lower bound, and in if
+     * the bound with it out can't.  Since every optimal plan agrees on these
+     * stories, fixing them doesn't change which plan the search finds.
+     * @param lowerBound  the value of a plan we know fits.
+     * @param inPlan  set to true for each story that is fixed in.
+     * @return  the indices of the stories that aren't fixed, in order.
+     */
+    private int[] reduce(long lowerBound,
+                         boolean[] inPlan)
+    {
+        int[] free = new int[this.stories.size()];
+        int numFree = 0;
+        
+        for(int k = 0; k < this.stories.size(); k++)
+        {
+            Story currentStory = this.stories.get(k);
+            
+            this.update(k, -1);
+            long boundWithout = this.getBound(this.capacity);
+            long boundWith = -1;
+            if(currentStory.Points <= this.capacity)
+            {
+                boundWith = KnapsackProblemSolver.getValue(currentStory)
+                            + this.getBound(this.capacity - currentStory.Points);
+            }
+            this.update(k, 1);
+            
+            if(boundWith < lowerBound)
+            {
+                continue;
+            }
+            else if(boundWithout < lowerBound)
+            {
+                inPlan[k] = true;
+            }
+            else
+            {
+                free[numFree++] = k;
+            }
+        }
+        
+        return Arrays.copyOf(free, numFree);
+    }
+    
+    
+    /**
+     * Runs the depth-first search.  At node i, the stories [i, n) have been
+     * decided and the stories [0, i) are undecided (in the Fenwick trees).
+     * @param nodeLimit  the most search nodes to visit before giving up.
+     * @param bestValue  the search only keeps plans better than this.
+     * @param deadline  when to give up (compared with System.nanoTime()), or
+     *          KnapsackProblemSolver.NO_DEADLINE.
+     * @return  the indices of the stories in the optimal plan (last to first),
+     *          or null if we gave up.
+     */
+    private int[] search(long nodeLimit,
+                         long bestValue,
+                         long deadline)
+    {
+        int numStories = this.stories.size();
+        int[] bestPlan = new int[0];
+        
+        int[] plan = new int[numStories];
+        int planSize = 0;
+        int[] stage = new int[numStories + 1];
+        
+        int node = numStories;
+        int capacityLeft = this.capacity;
+        long value = 0;
+        boolean entering = true;
+        
+        while(true)
+        {
+            if(entering)
+            {
+                if(++this.nodesVisited > nodeLimit)
+                {
+                    return null;
+                }
+                
+                //Reading the clock isn't free, so only check it now and then.
+                if((this.nodesVisited & DEADLINE_CHECK_MASK) == 0
+                        && KnapsackProblemSolver.isPastDeadline(deadline))
+                {
+                    return null;
+                }
+                
+                //The first plan under this node leaves out everything left.
+                if(value > bestValue)
+                {
+                    bestValue = value;
+                    bestPlan = Arrays.copyOf(plan, planSize);
+                }
+                
+                if(node > 0 && value + this.getBound(capacityLeft) > bestValue)
+                {
+                    //Decide the next story.  Leave it out first.
+                    this.update(node - 1, -1);
+                    stage[node] = EXPLORING_EXCLUDED;
+                    node--;
+                    continue;
+                }
+                
+                //Nothing down here can beat the best plan.
+                entering = false;
+                node++;
+                continue;
+            }
+            
+            //We have come back up to a node.  If that was the root, we are done.
+            if(node > numStories)
+            {
+                break;
+            }
+            
+            Story story = this.stories.get(node - 1);
+            if(stage[node] == EXPLORING_EXCLUDED && story.Points <= capacityLeft)
+            {
+                //Now try putting it in.
+                stage[node] = EXPLORING_INCLUDED;
+                plan[planSize++] = node - 1;
+                capacityLeft -= story.Points;
+                value += KnapsackProblemSolver.getValue(story);
+                entering = true;
+                node--;
+                continue;
+            }
+            
+            if(stage[node] == EXPLORING_INCLUDED)
+            {
+                planSize--;
+                capacityLeft += story.Points;
+                value -= KnapsackProblemSolver.getValue(story);
+            }
+            
+            //Done with this node.  The story is undecided again.
+            this.update(node - 1, 1);
+            node++;
+        }
+        
+        return bestPlan;
+    }
+    
+    
+    /**
+     * Gets the value of the better of two greedy plans:  take the stories
+     * with the best value per point first, or the ones with the best
+     * Lagrangian keys first, if they fit.
+     * @return  the value of the greedy plan.
+     */
+    private long getGreedyValue()
+    {
+        return Math.max(this.getGreedyValue(this.byDensity.storyOfRank),
+                        this.getGreedyValue(this.byKey.storyOfRank));
+    }
+    
+    
+    /**
+     * Gets the value of the greedy plan that takes the stories in the given
+     * order, if they fit.
+     * @param order  the order to take the stories in.
+     * @return  the value of the greedy plan.
+     */
+    private long getGreedyValue(int[] order)
+    {
+        long value = 0;
+        int capacityLeft = this.capacity;
+        for(int story : order)
+        {
+            Story currentStory = this.stories.get(story);
+            if(currentStory.Points <= capacityLeft)
+            {
+                capacityLeft -= currentStory.Points;
+                value += KnapsackProblemSolver.getValue(currentStory);
+            }
+        }
+        
+        return value;
+    }
+    
+    
+    /**
+     * Gets an upper bound on the value the undecided stories can add.
+     * @param capacityLeft  the capacity that is left.
+     * @return  the smaller of the LP relaxation bound (rounded down, since
+     *          plans have integer values) and the cardinality bound.
+     */
+    private long getBound(int capacityLeft)
+    {
+        //LP relaxation.  The story with the next rank after the run must be
+        //  undecided (otherwise it would have fit), so take the fraction of
+        //  it that fits.
+        int fitting = this.byDensity.findPrefix(this.byDensity.points, capacityLeft);
+        long pointsLeft = capacityLeft - this.byDensity.getPrefixSum(this.byDensity.points,
+                                                                     fitting);
+        long bound = this.byDensity.getPrefixSum(this.byDensity.values, fitting);
+        if(fitting < this.stories.size() && pointsLeft > 0)
+        {
+            Story nextStory = this.stories.get(this.byDensity.storyOfRank[fitting]);
+            bound += pointsLeft * KnapsackProblemSolver.getValue(nextStory)
+                        / nextStory.Points;
+        }
+        
+        //Lagrangian.  At most as many stories fit as the smallest ones that
+        //  fit, and we only take the ones with positive keys.
+        long maxStories = this.byPoints.getPrefixSum(this.byPoints.counts,
+                                                     this.byPoints.findPrefix(this.byPoints.points,
+                                                                              capacityLeft));
+        int ranks = Math.min(this.byKey.findPrefix(this.byKey.counts, maxStories),
+                             this.positiveKeys);
+        long lagrangianBound = this.multiplier * capacityLeft
+                                + this.byKey.getPrefixSum(this.byKey.keys, ranks);
+        
+        return Math.min(bound, lagrangianBound);
+    }
+    
+    
+    /**
+     * Gets each story's Lagrangian key (value - multiplier * points).
+     * @param candidate  the multiplier.
+     * @return  the key of each story.
+     */
+    private long[] getKeys(long candidate)
+    {
+        long[] keys = new long[this.stories.size()];
+        for(int k = 0; k < keys.length; k++)
+        {
+            Story currentStory = this.stories.get(k);
+            keys[k] = KnapsackProblemSolver.getValue(currentStory)
+                        - candidate * currentStory.Points;
+        }
+        
+        return keys;
+    }
+    
+    
+    /**
+     * Gets the Lagrangian bound for the whole problem.
+     * @param candidate  the multiplier.
+     * @param maxStories  the most stories that fit in the sprint.
+     * @return  the bound.
+     */
+    private long getRootBound(long candidate,
+                              long maxStories)
+    {
+        long[] keys = this.getKeys(candidate);
+        Arrays.sort(keys);
+        
+        long bound = candidate * this.capacity;
+        for(int k = keys.length - 1; k >= 0 && keys.length - k <= maxStories && keys[k] > 0; k--)
+        {
+            bound += keys[k];
+        }
+        
+        return bound;
+    }
+    
+    
+    /**
+     * Finds the (whole number) multiplier that makes the Lagrangian bound
+     * for the whole problem tightest.  The bound is convex in the
+     * multiplier, so we binary search on its slope.  The best multiplier is
+     * never more than the best value per point.
+     * @return  the multiplier.
+     */
+    private long getBestMultiplier()
+    {
+        long maxStories = this.byPoints.getPrefixSum(this.byPoints.counts,
+                                                     this.byPoints.findPrefix(this.byPoints.points,
+                                                                              this.capacity));
+        
+        Story densest = this.stories.get(this.byDensity.storyOfRank[0]);
+        long low = 0;
+        long high = KnapsackProblemSolver.getValue(densest) / densest.Points + 1;
+        while(low < high)
+        {
+            long middle = (low + high) >>> 1;
+            if(this.getRootBound(middle, maxStories)
+                    <= this.getRootBound(middle + 1, maxStories))
+            {
+                high = middle;
+            }
+            else
+            {
+                low = middle + 1;
+            }
+        }
+        
+        return low;
+    }
+    
+    
+    /**
+     * Adds a story to, or removes a story from, the undecided stories.
+     * @param story  the index of the story.
+     * @param sign  1 to add the story, -1 to remove it.
+     */
+    private void update(int story,
+                        int sign)
+    {
+        Story currentStory = this.stories.get(story);
+        this.byDensity.update(story, currentStory, sign);
+        this.byPoints.update(story, currentStory, sign);
+        this.byKey.update(story, currentStory, sign);
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Plans the sprint exactly by searching for the optimal plan (see
+ * {@link BranchAndBoundKnapsackProblemSolver}).  The search doesn't depend on
+ * the capacity, but it can take exponential time, so it gives up after
+ * visiting a fixed number of nodes.
+ */
+public class BranchAndBoundSprintSolver implements ISprintSolver
+{
+    /**
+     * The name of the solver.
+     */
+    public static final String NAME = "branch-and-bound";
+    
+    
+    
+    /**
+     * The most search nodes to visit before giving up.
+     */
+    protected final long nodeLimit;
+    
+    
+    
+    /**
+     * Constructor
+     * @param nodeLimit  the most search nodes to visit before giving up.
+     */
+    public BranchAndBoundSprintSolver(long nodeLimit)
+    {
+        this.nodeLimit = nodeLimit;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SolverEstimate estimateCost(SprintProblem problem)
+    {
+        //There are never more nodes than in the full search tree, and each
+        //  one costs O(log(stories)) to bound.
+        int numStories = problem.size();
+        long nodes = this.nodeLimit;
+        if(numStories < Long.SIZE - 2)
+        {
+            nodes = Math.min(nodes, 1L << (numStories + 1));
+        }
+        long depth = Long.SIZE - Long.numberOfLeadingZeros(numStories);
+        
+        //A handful of arrays with an entry per story.
+        return new SolverEstimate(nodes * Math.max(1, depth),
+                                  (long) numStories * Long.SIZE,
+                                  0);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan solve(SprintProblem problem)
+    {
+        List<Story> plan = BranchAndBoundKnapsackProblemSolver.solve(problem.Stories,
+                                                                     problem.Capacity,
+                                                                     this.nodeLimit);
+        if(plan == null)
+        {
+            return null;
+        }
+        
+        return new SprintPlan(plan, 0, 0);
+    }
+}
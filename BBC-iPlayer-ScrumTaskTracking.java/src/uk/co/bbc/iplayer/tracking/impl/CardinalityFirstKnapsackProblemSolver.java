@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Solves the knapsack problem by taking advantage of how we value stories.
+ * 
+ * Each story is worth (MAX_INT - Priority), so a plan with k stories is worth
+ * (k * MAX_INT - the sum of their priorities).  As long as the priorities of
+ * the biggest possible plan add up to less than MAX_INT, one more story is
+ * always worth more than any difference in priorities.  The objective then
+ * becomes "fit as many stories as possible, then minimize the sum of their
+ * priorities".
+ * 
+ * The most stories that can fit (K) comes straight from the smallest point
+ * values, so every optimal plan has exactly K stories.  If every story costs
+ * at least minPoints, a plan of K stories fits in the sprint exactly when
+ * the points each story costs over minPoints add up to no more than
+ * (capacity - K * minPoints).  So, we run the dynamic programming algorithm
+ * over (stories chosen, extra points used) instead of (points used).  When
+ * the point values are close together, that is a much smaller table.  For
+ * example, 100 point stories in a 1000 point sprint need 11 cells per story
+ * instead of 1001.
+ * 
+ * Backtracking uses the same rule as {@link KnapsackProblemSolver} (a story
+ * is only taken if it has to be for the plan to stay optimal), so this
+ * returns exactly the same plan as {@link KnapsackProblemSolver#solve(List,
+ * int)}.  When the priorities are too big for the objective to work this way,
+ * or the table would not be smaller, we hand the problem to
+ * {@link ParallelKnapsackProblemSolver} instead.
+ */
+public class CardinalityFirstKnapsackProblemSolver
+{
+    /**
+     * Marks a cell that can't be reached (no set of stories has that many
+     * stories within that many points).
+     */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    
+    /**
+     * The shift that converts a bit index into a word index.
+     */
+    private static final int WORD_INDEX_SHIFT = 6;
+    
+    
+    
+    /**
+     * Hides the constructor
+     */
+    private CardinalityFirstKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint (optimal being the
+     * set of stories with the highest possible priority that will fit in the
+     * sprint).  This is O(stories.size() * K * extraCapacity) in time and
+     * the table takes that many bits, where K is the most stories that fit in
+     * the sprint and extraCapacity is (sprintCapacity - K * the smallest
+     * point value).
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities)
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity)
+    {
+        List<Story> solution = new ArrayList<>();
+        
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return solution;
+        }
+        
+        //Find the most stories that can fit by taking the smallest first.
+        int[] points = new int[stories.size()];
+        int maxPriority = 0;
+        for(int k = 0; k < points.length; k++)
+        {
+            Story story = stories.get(k);
+            points[k] = story.Points;
+            maxPriority = Math.max(maxPriority, story.Priority);
+        }
+        Arrays.sort(points);
+        
+        int maxStories = 0;
+        long pointsUsed = 0;
+        while(maxStories < points.length
+                && pointsUsed + points[maxStories] <= sprintCapacity)
+        {
+            pointsUsed += points[maxStories];
+            maxStories++;
+        }
+        
+        //Nothing fits.
+        if(maxStories == 0)
+        {
+            return solution;
+        }
+        
+        int minPoints = points[0];
+        int extraCapacity = sprintCapacity - maxStories * minPoints;
+        int extraCapacityBound = extraCapacity + 1;
+        long cellsPerStory = (long) (maxStories + 1) * (long) extraCapacityBound;
+        long numBits = cellsPerStory * (long) stories.size();
+        
+        //Only worth it if maximizing the number of stories is the same as
+        //  maximizing the value, and if the table is actually smaller.
+        if((long) maxStories * (long) maxPriority >= Integer.MAX_VALUE
+                || cellsPerStory >= (long) sprintCapacity + 1
+                || ((numBits + Long.SIZE - 1) >>> WORD_INDEX_SHIFT) > Integer.MAX_VALUE)
+        {
+            return ParallelKnapsackProblemSolver.solve(stories,
+                                                       sprintCapacity);
+        }
+        
+        long[] decisions = new long[(int) ((numBits + Long.SIZE - 1) >>> WORD_INDEX_SHIFT)];
+        CardinalityFirstKnapsackProblemSolver.setUpDecisions(stories,
+                                                             maxStories,
+                                                             minPoints,
+                                                             extraCapacityBound,
+                                                             decisions);
+        
+        //Backtrack through the decisions from the last story to the first
+        //  until we have placed all of the stories in the plan.
+        int storiesLeft = maxStories;
+        int col = extraCapacity;
+        for(int row = stories.size() - 1; row >= 0 && storiesLeft > 0; row--)
+        {
+            long bit = (long) row * cellsPerStory
+                        + (long) storiesLeft * extraCapacityBound
+                        + col;
+            if((decisions[(int) (bit >>> WORD_INDEX_SHIFT)] & (1L << bit)) != 0)
+            {
+                Story storyToAdd = stories.get(row);
+                solution.add(storyToAdd);
+                storiesLeft--;
+                col -= storyToAdd.Points - minPoints;
+            }
+        }
+        
+        //Reverse the order of the list so the highest priority stories come
+        //  first.
+        Collections.reverse(solution);
+        
+        return solution;
+    }
+    
+    
+    /**
+     * Runs the dynamic programming algorithm over (stories chosen, extra
+     * points used), keeping a single layer of the smallest priority sums and
+     * recording, for each story and cell, whether the story was taken.
+     * @param stories  the stories to consider scheduling.
+     * @param maxStories  the most stories that can fit in the sprint.
+     * @param minPoints  the smallest point value of any story.
+     * @param extraCapacityBound  the number of extra points columns (the
+     *          extra capacity + 1).
+     * @param decisions  the bit table to fill in.  Bit
+     *          (row * (maxStories + 1) * extraCapacityBound
+     *           + count * extraCapacityBound + col) is set if stories[row]
+     *          was taken in that cell.  This must be zeroed.
+     */
+    private static void setUpDecisions(List<Story> stories,
+                                       int maxStories,
+                                       int minPoints,
+                                       int extraCapacityBound,
+                                       long[] decisions)
+    {
+        //prioritySums[count * extraCapacityBound + col] holds the smallest
+        //  sum of priorities of exactly count stories using no more than col
+        //  extra points.  Only the empty plan is reachable at the start.
+        int[] prioritySums = new int[(maxStories + 1) * extraCapacityBound];
+        Arrays.fill(prioritySums, extraCapacityBound, prioritySums.length, UNREACHABLE);
+        long cellsPerStory = (long) prioritySums.length;
+        
+        for(int row = 0; row < stories.size(); row++)
+        {
+            Story currentStory = stories.get(row);
+            int extraPoints = currentStory.Points - minPoints;
+            int priority = currentStory.Priority;
+            long rowStart = (long) row * cellsPerStory;
+            
+            //Go from the highest count down so the cells for (count - 1)
+            //  still hold the previous row's values when we read them.
+            for(int count = Math.min(maxStories, row + 1); count > 0; count--)
+            {
+                int cellStart = count * extraCapacityBound;
+                int previousCellStart = cellStart - extraCapacityBound;
+                for(int col = extraCapacityBound - 1; col >= extraPoints; col--)
+                {
+                    int previous = prioritySums[previousCellStart + col - extraPoints];
+                    if(previous != UNREACHABLE
+                            && previous + priority < prioritySums[cellStart + col])
+                    {
+                        prioritySums[cellStart + col] = previous + priority;
+                        
+                        long bit = rowStart + cellStart + col;
+                        decisions[(int) (bit >>> WORD_INDEX_SHIFT)] |= 1L << bit;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import uk.co.bbc.iplayer.tracking.messages.Messages;
+
+/**
+ * The table of decision bits the knapsack problem solvers backtrack through:
+ * one bit per (story, capacity) cell, set if the story was taken at that
+ * capacity.  Each row starts on a new 64-bit word.
+ * 
+ * Small tables live on the heap.  Big ones would mean long GC pauses (or an
+ * OutOfMemoryError), so they live outside the heap in direct buffers, and
+ * tables too big for those spill to a memory-mapped temporary file, which
+ * the operating system pages in and out as needed.
+ * {@link #allocate(int, int)} picks the backend by the size of the table.
+ * Tables must be closed so the temporary file is deleted.
+ */
+public abstract class DecisionTable implements Closeable
+{
+    /**
+     * Where a table's bits are kept.
+     */
+    public enum Backend
+    {
+        /**
+         * A long[] on the heap.
+         */
+        HEAP,
+        
+        /**
+         * Direct byte buffers, outside the heap.
+         */
+        DIRECT,
+        
+        /**
+         * A memory-mapped temporary file.
+         */
+        MAPPED;
+    }
+    
+    
+    /**
+     * Tables of no more than this many bytes (8MB) live on the heap.
+     */
+    public static final long HEAP_TABLE_LIMIT = 1L << 23;
+    
+    /**
+     * Tables of no more than this many bytes (1GB) live in direct buffers.
+     * Bigger ones are memory-mapped.
+     */
+    public static final long DIRECT_TABLE_LIMIT = 1L << 30;
+    
+    /**
+     * The most bits (32MB) a table may take in the solves that have a
+     * cheaper way out when theirs would be bigger:  the FPTAS approximation
+     * coarsens its epsilon, and the anytime and multi-sprint solvers search
+     * or fill the sprints greedily instead.
+     */
+    public static final long BOUNDED_TABLE_BITS = 1L << 28;
+    
+    /**
+     * The shift that converts a column into a word index.
+     */
+    private static final int WORD_INDEX_SHIFT = 6;
+    
+    /**
+     * The shift that converts a word index into the index of the buffer
+     * holding it.  Buffers are indexed by int, so each holds 2^27 words
+     * (1GB).
+     */
+    private static final int CHUNK_INDEX_SHIFT = 27;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * A table in a long[] on the heap.
+     */
+    private static class HeapTable extends DecisionTable
+    {
+        /**
+         * The words of the table.
+         */
+        private final long[] words;
+        
+        
+        /**
+         * Constructor
+         * @param wordsPerRow  the number of words in each row.
+         * @param numWords  the number of words in the table.
+         */
+        HeapTable(int wordsPerRow,
+                  long numWords)
+        {
+            super(wordsPerRow);
+            this.words = new long[(int) numWords];
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setRow(int row,
+                           long[] rowWords)
+        {
+            System.arraycopy(rowWords,
+                             0,
+                             this.words,
+                             row * this.wordsPerRow,
+                             this.wordsPerRow);
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected long getWord(long wordIndex)
+        {
+            return this.words[(int) wordIndex];
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Backend getBackend()
+        {
+            return Backend.HEAP;
+        }
+    }
+    
+    
+    /**
+     * A table in buffers outside the heap, either direct or mapped from a
+     * temporary file.
+     */
+    private static class BufferTable extends DecisionTable
+    {
+        /**
+         * The buffers holding the words of the table, 2^CHUNK_INDEX_SHIFT
+         * words to a buffer.
+         */
+        private final LongBuffer[] chunks;
+        
+        /**
+         * The temporary file the buffers are mapped from, or null if they are
+         * direct.
+         */
+        private final File file;
+        
+        
+        /**
+         * Constructor
+         * @param wordsPerRow  the number of words in each row.
+         * @param chunks  the buffers holding the words of the table.
+         * @param file  the temporary file the buffers are mapped from, or
+         *          null if they are direct.
+         */
+        BufferTable(int wordsPerRow,
+                    LongBuffer[] chunks,
+                    File file)
+        {
+            super(wordsPerRow);
+            this.chunks = chunks;
+            this.file = file;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setRow(int row,
+                           long[] rowWords)
+        {
+            long wordIndex = (long) row * this.wordsPerRow;
+            for(int k = 0; k < this.wordsPerRow; k++, wordIndex++)
+            {
+                //Most rows are all zeros at the low capacities.
+                if(rowWords[k] != 0)
+                {
+                    this.chunks[(int) (wordIndex >>> CHUNK_INDEX_SHIFT)]
+                        .put((int) (wordIndex & ((1L << CHUNK_INDEX_SHIFT) - 1)), rowWords[k]);
+                }
+            }
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected long getWord(long wordIndex)
+        {
+            return this.chunks[(int) (wordIndex >>> CHUNK_INDEX_SHIFT)]
+                    .get((int) (wordIndex & ((1L << CHUNK_INDEX_SHIFT) - 1)));
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Backend getBackend()
+        {
+            return (this.file == null) ? Backend.DIRECT : Backend.MAPPED;
+        }
+        
+        
+        /**
+         * Deletes the temporary file, if there is one.  The mapping itself is
+         * released when the buffers are garbage collected, but the file's
+         * name is gone as soon as this returns.
+         */
+        @Override
+        public void close()
+        {
+            if(this.file != null)
+            {
+                this.file.delete();
+            }
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  DATA MEMBERS
+    //-------------------------------------------------------------------------
+    /**
+     * The number of words in each row.
+     */
+    protected final int wordsPerRow;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  CONSTRUCTOR
+    //-------------------------------------------------------------------------
+    /**
+     * Constructor
+     * @param wordsPerRow  the number of words in each row.
+     */
+    protected DecisionTable(int wordsPerRow)
+    {
+        this.wordsPerRow = wordsPerRow;
+    }
+    
+    
+    /**
+     * Allocates a zeroed table, picking the backend by its size.
+     * @param rows  the number of rows (stories).
+     * @param columns  the number of columns (capacities).
+     * @return  the table.
+     * @throws IllegalStateException  if the temporary file for a mapped table
+     *          could not be created.
+     */
+    public static DecisionTable allocate(int rows,
+                                         int columns)
+    {
+        long numBytes = (long) rows * DecisionTable.getWordsPerRow(columns) * (Long.SIZE / Byte.SIZE);
+        if(numBytes <= HEAP_TABLE_LIMIT)
+        {
+            return DecisionTable.allocate(rows, columns, Backend.HEAP);
+        }
+        
+        if(numBytes <= DIRECT_TABLE_LIMIT)
+        {
+            try
+            {
+                return DecisionTable.allocate(rows, columns, Backend.DIRECT);
+            }
+            catch(OutOfMemoryError e)
+            {
+                //Direct memory is limited separately from the heap.  Spill to
+                //  a file instead.
+            }
+        }
+        
+        return DecisionTable.allocate(rows, columns, Backend.MAPPED);
+    }
+    
+    
+    /**
+     * Allocates a zeroed table with the given backend.
+     * @param rows  the number of rows (stories).
+     * @param columns  the number of columns (capacities).
+     * @param backend  where to keep the bits.
+     * @return  the table.
+     * @throws IllegalArgumentException  if the table is too big for a heap
+     *          table.
+     * @throws IllegalStateException  if the temporary file for a mapped table
+     *          could not be created.
+     */
+    public static DecisionTable allocate(int rows,
+                                         int columns,
+                                         Backend backend)
+    {
+        int wordsPerRow = DecisionTable.getWordsPerRow(columns);
+        long numWords = (long) rows * wordsPerRow;
+        int numChunks = (int) ((numWords + (1L << CHUNK_INDEX_SHIFT) - 1) >>> CHUNK_INDEX_SHIFT);
+        long bytesPerWord = Long.SIZE / Byte.SIZE;
+        
+        switch(backend)
+        {
+            case DIRECT:
+            {
+                LongBuffer[] chunks = new LongBuffer[numChunks];
+                for(int chunk = 0; chunk < numChunks; chunk++)
+                {
+                    long chunkWords = Math.min(1L << CHUNK_INDEX_SHIFT,
+                                               numWords - ((long) chunk << CHUNK_INDEX_SHIFT));
+                    chunks[chunk] = ByteBuffer.allocateDirect((int) (chunkWords * bytesPerWord))
+                                              .order(ByteOrder.nativeOrder())
+                                              .asLongBuffer();
+                }
+                
+                return new BufferTable(wordsPerRow, chunks, null);
+            }
+            
+            case MAPPED:
+            {
+                File file = null;
+                try
+                {
+                    file = File.createTempFile("knapsack", ".table");
+                    
+                    //The mappings stay valid after the channel is closed.
+                    LongBuffer[] chunks = new LongBuffer[numChunks];
+                    try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                        FileChannel channel = randomAccessFile.getChannel())
+                    {
+                        for(int chunk = 0; chunk < numChunks; chunk++)
+                        {
+                            long chunkStart = (long) chunk << CHUNK_INDEX_SHIFT;
+                            long chunkWords = Math.min(1L << CHUNK_INDEX_SHIFT,
+                                                       numWords - chunkStart);
+                            chunks[chunk] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                                        chunkStart * bytesPerWord,
+                                                        chunkWords * bytesPerWord)
+                                                   .order(ByteOrder.nativeOrder())
+                                                   .asLongBuffer();
+                        }
+                    }
+                    
+                    return new BufferTable(wordsPerRow, chunks, file);
+                }
+                catch(IOException e)
+                {
+                    if(file != null)
+                    {
+                        file.delete();
+                    }
+                    
+                    throw new IllegalStateException(
+                            Messages.getString("KnapsackTableFileFailed"), e);
+                }
+            }
+            
+            case HEAP:
+            default:
+                if(numWords > Integer.MAX_VALUE)
+                {
+                    throw new IllegalArgumentException(
+                            Messages.getString("KnapsackCapacityTooBig", columns - 1));
+                }
+                
+                return new HeapTable(wordsPerRow, numWords);
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  TABLE ACCESS
+    //-------------------------------------------------------------------------
+    /**
+     * Gets the number of words in each row.
+     * @param columns  the number of columns.
+     * @return  the number of words.
+     */
+    public static int getWordsPerRow(int columns)
+    {
+        return (int) (((long) columns + Long.SIZE - 1) >>> WORD_INDEX_SHIFT);
+    }
+    
+    
+    /**
+     * Gets the number of bytes of heap {@link #allocate(int, int)} would take
+     * for a table.  Tables kept outside the heap take none.
+     * @param rows  the number of rows (stories).
+     * @param columns  the number of columns (capacities).
+     * @return  the number of bytes.
+     */
+    public static long getHeapBytes(long rows,
+                                    long columns)
+    {
+        long numBytes = rows
+                * ((columns + Long.SIZE - 1) >>> WORD_INDEX_SHIFT)
+                * (Long.SIZE / Byte.SIZE);
+        return (numBytes <= HEAP_TABLE_LIMIT) ? numBytes : 0;
+    }
+    
+    
+    /**
+     * Sets the bits of one row.  Each row may only be set once.
+     * @param row  the row to set.
+     * @param rowWords  the bits of the row, with column j in bit (j % 64) of
+     *          word (j / 64).
+     */
+    public abstract void setRow(int row,
+                                long[] rowWords);
+    
+    
+    /**
+     * Checks whether a cell's bit is set.
+     * @param row  the row of the cell.
+     * @param column  the column of the cell.
+     * @return  true if the bit is set, false otherwise.
+     */
+    public boolean isSet(int row,
+                         int column)
+    {
+        long word = this.getWord((long) row * this.wordsPerRow + (column >>> WORD_INDEX_SHIFT));
+        return (word & (1L << column)) != 0;
+    }
+    
+    
+    /**
+     * Gets where the table's bits are kept.
+     * @return  the backend.
+     */
+    public abstract Backend getBackend();
+    
+    
+    /**
+     * Releases anything the table holds outside the heap.  This does nothing
+     * for heap tables.
+     */
+    @Override
+    public void close()
+    {
+    }
+    
+    
+    /**
+     * Gets one word of the table.
+     * @param wordIndex  the index of the word (row * wordsPerRow + the word
+     *          within the row).
+     * @return  the word.
+     */
+    protected abstract long getWord(long wordIndex);
+}
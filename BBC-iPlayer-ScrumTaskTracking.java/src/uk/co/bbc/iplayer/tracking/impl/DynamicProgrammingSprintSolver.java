@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Plans the sprint exactly with the {0,1}-knapsack dynamic programming
+ * algorithm (see {@link ParallelKnapsackProblemSolver} and
+ * {@link CardinalityFirstKnapsackProblemSolver}).  The table takes one bit per
+ * cell, so this only offers to plan sprints whose table fits in the problem's
+ * operation budget.
+ */
+public class DynamicProgrammingSprintSolver implements ISprintSolver
+{
+    /**
+     * The name of the solver.
+     */
+    public static final String NAME = "dynamic-programming";
+    
+    
+    
+    /**
+     * The dynamic programming algorithm to use.
+     */
+    protected Backlog.SolverMode solverMode;
+    
+    
+    
+    /**
+     * Constructor
+     * @param solverMode  the dynamic programming algorithm to use.  This must
+     *          not be null.
+     */
+    public DynamicProgrammingSprintSolver(Backlog.SolverMode solverMode)
+    {
+        this.solverMode = solverMode;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SolverEstimate estimateCost(SprintProblem problem)
+    {
+        long cells = this.getTableCells(problem);
+        if(cells > problem.OperationBudget)
+        {
+            return null;
+        }
+        
+        //Two rows of values, plus the table if it is small enough to be kept
+        //  on the heap.
+        long columns = Math.min(problem.Capacity, problem.TotalPoints) + 1;
+        long tableBytes = (cells + Byte.SIZE - 1) / Byte.SIZE;
+        long memoryBytes = 2 * columns * (Long.SIZE / Byte.SIZE);
+        if(tableBytes <= DecisionTable.HEAP_TABLE_LIMIT)
+        {
+            memoryBytes += tableBytes;
+        }
+        
+        return new SolverEstimate(cells, memoryBytes, 0);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan solve(SprintProblem problem)
+    {
+        List<Story> plan;
+        switch(this.solverMode)
+        {
+            case CARDINALITY_FIRST:
+                plan = CardinalityFirstKnapsackProblemSolver.solve(problem.Stories,
+                                                                   problem.Capacity);
+                break;
+            
+            case DYNAMIC_PROGRAMMING:
+            default:
+                plan = ParallelKnapsackProblemSolver.solve(problem.Stories,
+                                                           problem.Capacity);
+                break;
+        }
+        
+        return new SprintPlan(plan, 0, 0);
+    }
+    
+    
+    /**
+     * Gets the dynamic programming algorithm used.
+     * @return  the solver mode.
+     */
+    public Backlog.SolverMode getSolverMode()
+    {
+        return this.solverMode;
+    }
+    
+    
+    /**
+     * Sets the dynamic programming algorithm to use.
+     * @param solverMode  the solver mode.  This must not be null.
+     */
+    public void setSolverMode(Backlog.SolverMode solverMode)
+    {
+        this.solverMode = solverMode;
+    }
+    
+    
+    /**
+     * Gets the number of cells in the table the algorithm fills in.
+     * Columns past the total number of points are never computed, and the
+     * cardinality-first table only has columns for the capacity left over
+     * once the most stories that fit are taken (see
+     * {@link CardinalityFirstKnapsackProblemSolver#solve(List, int)}).
+     * @param problem  the sprint to plan.
+     * @return  the number of cells.
+     */
+    protected long getTableCells(SprintProblem problem)
+    {
+        long cellsPerStory = Math.min(problem.Capacity, problem.TotalPoints) + 1;
+        if(this.solverMode == Backlog.SolverMode.CARDINALITY_FIRST
+                && problem.MaxStories > 0
+                && (long) problem.MaxStories * (long) problem.MaxPriority < Integer.MAX_VALUE)
+        {
+            long extraCapacity = (long) problem.Capacity
+                                    - (long) problem.MaxStories * (long) problem.MinPoints;
+            cellsPerStory = Math.min(cellsPerStory,
+                                     (long) (problem.MaxStories + 1) * (extraCapacity + 1));
+        }
+        
+        return problem.size() * cellsPerStory;
+    }
+}
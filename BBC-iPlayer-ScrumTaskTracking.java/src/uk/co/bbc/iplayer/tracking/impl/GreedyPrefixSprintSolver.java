@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+
+/**
+ * Takes the highest priority stories that fit until the rest of the backlog
+ * is small enough to plan exactly, then plans the rest with an exact solver.
+ * If there is a solver for small backlogs, we also stop once there are few
+ * enough stories left for it, and plan the rest with whichever is cheaper.
+ * There is no guarantee on how good the plan is, but it can always be found,
+ * so this is the solver of last resort.
+ */
+public class GreedyPrefixSprintSolver implements ISprintSolver
+{
+    /**
+     * The name of the solver.
+     */
+    public static final String NAME = "greedy-prefix";
+    
+    
+    
+    /**
+     * The solver used to plan the rest of the backlog exactly.
+     */
+    protected final ISprintSolver exactSolver;
+    
+    /**
+     * The solver used to plan the rest of the backlog exactly once there are
+     * few enough stories left for it, or null if there isn't one.
+     */
+    protected final MeetInTheMiddleSprintSolver smallBacklogSolver;
+    
+    
+    
+    /**
+     * Constructor
+     * @param exactSolver  the solver used to plan the rest of the backlog
+     *          exactly once it fits in the operation budget.  It must not give
+     *          up.
+     */
+    public GreedyPrefixSprintSolver(ISprintSolver exactSolver)
+    {
+        this(exactSolver, null);
+    }
+    
+    
+    /**
+     * Constructor
+     * @param exactSolver  the solver used to plan the rest of the backlog
+     *          exactly once it fits in the operation budget.  It must not give
+     *          up.
+     * @param smallBacklogSolver  the solver used to plan the rest of the
+     *          backlog exactly once there are few enough stories left for it
+     *          (whatever the capacity), or null to only use exactSolver.
+     */
+    public GreedyPrefixSprintSolver(ISprintSolver exactSolver,
+                                    MeetInTheMiddleSprintSolver smallBacklogSolver)
+    {
+        this.exactSolver = exactSolver;
+        this.smallBacklogSolver = smallBacklogSolver;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SolverEstimate estimateCost(SprintProblem problem)
+    {
+        //The exact part of the plan takes up to the whole budget, with a bit
+        //  per cell, and two rows of values as wide as the capacity left.
+        //  Its table has at least one row, so the budget bounds that too.
+        long columns = Math.min(problem.OperationBudget,
+                                Math.min(problem.Capacity, problem.TotalPoints)) + 1;
+        return new SolverEstimate(problem.OperationBudget + problem.size(),
+                                  problem.OperationBudget / Byte.SIZE
+                                      + 2 * columns * (Long.SIZE / Byte.SIZE),
+                                  1);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan solve(SprintProblem problem)
+    {
+        StoryBatch orderedStories = StoryBatch.of(problem.Stories);
+        int pointsRemainingInSprint = problem.Capacity;
+        List<Story> sprintPlan = new ArrayList<>();
+        
+        //Approximate until we get to a small enough value that we can use
+        //  the optimal solution.
+        //Delete is expensive, so we are going to drop the element from the list
+        //      by passing a sublist into the solver.  The story was either
+        //      added or it is too big.  Don't bother the exact solver with it.
+        int position = 0;
+        for(position = 0; position < orderedStories.size(); position++)
+        {
+            //If we are small enough that we can do the rest using the
+            //      optimal solution finder, then do that.
+            long tableSize = (long)(orderedStories.size() - position) * (long)pointsRemainingInSprint;
+            if(tableSize <= problem.OperationBudget
+                    || (this.smallBacklogSolver != null
+                            && orderedStories.size() - position <= this.smallBacklogSolver.getStoryLimit()))
+            {
+                break;
+            }
+            
+            int points = orderedStories.getPoints(position);
+            
+            if(points <= (pointsRemainingInSprint))
+            {
+                sprintPlan.add(orderedStories.get(position));
+                pointsRemainingInSprint -= points;
+            }
+        }
+        
+        //Insert the stories from the approximation into the optimal solution
+        //      set so they are ordered by priority (then age).  Since we took
+        //      the stories that will fit in order from the list of stories,
+        //      we know that the contents of orderedStories should come first.
+        SprintProblem rest = new SprintProblem(orderedStories.subList(position, orderedStories.size()),
+                                               pointsRemainingInSprint,
+                                               problem.OperationBudget);
+        sprintPlan.addAll(this.getRestSolver(rest).solve(rest).Stories);
+        
+        //If we didn't take any stories greedily, the plan is optimal.
+        //  Otherwise, there is no guarantee.
+        if(position == 0)
+        {
+            return new SprintPlan(sprintPlan, 0, 0);
+        }
+        
+        return new SprintPlan(sprintPlan,
+                              1,
+                              KnapsackProblemSolver.getUpperBound(orderedStories,
+                                                                  problem.Capacity));
+    }
+    
+    
+    /**
+     * Picks the solver to plan the rest of the backlog with:  the small
+     * backlog solver if it offers to and is cheaper than the exact solver
+     * (or the exact solver doesn't offer to), otherwise the exact solver.
+     * @param rest  the rest of the backlog.
+     * @return  the solver to plan it with.
+     */
+    private ISprintSolver getRestSolver(SprintProblem rest)
+    {
+        if(this.smallBacklogSolver == null)
+        {
+            return this.exactSolver;
+        }
+        
+        SolverEstimate smallEstimate = this.smallBacklogSolver.estimateCost(rest);
+        if(smallEstimate == null)
+        {
+            return this.exactSolver;
+        }
+        
+        SolverEstimate exactEstimate = this.exactSolver.estimateCost(rest);
+        if(exactEstimate == null || smallEstimate.Operations < exactEstimate.Operations)
+        {
+            return this.smallBacklogSolver;
+        }
+        
+        return this.exactSolver;
+    }
+}
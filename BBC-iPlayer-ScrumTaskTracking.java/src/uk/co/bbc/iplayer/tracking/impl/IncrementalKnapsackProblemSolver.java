@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.messages.Messages;
+
+/**
+ * Keeps the dynamic programming state for one sprint capacity so the plan can
+ * be updated as stories are added and removed, rather than rebuilt from
+ * scratch.
+ * 
+ * Like {@link BitPackedKnapsackProblemSolver}, we keep one bit per table cell
+ * recording whether the story in that row was taken, which is all the
+ * backtrack needs.  We also keep a checkpoint of the table's values every
+ * CHECKPOINT_INTERVAL rows.  The stories are kept in the same order as the
+ * database returns them (priority, then age), so adding or removing a story
+ * only changes the rows from that story on.  Those rows are recomputed from
+ * the checkpoint before them the next time we solve, so adding a story at
+ * the end of the backlog (the usual case) costs one row, O(sprintCapacity),
+ * and removing one costs O(sprintCapacity) per row after it.
+ * 
+ * The plans are exactly the same as {@link KnapsackProblemSolver#solve(List, int)}
+ * returns for the same stories in the same order.
+ */
+public class IncrementalKnapsackProblemSolver
+{
+    /**
+     * The number of rows between checkpoints of the table's values.  Each
+     * checkpoint takes as much memory as CHECKPOINT_INTERVAL rows of bits.
+     */
+    protected static final int CHECKPOINT_INTERVAL = Long.SIZE;
+    
+    /**
+     * The shift that converts a bit index into a word index.
+     */
+    private static final int WORD_INDEX_SHIFT = 6;
+    
+    
+    
+    /**
+     * The capacity of the sprint.
+     */
+    private final int capacity;
+    
+    /**
+     * The stories, in the order the database returns them.
+     */
+    private final List<Story> stories = new ArrayList<>();
+    
+    /**
+     * The decision bits for each story.  Bit j is set if the story was taken
+     * at capacity j.
+     */
+    private final List<long[]> decisions = new ArrayList<>();
+    
+    /**
+     * The table's values after every CHECKPOINT_INTERVAL stories.
+     * Checkpoint k holds the values after the first
+     * (k * CHECKPOINT_INTERVAL) stories.
+     */
+    private final List<long[]> checkpoints = new ArrayList<>();
+    
+    /**
+     * The number of rows (from the first) whose decisions are up to date.
+     */
+    private int validRows = 0;
+    
+    
+    
+    /**
+     * Constructor
+     * @param sprintCapacity  the capacity of the sprint.  This must be
+     *          non-negative and less than Integer.MAX_VALUE.
+     * @throws IllegalArgumentException  if the capacity is out of range.
+     */
+    public IncrementalKnapsackProblemSolver(int sprintCapacity)
+    {
+        if(sprintCapacity < 0)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("KnapsackCapacityNegative", sprintCapacity));
+        }
+        
+        if(sprintCapacity == Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("KnapsackCapacityTooBig", sprintCapacity));
+        }
+        
+        this.capacity = sprintCapacity;
+        this.checkpoints.add(new long[sprintCapacity + 1]);
+    }
+    
+    
+    /**
+     * Constructor
+     * @param stories  the stories to start with, in the order the database
+     *          returns them (priority, then age).
+     * @param sprintCapacity  the capacity of the sprint.  This must be
+     *          non-negative and less than Integer.MAX_VALUE.
+     * @throws IllegalArgumentException  if the capacity is out of range.
+     */
+    public IncrementalKnapsackProblemSolver(List<Story> stories,
+                                            int sprintCapacity)
+    {
+        this(sprintCapacity);
+        
+        for(Story story : stories)
+        {
+            this.stories.add(new Story(story));
+            this.decisions.add(null);
+        }
+    }
+    
+    
+    /**
+     * Gets the capacity of the sprint.
+     * @return  the capacity.
+     */
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+    
+    
+    /**
+     * Gets the number of stories.
+     * @return  the number of stories.
+     */
+    public int size()
+    {
+        return this.stories.size();
+    }
+    
+    
+    /**
+     * Adds a story after the stories with the same or a higher priority,
+     * which is where the database puts a new story.
+     * @param story  the story to add.
+     */
+    public void add(Story story)
+    {
+        int position = this.stories.size();
+        while(position > 0 && this.stories.get(position - 1).Priority > story.Priority)
+        {
+            position--;
+        }
+        
+        this.stories.add(position, new Story(story));
+        this.decisions.add(position, null);
+        this.invalidate(position);
+    }
+    
+    
+    /**
+     * Removes a story.
+     * @param id  the id of the story to remove.
+     * @return  true if the story was removed, false if there was no story
+     *          with that id.
+     */
+    public boolean remove(String id)
+    {
+        for(int position = 0; position < this.stories.size(); position++)
+        {
+            if(this.stories.get(position).Id.equals(id))
+            {
+                this.stories.remove(position);
+                this.decisions.remove(position);
+                this.invalidate(position);
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in the sprint, recomputing
+     * only the rows that changed since the last time.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities), in priority order.
+     */
+    public List<Story> solve()
+    {
+        this.update();
+        
+        //Backtrack through the decisions from the last story to the first.
+        List<Story> solution = new ArrayList<>();
+        int col = this.capacity;
+        for(int row = this.stories.size() - 1; row >= 0; row--)
+        {
+            long[] rowDecisions = this.decisions.get(row);
+            if((rowDecisions[col >>> WORD_INDEX_SHIFT] & (1L << col)) != 0)
+            {
+                Story storyToAdd = this.stories.get(row);
+                solution.add(new Story(storyToAdd));
+                col -= storyToAdd.Points;
+            }
+        }
+        
+        //Reverse the order of the list so the highest priority stories come
+        //  first.
+        Collections.reverse(solution);
+        
+        return solution;
+    }
+    
+    
+    /**
+     * Marks the rows from a position on as out of date, along with the
+     * checkpoints after it.
+     * @param position  the first row that changed.
+     */
+    private void invalidate(int position)
+    {
+        this.validRows = Math.min(this.validRows, position);
+        
+        int validCheckpoints = this.validRows / CHECKPOINT_INTERVAL + 1;
+        while(this.checkpoints.size() > validCheckpoints)
+        {
+            this.checkpoints.remove(this.checkpoints.size() - 1);
+        }
+    }
+    
+    
+    /**
+     * Recomputes the rows that are out of date, starting from the last
+     * checkpoint before them.
+     */
+    private void update()
+    {
+        int capacityBound = this.capacity + 1;
+        int row = (this.checkpoints.size() - 1) * CHECKPOINT_INTERVAL;
+        long[] values = this.checkpoints.get(this.checkpoints.size() - 1).clone();
+        int wordsPerRow = DecisionTable.getWordsPerRow(capacityBound);
+        long[] scratchDecisions = new long[wordsPerRow];
+        
+        for(; row < this.stories.size(); row++)
+        {
+            Story currentStory = this.stories.get(row);
+            
+            //The rows before validRows only need their values; their
+            //  decisions haven't changed.
+            long[] rowDecisions = scratchDecisions;
+            if(row >= this.validRows)
+            {
+                rowDecisions = new long[wordsPerRow];
+                this.decisions.set(row, rowDecisions);
+            }
+            
+            BitPackedKnapsackProblemSolver.computeRow(values,
+                                                      rowDecisions,
+                                                      currentStory.Points,
+                                                      KnapsackProblemSolver.getValue(currentStory));
+            
+            if((row + 1) % CHECKPOINT_INTERVAL == 0)
+            {
+                this.checkpoints.add(values.clone());
+            }
+        }
+        
+        this.validRows = this.stories.size();
+    }
+}
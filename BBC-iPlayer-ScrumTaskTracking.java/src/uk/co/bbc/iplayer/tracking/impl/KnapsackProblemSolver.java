@@ -10,9 +10,11 @@ package uk.co.bbc.iplayer.tracking.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
 
 /**
  * Solves the knapsack problem using a simplistic dynamic programming algorithm.  
@@ -24,12 +26,19 @@ import uk.co.bbc.iplayer.tracking.Story;
  * Java 2D arrays are just 1D arrays of pointers to another set of arrays, so we
  * do not get any benefit from using lists instead of arrays. 
  * 
- * This uses a lot of memory and a lot of cycles.  There may be more 
- * memory-efficient versions, but I'm unsure if they will allow recovery, so
- * for now, I'm using the well-known solution.
+ * This uses a lot of memory and a lot of cycles.  See 
+ * {@link LinearSpaceKnapsackProblemSolver} for a version that finds the same
+ * solution while only keeping a handful of rows in memory.
  */
 public class KnapsackProblemSolver
 {
+    /**
+     * The deadline for solvers that take one, meaning they have no deadline.
+     */
+    public static final long NO_DEADLINE = Long.MIN_VALUE;
+    
+    
+    
     /**
      * Hides the constructor
      */
@@ -120,26 +129,173 @@ public class KnapsackProblemSolver
             //The rows represent stories, but it thinks stories are in the 
             //  range [1, stories.size()].  This is off by one, so we adjust
             //  the story retrieval down 1 to be in the correct range.
-            Story currentStory = stories.get(i-1);
-            int weight = currentStory.Points;
-            long value = Integer.MAX_VALUE - currentStory.Priority;
-            
-            //j iterates over the columns
-            for(int j = 0; j < capacityBound; j++)
+            KnapsackProblemSolver.computeRow(table[i - 1], 
+                                             table[i], 
+                                             stories.get(i - 1), 
+                                             capacityBound);
+        }
+        
+        return table;
+    }
+    
+    
+    /**
+     * Computes one row of the dynamic programming table from the row before 
+     * it.  Only the previous row is ever read, which is what allows the more 
+     * memory-efficient solvers to keep a couple of rows instead of the whole 
+     * table.
+     * @param previousRow  the row for the stories before the current story.
+     * @param currentRow  the row to fill in.  This must not be previousRow.
+     * @param currentStory  the story that this row considers adding.
+     * @param capacityBound  the number of columns to fill in (the capacity 
+     *          + 1).
+     * @see KnapsackRowKernel#computeRow(long[], long[], int, long, int, int)
+     */
+    protected static void computeRow(long[] previousRow,
+                                     long[] currentRow,
+                                     Story currentStory,
+                                     int capacityBound)
+    {
+        KnapsackRowKernel.computeRow(previousRow, 
+                                     currentRow, 
+                                     currentStory.Points, 
+                                     KnapsackProblemSolver.getValue(currentStory), 
+                                     0, 
+                                     capacityBound);
+    }
+    
+    
+    /**
+     * Gets the value of the story to the customer as the knapsack problem sees
+     * it.  Lower priority numbers are more valuable, so we subtract the 
+     * priority from MAX_INT (see {@link #setUpTable(List, int)}).
+     * @param story  the story to value.
+     * @return  the value of the story.
+     */
+    protected static long getValue(Story story)
+    {
+        return KnapsackProblemSolver.getValue(story.Priority);
+    }
+    
+    
+    /**
+     * Gets the value of a story with the given priority (see
+     * {@link #getValue(Story)}).
+     * @param priority  the priority of the story.
+     * @return  the value of the story.
+     */
+    protected static long getValue(int priority)
+    {
+        return Integer.MAX_VALUE - priority;
+    }
+    
+    
+    /**
+     * Gets the total number of points of all of the stories.  Capacities past
+     * this all have the same solution (everything fits).
+     * @param stories  the stories to add up.
+     * @return  the sum of the stories' points.
+     */
+    protected static long getTotalPoints(List<Story> stories)
+    {
+        //Don't build a story for each entry in a batch.
+        if(stories instanceof StoryBatch)
+        {
+            return ((StoryBatch) stories).getTotalPoints();
+        }
+        
+        long totalPoints = 0;
+        for(Story story : stories)
+        {
+            totalPoints += story.Points;
+        }
+        
+        return totalPoints;
+    }
+    
+    
+    /**
+     * Gets the total value of the stories (see {@link #getValue(Story)}).
+     * @param stories  the stories to add up.
+     * @return  the sum of the stories' values.
+     */
+    protected static long getTotalValue(List<Story> stories)
+    {
+        long totalValue = 0;
+        for(Story story : stories)
+        {
+            totalValue += KnapsackProblemSolver.getValue(story);
+        }
+        
+        return totalValue;
+    }
+    
+    
+    /**
+     * Gets an upper bound on the value of the optimal solution from the LP
+     * relaxation of the problem:  fill the sprint with the stories with the
+     * best value per point, then take the fraction of the next story that
+     * fits.
+     * @param stories  the stories to consider.
+     * @param sprintCapacity  the capacity of the sprint.
+     * @return  the bound (rounded down, since solutions have integer values).
+     */
+    protected static long getUpperBound(List<Story> stories,
+                                        long sprintCapacity)
+    {
+        long bound = 0;
+        long capacityLeft = sprintCapacity;
+        for(Story story : KnapsackProblemSolver.sortByDensity(stories))
+        {
+            if(story.Points > capacityLeft)
             {
-                if(weight > j)
-                {
-                    table[i][j] = table[i-1][j];
-                }
-                else
-                {
-                    table[i][j] = Math.max(table[i - 1][j], 
-                                           table[i - 1][j - weight] + value);
-                }
+                bound += capacityLeft * KnapsackProblemSolver.getValue(story)
+                            / story.Points;
+                break;
             }
+            
+            bound += KnapsackProblemSolver.getValue(story);
+            capacityLeft -= story.Points;
         }
         
-        return table;
+        return bound;
+    }
+    
+    
+    /**
+     * Checks whether a deadline has passed.
+     * @param deadline  the deadline (compared with System.nanoTime()), or
+     *          NO_DEADLINE.
+     * @return  true if the deadline has passed, false otherwise.
+     */
+    protected static boolean isPastDeadline(long deadline)
+    {
+        //Compare the difference so this still works if nanoTime() wraps.
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+    
+    
+    /**
+     * Sorts the stories by value per point (best first).
+     * @param stories  the stories to sort.  This is not modified.
+     * @return  the sorted stories.
+     */
+    protected static List<Story> sortByDensity(List<Story> stories)
+    {
+        List<Story> byDensity = new ArrayList<>(stories);
+        Collections.sort(byDensity, new Comparator<Story>()
+        {
+            @Override
+            public int compare(Story thisStory, Story thatStory)
+            {
+                //Compare value / points without dividing.  Both sides are
+                //  less than 2^62, so this can't overflow.
+                return Long.compare(KnapsackProblemSolver.getValue(thatStory) * thisStory.Points,
+                                    KnapsackProblemSolver.getValue(thisStory) * thatStory.Points);
+            }
+        });
+        
+        return byDensity;
     }
     
     
@@ -186,7 +342,7 @@ public class KnapsackProblemSolver
                 optimalStorySet.add(storyToAdd);
                 
                 int weight = storyToAdd.Points;
-                long value = Integer.MAX_VALUE - storyToAdd.Priority;
+                long value = KnapsackProblemSolver.getValue(storyToAdd);
                 
                 //Now, move one row down and num columns equal to the weight left.
                 row--;
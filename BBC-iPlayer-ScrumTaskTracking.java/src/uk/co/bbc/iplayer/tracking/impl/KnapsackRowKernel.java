@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+/**
+ * The inner loop of the knapsack problem's dynamic programming algorithm,
+ * written so the JIT compiler can vectorize it.
+ * 
+ * The textbook loop checks whether the story fits (weight > j) for every
+ * column.  That branch depends on the data, which stops the JIT from turning
+ * the loop into SIMD instructions.  Instead, we split each row at the story's
+ * weight:  the columns before it can't fit the story so they are a straight
+ * copy of the previous row, and every column after it is a branch-free max.
+ * Both loops run over flat long[] rows with unit stride.
+ * 
+ * Recording which cells took the story is done in a separate pass that turns
+ * the comparison into arithmetic (the sign bit of previous - current) rather
+ * than a branch.
+ */
+public class KnapsackRowKernel
+{
+    /**
+     * The shift that converts a bit index into a word index.
+     */
+    private static final int WORD_INDEX_SHIFT = 6;
+    
+    /**
+     * The shift that moves the sign bit of a long down to bit 0.
+     */
+    private static final int SIGN_BIT_SHIFT = Long.SIZE - 1;
+    
+    
+    
+    /**
+     * Hides the constructor
+     */
+    private KnapsackRowKernel()
+    {
+    }
+    
+    
+    /**
+     * Computes the columns [fromColumn, toColumn) of one row of the dynamic
+     * programming table from the row before it.
+     * @param previousRow  the row for the stories before the current story.
+     * @param currentRow  the row to fill in.  This must not be previousRow.
+     * @param weight  the current story's point value.  This must be positive.
+     * @param value  the current story's value.
+     * @param fromColumn  the first column to compute (inclusive).
+     * @param toColumn  the last column to compute (exclusive).
+     */
+    public static void computeRow(long[] previousRow,
+                                  long[] currentRow,
+                                  int weight,
+                                  long value,
+                                  int fromColumn,
+                                  int toColumn)
+    {
+        //The story doesn't fit in these columns, so they are inherited.
+        int split = Math.max(fromColumn, Math.min(weight, toColumn));
+        System.arraycopy(previousRow,
+                         fromColumn,
+                         currentRow,
+                         fromColumn,
+                         split - fromColumn);
+        
+        //The story fits in the rest of the columns.
+        for(int j = split; j < toColumn; j++)
+        {
+            currentRow[j] = Math.max(previousRow[j],
+                                     previousRow[j - weight] + value);
+        }
+    }
+    
+    
+    /**
+     * Records the columns [fromColumn, toColumn) where the current story was
+     * taken (the current row's value differs from the previous row's) in a
+     * bit table.  Rows only ever grow, so the difference is negative exactly
+     * when the story was taken.
+     * @param previousRow  the row for the stories before the current story.
+     * @param currentRow  the row for the current story.
+     * @param decisions  the bit table to record the decisions in.  The bits
+     *          for the columns must be zero beforehand.
+     * @param rowStartBit  the index of the bit for column 0 of this row.
+     * @param fromColumn  the first column to record (inclusive).
+     * @param toColumn  the last column to record (exclusive).
+     */
+    public static void recordDecisions(long[] previousRow,
+                                       long[] currentRow,
+                                       long[] decisions,
+                                       long rowStartBit,
+                                       int fromColumn,
+                                       int toColumn)
+    {
+        for(int j = fromColumn; j < toColumn; j++)
+        {
+            long bit = rowStartBit + j;
+            long taken = (previousRow[j] - currentRow[j]) >>> SIGN_BIT_SHIFT;
+            decisions[(int) (bit >>> WORD_INDEX_SHIFT)] |= taken << bit;
+        }
+    }
+}
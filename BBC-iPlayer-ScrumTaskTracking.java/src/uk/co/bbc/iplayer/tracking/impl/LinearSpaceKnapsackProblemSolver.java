@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Solves the knapsack problem with the same dynamic programming algorithm as
+ * {@link KnapsackProblemSolver}, but without keeping the whole table in memory.
+ * 
+ * The full table is only needed so we can backtrack through it.  Instead, we
+ * divide the stories in half (Hirschberg-style) and compute the row at the
+ * split point using two rolling rows.  The upper half is then solved starting
+ * from that row, which tells us where the backtrack crosses the split point,
+ * and the lower half is solved from there.  Once a sub-problem is small
+ * enough, we build its (small) table and backtrack through it directly.
+ * 
+ * Because the backtrack visits the same cells in the same order as the one in
+ * {@link KnapsackProblemSolver#getOptimalSolution(long[][], List)}, ties are
+ * broken in the same way and we return exactly the same plan.  We hold one
+ * row per level of division, so this takes
+ * O(sprintCapacity * log(stories.size())) space and
+ * O(stories.size() * sprintCapacity * log(stories.size())) time.
+ */
+public class LinearSpaceKnapsackProblemSolver
+{
+    /**
+     * Once a sub-problem's table has no more than this many cells, we stop
+     * dividing it and backtrack through its full table.  This keeps the
+     * recursion shallow without giving up the memory savings.
+     */
+    protected static final int FULL_TABLE_CELL_LIMIT = 1 << 20;
+    
+    
+    /**
+     * Hides the constructor
+     */
+    private LinearSpaceKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint (optimal being the
+     * set of stories with the highest possible priority that will fit in the
+     * sprint).  The result is identical to
+     * {@link KnapsackProblemSolver#solve(List, int)}, but this only needs
+     * O(sprintCapacity * log(stories.size())) space.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities)
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity)
+    {
+        List<Story> solution = new ArrayList<>();
+        
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return solution;
+        }
+        
+        //Row 0 of the table is all zeros.
+        long[] firstRow = new long[sprintCapacity + 1];
+        LinearSpaceKnapsackProblemSolver.backtrack(stories,
+                                                   0,
+                                                   stories.size(),
+                                                   firstRow,
+                                                   sprintCapacity,
+                                                   solution);
+        
+        //We backtrack from the last story to the first, so reverse the list so
+        //  the highest priority stories come first.
+        Collections.reverse(solution);
+        
+        return solution;
+    }
+    
+    
+    /**
+     * Backtracks through the (virtual) table rows for stories [low, high),
+     * starting at the given column of row high.  Stories that are part of
+     * the solution are added to the solution list in the order they are
+     * found (highest row first).
+     * @param stories  the full set of stories being considered.
+     * @param low  the first story in this sub-problem (inclusive).
+     * @param high  the last story in this sub-problem (exclusive).
+     * @param baseRow  the table row for the stories before low.  Only the
+     *          entries [0, column] are used.
+     * @param column  the column the backtrack is at when it reaches row high.
+     * @param solution  the list to add the stories in the solution to.
+     * @return  the column the backtrack is at when it reaches row low.
+     */
+    private static int backtrack(List<Story> stories,
+                                 int low,
+                                 int high,
+                                 long[] baseRow,
+                                 int column,
+                                 List<Story> solution)
+    {
+        int numStories = high - low;
+        
+        //Small enough to do directly.
+        if(numStories == 1
+                || (long)(numStories + 1) * (long)(column + 1) <= FULL_TABLE_CELL_LIMIT)
+        {
+            return LinearSpaceKnapsackProblemSolver.backtrackTable(stories,
+                                                                   low,
+                                                                   high,
+                                                                   baseRow,
+                                                                   column,
+                                                                   solution);
+        }
+        
+        int middle = (low + high) >>> 1;
+        
+        //Solve the upper half first since that is where the backtrack starts.
+        //  The row at the middle is only needed for that, so let it go before
+        //  we recurse into the lower half.
+        long[] middleRow = LinearSpaceKnapsackProblemSolver.computeRow(stories,
+                                                                       low,
+                                                                       middle,
+                                                                       baseRow,
+                                                                       column);
+        int middleColumn = LinearSpaceKnapsackProblemSolver.backtrack(stories,
+                                                                      middle,
+                                                                      high,
+                                                                      middleRow,
+                                                                      column,
+                                                                      solution);
+        middleRow = null;
+        
+        return LinearSpaceKnapsackProblemSolver.backtrack(stories,
+                                                          low,
+                                                          middle,
+                                                          baseRow,
+                                                          middleColumn,
+                                                          solution);
+    }
+    
+    
+    /**
+     * Computes the table row for stories [0, high) given the row for stories
+     * [0, low), keeping only two rows in memory at a time.
+     * @param stories  the full set of stories being considered.
+     * @param low  the first story to add to the row (inclusive).
+     * @param high  the last story to add to the row (exclusive).
+     * @param baseRow  the table row for the stories before low.  This is not
+     *          modified.
+     * @param column  the last column to compute.
+     * @return  the table row for the stories before high (columns
+     *          [0, column]).
+     */
+    private static long[] computeRow(List<Story> stories,
+                                     int low,
+                                     int high,
+                                     long[] baseRow,
+                                     int column)
+    {
+        int capacityBound = column + 1;
+        long[] previousRow = Arrays.copyOf(baseRow, capacityBound);
+        long[] currentRow = new long[capacityBound];
+        
+        for(int i = low; i < high; i++)
+        {
+            KnapsackProblemSolver.computeRow(previousRow,
+                                             currentRow,
+                                             stories.get(i),
+                                             capacityBound);
+            
+            //Swap the rows so the one we just computed becomes the previous.
+            long[] temp = previousRow;
+            previousRow = currentRow;
+            currentRow = temp;
+        }
+        
+        return previousRow;
+    }
+    
+    
+    /**
+     * Builds the full table for stories [low, high) on top of the base row,
+     * then backtracks through it the same way
+     * {@link KnapsackProblemSolver#getOptimalSolution(long[][], List)} does.
+     * @param stories  the full set of stories being considered.
+     * @param low  the first story in this sub-problem (inclusive).
+     * @param high  the last story in this sub-problem (exclusive).
+     * @param baseRow  the table row for the stories before low.
+     * @param column  the column the backtrack is at when it reaches row high.
+     * @param solution  the list to add the stories in the solution to.
+     * @return  the column the backtrack is at when it reaches row low.
+     */
+    private static int backtrackTable(List<Story> stories,
+                                      int low,
+                                      int high,
+                                      long[] baseRow,
+                                      int column,
+                                      List<Story> solution)
+    {
+        int numRows = high - low + 1;
+        int capacityBound = column + 1;
+        
+        long[][] table = new long[numRows][];
+        table[0] = Arrays.copyOf(baseRow, capacityBound);
+        for(int i = 1; i < numRows; i++)
+        {
+            table[i] = new long[capacityBound];
+            KnapsackProblemSolver.computeRow(table[i - 1],
+                                             table[i],
+                                             stories.get(low + i - 1),
+                                             capacityBound);
+        }
+        
+        //If we didn't inherit the value from the row below, the story is in
+        //  the solution.
+        int col = column;
+        for(int row = numRows - 1; row > 0; row--)
+        {
+            if(table[row][col] != table[row - 1][col])
+            {
+                Story storyToAdd = stories.get(low + row - 1);
+                solution.add(storyToAdd);
+                col -= storyToAdd.Points;
+            }
+        }
+        
+        return col;
+    }
+}
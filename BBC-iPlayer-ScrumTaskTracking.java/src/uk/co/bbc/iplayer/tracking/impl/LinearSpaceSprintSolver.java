@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Plans the sprint exactly with the dynamic programming algorithm, but
+ * without keeping its table (see {@link LinearSpaceKnapsackProblemSolver}).
+ * It only needs O(capacity * log(stories)) memory, so it can plan sprints
+ * whose table would be far too big for the heap, at the cost of recomputing
+ * the rows O(log(stories)) times.  It offers to plan sprints that take no
+ * more than a fixed number of steps.
+ */
+public class LinearSpaceSprintSolver implements ISprintSolver
+{
+    /**
+     * The name of the solver.
+     */
+    public static final String NAME = "linear-space";
+    
+    
+    
+    /**
+     * The most steps (rows of the table computed, times their length) to
+     * take.
+     */
+    protected final long operationLimit;
+    
+    
+    
+    /**
+     * Constructor
+     * @param operationLimit  the most steps (rows of the table computed,
+     *          times their length) to take.
+     */
+    public LinearSpaceSprintSolver(long operationLimit)
+    {
+        this.operationLimit = operationLimit;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SolverEstimate estimateCost(SprintProblem problem)
+    {
+        //Each level of division computes every row once more.
+        long columns = LinearSpaceSprintSolver.getCapacity(problem) + 1;
+        long levels = Long.SIZE - Long.numberOfLeadingZeros(problem.size());
+        long cells = problem.size() * columns;
+        if(cells > this.operationLimit / Math.max(1, levels))
+        {
+            return null;
+        }
+        
+        //A row per level of division, the two rolling rows, and the table
+        //  the smallest sub-problems are backtracked through.
+        long rowBytes = columns * (Long.SIZE / Byte.SIZE);
+        long tableCells = Math.min(cells + columns,
+                                   Math.max(LinearSpaceKnapsackProblemSolver.FULL_TABLE_CELL_LIMIT,
+                                            2 * columns));
+        return new SolverEstimate(cells * Math.max(1, levels),
+                                  (levels + 3) * rowBytes
+                                          + tableCells * (Long.SIZE / Byte.SIZE),
+                                  0);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan solve(SprintProblem problem)
+    {
+        List<Story> plan = LinearSpaceKnapsackProblemSolver.solve(problem.Stories,
+                                                                  LinearSpaceSprintSolver.getCapacity(problem));
+        return new SprintPlan(plan, 0, 0);
+    }
+    
+    
+    /**
+     * Gets the capacity to plan with.  Any capacity past the total number of
+     * points gives the same plan, so there is no need for the columns.
+     * @param problem  the sprint to plan.
+     * @return  the capacity.
+     */
+    private static int getCapacity(SprintProblem problem)
+    {
+        return (int) Math.min(problem.Capacity, problem.TotalPoints);
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+import uk.co.bbc.iplayer.tracking.messages.Messages;
+
+/**
+ * Solves the knapsack problem by splitting the stories in half, listing every
+ * subset of each half that fits, and matching them up (Horowitz and Sahni).
+ * This takes O(2^(stories.size() / 2)) time and memory no matter what the
+ * capacity is, so it suits small backlogs with huge capacities, where the
+ * table in {@link KnapsackProblemSolver} would be enormous.
+ * 
+ * Each half's subsets are built in order of points by merging the subsets
+ * without each story with the subsets with it, so they never need sorting.
+ * For every subset of the second half (in increasing order of points), the
+ * best subset of the first half that fits in the capacity left is the best
+ * one up to an index that only goes down, so one sweep matches them up.
+ * 
+ * The table's backtrack leaves out each story (from the last to the first)
+ * whenever the plan is just as good without it.  If bit k of a mask is set
+ * when stories[k] is in the plan, that is the optimal plan with the smallest
+ * mask.  So, we break ties between plans of the same value by their masks
+ * and return exactly the same plan as
+ * {@link KnapsackProblemSolver#solve(List, int)}.
+ */
+public class MeetInTheMiddleKnapsackProblemSolver
+{
+    /**
+     * The most stories we can plan.  Each half's masks have to fit in an
+     * int, and each half's subsets in an array.
+     */
+    public static final int MAX_STORIES = 2 * (Integer.SIZE - 2);
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * The subsets of a run of stories that fit in the capacity, in
+     * increasing order of points.
+     */
+    private static final class Subsets
+    {
+        /**
+         * The points of each subset.
+         */
+        private int[] points;
+        
+        /**
+         * The value of each subset.
+         */
+        private long[] values;
+        
+        /**
+         * The stories in each subset.  Bit k is set if the k-th story of the
+         * run is in the subset.
+         */
+        private int[] masks;
+        
+        /**
+         * The number of subsets.
+         */
+        private int size;
+        
+        
+        /**
+         * Lists the subsets of stories[from, to) that fit in the capacity.
+         * @param stories  the stories.
+         * @param from  the first story of the run (inclusive).
+         * @param to  the last story of the run (exclusive).
+         * @param capacity  the capacity.
+         */
+        Subsets(StoryBatch stories, int from, int to, int capacity)
+        {
+            int maxSubsets = 1 << (to - from);
+            this.points = new int[maxSubsets];
+            this.values = new long[maxSubsets];
+            this.masks = new int[maxSubsets];
+            this.size = 1;
+            
+            int[] nextPoints = new int[maxSubsets];
+            long[] nextValues = new long[maxSubsets];
+            int[] nextMasks = new int[maxSubsets];
+            for(int k = from; k < to; k++)
+            {
+                int weight = stories.getPoints(k);
+                long value = KnapsackProblemSolver.getValue(stories.getPriority(k));
+                int bit = 1 << (k - from);
+                
+                //Only the subsets that still fit with the story are worth
+                //  adding it to.
+                int shifted = this.size;
+                while(shifted > 0 && (long) this.points[shifted - 1] + weight > capacity)
+                {
+                    shifted--;
+                }
+                
+                //Merge the subsets without the story with the ones with it.
+                int without = 0;
+                int with = 0;
+                int next = 0;
+                while(without < this.size || with < shifted)
+                {
+                    if(with >= shifted
+                            || (without < this.size
+                                    && this.points[without] <= this.points[with] + weight))
+                    {
+                        nextPoints[next] = this.points[without];
+                        nextValues[next] = this.values[without];
+                        nextMasks[next] = this.masks[without];
+                        without++;
+                    }
+                    else
+                    {
+                        nextPoints[next] = this.points[with] + weight;
+                        nextValues[next] = this.values[with] + value;
+                        nextMasks[next] = this.masks[with] | bit;
+                        with++;
+                    }
+                    next++;
+                }
+                
+                //Swap the buffers so the merged subsets become the current.
+                int[] tempPoints = this.points;
+                this.points = nextPoints;
+                nextPoints = tempPoints;
+                long[] tempValues = this.values;
+                this.values = nextValues;
+                nextValues = tempValues;
+                int[] tempMasks = this.masks;
+                this.masks = nextMasks;
+                nextMasks = tempMasks;
+                this.size = next;
+            }
+        }
+        
+        
+        /**
+         * Replaces each subset's value and mask with those of the best subset
+         * up to it:  the most valuable one, and the one with the smallest mask
+         * if there is a tie.  The points are left alone, so they are still in
+         * order.
+         */
+        void keepBestPrefix()
+        {
+            for(int k = 1; k < this.size; k++)
+            {
+                if(this.values[k] < this.values[k - 1]
+                        || (this.values[k] == this.values[k - 1]
+                                && this.masks[k] > this.masks[k - 1]))
+                {
+                    this.values[k] = this.values[k - 1];
+                    this.masks[k] = this.masks[k - 1];
+                }
+            }
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  SOLVER
+    //-------------------------------------------------------------------------
+    /**
+     * Hides the constructor
+     */
+    private MeetInTheMiddleKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint (optimal being the
+     * set of stories with the highest possible priority that will fit in the
+     * sprint).  This is O(2^(stories.size() / 2)) in time and space.
+     * @param stories  the set of stories to consider.  There must be no more
+     *          than MAX_STORIES of them.
+     * @param sprintCapacity  the capacity of the sprint.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities)
+     * @throws IllegalArgumentException  if there are more than MAX_STORIES
+     *          stories.
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity)
+    {
+        List<Story> solution = new ArrayList<>();
+        
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return solution;
+        }
+        
+        if(stories.size() > MAX_STORIES)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("MeetInTheMiddleTooBig", stories.size(), MAX_STORIES));
+        }
+        
+        StoryBatch batch = StoryBatch.of(stories);
+        int half = batch.size() / 2;
+        Subsets low = new Subsets(batch, 0, half, sprintCapacity);
+        Subsets high = new Subsets(batch, half, batch.size(), sprintCapacity);
+        low.keepBestPrefix();
+        
+        //The capacity left only goes down as the second half's subsets get
+        //  bigger, and so does the index of the best first half that fits.
+        //  The empty first half always fits.  Different subsets of the
+        //  second half have different masks, so ties between them are
+        //  broken by the second half's mask alone.
+        int lowIndex = low.size - 1;
+        long bestValue = -1;
+        int bestLowMask = 0;
+        int bestHighMask = 0;
+        for(int k = 0; k < high.size; k++)
+        {
+            int capacityLeft = sprintCapacity - high.points[k];
+            while(low.points[lowIndex] > capacityLeft)
+            {
+                lowIndex--;
+            }
+            
+            long value = high.values[k] + low.values[lowIndex];
+            if(value > bestValue
+                    || (value == bestValue && high.masks[k] < bestHighMask))
+            {
+                bestValue = value;
+                bestLowMask = low.masks[lowIndex];
+                bestHighMask = high.masks[k];
+            }
+        }
+        
+        //The masks are in the same order as the stories, so the plan comes
+        //  out in priority order.
+        for(int k = 0; k < half; k++)
+        {
+            if((bestLowMask & (1 << k)) != 0)
+            {
+                solution.add(stories.get(k));
+            }
+        }
+        for(int k = half; k < batch.size(); k++)
+        {
+            if((bestHighMask & (1 << (k - half))) != 0)
+            {
+                solution.add(stories.get(k));
+            }
+        }
+        
+        return solution;
+    }
+}
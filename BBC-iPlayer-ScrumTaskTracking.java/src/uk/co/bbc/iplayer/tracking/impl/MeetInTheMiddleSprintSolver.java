@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Plans the sprint exactly by matching up the subsets of each half of the
+ * backlog (see {@link MeetInTheMiddleKnapsackProblemSolver}).  The cost
+ * doubles with every two stories but doesn't depend on the capacity, so it
+ * only offers to plan small backlogs.
+ */
+public class MeetInTheMiddleSprintSolver implements ISprintSolver
+{
+    /**
+     * The name of the solver.
+     */
+    public static final String NAME = "meet-in-the-middle";
+    
+    /**
+     * The number of bytes each subset takes (its points, value and mask),
+     * doubled because each half is merged into a second buffer.
+     */
+    private static final int BYTES_PER_SUBSET =
+            2 * (Integer.SIZE + Long.SIZE + Integer.SIZE) / Byte.SIZE;
+    
+    
+    
+    /**
+     * The most stories to offer to plan.
+     */
+    protected final int storyLimit;
+    
+    
+    
+    /**
+     * Constructor
+     * @param storyLimit  the most stories to offer to plan.  This is capped
+     *          at MeetInTheMiddleKnapsackProblemSolver.MAX_STORIES.
+     */
+    public MeetInTheMiddleSprintSolver(int storyLimit)
+    {
+        this.storyLimit = Math.min(storyLimit,
+                                   MeetInTheMiddleKnapsackProblemSolver.MAX_STORIES);
+    }
+    
+    
+    /**
+     * Gets the most stories the solver offers to plan.
+     * @return  the most stories to offer to plan.
+     */
+    public int getStoryLimit()
+    {
+        return this.storyLimit;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SolverEstimate estimateCost(SprintProblem problem)
+    {
+        int numStories = problem.size();
+        if(numStories > this.storyLimit)
+        {
+            return null;
+        }
+        
+        //Building each half's subsets touches about twice as many subsets as
+        //  it ends up with, and the sweep touches each of them once more.
+        int half = numStories / 2;
+        long subsets = (1L << half) + (1L << (numStories - half));
+        return new SolverEstimate(3 * subsets,
+                                  subsets * BYTES_PER_SUBSET,
+                                  0);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan solve(SprintProblem problem)
+    {
+        List<Story> plan = MeetInTheMiddleKnapsackProblemSolver.solve(problem.Stories,
+                                                                      problem.Capacity);
+        
+        return new SprintPlan(plan, 0, 0);
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+/**
+ * Admission control for memory-hungry work.  Before a solver runs, it
+ * reserves the bytes it expects to need.  A reservation is only granted if it
+ * fits in both the budget (less what other solves have reserved) and the
+ * heap's headroom.  So, two large solves can't run together if they would
+ * run the heap out between them:  the second one has to wait for the first,
+ * use a cheaper solver, or give up.
+ * 
+ * The headroom is measured from what the heap held after the last garbage
+ * collection (from the {@link MemoryPoolMXBean}s), so garbage that can be
+ * collected doesn't count against it.  Reservations aren't taken off the
+ * headroom:  whatever the running solves have allocated is already in use.
+ * 
+ * Backlogs share one budget (see {@link #getShared()}) unless they are given
+ * their own.
+ */
+public class MemoryBudget
+{
+    /**
+     * The fraction of the maximum heap the shared budget allows solves to
+     * reserve.
+     */
+    public static final double DEFAULT_HEAP_FRACTION = 0.5;
+    
+    /**
+     * How long to wait between checks of the heap's headroom while waiting for
+     * a reservation.  The headroom grows when the garbage collector runs,
+     * which nobody tells us about.
+     */
+    private static final long HEADROOM_POLL_MILLIS = 100;
+    
+    /**
+     * The budget shared by every backlog in the JVM.
+     */
+    private static final MemoryBudget SHARED =
+            new MemoryBudget((long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_FRACTION));
+    
+    
+    
+    /**
+     * The most bytes that may be reserved at once.
+     */
+    private long budgetBytes;
+    
+    /**
+     * The bytes reserved by solves that are running.
+     */
+    private long reservedBytes = 0;
+    
+    /**
+     * Where we get the heap's maximum size from.
+     */
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    
+    /**
+     * Where we get the heap's usage after garbage collection from.
+     */
+    private final List<MemoryPoolMXBean> memoryPools = ManagementFactory.getMemoryPoolMXBeans();
+    
+    
+    
+    /**
+     * Constructor
+     * @param budgetBytes  the most bytes that may be reserved at once.
+     */
+    public MemoryBudget(long budgetBytes)
+    {
+        this.budgetBytes = budgetBytes;
+    }
+    
+    
+    /**
+     * Gets the budget shared by every backlog in the JVM.  It allows
+     * DEFAULT_HEAP_FRACTION of the maximum heap to be reserved.
+     * @return  the shared budget.
+     */
+    public static MemoryBudget getShared()
+    {
+        return SHARED;
+    }
+    
+    
+    /**
+     * Reserves memory if it is available right now.
+     * @param bytes  the number of bytes to reserve.
+     * @return  true if the memory was reserved (and must be released), false
+     *          if it isn't available.
+     */
+    public synchronized boolean tryReserve(long bytes)
+    {
+        if(bytes > 0 && bytes > this.getAvailableBytes())
+        {
+            return false;
+        }
+        
+        this.reservedBytes += Math.max(0, bytes);
+        return true;
+    }
+    
+    
+    /**
+     * Reserves memory, waiting for other solves to release theirs if it isn't
+     * available right now.
+     * @param bytes  the number of bytes to reserve.
+     * @param timeoutMillis  the longest to wait.
+     * @return  true if the memory was reserved (and must be released), false
+     *          if it didn't become available in time, will never fit in the
+     *          budget, or the thread was interrupted.
+     */
+    public synchronized boolean reserve(long bytes,
+                                        long timeoutMillis)
+    {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        while(!this.tryReserve(bytes))
+        {
+            long millisLeft = (deadline - System.nanoTime()) / 1000000L;
+            if(bytes > this.budgetBytes || millisLeft <= 0)
+            {
+                return false;
+            }
+            
+            try
+            {
+                this.wait(Math.min(millisLeft, HEADROOM_POLL_MILLIS));
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    
+    /**
+     * Releases memory reserved by {@link #tryReserve(long)} or
+     * {@link #reserve(long, long)} and wakes up anyone waiting for it.
+     * @param bytes  the number of bytes that were reserved.
+     */
+    public synchronized void release(long bytes)
+    {
+        this.reservedBytes -= Math.max(0, bytes);
+        this.notifyAll();
+    }
+    
+    
+    /**
+     * Gets the number of bytes that can be reserved right now.
+     * @return  the available bytes.  This may be negative if the heap is
+     *          fuller than the reservations allow for.
+     */
+    public synchronized long getAvailableBytes()
+    {
+        return Math.min(this.budgetBytes - this.reservedBytes, this.getHeadroom());
+    }
+    
+    
+    /**
+     * Gets the number of bytes reserved by solves that are running.
+     * @return  the reserved bytes.
+     */
+    public synchronized long getReservedBytes()
+    {
+        return this.reservedBytes;
+    }
+    
+    
+    /**
+     * Gets the most bytes that may be reserved at once.
+     * @return  the budget.
+     */
+    public synchronized long getBudget()
+    {
+        return this.budgetBytes;
+    }
+    
+    
+    /**
+     * Sets the most bytes that may be reserved at once.  Reservations that
+     * have already been granted are kept.
+     * @param budgetBytes  the budget.
+     */
+    public synchronized void setBudget(long budgetBytes)
+    {
+        this.budgetBytes = budgetBytes;
+        this.notifyAll();
+    }
+    
+    
+    /**
+     * Gets how much more the heap can grow before it runs out, not counting
+     * garbage that can be collected.
+     * @return  the heap's maximum size less what was in use after the last
+     *          garbage collection.
+     */
+    protected long getHeadroom()
+    {
+        MemoryUsage heap = this.memoryBean.getHeapMemoryUsage();
+        
+        //The maximum is -1 if it isn't defined.
+        long maxBytes = (heap.getMax() < 0) ? Runtime.getRuntime().maxMemory() : heap.getMax();
+        
+        long usedBytes = 0;
+        for(MemoryPoolMXBean memoryPool : this.memoryPools)
+        {
+            if(memoryPool.getType() != MemoryType.HEAP || !memoryPool.isValid())
+            {
+                continue;
+            }
+            
+            //Pools the collector doesn't report on count everything in them.
+            MemoryUsage usage = memoryPool.getCollectionUsage();
+            if(usage == null)
+            {
+                usage = memoryPool.getUsage();
+            }
+            usedBytes += usage.getUsed();
+        }
+        
+        return maxBytes - usedBytes;
+    }
+}
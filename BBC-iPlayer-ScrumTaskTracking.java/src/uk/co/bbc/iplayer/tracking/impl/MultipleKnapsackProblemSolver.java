@@ -0,0 +1,457 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import uk.co.bbc.iplayer.tracking.MultiSprintPlan;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Assigns stories to several sprints at once (the multiple knapsack problem),
+ * maximizing the total value of the stories in all of the sprints.
+ * 
+ * We start with the sequential plan:  the optimal plan for the first sprint,
+ * then the optimal plan for the second sprint from the stories that are
+ * left, and so on.  This is the plan you get from calling getSprint and
+ * removing its stories for each sprint in turn, and it puts the highest
+ * priority stories in the earliest sprints.  If there are few enough stories,
+ * we then search for the optimal plan with branch-and-bound, bounding each
+ * node with the LP relaxation of a single sprint as big as the capacity left
+ * in all of them.  Either way, the plan reports that bound so callers know
+ * how good it is.
+ */
+public class MultipleKnapsackProblemSolver
+{
+    /**
+     * The most stories we search for the optimal plan with.  Past this, we
+     * return the sequential plan.
+     */
+    protected static final int EXACT_STORY_LIMIT = 30;
+    
+    /**
+     * The most nodes the branch-and-bound search visits before giving up on
+     * proving the plan optimal.
+     */
+    protected static final long NODE_LIMIT = 1000000;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * The state of the branch-and-bound search.  The stories are sorted by
+     * value per point so the LP bound of the stories from any index on is a
+     * greedy scan.
+     */
+    private static class Search
+    {
+        /**
+         * The points of each story, best value per point first.
+         */
+        private final int[] points;
+        
+        /**
+         * The value of each story, best value per point first.
+         */
+        private final long[] values;
+        
+        /**
+         * The capacity left in each sprint.
+         */
+        private final int[] capacityLeft;
+        
+        /**
+         * The sprint each story is in (or -1) on the current branch.
+         */
+        private final int[] assignment;
+        
+        /**
+         * The sprint each story is in (or -1) in the best plan so far.
+         */
+        private final int[] bestAssignment;
+        
+        /**
+         * The value of the best plan so far.
+         */
+        private long bestValue;
+        
+        /**
+         * The number of nodes we may still visit.
+         */
+        private long nodesLeft;
+        
+        
+        /**
+         * Constructor
+         * @param byDensity  the stories, best value per point first.
+         * @param sprintCapacities  the capacity of each sprint.
+         * @param assignment  the sprint each story is in (or -1) in the plan
+         *          to beat.
+         * @param value  the value of the plan to beat.
+         * @param nodeLimit  the most nodes to visit.
+         */
+        private Search(List<Story> byDensity,
+                       int[] sprintCapacities,
+                       int[] assignment,
+                       long value,
+                       long nodeLimit)
+        {
+            this.points = new int[byDensity.size()];
+            this.values = new long[byDensity.size()];
+            for(int k = 0; k < byDensity.size(); k++)
+            {
+                this.points[k] = byDensity.get(k).Points;
+                this.values[k] = KnapsackProblemSolver.getValue(byDensity.get(k));
+            }
+            
+            this.capacityLeft = sprintCapacities.clone();
+            this.assignment = new int[byDensity.size()];
+            Arrays.fill(this.assignment, -1);
+            this.bestAssignment = assignment.clone();
+            this.bestValue = value;
+            this.nodesLeft = nodeLimit;
+        }
+        
+        
+        /**
+         * Searches for a better plan for the stories from an index on.
+         * @param index  the next story to place.
+         * @param value  the value of the stories placed so far.
+         * @return  true if the search finished, false if it ran out of nodes.
+         */
+        private boolean search(int index,
+                               long value)
+        {
+            if(this.nodesLeft-- <= 0)
+            {
+                return false;
+            }
+            
+            if(value > this.bestValue)
+            {
+                this.bestValue = value;
+                System.arraycopy(this.assignment, 0, this.bestAssignment, 0, index);
+                Arrays.fill(this.bestAssignment, index, this.bestAssignment.length, -1);
+            }
+            
+            if(index == this.points.length
+                    || value + this.getBound(index) <= this.bestValue)
+            {
+                return true;
+            }
+            
+            for(int sprint = 0; sprint < this.capacityLeft.length; sprint++)
+            {
+                if(this.points[index] > this.capacityLeft[sprint]
+                        || this.hasSameCapacityLeft(sprint))
+                {
+                    continue;
+                }
+                
+                this.capacityLeft[sprint] -= this.points[index];
+                this.assignment[index] = sprint;
+                boolean finished = this.search(index + 1, value + this.values[index]);
+                this.assignment[index] = -1;
+                this.capacityLeft[sprint] += this.points[index];
+                
+                if(!finished)
+                {
+                    return false;
+                }
+            }
+            
+            return this.search(index + 1, value);
+        }
+        
+        
+        /**
+         * Checks whether an earlier sprint has the same capacity left.  The
+         * rest of the plan could be swapped between the two, so we only need
+         * to try one of them.
+         * @param sprint  the sprint to check.
+         * @return  true if an earlier sprint has the same capacity left.
+         */
+        private boolean hasSameCapacityLeft(int sprint)
+        {
+            for(int earlier = 0; earlier < sprint; earlier++)
+            {
+                if(this.capacityLeft[earlier] == this.capacityLeft[sprint])
+                {
+                    return true;
+                }
+            }
+            
+            return false;
+        }
+        
+        
+        /**
+         * Gets the LP bound on the value of the stories from an index on, as
+         * if all of the capacity left were in one sprint.
+         * @param index  the first story to consider.
+         * @return  the bound.
+         */
+        private long getBound(int index)
+        {
+            long capacity = 0;
+            for(int left : this.capacityLeft)
+            {
+                capacity += left;
+            }
+            
+            long bound = 0;
+            for(int k = index; k < this.points.length; k++)
+            {
+                if(this.points[k] > capacity)
+                {
+                    bound += capacity * this.values[k] / this.points[k];
+                    break;
+                }
+                
+                bound += this.values[k];
+                capacity -= this.points[k];
+            }
+            
+            return bound;
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  CONSTRUCTOR
+    //-------------------------------------------------------------------------
+    /**
+     * Hides the constructor
+     */
+    private MultipleKnapsackProblemSolver()
+    {
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  SOLVER
+    //-------------------------------------------------------------------------
+    /**
+     * Assigns stories to several sprints, maximizing the total value of the
+     * stories planned.
+     * @param candidates  the set of stories to consider, in priority order.
+     * @param sprintCapacities  the capacity of each sprint.  These must be
+     *          non-negative and less than Integer.MAX_VALUE.
+     * @return  the plan, with one list of stories (in priority order) for
+     *          each capacity.
+     */
+    public static MultiSprintPlan solve(List<Story> candidates,
+                                        int[] sprintCapacities)
+    {
+        List<List<Story>> sprints = new ArrayList<>();
+        if(candidates == null)
+        {
+            for(int sprint = 0; sprint < sprintCapacities.length; sprint++)
+            {
+                sprints.add(new ArrayList<Story>());
+            }
+            
+            return new MultiSprintPlan(sprints, 0, 0);
+        }
+        
+        //Stories are tracked by identity, so build each one once (a
+        //  StoryBatch builds a new story every time one is asked for).
+        final List<Story> stories = new ArrayList<>(candidates);
+        
+        //Start with the sequential plan.
+        int[] assignment = new int[stories.size()];
+        Arrays.fill(assignment, -1);
+        Set<Story> planned = Collections.newSetFromMap(new IdentityHashMap<Story, Boolean>());
+        List<Story> storiesLeft = stories;
+        for(int sprint = 0; sprint < sprintCapacities.length; sprint++)
+        {
+            List<Story> sprintPlan = MultipleKnapsackProblemSolver.solve(storiesLeft,
+                                                                         sprintCapacities[sprint]);
+            sprints.add(sprintPlan);
+            planned.addAll(sprintPlan);
+            
+            List<Story> nextStoriesLeft = new ArrayList<>();
+            for(Story story : storiesLeft)
+            {
+                if(!planned.contains(story))
+                {
+                    nextStoriesLeft.add(story);
+                }
+            }
+            
+            storiesLeft = nextStoriesLeft;
+        }
+        
+        long value = 0;
+        for(List<Story> sprintPlan : sprints)
+        {
+            value += KnapsackProblemSolver.getTotalValue(sprintPlan);
+        }
+        
+        long totalCapacity = 0;
+        for(int sprintCapacity : sprintCapacities)
+        {
+            totalCapacity += Math.max(0, sprintCapacity);
+        }
+        
+        long upperBound = Math.max(value,
+                                   KnapsackProblemSolver.getUpperBound(stories,
+                                                                       totalCapacity));
+        if(value >= upperBound || stories.size() > EXACT_STORY_LIMIT)
+        {
+            return new MultiSprintPlan(sprints, value, upperBound);
+        }
+        
+        //There are few enough stories to search for the optimal plan.
+        Integer[] byDensity = new Integer[stories.size()];
+        for(int k = 0; k < byDensity.length; k++)
+        {
+            byDensity[k] = k;
+        }
+        
+        Arrays.sort(byDensity, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer thisIndex, Integer thatIndex)
+            {
+                //Compare value / points without dividing.  Both sides are
+                //  less than 2^62, so this can't overflow.
+                Story thisStory = stories.get(thisIndex);
+                Story thatStory = stories.get(thatIndex);
+                return Long.compare(KnapsackProblemSolver.getValue(thatStory) * thisStory.Points,
+                                    KnapsackProblemSolver.getValue(thisStory) * thatStory.Points);
+            }
+        });
+        
+        List<Story> sortedStories = new ArrayList<>();
+        int[] sortedAssignment = new int[stories.size()];
+        for(int sprint = 0; sprint < sprints.size(); sprint++)
+        {
+            for(Story story : sprints.get(sprint))
+            {
+                assignment[MultipleKnapsackProblemSolver.indexOf(stories, story)] = sprint;
+            }
+        }
+        
+        for(int k = 0; k < byDensity.length; k++)
+        {
+            sortedStories.add(stories.get(byDensity[k]));
+            sortedAssignment[k] = assignment[byDensity[k]];
+        }
+        
+        Search search = new Search(sortedStories,
+                                   sprintCapacities,
+                                   sortedAssignment,
+                                   value,
+                                   NODE_LIMIT);
+        boolean finished = search.search(0, 0);
+        if(search.bestValue > value)
+        {
+            //Rebuild the sprints in priority order.
+            for(int k = 0; k < byDensity.length; k++)
+            {
+                assignment[byDensity[k]] = search.bestAssignment[k];
+            }
+            
+            for(List<Story> sprintPlan : sprints)
+            {
+                sprintPlan.clear();
+            }
+            
+            for(int k = 0; k < assignment.length; k++)
+            {
+                if(assignment[k] >= 0)
+                {
+                    sprints.get(assignment[k]).add(stories.get(k));
+                }
+            }
+            
+            value = search.bestValue;
+        }
+        
+        return new MultiSprintPlan(sprints, value, finished ? value : upperBound);
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  HELPER METHODS
+    //-------------------------------------------------------------------------
+    /**
+     * Finds the optimal plan for one sprint, or fills it greedily if the
+     * table would be too big.
+     * @param stories  the set of stories to consider, in priority order.
+     * @param sprintCapacity  the capacity of the sprint.
+     * @return  the stories in the sprint, in priority order.
+     */
+    private static List<Story> solve(List<Story> stories,
+                                     int sprintCapacity)
+    {
+        long capacity = Math.min(sprintCapacity,
+                                 KnapsackProblemSolver.getTotalPoints(stories));
+        if((long) stories.size() * (capacity + 1) <= DecisionTable.BOUNDED_TABLE_BITS)
+        {
+            return BitPackedKnapsackProblemSolver.solve(stories, sprintCapacity);
+        }
+        
+        Set<Story> inPlan = Collections.newSetFromMap(new IdentityHashMap<Story, Boolean>());
+        long capacityLeft = sprintCapacity;
+        for(Story story : KnapsackProblemSolver.sortByDensity(stories))
+        {
+            if(story.Points <= capacityLeft)
+            {
+                inPlan.add(story);
+                capacityLeft -= story.Points;
+            }
+        }
+        
+        List<Story> sprintPlan = new ArrayList<>();
+        for(Story story : stories)
+        {
+            if(inPlan.contains(story))
+            {
+                sprintPlan.add(story);
+            }
+        }
+        
+        return sprintPlan;
+    }
+    
+    
+    /**
+     * Finds a story in a list by identity (stories with the same fields are
+     * equal, but they are still different stories).
+     * @param stories  the list to search.
+     * @param story  the story to find.
+     * @return  the index of the story, or -1 if it isn't in the list.
+     */
+    private static int indexOf(List<Story> stories,
+                               Story story)
+    {
+        for(int k = 0; k < stories.size(); k++)
+        {
+            if(stories.get(k) == story)
+            {
+                return k;
+            }
+        }
+        
+        return -1;
+    }
+}
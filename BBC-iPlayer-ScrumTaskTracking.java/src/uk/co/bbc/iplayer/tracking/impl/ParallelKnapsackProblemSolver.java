@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+
+/**
+ * Solves the knapsack problem with the same dynamic programming algorithm as
+ * {@link KnapsackProblemSolver}, but computes each row of the table in
+ * parallel.
+ * 
+ * Each cell in a row only reads the row before it, so the columns of a row
+ * are independent of each other.  We split the columns of every row across a
+ * fork/join pool and wait for the row to finish before starting the next one.
+ * Like {@link BitPackedKnapsackProblemSolver}, we only keep two rows of values
+ * and record one bit per cell for backtracking.  Each row's bits are recorded
+ * in a scratch row and then copied into the {@link DecisionTable}, so big
+ * tables live outside the heap.  The columns are only ever split on word
+ * boundaries so no two tasks write to the same word.  Like the bit-packed
+ * solver, this reads the points and priorities from a {@link StoryBatch}.
+ * 
+ * The cells are computed exactly as they are in the sequential solvers, so
+ * this returns exactly the same plan as
+ * {@link KnapsackProblemSolver#solve(List, int)}.
+ */
+public class ParallelKnapsackProblemSolver
+{
+    /**
+     * Rows with no more than this many columns are not worth splitting up, so
+     * problems this small are handed to the sequential
+     * {@link BitPackedKnapsackProblemSolver}.  This is also the smallest
+     * number of columns a task will work on.  It must be a multiple of
+     * BITS_PER_WORD.
+     */
+    public static final int SEQUENTIAL_CUTOFF = 1 << 12;
+    
+    /**
+     * The number of bits in each word of the decision table.
+     */
+    private static final int BITS_PER_WORD = Long.SIZE;
+    
+    /**
+     * The pool used when the caller doesn't give us one.  It has one thread
+     * per processor.
+     */
+    private static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool();
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * Computes the columns [fromColumn, toColumn) of one row of the table,
+     * splitting the range in half until it is small enough to do directly.
+     */
+    @SuppressWarnings("serial")
+    private static class RowTask extends RecursiveAction
+    {
+        /**
+         * The row for the stories before the current story.
+         */
+        private final long[] previousRow;
+        
+        /**
+         * The row to fill in.
+         */
+        private final long[] currentRow;
+        
+        /**
+         * The decision bits for this row.
+         */
+        private final long[] rowDecisions;
+        
+        /**
+         * The current story's point value.
+         */
+        private final int weight;
+        
+        /**
+         * The current story's value.
+         */
+        private final long value;
+        
+        /**
+         * The first column to compute (inclusive).  This is always on a word
+         * boundary.
+         */
+        private final int fromColumn;
+        
+        /**
+         * The last column to compute (exclusive).
+         */
+        private final int toColumn;
+        
+        
+        /**
+         * Constructor
+         * @param previousRow  the row for the stories before the current story.
+         * @param currentRow  the row to fill in.
+         * @param rowDecisions  the decision bits for this row.
+         * @param weight  the current story's point value.
+         * @param value  the current story's value.
+         * @param fromColumn  the first column to compute (inclusive).
+         * @param toColumn  the last column to compute (exclusive).
+         */
+        RowTask(long[] previousRow,
+                long[] currentRow,
+                long[] rowDecisions,
+                int weight,
+                long value,
+                int fromColumn,
+                int toColumn)
+        {
+            this.previousRow = previousRow;
+            this.currentRow = currentRow;
+            this.rowDecisions = rowDecisions;
+            this.weight = weight;
+            this.value = value;
+            this.fromColumn = fromColumn;
+            this.toColumn = toColumn;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void compute()
+        {
+            //Split on a word boundary so the halves never share a word.
+            int middle = ((this.fromColumn + this.toColumn) >>> 1)
+                            & ~(BITS_PER_WORD - 1);
+            if(this.toColumn - this.fromColumn <= SEQUENTIAL_CUTOFF
+                    || middle <= this.fromColumn)
+            {
+                ParallelKnapsackProblemSolver.computeColumns(this.previousRow,
+                                                             this.currentRow,
+                                                             this.rowDecisions,
+                                                             this.weight,
+                                                             this.value,
+                                                             this.fromColumn,
+                                                             this.toColumn);
+                return;
+            }
+            
+            RecursiveAction.invokeAll(new RowTask(this.previousRow,
+                                                  this.currentRow,
+                                                  this.rowDecisions,
+                                                  this.weight,
+                                                  this.value,
+                                                  this.fromColumn,
+                                                  middle),
+                                      new RowTask(this.previousRow,
+                                                  this.currentRow,
+                                                  this.rowDecisions,
+                                                  this.weight,
+                                                  this.value,
+                                                  middle,
+                                                  this.toColumn));
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  SOLVER
+    //-------------------------------------------------------------------------
+    /**
+     * Hides the constructor
+     */
+    private ParallelKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint using a pool with
+     * one thread per processor.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities)
+     * @see #solve(List, int, ForkJoinPool)
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity)
+    {
+        return ParallelKnapsackProblemSolver.solve(stories,
+                                                   sprintCapacity,
+                                                   DEFAULT_POOL);
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint (optimal being the
+     * set of stories with the highest possible priority that will fit in the
+     * sprint).  This is O(stories.size() * sprintCapacity) in time (spread
+     * across the pool's threads) and the table only takes
+     * (stories.size() * sprintCapacity) bits.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @param pool  the pool to compute the rows in.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities)
+     * @throws IllegalStateException  if the decision table is too big for
+     *          memory and its temporary file could not be created.
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity,
+                                    ForkJoinPool pool)
+    {
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return new ArrayList<>();
+        }
+        
+        //Columns past the total number of points in the backlog all look the
+        //  same (everything fits), so there is no point computing them.
+        StoryBatch batch = StoryBatch.of(stories);
+        int capacity = (int) Math.min(sprintCapacity,
+                                      batch.getTotalPoints());
+        int capacityBound = capacity + 1;
+        
+        //Too small to be worth the overhead of splitting up.
+        if(capacityBound <= SEQUENTIAL_CUTOFF)
+        {
+            return BitPackedKnapsackProblemSolver.solve(stories,
+                                                        sprintCapacity);
+        }
+        
+        //Fill in the decisions one row at a time.
+        List<Story> solution = new ArrayList<>();
+        try(DecisionTable decisions = DecisionTable.allocate(stories.size(),
+                                                             capacityBound))
+        {
+            long[] rowDecisions = new long[DecisionTable.getWordsPerRow(capacityBound)];
+            long[] previousRow = new long[capacityBound];
+            long[] currentRow = new long[capacityBound];
+            for(int row = 0; row < stories.size(); row++)
+            {
+                Arrays.fill(rowDecisions, 0);
+                pool.invoke(new RowTask(previousRow,
+                                        currentRow,
+                                        rowDecisions,
+                                        batch.getPoints(row),
+                                        KnapsackProblemSolver.getValue(batch.getPriority(row)),
+                                        0,
+                                        capacityBound));
+                decisions.setRow(row, rowDecisions);
+                
+                //Swap the rows so the one we just computed becomes the previous.
+                long[] temp = previousRow;
+                previousRow = currentRow;
+                currentRow = temp;
+            }
+            
+            //Backtrack through the decisions from the last story to the first.
+            int col = capacity;
+            for(int row = stories.size() - 1; row >= 0; row--)
+            {
+                if(decisions.isSet(row, col))
+                {
+                    Story storyToAdd = stories.get(row);
+                    solution.add(storyToAdd);
+                    col -= storyToAdd.Points;
+                }
+            }
+        }
+        
+        //Reverse the order of the list so the highest priority stories come
+        //  first.
+        Collections.reverse(solution);
+        
+        return solution;
+    }
+    
+    
+    /**
+     * Computes the columns [fromColumn, toColumn) of one row of the table and
+     * records the cells where the current story was taken.
+     * @param previousRow  the row for the stories before the current story.
+     * @param currentRow  the row to fill in.
+     * @param rowDecisions  the decision bits for this row.
+     * @param weight  the current story's point value.
+     * @param value  the current story's value.
+     * @param fromColumn  the first column to compute (inclusive).
+     * @param toColumn  the last column to compute (exclusive).
+     */
+    private static void computeColumns(long[] previousRow,
+                                       long[] currentRow,
+                                       long[] rowDecisions,
+                                       int weight,
+                                       long value,
+                                       int fromColumn,
+                                       int toColumn)
+    {
+        KnapsackRowKernel.computeRow(previousRow, 
+                                     currentRow, 
+                                     weight, 
+                                     value, 
+                                     fromColumn, 
+                                     toColumn);
+        KnapsackRowKernel.recordDecisions(previousRow,
+                                          currentRow,
+                                          rowDecisions,
+                                          0,
+                                          fromColumn,
+                                          toColumn);
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+
+/**
+ * Solves the knapsack problem by keeping only the Pareto-optimal (points,
+ * value) states after each story (Nemhauser-Ullmann).
+ * 
+ * A row of the dynamic programming table in {@link KnapsackProblemSolver} is
+ * a step function of the capacity:  it only changes at the point totals of
+ * the undominated states (those that no other state beats on both points and
+ * value).  When the point values are few and large (e.g. 100, 200 and 500),
+ * only a handful of point totals can be reached and most of the capacity + 1
+ * columns are copies of the one before.  So, we keep each row as its list of
+ * undominated states, sorted by points (and so by value), and build the next
+ * one by merging the list with itself shifted by the next story.  The work
+ * is proportional to the number of states rather than the capacity.
+ * 
+ * Every row's states are kept so the plan can be recovered.  The value of a
+ * row at any capacity is the value of its last state that fits, so we
+ * backtrack through the rows exactly as
+ * {@link KnapsackProblemSolver#getOptimalSolution(long[][], List)} does and
+ * return exactly the same plan.
+ */
+public class ParetoKnapsackProblemSolver
+{
+    /**
+     * The number of states to make room for to start with.
+     */
+    private static final int INITIAL_STATES = 1 << 10;
+    
+    
+    
+    /**
+     * Hides the constructor
+     */
+    private ParetoKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint (optimal being the
+     * set of stories with the highest possible priority that will fit in the
+     * sprint).  This takes O(the total number of undominated states) time and
+     * space, which is at most O(stories.size() * sprintCapacity / g) for the
+     * greatest common divisor g of the point values.
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities)
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity)
+    {
+        return ParetoKnapsackProblemSolver.solve(stories,
+                                                 sprintCapacity,
+                                                 Long.MAX_VALUE);
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint, giving up if the
+     * rows hold too many states between them (see {@link #solve(List, int)}).
+     * @param stories  the set of stories to consider
+     * @param sprintCapacity  the capacity of the sprint.
+     * @param stateLimit  the most states to keep before giving up.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities), or null if there were too
+     *          many states.
+     */
+    public static List<Story> solve(List<Story> stories,
+                                    int sprintCapacity,
+                                    long stateLimit)
+    {
+        List<Story> solution = new ArrayList<>();
+        
+        //Can't do anything if there is no capacity or stories.
+        if(sprintCapacity < 0 || stories == null || stories.size() == 0)
+        {
+            return solution;
+        }
+        
+        StoryBatch batch = StoryBatch.of(stories);
+        int numStories = batch.size();
+        
+        //The states of row k are [rowStart[k], rowStart[k + 1]).  Row 0 is
+        //  the empty plan.
+        int[] rowStart = new int[numStories + 2];
+        int[] points = new int[INITIAL_STATES];
+        long[] values = new long[INITIAL_STATES];
+        rowStart[1] = 1;
+        
+        for(int row = 0; row < numStories; row++)
+        {
+            int weight = batch.getPoints(row);
+            long value = KnapsackProblemSolver.getValue(batch.getPriority(row));
+            int from = rowStart[row];
+            int to = rowStart[row + 1];
+            
+            //The merged row has at most twice as many states.
+            long maxStates = (long) to + (to - from) * 2L;
+            if(maxStates > Integer.MAX_VALUE - 8)
+            {
+                return null;
+            }
+            if(maxStates > points.length)
+            {
+                int newLength = (int) Math.min(Integer.MAX_VALUE - 8,
+                                               Math.max(maxStates, 2L * points.length));
+                points = Arrays.copyOf(points, newLength);
+                values = Arrays.copyOf(values, newLength);
+            }
+            
+            //Merge the row without the story with the row shifted by the
+            //  story, in order of points, keeping only the states that are
+            //  worth more than every state with fewer points.
+            int next = to;
+            int without = from;
+            int with = from;
+            while(without < to || with < to)
+            {
+                long candidatePoints;
+                long candidateValue;
+                if(with >= to
+                        || (long) points[with] + weight > sprintCapacity
+                        || (without < to && points[without] < points[with] + weight))
+                {
+                    if(without >= to)
+                    {
+                        break;
+                    }
+                    candidatePoints = points[without];
+                    candidateValue = values[without];
+                    without++;
+                }
+                else if(without < to && points[without] == points[with] + weight)
+                {
+                    candidatePoints = points[without];
+                    candidateValue = Math.max(values[without], values[with] + value);
+                    without++;
+                    with++;
+                }
+                else
+                {
+                    candidatePoints = points[with] + weight;
+                    candidateValue = values[with] + value;
+                    with++;
+                }
+                
+                if(next == to || candidateValue > values[next - 1])
+                {
+                    points[next] = (int) candidatePoints;
+                    values[next] = candidateValue;
+                    next++;
+                }
+            }
+            
+            rowStart[row + 2] = next;
+            if(next > stateLimit)
+            {
+                return null;
+            }
+        }
+        
+        //Take a story when its row is worth more than the row before at the
+        //  capacity left, just like the full table's backtrack.
+        int capacity = sprintCapacity;
+        for(int row = numStories - 1; row >= 0; row--)
+        {
+            long valueWith = ParetoKnapsackProblemSolver.getValue(points, values,
+                                                                  rowStart[row + 1],
+                                                                  rowStart[row + 2],
+                                                                  capacity);
+            long valueWithout = ParetoKnapsackProblemSolver.getValue(points, values,
+                                                                     rowStart[row],
+                                                                     rowStart[row + 1],
+                                                                     capacity);
+            if(valueWith > valueWithout)
+            {
+                solution.add(stories.get(row));
+                capacity -= batch.getPoints(row);
+            }
+        }
+        
+        //Reverse the order of the list so the highest priority stories come
+        //  first.
+        Collections.reverse(solution);
+        
+        return solution;
+    }
+    
+    
+    /**
+     * Gets the value of a row at a capacity:  the value of its last state
+     * that fits.
+     * @param points  the points of every row's states.
+     * @param values  the values of every row's states.
+     * @param from  the row's first state (inclusive).  This is always the
+     *          empty plan or better, so it has no more points than any
+     *          capacity.
+     * @param to  the row's last state (exclusive).
+     * @param capacity  the capacity.
+     * @return  the value of the row at the capacity.
+     */
+    private static long getValue(int[] points,
+                                 long[] values,
+                                 int from,
+                                 int to,
+                                 int capacity)
+    {
+        //Binary search for the last state with no more points than the
+        //  capacity.
+        int low = from;
+        int high = to - 1;
+        while(low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+            if(points[middle] <= capacity)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        
+        return values[low];
+    }
+}
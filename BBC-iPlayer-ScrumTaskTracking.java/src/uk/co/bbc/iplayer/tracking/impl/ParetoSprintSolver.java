@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.List;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Plans the sprint exactly by keeping only the undominated (points, value)
+ * states after each story (see {@link ParetoKnapsackProblemSolver}).  A row
+ * never has more states than there are reachable point totals, so when the
+ * point values share a large common divisor (e.g. 100, 200 and 500) this is
+ * far cheaper than filling in every column of the table.  The number of
+ * states also depends on the values, which we can't know up front, so it
+ * gives up after keeping a fixed number of states.
+ */
+public class ParetoSprintSolver implements ISprintSolver
+{
+    /**
+     * The name of the solver.
+     */
+    public static final String NAME = "pareto";
+    
+    /**
+     * The number of bytes each state takes (its points and value).
+     */
+    private static final int BYTES_PER_STATE = (Integer.SIZE + Long.SIZE) / Byte.SIZE;
+    
+    
+    
+    /**
+     * The most states to keep before giving up.
+     */
+    protected final long stateLimit;
+    
+    
+    
+    /**
+     * Constructor
+     * @param stateLimit  the most states to keep before giving up.
+     */
+    public ParetoSprintSolver(long stateLimit)
+    {
+        this.stateLimit = stateLimit;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SolverEstimate estimateCost(SprintProblem problem)
+    {
+        //Row k can't hold more states than there are subsets of the first k
+        //  stories or multiples of the common divisor up to the capacity.
+        long reachable = Math.min(problem.Capacity, problem.TotalPoints)
+                            / Math.max(1, problem.PointsDivisor) + 1;
+        long states = 0;
+        int row = 0;
+        for(; row <= problem.size() && row < Long.SIZE - 2 && (1L << row) < reachable; row++)
+        {
+            states += 1L << row;
+        }
+        states += reachable * (problem.size() + 1 - row);
+        
+        //Each state is read twice by the merge (once as it is and once
+        //  shifted by the next story), even though we give up if there turn
+        //  out to be too many.  The arrays may need to be copied as they grow.
+        long statesKept = Math.min(states, this.stateLimit);
+        return new SolverEstimate(2 * states,
+                                  2 * statesKept * BYTES_PER_STATE
+                                      + (long) problem.size() * Integer.SIZE / Byte.SIZE,
+                                  0);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SprintPlan solve(SprintProblem problem)
+    {
+        List<Story> plan = ParetoKnapsackProblemSolver.solve(problem.Stories,
+                                                             problem.Capacity,
+                                                             this.stateLimit);
+        if(plan == null)
+        {
+            return null;
+        }
+        
+        return new SprintPlan(plan, 0, 0);
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+
+/**
+ * Solves the knapsack problem with the same dynamic programming algorithm as
+ * {@link BitPackedKnapsackProblemSolver}, but computes each story's row as
+ * soon as the story is read from the database rather than after the whole
+ * backlog has been read.
+ * 
+ * A producer thread reads the stories from a {@link StoryCursor}, drops the
+ * ones that can't be in the plan (see {@link WeightClassPruner}), and puts
+ * them on a bounded queue in small batches.  The calling thread takes the
+ * batches off the queue and computes a row of the table per story, so
+ * waiting on the database and filling in the table overlap and the plan
+ * takes about as long as the slower of the two.  The queue being bounded
+ * keeps the producer from getting too far ahead.
+ * 
+ * The total number of points isn't known until the last story is read, so
+ * the table always has a column for every capacity up to the sprint's.  The
+ * rows are the same as the bit-packed solver's for the pruned stories, so
+ * this returns exactly the same plan as
+ * {@link KnapsackProblemSolver#solve(List, int)}.
+ */
+public class PipelinedKnapsackProblemSolver
+{
+    /**
+     * The number of stories the producer puts on the queue at a time.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    
+    /**
+     * The number of batches the queue holds before the producer waits.
+     */
+    public static final int DEFAULT_QUEUE_BATCHES = 16;
+    
+    /**
+     * How long the solver waits for a batch before checking that the producer
+     * is still running, in milliseconds.
+     */
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * Reads the stories from the cursor onto the queue, followed by an empty
+     * batch to mark the end.  The cursor is closed when it is done, and the
+     * end is marked even if reading the stories failed.
+     */
+    private static class Producer extends Thread
+    {
+        /**
+         * The stories to read.
+         */
+        private final StoryCursor stories;
+        
+        /**
+         * The capacity to prune the stories for.
+         */
+        private final int capacity;
+        
+        /**
+         * The number of stories in each batch.
+         */
+        private final int batchSize;
+        
+        /**
+         * The queue to put the batches on.
+         */
+        private final BlockingQueue<StoryBatch> queue;
+        
+        /**
+         * The error that stopped the producer, or null.
+         */
+        private volatile Throwable error;
+        
+        
+        /**
+         * Constructor
+         * @param stories  the stories to read.
+         * @param capacity  the capacity to prune the stories for.
+         * @param batchSize  the number of stories in each batch.
+         * @param queue  the queue to put the batches on.
+         */
+        Producer(StoryCursor stories,
+                 int capacity,
+                 int batchSize,
+                 BlockingQueue<StoryBatch> queue)
+        {
+            super("story-producer");
+            this.setDaemon(true);
+            this.stories = stories;
+            this.capacity = capacity;
+            this.batchSize = batchSize;
+            this.queue = queue;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run()
+        {
+            boolean stopped = false;
+            try
+            {
+                Map<Integer, Integer> numKept = new HashMap<>();
+                StoryBatch batch = new StoryBatch(this.batchSize);
+                while(this.stories.advance())
+                {
+                    int points = this.stories.getPoints();
+                    if(!WeightClassPruner.keep(numKept, points, this.capacity))
+                    {
+                        continue;
+                    }
+                    
+                    batch.add(this.stories.getId(),
+                              points,
+                              this.stories.getPriority(),
+                              this.stories.getOid());
+                    if(batch.size() == this.batchSize)
+                    {
+                        this.queue.put(batch);
+                        batch = new StoryBatch(this.batchSize);
+                    }
+                }
+                
+                if(batch.size() > 0)
+                {
+                    this.queue.put(batch);
+                }
+            }
+            catch(InterruptedException e)
+            {
+                //The consumer gave up, so nobody is waiting for the end.
+                stopped = true;
+            }
+            catch(Throwable e)
+            {
+                //Anything else (e.g. running out of memory) still has to reach
+                //the consumer, or it would wait for the end forever.
+                this.error = e;
+            }
+            finally
+            {
+                try
+                {
+                    this.stories.close();
+                }
+                catch(TaskTrackerException | RuntimeException e)
+                {
+                    if(this.error == null)
+                    {
+                        this.error = e;
+                    }
+                }
+                
+                if(!stopped)
+                {
+                    this.markEnd();
+                }
+            }
+        }
+        
+        
+        /**
+         * Puts the empty batch that marks the end on the queue.
+         */
+        private void markEnd()
+        {
+            try
+            {
+                this.queue.put(new StoryBatch());
+            }
+            catch(InterruptedException e)
+            {
+                //The consumer gave up, so nobody is waiting for the end.
+                return;
+            }
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  SOLVER
+    //-------------------------------------------------------------------------
+    /**
+     * Hides the constructor
+     */
+    private PipelinedKnapsackProblemSolver()
+    {
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint, reading the
+     * stories in batches of DEFAULT_BATCH_SIZE.
+     * @param stories  the cursor to read the stories from, in priority order.
+     *          It is read to the end and closed.
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @param maxStories  the most stories the cursor can return (e.g. the
+     *          number of stories in the database).
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities), or null if the cursor
+     *          returned more than maxStories stories that could be in the plan.
+     * @throws TaskTrackerException  if there was a problem reading the stories.
+     * @see #solve(StoryCursor, int, int, int, int)
+     */
+    public static List<Story> solve(StoryCursor stories,
+                                    int sprintCapacity,
+                                    int maxStories) throws TaskTrackerException
+    {
+        return PipelinedKnapsackProblemSolver.solve(stories,
+                                                    sprintCapacity,
+                                                    maxStories,
+                                                    DEFAULT_BATCH_SIZE,
+                                                    DEFAULT_QUEUE_BATCHES);
+    }
+    
+    
+    /**
+     * Finds the optimal set of stories that fit in a sprint (optimal being the
+     * set of stories with the highest possible priority that will fit in the
+     * sprint), computing the table while the stories are still being read.
+     * This is O(maxStories * sprintCapacity) in time, and the table takes
+     * (maxStories * sprintCapacity) bits.
+     * @param stories  the cursor to read the stories from, in priority order.
+     *          It is read to the end and closed.
+     * @param sprintCapacity  the capacity of the sprint.  This must be less
+     *          than Integer.MAX_VALUE.
+     * @param maxStories  the most stories the cursor can return (e.g. the
+     *          number of stories in the database).  This is the number of
+     *          rows in the table.
+     * @param batchSize  the number of stories to put on the queue at a time.
+     * @param queueBatches  the number of batches the queue holds.
+     * @return  the set of stories that maximizes the value to the customer (the
+     *          highest possible set of priorities), or null if the cursor
+     *          returned more than maxStories stories that could be in the plan.
+     * @throws TaskTrackerException  if there was a problem reading the stories.
+     * @throws IllegalStateException  if the decision table is too big for
+     *          memory and its temporary file could not be created.
+     */
+    public static List<Story> solve(StoryCursor stories,
+                                    int sprintCapacity,
+                                    int maxStories,
+                                    int batchSize,
+                                    int queueBatches) throws TaskTrackerException
+    {
+        //Nothing fits.
+        if(sprintCapacity <= 0 || maxStories <= 0)
+        {
+            stories.close();
+            return new StoryBatch();
+        }
+        
+        int capacityBound = sprintCapacity + 1;
+        BlockingQueue<StoryBatch> queue = new ArrayBlockingQueue<>(queueBatches);
+        Producer producer = new Producer(stories, sprintCapacity, batchSize, queue);
+        producer.start();
+        
+        StoryBatch candidates = new StoryBatch();
+        try(DecisionTable decisions = DecisionTable.allocate(maxStories,
+                                                             capacityBound))
+        {
+            long[] values = new long[capacityBound];
+            long[] rowDecisions = new long[DecisionTable.getWordsPerRow(capacityBound)];
+            
+            //An empty batch marks the end of the stories.
+            for(StoryBatch batch = takeBatch(queue, producer);
+                batch.size() > 0;
+                batch = takeBatch(queue, producer))
+            {
+                for(int k = 0; k < batch.size(); k++)
+                {
+                    int row = candidates.size();
+                    if(row >= maxStories)
+                    {
+                        return null;
+                    }
+                    
+                    BitPackedKnapsackProblemSolver.computeRow(values,
+                                                              rowDecisions,
+                                                              batch.getPoints(k),
+                                                              KnapsackProblemSolver.getValue(batch.getPriority(k)));
+                    decisions.setRow(row, rowDecisions);
+                    candidates.add(batch.getId(k),
+                                   batch.getPoints(k),
+                                   batch.getPriority(k),
+                                   batch.getOid(k));
+                }
+            }
+            
+            Throwable error = producer.error;
+            if(error instanceof TaskTrackerException)
+            {
+                throw (TaskTrackerException)error;
+            }
+            else if(error instanceof RuntimeException)
+            {
+                throw (RuntimeException)error;
+            }
+            else if(error instanceof Error)
+            {
+                throw (Error)error;
+            }
+            else if(error != null)
+            {
+                throw new TaskTrackerException(error);
+            }
+            
+            return BitPackedKnapsackProblemSolver.getOptimalSolution(candidates,
+                                                                     decisions,
+                                                                     sprintCapacity);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new TaskTrackerException(e);
+        }
+        finally
+        {
+            //Stop the producer if we stopped early.
+            producer.interrupt();
+        }
+    }
+    
+    
+    /**
+     * Takes the next batch off the queue.  If the producer stops without
+     * marking the end (e.g. there wasn't even the memory for the empty
+     * batch), this returns the end rather than waiting forever.
+     * @param queue  the queue the producer puts the batches on.
+     * @param producer  the producer.
+     * @return  the next batch, or an empty batch at the end of the stories.
+     * @throws InterruptedException  if we were interrupted while waiting.
+     */
+    private static StoryBatch takeBatch(BlockingQueue<StoryBatch> queue,
+                                        Producer producer) throws InterruptedException
+    {
+        while(true)
+        {
+            StoryBatch batch = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            if(batch != null)
+            {
+                return batch;
+            }
+            
+            if(!producer.isAlive())
+            {
+                //It may have put a batch on the queue just before it stopped.
+                batch = queue.poll();
+                return (batch == null) ? new StoryBatch() : batch;
+            }
+        }
+    }
+}
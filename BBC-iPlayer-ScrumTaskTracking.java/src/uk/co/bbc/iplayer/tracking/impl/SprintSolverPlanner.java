@@ -0,0 +1,424 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.exceptions.InsufficientMemoryException;
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+import uk.co.bbc.iplayer.tracking.messages.Messages;
+
+/**
+ * Picks the solver (an instance of {@link ISprintSolver}) to plan each sprint
+ * with.  Every registered solver estimates what the sprint would cost it, and
+ * they are tried from the most accurate to the least (cheapest first among
+ * equally accurate solvers, then in the order they were registered) until one
+ * of them returns a plan.
+ * 
+ * Before a solver runs, the memory it estimates it needs is reserved from a
+ * {@link MemoryBudget}.  If the memory isn't available, we move on to the
+ * next (cheaper) solver instead of running the heap out.  If none of the
+ * solvers that fit return a plan, we wait for the smallest of the solvers
+ * that didn't fit, and reject the request if its memory doesn't become
+ * available in time.
+ */
+public class SprintSolverPlanner
+{
+    //-------------------------------------------------------------------------
+    //  CONSTANTS
+    //-------------------------------------------------------------------------
+    /**
+     * The default longest time to wait for memory before rejecting a request.
+     */
+    public static final long DEFAULT_MEMORY_WAIT_MILLIS = 10000;
+
+
+
+
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * A solver along with its estimate for the sprint being planned.
+     */
+    private static class Candidate
+    {
+        /**
+         * The solver.
+         */
+        private final ISprintSolver solver;
+        
+        /**
+         * The solver's estimate for the sprint.
+         */
+        private final SolverEstimate estimate;
+        
+        
+        
+        /**
+         * Constructor
+         * @param solver  the solver.
+         * @param estimate  the solver's estimate for the sprint.
+         */
+        private Candidate(ISprintSolver solver, SolverEstimate estimate)
+        {
+            this.solver = solver;
+            this.estimate = estimate;
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  DATA MEMBERS
+    //-------------------------------------------------------------------------
+    /**
+     * The registered solvers, in the order they were registered.
+     */
+    protected List<ISprintSolver> solvers = new ArrayList<>();
+    
+    
+    /**
+     * The number of basic steps a solver may take to plan a sprint exactly.
+     */
+    protected long operationBudget;
+    
+    
+    /**
+     * The budget solvers reserve their memory from.
+     */
+    protected MemoryBudget memoryBudget = MemoryBudget.getShared();
+    
+    
+    /**
+     * The longest time to wait for memory before rejecting a request.
+     */
+    protected long memoryWaitMillis = DEFAULT_MEMORY_WAIT_MILLIS;
+    
+    
+    /**
+     * The logger we will use to log which solvers are tried.
+     */
+    protected Logger logger = Logger.getLogger(this.getClass().getPackage().getName());
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  CONSTRUCTOR
+    //-------------------------------------------------------------------------
+    /**
+     * Constructor
+     * @param operationBudget  the number of basic steps a solver may take to
+     *          plan a sprint exactly.
+     */
+    public SprintSolverPlanner(long operationBudget)
+    {
+        this.operationBudget = operationBudget;
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  PLANNING
+    //-------------------------------------------------------------------------
+    /**
+     * Plans a sprint with the best solver that doesn't give up.
+     * @param stories  the stories to consider, ordered by business priority.
+     *          None of them may be bigger than the capacity.
+     * @param sprintCapacity  the capacity of the sprint.
+     * @return  the sprint plan.
+     * @throws InsufficientMemoryException  if the only solvers that could
+     *          plan the sprint need more memory than became available.
+     * @throws TaskTrackerException  if no solver could plan the sprint.
+     */
+    public SprintPlan solve(List<Story> stories,
+                            int sprintCapacity) throws TaskTrackerException
+    {
+        SprintProblem problem = new SprintProblem(stories,
+                                                  sprintCapacity,
+                                                  this.operationBudget);
+        
+        //Downgrade to the next solver if one doesn't fit right now.
+        List<Candidate> deferred = new ArrayList<>();
+        for(Candidate candidate : this.getCandidates(problem))
+        {
+            if(!this.memoryBudget.tryReserve(candidate.estimate.MemoryBytes))
+            {
+                logger.fine(Messages.getString("LogSprintSolverDeferred",
+                                                 candidate.solver.getName(),
+                                                 candidate.estimate.MemoryBytes));
+                deferred.add(candidate);
+                continue;
+            }
+            
+            SprintPlan plan = this.solve(candidate, problem);
+            if(plan != null)
+            {
+                return plan;
+            }
+        }
+        
+        //Everything that fit gave up, so queue for the smallest of the rest.
+        if(!deferred.isEmpty())
+        {
+            Collections.sort(deferred, new Comparator<Candidate>()
+            {
+                @Override
+                public int compare(Candidate thisCandidate, Candidate thatCandidate)
+                {
+                    return Long.compare(thisCandidate.estimate.MemoryBytes,
+                                        thatCandidate.estimate.MemoryBytes);
+                }
+            });
+            
+            Candidate smallest = deferred.get(0);
+            if(!this.memoryBudget.reserve(smallest.estimate.MemoryBytes,
+                                          this.memoryWaitMillis))
+            {
+                long availableBytes = this.memoryBudget.getAvailableBytes();
+                throw new InsufficientMemoryException(Messages.getString("SprintSolverNoMemory",
+                                                                         smallest.estimate.MemoryBytes,
+                                                                         availableBytes),
+                                                      smallest.estimate.MemoryBytes,
+                                                      availableBytes);
+            }
+            
+            SprintPlan plan = this.solve(smallest, problem);
+            if(plan != null)
+            {
+                return plan;
+            }
+        }
+        
+        throw new TaskTrackerException(Messages.getString("SprintSolverNoPlan",
+                                                          sprintCapacity,
+                                                          stories.size()));
+    }
+    
+    
+    /**
+     * Gets the names of the solvers that would be tried for a sprint, in the
+     * order they would be tried.
+     * @param stories  the stories to consider, ordered by business priority.
+     * @param sprintCapacity  the capacity of the sprint.
+     * @return  the names of the solvers.
+     */
+    public List<String> getSolverOrder(List<Story> stories,
+                                       int sprintCapacity)
+    {
+        List<String> names = new ArrayList<>();
+        SprintProblem problem = new SprintProblem(stories,
+                                                  sprintCapacity,
+                                                  this.operationBudget);
+        for(Candidate candidate : this.getCandidates(problem))
+        {
+            names.add(candidate.solver.getName());
+        }
+        
+        return names;
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  REGISTRATION
+    //-------------------------------------------------------------------------
+    /**
+     * Registers a solver.  If a solver with the same name is already
+     * registered, it is replaced (and keeps its place in the order).
+     * @param solver  the solver to register.
+     */
+    public void register(ISprintSolver solver)
+    {
+        for(int k = 0; k < this.solvers.size(); k++)
+        {
+            if(this.solvers.get(k).getName().equals(solver.getName()))
+            {
+                this.solvers.set(k, solver);
+                return;
+            }
+        }
+        
+        this.solvers.add(solver);
+    }
+    
+    
+    /**
+     * Unregisters a solver.
+     * @param name  the name of the solver to unregister.
+     * @return  true if the solver was registered.
+     */
+    public boolean unregister(String name)
+    {
+        for(int k = 0; k < this.solvers.size(); k++)
+        {
+            if(this.solvers.get(k).getName().equals(name))
+            {
+                this.solvers.remove(k);
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    
+    /**
+     * Gets the registered solvers.
+     * @return  the solvers, in the order they were registered.
+     */
+    public List<ISprintSolver> getSolvers()
+    {
+        return Collections.unmodifiableList(this.solvers);
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  ACCESSORS
+    //-------------------------------------------------------------------------
+    /**
+     * Gets the budget solvers reserve their memory from.
+     * @return  the memory budget.
+     */
+    public MemoryBudget getMemoryBudget()
+    {
+        return this.memoryBudget;
+    }
+    
+    
+    /**
+     * Sets the budget solvers reserve their memory from.
+     * @param memoryBudget  the memory budget.  This must not be null.
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+    }
+    
+    
+    /**
+     * Gets the longest time to wait for memory before rejecting a request.
+     * @return  the time to wait, in milliseconds.
+     */
+    public long getMemoryWaitMillis()
+    {
+        return this.memoryWaitMillis;
+    }
+    
+    
+    /**
+     * Sets the longest time to wait for memory before rejecting a request.
+     * @param memoryWaitMillis  the time to wait, in milliseconds.
+     */
+    public void setMemoryWaitMillis(long memoryWaitMillis)
+    {
+        this.memoryWaitMillis = memoryWaitMillis;
+    }
+
+
+
+    /**
+     * Gets the number of basic steps a solver may take to plan a sprint
+     * exactly.
+     * @return  the operation budget.
+     */
+    public long getOperationBudget()
+    {
+        return this.operationBudget;
+    }
+    
+    
+    /**
+     * Sets the number of basic steps a solver may take to plan a sprint
+     * exactly.
+     * @param operationBudget  the operation budget.
+     */
+    public void setOperationBudget(long operationBudget)
+    {
+        this.operationBudget = operationBudget;
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  HELPER METHODS
+    //-------------------------------------------------------------------------
+    /**
+     * Runs a solver whose memory has been reserved, then releases the memory.
+     * @param candidate  the solver to run, with its estimate.
+     * @param problem  the sprint to plan.
+     * @return  the sprint plan, or null if the solver gave up.
+     */
+    private SprintPlan solve(Candidate candidate,
+                             SprintProblem problem)
+    {
+        logger.fine(Messages.getString("LogSprintSolver",
+                                         candidate.solver.getName(),
+                                         candidate.estimate.Operations,
+                                         candidate.estimate.Epsilon));
+        try
+        {
+            return candidate.solver.solve(problem);
+        }
+        finally
+        {
+            this.memoryBudget.release(candidate.estimate.MemoryBytes);
+        }
+    }
+    
+    
+    /**
+     * Gets the solvers that offer to plan the sprint, in the order they should
+     * be tried.
+     * @param problem  the sprint to plan.
+     * @return  the solvers with their estimates.
+     */
+    private List<Candidate> getCandidates(SprintProblem problem)
+    {
+        List<Candidate> candidates = new ArrayList<>();
+        for(ISprintSolver solver : this.solvers)
+        {
+            SolverEstimate estimate = solver.estimateCost(problem);
+            if(estimate != null)
+            {
+                candidates.add(new Candidate(solver, estimate));
+            }
+        }
+        
+        //The sort is stable, so ties stay in the order they were registered.
+        Collections.sort(candidates, new Comparator<Candidate>()
+        {
+            @Override
+            public int compare(Candidate thisCandidate, Candidate thatCandidate)
+            {
+                int order = Double.compare(thisCandidate.estimate.Epsilon,
+                                           thatCandidate.estimate.Epsilon);
+                if(order != 0)
+                {
+                    return order;
+                }
+                
+                return Long.compare(thisCandidate.estimate.Operations,
+                                    thatCandidate.estimate.Operations);
+            }
+        });
+        
+        return candidates;
+    }
+}
@@ -0,0 +1,1075 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import uk.co.bbc.iplayer.tracking.messages.Messages;
+
+/**
+ * A bounded pool of connections to the stories database, so each call to
+ * {@link StoryDB} doesn't pay for setting up and tearing down a connection.
+ * It only needs a JDBC URL (e.g. the embedded Derby driver's), so it works
+ * without a container.
+ * 
+ * Connections are handed out as wrappers whose close() returns the
+ * connection to the pool instead of closing it.  Statements opened through a
+ * wrapper are closed and any open transaction is rolled back when it is
+ * returned, so the next borrower gets a clean connection.  The pool holds at
+ * most a fixed number of connections (borrowed and idle); borrowers wait up
+ * to the maximum wait for one to come back before giving up.  Idle
+ * connections are checked before they are handed out and dropped if they
+ * are no longer valid (e.g. the database was shut down) or have been idle
+ * for too long.
+ * 
+ * Each connection also keeps the statements prepared through it (without
+ * extra options), most recently used first, so preparing the same SQL on the
+ * same connection again reuses the statement rather than compiling a new one.
+ * Closing a cached statement only clears its parameters, batch and results,
+ * and it is really closed when it falls out of the cache or its connection
+ * is closed.
+ * 
+ * Stories databases share one pool (see {@link #getShared()}) unless they are
+ * given their own data source.
+ */
+public class StoryConnectionPool implements DataSource
+{
+    /**
+     * The most connections the shared pool holds.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    
+    /**
+     * How long the shared pool makes borrowers wait for a connection before
+     * giving up, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+    
+    /**
+     * How long the shared pool keeps an idle connection, in milliseconds.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+    
+    /**
+     * How long to wait for the database to say a connection is valid, in
+     * seconds.
+     */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+    
+    /**
+     * The most statements each of the shared pool's connections caches.
+     */
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 16;
+    
+    /**
+     * The pool shared by every stories database in the JVM.
+     */
+    private static final StoryConnectionPool SHARED =
+            new StoryConnectionPool(StoryDB.DB_PROTOCOL + ": " + StoryDB.DB_NAME,
+                                    DEFAULT_MAX_CONNECTIONS,
+                                    DEFAULT_MAX_WAIT_MILLIS,
+                                    DEFAULT_IDLE_TIMEOUT_MILLIS);
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * A connection held by the pool, with its cached statements.
+     */
+    private static final class PooledConnection
+    {
+        /**
+         * The connection to the database.
+         */
+        private final Connection connection;
+        
+        /**
+         * The cached statements by their SQL, least recently used first.
+         */
+        private final Map<String, CachedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true);
+        
+        /**
+         * When the connection was last returned (from System.nanoTime()).
+         */
+        private long returnedAt;
+        
+        
+        /**
+         * Constructor
+         * @param connection  the connection to the database.
+         */
+        PooledConnection(Connection connection)
+        {
+            this.connection = connection;
+        }
+    }
+    
+    
+    /**
+     * A prepared statement kept for reuse on its connection.
+     */
+    private static final class CachedStatement
+    {
+        /**
+         * The real statement.
+         */
+        private final PreparedStatement statement;
+        
+        /**
+         * Whether a borrower currently has the statement.
+         */
+        private boolean inUse = false;
+        
+        
+        /**
+         * Constructor
+         * @param statement  the real statement.
+         */
+        CachedStatement(PreparedStatement statement)
+        {
+            this.statement = statement;
+        }
+    }
+    
+    
+    /**
+     * Handles the calls on a cached statement handed to a borrower:  close()
+     * puts it back in the cache and everything else goes to the real
+     * statement.
+     */
+    private static final class BorrowedStatement implements InvocationHandler
+    {
+        /**
+         * The cached statement.
+         */
+        private final CachedStatement cached;
+        
+        /**
+         * The borrowed connection the statement was prepared on.
+         */
+        private final Connection connection;
+        
+        /**
+         * Whether the borrower has closed the statement.
+         */
+        private boolean closed = false;
+        
+        
+        /**
+         * Constructor
+         * @param cached  the cached statement.
+         * @param connection  the borrowed connection it was prepared on.
+         */
+        BorrowedStatement(CachedStatement cached,
+                          Connection connection)
+        {
+            this.cached = cached;
+            this.connection = connection;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object invoke(Object proxy,
+                             Method method,
+                             Object[] args) throws Throwable
+        {
+            switch(method.getName())
+            {
+                case "close":
+                    this.close();
+                    return null;
+                
+                case "isClosed":
+                    return this.closed || this.cached.statement.isClosed();
+                
+                case "getConnection":
+                    return this.connection;
+                
+                case "equals":
+                    return proxy == args[0];
+                
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                
+                case "toString":
+                    return "Cached " + this.cached.statement;
+                
+                default:
+                    break;
+            }
+            
+            if(this.closed)
+            {
+                throw new SQLException(Messages.getString("DBStatementClosed"));
+            }
+            
+            try
+            {
+                return method.invoke(this.cached.statement, args);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+        
+        
+        /**
+         * Clears the statement's parameters, batch and results and puts it
+         * back in the cache.  This does nothing if it is already closed.
+         * @throws SQLException  if the statement could not be cleared.
+         */
+        void close() throws SQLException
+        {
+            if(this.closed)
+            {
+                return;
+            }
+            
+            this.closed = true;
+            ResultSet results = this.cached.statement.getResultSet();
+            if(results != null)
+            {
+                results.close();
+            }
+            this.cached.statement.clearParameters();
+            this.cached.statement.clearBatch();
+            this.cached.inUse = false;
+        }
+    }
+    
+    
+    /**
+     * Handles the calls on a borrowed connection:  close() returns it to the
+     * pool, the statements it opens are remembered so they can be closed,
+     * and everything else goes to the real connection.
+     */
+    private final class BorrowedConnection implements InvocationHandler
+    {
+        /**
+         * The real connection.
+         */
+        private final PooledConnection pooled;
+        
+        /**
+         * The uncached statements opened on the connection since it was
+         * borrowed.
+         */
+        private final List<Statement> statements = new ArrayList<>();
+        
+        /**
+         * The cached statements handed out since the connection was
+         * borrowed.
+         */
+        private final List<BorrowedStatement> cachedStatements = new ArrayList<>();
+        
+        /**
+         * Whether the borrower has closed (returned) the connection.
+         */
+        private boolean closed = false;
+        
+        
+        /**
+         * Constructor
+         * @param pooled  the real connection.
+         */
+        BorrowedConnection(PooledConnection pooled)
+        {
+            this.pooled = pooled;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object invoke(Object proxy,
+                             Method method,
+                             Object[] args) throws Throwable
+        {
+            switch(method.getName())
+            {
+                case "close":
+                    if(!this.closed)
+                    {
+                        this.closed = true;
+                        StoryConnectionPool.this.release(this.pooled,
+                                                         this.statements,
+                                                         this.cachedStatements);
+                    }
+                    return null;
+                
+                case "isClosed":
+                    return this.closed || this.pooled.connection.isClosed();
+                
+                case "equals":
+                    return proxy == args[0];
+                
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                
+                case "toString":
+                    return "Pooled " + this.pooled.connection;
+                
+                default:
+                    break;
+            }
+            
+            if(this.closed)
+            {
+                throw new SQLException(Messages.getString("DBConnectionClosed"));
+            }
+            
+            if(method.getName().equals("prepareStatement")
+                    && args.length == 1)
+            {
+                return this.prepareStatement((Connection) proxy, (String) args[0]);
+            }
+            
+            Object result;
+            try
+            {
+                result = method.invoke(this.pooled.connection, args);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+            
+            if(result instanceof Statement)
+            {
+                this.statements.add((Statement) result);
+            }
+            
+            return result;
+        }
+        
+        
+        /**
+         * Prepares a statement, reusing the connection's cached statement for
+         * the SQL if it isn't already in use.
+         * @param proxy  the borrowed connection.
+         * @param sql  the SQL to prepare.
+         * @return  the statement.
+         * @throws SQLException  if the statement could not be prepared.
+         */
+        private PreparedStatement prepareStatement(Connection proxy,
+                                                   String sql) throws SQLException
+        {
+            CachedStatement cached = this.pooled.statements.get(sql);
+            StoryConnectionPool.this.countStatement(cached != null && !cached.inUse);
+            
+            if(cached == null || cached.inUse)
+            {
+                PreparedStatement statement = this.pooled.connection.prepareStatement(sql);
+                
+                //Only cache one statement per SQL; a second one open at the
+                //  same time is closed with the connection like any other.
+                if(cached != null || !StoryConnectionPool.this.cacheStatement(this.pooled))
+                {
+                    this.statements.add(statement);
+                    return statement;
+                }
+                
+                cached = new CachedStatement(statement);
+                this.pooled.statements.put(sql, cached);
+            }
+            
+            cached.inUse = true;
+            BorrowedStatement borrowed = new BorrowedStatement(cached, proxy);
+            this.cachedStatements.add(borrowed);
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                                              new Class<?>[] {PreparedStatement.class},
+                                                              borrowed);
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  DATA MEMBERS
+    //-------------------------------------------------------------------------
+    /**
+     * The JDBC URL of the database.
+     */
+    private final String url;
+    
+    /**
+     * The most connections (borrowed and idle) the pool holds.
+     */
+    private int maxConnections;
+    
+    /**
+     * How long borrowers wait for a connection, in milliseconds.
+     */
+    private long maxWaitMillis;
+    
+    /**
+     * How long an idle connection is kept, in milliseconds.
+     */
+    private long idleTimeoutMillis;
+    
+    /**
+     * The idle connections, most recently returned first.
+     */
+    private final Deque<PooledConnection> idleConnections = new ArrayDeque<>();
+    
+    /**
+     * The number of connections open (borrowed, idle, or being opened).
+     */
+    private int openConnections = 0;
+    
+    /**
+     * The most statements each connection caches.
+     */
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+    
+    /**
+     * The number of statements prepared that were found in the cache.
+     */
+    private long statementCacheHits = 0;
+    
+    /**
+     * The number of statements prepared that weren't found in the cache (or
+     * were already in use).
+     */
+    private long statementCacheMisses = 0;
+    
+    /**
+     * Whether the pool has been closed.
+     */
+    private boolean closed = false;
+    
+    /**
+     * The log writer (see {@link DataSource#getLogWriter()}).
+     */
+    private PrintWriter logWriter = null;
+    
+    /**
+     * The login timeout in seconds (see {@link DataSource#getLoginTimeout()}).
+     */
+    private int loginTimeout = 0;
+    
+    
+    
+    /**
+     * Constructor
+     * @param url  the JDBC URL of the database.
+     * @param maxConnections  the most connections (borrowed and idle) to hold.
+     * @param maxWaitMillis  how long borrowers wait for a connection, in
+     *          milliseconds.
+     * @param idleTimeoutMillis  how long to keep an idle connection, in
+     *          milliseconds.
+     * @throws IllegalArgumentException  if maxConnections isn't positive.
+     */
+    public StoryConnectionPool(String url,
+                               int maxConnections,
+                               long maxWaitMillis,
+                               long idleTimeoutMillis)
+    {
+        this.url = url;
+        this.setMaxConnections(maxConnections);
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+    
+    
+    /**
+     * Gets the pool shared by every stories database in the JVM.  It holds
+     * up to DEFAULT_MAX_CONNECTIONS connections to the in-memory stories
+     * database.
+     * @return  the shared pool.
+     */
+    public static StoryConnectionPool getShared()
+    {
+        return SHARED;
+    }
+    
+    
+    /**
+     * Borrows a connection, waiting up to the maximum wait for one if they
+     * are all borrowed.  Closing the connection returns it to the pool.
+     * @return  the connection.
+     * @throws SQLTransientConnectionException  if no connection came back in
+     *          time.
+     * @throws SQLException  if a new connection could not be opened or the
+     *          pool has been closed.
+     */
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        long deadline = System.nanoTime() + this.maxWaitMillis * 1000000L;
+        while(true)
+        {
+            PooledConnection idle = null;
+            synchronized(this)
+            {
+                if(this.closed)
+                {
+                    throw new SQLException(Messages.getString("DBPoolClosed"));
+                }
+                
+                this.evictIdleConnections(System.nanoTime());
+                if(!this.idleConnections.isEmpty())
+                {
+                    idle = this.idleConnections.pollFirst();
+                }
+                else if(this.openConnections < this.maxConnections)
+                {
+                    //Save our place before opening the connection outside the
+                    //  lock.
+                    this.openConnections++;
+                }
+                else
+                {
+                    long remainingMillis = (deadline - System.nanoTime()) / 1000000L;
+                    if(remainingMillis <= 0)
+                    {
+                        throw new SQLTransientConnectionException(
+                                Messages.getString("DBPoolTimeout",
+                                                   this.maxWaitMillis,
+                                                   this.openConnections));
+                    }
+                    
+                    try
+                    {
+                        this.wait(remainingMillis);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new SQLTransientConnectionException(
+                                Messages.getString("DBPoolTimeout",
+                                                   this.maxWaitMillis,
+                                                   this.openConnections),
+                                e);
+                    }
+                    continue;
+                }
+            }
+            
+            if(idle != null)
+            {
+                //The database may have gone away while it was idle.
+                if(StoryConnectionPool.isValid(idle.connection))
+                {
+                    return this.wrap(idle);
+                }
+                
+                this.discard(idle);
+                continue;
+            }
+            
+            try
+            {
+                return this.wrap(new PooledConnection(DriverManager.getConnection(this.url)));
+            }
+            catch(SQLException | RuntimeException e)
+            {
+                this.discard(null);
+                throw e;
+            }
+        }
+    }
+    
+    
+    /**
+     * Connections with their own user names and passwords aren't pooled.
+     * @param username  the user name.
+     * @param password  the password.
+     * @return  never.
+     * @throws SQLFeatureNotSupportedException  always.
+     */
+    @Override
+    public Connection getConnection(String username,
+                                    String password) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+    
+    
+    /**
+     * Closes the connections that have been idle for longer than the idle
+     * timeout.  This also happens whenever a connection is borrowed.
+     */
+    public synchronized void evictIdleConnections()
+    {
+        this.evictIdleConnections(System.nanoTime());
+    }
+    
+    
+    /**
+     * Closes the idle connections and stops handing out connections.
+     * Borrowed connections are closed when they are returned.
+     */
+    public synchronized void close()
+    {
+        this.closed = true;
+        while(!this.idleConnections.isEmpty())
+        {
+            StoryConnectionPool.closeQuietly(this.idleConnections.pollFirst());
+            this.openConnections--;
+        }
+        this.notifyAll();
+    }
+    
+    
+    /**
+     * Gets the number of connections the pool holds (borrowed and idle).
+     * @return  the number of open connections.
+     */
+    public synchronized int getOpenConnections()
+    {
+        return this.openConnections;
+    }
+    
+    
+    /**
+     * Gets the number of connections waiting in the pool.
+     * @return  the number of idle connections.
+     */
+    public synchronized int getIdleConnections()
+    {
+        return this.idleConnections.size();
+    }
+    
+    
+    /**
+     * Gets the most connections (borrowed and idle) the pool holds.
+     * @return  the most connections.
+     */
+    public synchronized int getMaxConnections()
+    {
+        return this.maxConnections;
+    }
+    
+    
+    /**
+     * Sets the most connections (borrowed and idle) the pool holds.  If
+     * more are open, the extras are closed as they are returned.
+     * @param maxConnections  the most connections.
+     * @throws IllegalArgumentException  if maxConnections isn't positive.
+     */
+    public synchronized void setMaxConnections(int maxConnections)
+    {
+        if(maxConnections <= 0)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("DBPoolSizeInvalid", maxConnections));
+        }
+        
+        this.maxConnections = maxConnections;
+        this.notifyAll();
+    }
+    
+    
+    /**
+     * Gets how long borrowers wait for a connection.
+     * @return  the longest wait, in milliseconds.
+     */
+    public synchronized long getMaxWaitMillis()
+    {
+        return this.maxWaitMillis;
+    }
+    
+    
+    /**
+     * Sets how long borrowers wait for a connection.
+     * @param maxWaitMillis  the longest wait, in milliseconds.
+     */
+    public synchronized void setMaxWaitMillis(long maxWaitMillis)
+    {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+    
+    
+    /**
+     * Gets how long an idle connection is kept.
+     * @return  the idle timeout, in milliseconds.
+     */
+    public synchronized long getIdleTimeoutMillis()
+    {
+        return this.idleTimeoutMillis;
+    }
+    
+    
+    /**
+     * Sets how long an idle connection is kept.
+     * @param idleTimeoutMillis  the idle timeout, in milliseconds.
+     */
+    public synchronized void setIdleTimeoutMillis(long idleTimeoutMillis)
+    {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+    
+    
+    /**
+     * Gets the most statements each connection caches.
+     * @return  the statement cache size.
+     */
+    public synchronized int getStatementCacheSize()
+    {
+        return this.statementCacheSize;
+    }
+    
+    
+    /**
+     * Sets the most statements each connection caches.  Caches which are
+     * larger shrink as statements are prepared on their connections.
+     * @param statementCacheSize  the statement cache size (0 turns caching
+     *          off).
+     * @throws IllegalArgumentException  if statementCacheSize is negative.
+     */
+    public synchronized void setStatementCacheSize(int statementCacheSize)
+    {
+        if(statementCacheSize < 0)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("DBStatementCacheSizeNegative",
+                                       statementCacheSize));
+        }
+        
+        this.statementCacheSize = statementCacheSize;
+    }
+    
+    
+    /**
+     * Gets the number of statements prepared that were found in a
+     * connection's cache.
+     * @return  the number of cache hits.
+     */
+    public synchronized long getStatementCacheHits()
+    {
+        return this.statementCacheHits;
+    }
+    
+    
+    /**
+     * Gets the number of statements prepared that weren't found in a
+     * connection's cache (or were already in use).
+     * @return  the number of cache misses.
+     */
+    public synchronized long getStatementCacheMisses()
+    {
+        return this.statementCacheMisses;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized PrintWriter getLogWriter()
+    {
+        return this.logWriter;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setLogWriter(PrintWriter out)
+    {
+        this.logWriter = out;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getLoginTimeout()
+    {
+        return this.loginTimeout;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void setLoginTimeout(int seconds)
+    {
+        this.loginTimeout = seconds;
+    }
+    
+    
+    /**
+     * The pool doesn't log through java.util.logging.
+     * @return  never.
+     * @throws SQLFeatureNotSupportedException  always.
+     */
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        if(iface.isInstance(this))
+        {
+            return iface.cast(this);
+        }
+        
+        throw new SQLException(Messages.getString("DBNotAWrapper", iface.getName()));
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWrapperFor(Class<?> iface)
+    {
+        return iface.isInstance(this);
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  HELPER METHODS
+    //-------------------------------------------------------------------------
+    /**
+     * Wraps a connection so closing it returns it to the pool.
+     * @param pooled  the real connection.
+     * @return  the wrapped connection.
+     */
+    private Connection wrap(PooledConnection pooled)
+    {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                                   new Class<?>[] {Connection.class},
+                                                   new BorrowedConnection(pooled));
+    }
+    
+    
+    /**
+     * Counts a statement prepared through the cache.
+     * @param hit  whether it was found in the cache.
+     */
+    private synchronized void countStatement(boolean hit)
+    {
+        if(hit)
+        {
+            this.statementCacheHits++;
+        }
+        else
+        {
+            this.statementCacheMisses++;
+        }
+    }
+    
+    
+    /**
+     * Makes room for another statement in a connection's cache by closing
+     * the least recently used statements no borrower has.
+     * @param pooled  the connection.
+     * @return  true if there is room, false if the statement should not be
+     *          cached.
+     */
+    private boolean cacheStatement(PooledConnection pooled)
+    {
+        int size = this.getStatementCacheSize();
+        Iterator<CachedStatement> statements = pooled.statements.values().iterator();
+        while(pooled.statements.size() >= size && statements.hasNext())
+        {
+            CachedStatement cached = statements.next();
+            if(!cached.inUse)
+            {
+                statements.remove();
+                StoryConnectionPool.closeQuietly(cached.statement);
+            }
+        }
+        
+        return pooled.statements.size() < size;
+    }
+    
+    
+    /**
+     * Takes a connection back from a borrower.  Its uncached statements are
+     * closed, its cached ones cleared, and its transaction rolled back; if
+     * that fails, or the pool is closed or has shrunk, the connection is
+     * closed instead.
+     * @param pooled  the real connection.
+     * @param statements  the uncached statements the borrower opened.
+     * @param cachedStatements  the cached statements the borrower was given.
+     */
+    private void release(PooledConnection pooled,
+                         List<Statement> statements,
+                         List<BorrowedStatement> cachedStatements)
+    {
+        Connection connection = pooled.connection;
+        boolean reusable = true;
+        try
+        {
+            for(Statement statement : statements)
+            {
+                statement.close();
+            }
+            for(BorrowedStatement statement : cachedStatements)
+            {
+                statement.close();
+            }
+            
+            if(!connection.getAutoCommit())
+            {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+        }
+        catch(SQLException e)
+        {
+            reusable = false;
+        }
+        
+        synchronized(this)
+        {
+            if(reusable && !this.closed && this.openConnections <= this.maxConnections)
+            {
+                pooled.returnedAt = System.nanoTime();
+                this.idleConnections.addFirst(pooled);
+                this.notifyAll();
+                return;
+            }
+        }
+        
+        this.discard(pooled);
+    }
+    
+    
+    /**
+     * Closes a connection and frees its place in the pool.
+     * @param pooled  the connection, or null if it was never opened.
+     */
+    private void discard(PooledConnection pooled)
+    {
+        if(pooled != null)
+        {
+            StoryConnectionPool.closeQuietly(pooled);
+        }
+        
+        synchronized(this)
+        {
+            this.openConnections--;
+            this.notifyAll();
+        }
+    }
+    
+    
+    /**
+     * Closes the connections that have been idle for longer than the idle
+     * timeout.  The caller must hold the lock.
+     * @param now  the time (from System.nanoTime()).
+     */
+    private void evictIdleConnections(long now)
+    {
+        //The oldest connections are at the end.
+        long timeoutNanos = this.idleTimeoutMillis * 1000000L;
+        while(!this.idleConnections.isEmpty()
+                && now - this.idleConnections.peekLast().returnedAt >= timeoutNanos)
+        {
+            StoryConnectionPool.closeQuietly(this.idleConnections.pollLast());
+            this.openConnections--;
+        }
+    }
+    
+    
+    /**
+     * Checks whether a connection can still be used.
+     * @param connection  the connection.
+     * @return  true if it is valid.
+     */
+    private static boolean isValid(Connection connection)
+    {
+        try
+        {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        }
+        catch(SQLException e)
+        {
+            return false;
+        }
+    }
+    
+    
+    /**
+     * Closes a connection and its cached statements, ignoring any errors (it
+     * is being thrown away).
+     * @param pooled  the connection.
+     */
+    private static void closeQuietly(PooledConnection pooled)
+    {
+        for(CachedStatement cached : pooled.statements.values())
+        {
+            StoryConnectionPool.closeQuietly(cached.statement);
+        }
+        pooled.statements.clear();
+        
+        try
+        {
+            pooled.connection.close();
+        }
+        catch(SQLException e)
+        {
+            //We are done with it anyway.
+        }
+    }
+    
+    
+    /**
+     * Closes a statement, ignoring any errors (it is being thrown away).
+     * @param statement  the statement.
+     */
+    private static void closeQuietly(Statement statement)
+    {
+        try
+        {
+            statement.close();
+        }
+        catch(SQLException e)
+        {
+            //We are done with it anyway.
+        }
+    }
+}
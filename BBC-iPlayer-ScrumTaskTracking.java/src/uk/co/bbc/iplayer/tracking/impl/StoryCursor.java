@@ -0,0 +1,345 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+import uk.co.bbc.iplayer.tracking.messages.Messages;
+
+/**
+ * Reads the stories in the stories database one at a time, in the same order
+ * as {@link StoryDB#getAllStoriesInPriorityOrder()}, straight from an open
+ * result set.  Only a fetch's worth of rows is held at once, so callers that
+ * only need to see each story once (e.g. {@link WeightClassPruner}) never
+ * have the whole backlog on the heap.
+ * 
+ * The cursor only moves forward.  Callers can either step through the rows
+ * with {@link #advance()} and read the columns of the current row, or use it
+ * as an iterator of stories.  It holds a connection open until it is closed
+ * (which happens when the last row has been read, or at the end of a
+ * try-with-resources block).
+ */
+public class StoryCursor implements Iterator<Story>, AutoCloseable
+{
+    /**
+     * The connection the results are read over.
+     */
+    private final Connection connection;
+    
+    /**
+     * The statement that produced the results.
+     */
+    private final Statement statement;
+    
+    /**
+     * The results.
+     */
+    private final ResultSet results;
+    
+    /**
+     * Whether the cursor has been closed.
+     */
+    private boolean closed = false;
+    
+    /**
+     * Whether we have moved to the row the iterator will return next (and
+     * hasRow says whether there is one).
+     */
+    private boolean peeked = false;
+    
+    /**
+     * Whether the cursor is on a row.
+     */
+    private boolean hasRow = false;
+    
+    /**
+     * The id of the current row.
+     */
+    private String id;
+    
+    /**
+     * The points of the current row.
+     */
+    private int points;
+    
+    /**
+     * The priority of the current row.
+     */
+    private int priority;
+    
+    /**
+     * The OID of the current row.
+     */
+    private long oid;
+    
+    
+    
+    /**
+     * Constructor.  Runs the query, fetching the given number of rows at a
+     * time.  The cursor owns the connection from then on.
+     * @param connection  the connection to read the results over.
+     * @param sql  the query.  It must return the OID and the story fields.
+     * @param fetchSize  the number of rows to fetch from the database at a
+     *          time (0 lets the driver decide).
+     * @throws SQLException  if the query could not be run.  The connection is
+     *          closed.
+     */
+    StoryCursor(Connection connection,
+                String sql,
+                int fetchSize) throws SQLException
+    {
+        this.connection = connection;
+        try
+        {
+            this.statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                                        ResultSet.CONCUR_READ_ONLY);
+            this.statement.setFetchSize(fetchSize);
+            this.results = this.statement.executeQuery(sql);
+        }
+        catch(SQLException e)
+        {
+            try
+            {
+                connection.close();
+            }
+            catch(SQLException closeError)
+            {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+    }
+    
+    
+    /**
+     * Moves to the next row.
+     * @return  true if there is a row, or false if there are no more (the
+     *          cursor is then closed).
+     * @throws TaskTrackerException  if there was a problem reading the row.
+     */
+    public boolean advance() throws TaskTrackerException
+    {
+        //The iterator may have already moved to the row.
+        if(this.peeked)
+        {
+            this.peeked = false;
+            return this.hasRow;
+        }
+        
+        if(this.closed)
+        {
+            this.hasRow = false;
+            return false;
+        }
+        
+        try
+        {
+            this.hasRow = this.results.next();
+            if(!this.hasRow)
+            {
+                this.close();
+                return false;
+            }
+            
+            this.oid = this.results.getLong(StoryDB.STORY_TABLE_PRIMARY_KEY);
+            this.id = this.results.getString(StoryDB.STORY_FIELDS.ID.toString());
+            this.points = this.results.getInt(StoryDB.STORY_FIELDS.POINTS.toString());
+            this.priority = this.results.getInt(StoryDB.STORY_FIELDS.PRIORITY.toString());
+            return true;
+        }
+        catch(SQLException e)
+        {
+            TaskTrackerException error = new TaskTrackerException(e);
+            try
+            {
+                this.close();
+            }
+            catch(TaskTrackerException closeError)
+            {
+                error.addSuppressed(closeError);
+            }
+            throw error;
+        }
+    }
+    
+    
+    /**
+     * Gets the id of the current row.
+     * @return  the id.
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+    
+    
+    /**
+     * Gets the points of the current row.
+     * @return  the points.
+     */
+    public int getPoints()
+    {
+        return this.points;
+    }
+    
+    
+    /**
+     * Gets the priority of the current row.
+     * @return  the priority.
+     */
+    public int getPriority()
+    {
+        return this.priority;
+    }
+    
+    
+    /**
+     * Gets the OID of the current row.
+     * @return  the OID.
+     */
+    public long getOid()
+    {
+        return this.oid;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     * @throws IllegalStateException  if there was a problem reading the row.
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if(!this.peeked)
+        {
+            try
+            {
+                this.hasRow = this.advance();
+            }
+            catch(TaskTrackerException e)
+            {
+                throw new IllegalStateException(
+                        Messages.getString("DBCursorFailed"), e);
+            }
+            this.peeked = true;
+        }
+        
+        return this.hasRow;
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     * @throws IllegalStateException  if there was a problem reading the row.
+     */
+    @Override
+    public Story next()
+    {
+        if(!this.hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        
+        this.peeked = false;
+        return new Story(this.id, this.points, this.priority);
+    }
+    
+    
+    /**
+     * The stories can't be removed through the cursor.
+     * @throws UnsupportedOperationException  always.
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+    
+    
+    /**
+     * Closes the results, the statement and the connection.  Each is closed
+     * even if closing the one before failed.  Closing the cursor again does
+     * nothing.
+     * @throws TaskTrackerException  if there was a problem closing any of
+     *          them.  Any later problems are suppressed by the first.
+     */
+    @Override
+    public void close() throws TaskTrackerException
+    {
+        if(this.closed)
+        {
+            return;
+        }
+        
+        this.closed = true;
+        SQLException error = null;
+        try
+        {
+            try
+            {
+                this.results.close();
+            }
+            catch(SQLException e)
+            {
+                error = e;
+            }
+            
+            try
+            {
+                this.statement.close();
+            }
+            catch(SQLException e)
+            {
+                error = StoryCursor.addError(error, e);
+            }
+        }
+        finally
+        {
+            try
+            {
+                this.connection.close();
+            }
+            catch(SQLException e)
+            {
+                error = StoryCursor.addError(error, e);
+            }
+        }
+        
+        if(error != null)
+        {
+            throw new TaskTrackerException(error);
+        }
+    }
+    
+    
+    /**
+     * Adds an error to the first one found while closing.
+     * @param first  the first error, or null if there wasn't one.
+     * @param error  the error just found.
+     * @return  the first error.
+     */
+    private static SQLException addError(SQLException first,
+                                         SQLException error)
+    {
+        if(first == null)
+        {
+            return error;
+        }
+        
+        first.addSuppressed(error);
+        return first;
+    }
+}
@@ -8,29 +8,43 @@
  */
 package uk.co.bbc.iplayer.tracking.impl;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
 
 import org.apache.commons.lang3.StringUtils;
 
 import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
 import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
 import uk.co.bbc.iplayer.tracking.messages.Messages;
 
 /**
  * Encapsulates the database functions.
  * 
- * NOTE:  If we were running in a web server environment, this would use a 
- *      connection pool provided by the web server rather than raw connections.
- *      This would allow the program to scale.  Because we are not currently 
- *      running within a web server environment, I am opening and closing 
- *      connections here which will inhibit scalability.
+ * NOTE:  If we were running in a web server environment, this would use a
+ *      connection pool provided by the web server.  Because we are not
+ *      currently running within a web server environment, connections come
+ *      from the shared {@link StoryConnectionPool} unless a data source is
+ *      given to the constructor.  Closing a connection returns it to the pool,
+ *      and the pool caches the statements prepared on each connection, so
+ *      the constant SQL below is only compiled once per connection.
  */
 public class StoryDB
 {
@@ -112,12 +126,34 @@ public class StoryDB
     public static final String STORY_TABLE_PRIMARY_KEY = "OID";
     
     
+    /**
+     * The name of the index the stories are read through when planning.  It
+     * holds every column GET_ALL_STORIES needs, in the order it sorts them,
+     * so the stories come straight from the index without a sort.
+     */
+    public static final String STORY_TABLE_PLANNING_INDEX = "StoriesByPriority";
+    
+    
     /**
      * The size of the ID field in the database.
      */
     public static final int ID_FIELD_SIZE = Backlog.MAX_ID_LENGTH;
     
     
+    /**
+     * The number of rows a {@link StoryCursor} fetches from the database at a
+     * time unless told otherwise.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    
+    
+    /**
+     * The number of stories {@link #addStories(List)} inserts and commits at
+     * a time unless told otherwise.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    
+    
 //    //-------------------------------------------------------------------------
 //    //  SQL ERROR CODES
 //    //-------------------------------------------------------------------------
@@ -129,6 +165,41 @@ public class StoryDB
     //-------------------------------------------------------------------------
     //  SQL CONSTANTS
     //-------------------------------------------------------------------------
+    /**
+     * The SQLState class of integrity constraint violations, such as a
+     * duplicate key.
+     */
+    private static final String SQL_STATE_CLASS_CONSTRAINT_VIOLATION = "23";
+    
+    /**
+     * SQL to create the stories table.
+     */
+    private static final String CREATE_STORY_TABLE = "CREATE TABLE "
+            + STORY_TABLE
+            + "( " + STORY_TABLE_PRIMARY_KEY
+                + " INTEGER GENERATED ALWAYS AS IDENTITY"
+                + " (START WITH 1, INCREMENT BY 1), "
+            + " " + STORY_FIELDS.ID.toString() + " varchar(" + ID_FIELD_SIZE + ") UNIQUE,"
+            + " " + STORY_FIELDS.POINTS.toString() + " int NOT NULL"
+                + " CHECK (" + STORY_FIELDS.POINTS.toString() + ">0)"
+                + ","
+            + " " + STORY_FIELDS.PRIORITY.toString() + " int NOT NULL"
+                + " CHECK (" + STORY_FIELDS.PRIORITY.toString() + ">0)"
+            + ")";
+    
+    
+    /**
+     * SQL to create the planning index (see STORY_TABLE_PLANNING_INDEX).
+     */
+    private static final String CREATE_PLANNING_INDEX = "CREATE INDEX "
+            + STORY_TABLE_PLANNING_INDEX
+            + " ON " + STORY_TABLE
+            + " (" + STORY_FIELDS.PRIORITY.toString() + ","
+            + STORY_TABLE_PRIMARY_KEY + ","
+            + STORY_FIELDS.POINTS.toString() + ","
+            + STORY_FIELDS.ID.toString() + ")";
+
+
     /**
      * SQL to add a story into the DB.
      */
@@ -155,8 +226,9 @@ public class StoryDB
     
     /**
      * SQL to select all stories from the DB.  This list will be returned in
-     * priority order (from lowest number to highest) with ties ordered by age 
-     * in database.
+     * priority order (from lowest number to highest) with ties ordered by age
+     * in database.  The planning index lets the database read them in this
+     * order rather than sorting them.
      */
     private static final String GET_ALL_STORIES = "SELECT " 
             + StringUtils.join(STORY_FIELDS.values(), ",") 
@@ -165,31 +237,210 @@ public class StoryDB
             + StoryDB.STORY_TABLE_PRIMARY_KEY + " ASC";
     
     
-    //This doesn't work on Derby.
-//    /**
-//     * SQL to select all stories from the DB (with paging support).  This list 
-//     * will be returned in priority order (from lowest number to highest) with 
-//     * ties ordered by age in database (the OID).
-//     */
-//    private static final String PAGE_ALL_STORIES = "SELECT " 
-//            + StringUtils.join(STORY_FIELDS.values(), ",") 
-//            + " FROM "
-//            + "(SELECT ROW_NUMBER() OVER ("
-//            + " ORDER BY " + STORY_FIELDS.PRIORITY.toString() + " ASC," 
-//            + StoryDB.STORY_TABLE_PRIMARY_KEY + " ASC"
-//            + ") AS ROWNUM"
-//            + ", T.*"
-//            + " FROM " + STORY_TABLE + " T)" 
-//            + "WHERE ROWNUM BETWEEN ? AND ?";
+    /**
+     * SQL to select the columns of all stories (including the OID) from the
+     * DB, in the same order as GET_ALL_STORIES.
+     */
+    private static final String GET_ALL_STORY_COLUMNS = "SELECT "
+            + StoryDB.STORY_TABLE_PRIMARY_KEY + ","
+            + StringUtils.join(STORY_FIELDS.values(), ",")
+            + " FROM " + STORY_TABLE
+            + " ORDER BY " + STORY_FIELDS.PRIORITY.toString() + " ASC,"
+            + StoryDB.STORY_TABLE_PRIMARY_KEY + " ASC";
+    
+    
+    /**
+     * SQL to select the columns of the stories after a given story with the
+     * same priority, in the same order as GET_ALL_STORIES, up to a limit.
+     */
+    private static final String GET_STORIES_AFTER_OID = "SELECT "
+            + StoryDB.STORY_TABLE_PRIMARY_KEY + ","
+            + StringUtils.join(STORY_FIELDS.values(), ",")
+            + " FROM " + STORY_TABLE
+            + " WHERE " + STORY_FIELDS.PRIORITY.toString() + " = ?"
+            + " AND " + StoryDB.STORY_TABLE_PRIMARY_KEY + " > ?"
+            + " ORDER BY " + STORY_FIELDS.PRIORITY.toString() + " ASC,"
+            + StoryDB.STORY_TABLE_PRIMARY_KEY + " ASC"
+            + " FETCH FIRST ? ROWS ONLY";
     
     
     /**
-     * Gets the number of stories in the table.  This is for testing and debug.
+     * SQL to select the columns of the stories with a later priority than a
+     * given one, in the same order as GET_ALL_STORIES, up to a limit.
+     */
+    private static final String GET_STORIES_AFTER_PRIORITY = "SELECT "
+            + StoryDB.STORY_TABLE_PRIMARY_KEY + ","
+            + StringUtils.join(STORY_FIELDS.values(), ",")
+            + " FROM " + STORY_TABLE
+            + " WHERE " + STORY_FIELDS.PRIORITY.toString() + " > ?"
+            + " ORDER BY " + STORY_FIELDS.PRIORITY.toString() + " ASC,"
+            + StoryDB.STORY_TABLE_PRIMARY_KEY + " ASC"
+            + " FETCH FIRST ? ROWS ONLY";
+    
+    
+    /**
+     * Gets the number of stories in the table.  Derby has to scan the table
+     * (or an index) to count them.
      */
     private static final String GET_STORY_COUNT = "SELECT COUNT(*) FROM " 
                                                     + STORY_TABLE;
     
     
+    //=========================================================================
+    //  DATA MEMBERS
+    //=========================================================================
+    /**
+     * The number of rows a {@link StoryCursor} fetches at a time.
+     */
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    
+    /**
+     * The number of stories {@link #addStories(List)} inserts and commits at
+     * a time.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    
+    /**
+     * Where connections to the database come from.
+     */
+    private final DataSource dataSource;
+    
+    /**
+     * Whether the schema of the data source has been brought up to date.
+     */
+    private volatile boolean schemaMigrated = false;
+    
+    /**
+     * The data sources whose schemas have been brought up to date, so each
+     * one is only checked once however many StoryDBs use it.
+     */
+    private static final Set<DataSource> MIGRATED_DATA_SOURCES =
+            Collections.newSetFromMap(new WeakHashMap<DataSource, Boolean>());
+    
+    /**
+     * The number of changes made to the stories through each data source.
+     */
+    private static final Map<DataSource, AtomicLong> CHANGE_COUNTS = new WeakHashMap<>();
+    
+    /**
+     * The number of changes made to the stories through the data source.
+     */
+    private final AtomicLong changeCount;
+    
+    
+    
+    /**
+     * Constructor - uses the shared connection pool.
+     */
+    public StoryDB()
+    {
+        this(StoryConnectionPool.getShared());
+    }
+    
+    
+    /**
+     * Constructor
+     * @param dataSource  where connections to the database come from.
+     */
+    public StoryDB(DataSource dataSource)
+    {
+        this.dataSource = dataSource;
+        
+        //Every StoryDB using the data source shares its count.
+        synchronized(CHANGE_COUNTS)
+        {
+            AtomicLong sharedCount = CHANGE_COUNTS.get(dataSource);
+            if(sharedCount == null)
+            {
+                sharedCount = new AtomicLong();
+                CHANGE_COUNTS.put(dataSource, sharedCount);
+            }
+            this.changeCount = sharedCount;
+        }
+    }
+
+
+    //=========================================================================
+    //  SCHEMA METHODS
+    //=========================================================================
+    /**
+     * Brings the database's schema up to date, creating the stories table
+     * and its indexes if they are missing.  A table created by an older
+     * version (without the planning index) gets the index added.  This does
+     * nothing to an up-to-date database, so it is safe to call on start-up.
+     * 
+     * The schema is brought up to date the first time a data source is used,
+     * so this only needs to be called if the database may have changed since
+     * (e.g. it was dropped and created again).
+     * @throws TaskTrackerException  if the schema could not be read or
+     *              changed.
+     */
+    public void migrateSchema() throws TaskTrackerException
+    {
+        try
+        {
+            synchronized(MIGRATED_DATA_SOURCES)
+            {
+                StoryDB.migrateSchema(this.dataSource);
+                MIGRATED_DATA_SOURCES.add(this.dataSource);
+            }
+            this.schemaMigrated = true;
+        }
+        catch(SQLException e)
+        {
+            throw new TaskTrackerException(e);
+        }
+    }
+    
+    
+    /**
+     * Brings the data source's schema up to date if no StoryDB has done so
+     * yet.
+     * @throws SQLException  if the schema could not be read or changed.
+     */
+    private void migrateSchemaOnFirstUse() throws SQLException
+    {
+        if(this.schemaMigrated)
+        {
+            return;
+        }
+        
+        synchronized(MIGRATED_DATA_SOURCES)
+        {
+            if(!MIGRATED_DATA_SOURCES.contains(this.dataSource))
+            {
+                StoryDB.migrateSchema(this.dataSource);
+                MIGRATED_DATA_SOURCES.add(this.dataSource);
+            }
+        }
+        this.schemaMigrated = true;
+    }
+    
+    
+    /**
+     * Creates the stories table and its indexes if they are missing.
+     * @param dataSource  the data source to bring up to date.
+     * @throws SQLException  if the schema could not be read or changed.
+     */
+    private static void migrateSchema(DataSource dataSource) throws SQLException
+    {
+        try(Connection connection = dataSource.getConnection();
+            Statement schemaStatement = connection.createStatement())
+        {
+            DatabaseMetaData metaData = connection.getMetaData();
+            if(!StoryDB.hasTable(metaData, STORY_TABLE))
+            {
+                schemaStatement.execute(CREATE_STORY_TABLE);
+            }
+            
+            if(!StoryDB.hasIndex(metaData, STORY_TABLE, STORY_TABLE_PLANNING_INDEX))
+            {
+                schemaStatement.execute(CREATE_PLANNING_INDEX);
+            }
+        }
+    }
+    
+    
     //=========================================================================
     //  DB UPDATE METHODS
     //=========================================================================
@@ -205,11 +456,7 @@ public class StoryDB
             //Get our insert SQL statement ready.  Using a prepared statement
             //  protects us from SQL injection.
             PreparedStatement addStatement = connection.prepareStatement(ADD_STORY);
-            addStatement.setString(STORY_FIELDS.ID.getFieldNumber(), story.Id);
-            addStatement.setInt(STORY_FIELDS.POINTS.getFieldNumber(),
-                                story.Points);
-            addStatement.setInt(STORY_FIELDS.PRIORITY.getFieldNumber(),
-                                story.Priority);
+            StoryDB.setStory(addStatement, story);
             
             //Execute the statement
             boolean isResultSet = addStatement.execute();
@@ -230,6 +477,100 @@ public class StoryDB
         {
             throw new TaskTrackerException(e);
         }
+        finally
+        {
+            //Even a failed change may have changed some of the stories.
+            this.changeCount.incrementAndGet();
+        }
+    }
+    
+    
+    /**
+     * Adds several stories to the stories database.  The inserts are sent in
+     * batches, and each batch is committed in one transaction, so loading a
+     * large backlog doesn't pay for a connection and a commit per story.  A
+     * story that breaks a constraint (e.g. because its Id is already taken) is
+     * reported rather than stopping the rest.
+     * @param stories  the stories to add.
+     * @return  the errors for the stories that couldn't be added, by their
+     *              index in stories.  This is empty if every story was added.
+     * @throws TaskTrackerException  if the database couldn't be used.  The
+     *              batches committed before the error stay added.
+     */
+    public SortedMap<Integer, TaskTrackerException> addStories(List<Story> stories) throws TaskTrackerException
+    {
+        SortedMap<Integer, TaskTrackerException> failures = new TreeMap<>();
+        try(Connection connection = this.openConnection())
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                PreparedStatement addStatement = connection.prepareStatement(ADD_STORY);
+                for(int start = 0; start < stories.size(); start += this.batchSize)
+                {
+                    List<Story> batch = stories.subList(start,
+                                                        Math.min(start + this.batchSize,
+                                                                 stories.size()));
+                    try
+                    {
+                        for(Story story : batch)
+                        {
+                            StoryDB.setStory(addStatement, story);
+                            addStatement.addBatch();
+                        }
+                        addStatement.executeBatch();
+                    }
+                    catch(BatchUpdateException e)
+                    {
+                        //Drivers differ in whether they carry on after a
+                        //  failed insert, so we start the batch again one story
+                        //  at a time to find out which ones fail.  A failed
+                        //  insert only undoes itself, not the transaction.
+                        connection.rollback();
+                        addStatement.clearBatch();
+                        for(int k = 0; k < batch.size(); k++)
+                        {
+                            StoryDB.setStory(addStatement, batch.get(k));
+                            try
+                            {
+                                addStatement.executeUpdate();
+                            }
+                            catch(SQLException storyError)
+                            {
+                                //Anything else is a problem with the database,
+                                //  so the batch is rolled back.
+                                String sqlState = storyError.getSQLState();
+                                if(sqlState == null
+                                   || !sqlState.startsWith(SQL_STATE_CLASS_CONSTRAINT_VIOLATION))
+                                {
+                                    throw storyError;
+                                }
+                                
+                                failures.put(start + k, new TaskTrackerException(storyError));
+                            }
+                        }
+                    }
+                    
+                    connection.commit();
+                }
+            }
+            catch(SQLException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+        }
+        catch(SQLException e)
+        {
+            throw new TaskTrackerException(e);
+        }
+        finally
+        {
+            //Even a failed change may have changed some of the stories.
+            this.changeCount.incrementAndGet();
+        }
+        
+        return failures;
     }
     
     
@@ -266,6 +607,56 @@ public class StoryDB
         {
             throw new TaskTrackerException(e);
         }
+        finally
+        {
+            //Even a failed change may have changed some of the stories.
+            this.changeCount.incrementAndGet();
+        }
+    }
+    
+    
+    /**
+     * Deletes several stories from the stories database in one transaction.
+     * If any of them can't be deleted, none of them are.
+     * @param storyIds  the ids of the stories to delete.
+     * @throws TaskTrackerException  if a story wasn't in the database or an
+     *              error occurred during the delete.
+     */
+    public void deleteStories(Collection<String> storyIds) throws TaskTrackerException
+    {
+        try(Connection connection = this.openConnection())
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                PreparedStatement deleteStatement = connection.prepareStatement(DELETE_STORY);
+                for(String storyId : storyIds)
+                {
+                    deleteStatement.setString(STORY_FIELDS.ID.getFieldNumber(), storyId);
+                    if(deleteStatement.executeUpdate() != 1)
+                    {
+                        throw new TaskTrackerException(
+                                Messages.getString("DBStoryMissing", storyId));
+                    }
+                }
+                
+                connection.commit();
+            }
+            catch(SQLException | TaskTrackerException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+        }
+        catch(SQLException e)
+        {
+            throw new TaskTrackerException(e);
+        }
+        finally
+        {
+            //Even a failed change may have changed some of the stories.
+            this.changeCount.incrementAndGet();
+        }
     }
     
     
@@ -316,8 +707,8 @@ public class StoryDB
     
     
     /**
-     * Gets a list of all stories in the stories database ordered by priority 
-     * (low number to high number) then the table's primary key (in insertion 
+     * Gets a list of all stories in the stories database ordered by priority
+     * (low number to high number) then the table's primary key (in insertion
      * order).
      * @throws TaskTrackerException  if an error occurred during the retrieval.
      */
@@ -350,57 +741,186 @@ public class StoryDB
     }
     
     
-//    /**
-//     * Gets a list of the stories in the stories database in range [lowBound, 
-//     * highBound] ordered by priority (low number to high number) then the 
-//     * table's primary key (in insertion order).
-//     * @param lowBound  the lower bound of the results set.
-//     * @param highBound  the high bound of the resuls set.
-//     * @throws TaskTrackerException  if an error occurred during the retrieval.
-//     */
-//    public List<Story> pageThroughStories(int lowBound, 
-//                                          int highBound) throws TaskTrackerException
-//    {
-//        //Flip them if they come in in incorrect order.
-//        if(lowBound > highBound)
-//        {
-//            int temp = highBound;
-//            highBound = lowBound;
-//            lowBound = temp;
-//        }
-//        
-//        try(Connection connection = this.openConnection())
-//        {
-//            PreparedStatement getStatement = connection.prepareStatement(PAGE_ALL_STORIES);
-//            getStatement.setInt(1, lowBound);
-//            getStatement.setInt(2, highBound);
-//
-//            //Execute the statement
-//            ResultSet results = getStatement.executeQuery();
-//            
-//            ArrayList<Story> allStories = new ArrayList<>();
-//            while(results.next())
-//            {
-//                Story story = new Story();
-//                story.Id = results.getString(STORY_FIELDS.ID.toString());
-//                story.Points = results.getInt(STORY_FIELDS.POINTS.toString());
-//                story.Priority = results.getInt(STORY_FIELDS.PRIORITY.toString());
-//                
-//                allStories.add(story);
-//            }
-//            
-//            return allStories;
-//        }
-//        catch(SQLException e)
-//        {
-//            throw new TaskTrackerException(e);
-//        }
-//    }
-    
-    
-    
-    /**
-     * Gets a list of all stories in the stories database
+    /**
+     * Gets all stories in the stories database, in the same order as
+     * {@link #getAllStoriesInPriorityOrder()}, as a batch of columns.  The
+     * columns are filled straight from the results, so no {@link Story}
+     * objects are made until the caller asks for them.
+     * @return  the stories.
+     * @throws TaskTrackerException  if an error occurred during the retrieval.
+     */
+    public StoryBatch getStoryBatchInPriorityOrder() throws TaskTrackerException
+    {
+        try(Connection connection = this.openConnection())
+        {
+            Statement getStatement = connection.createStatement();
+            
+            //Execute the statement
+            ResultSet results = getStatement.executeQuery(GET_ALL_STORY_COLUMNS);
+            
+            StoryBatch allStories = new StoryBatch();
+            StoryDB.addStories(allStories, results);
+            
+            return allStories;
+        }
+        catch(SQLException e)
+        {
+            throw new TaskTrackerException(e);
+        }
+    }
+    
+    
+    /**
+     * Gets the stories that come after a given story in the same order as
+     * {@link #getAllStoriesInPriorityOrder()}, up to a limit, as a batch of
+     * columns.  The stories are read from the planning index starting at the
+     * given story, so this only reads the stories it returns however far
+     * into the backlog it starts.
+     * @param priority  the priority of the story to start after (0 to start
+     *              at the beginning).
+     * @param oid  the OID of the story to start after.
+     * @param limit  the most stories to get.
+     * @return  the stories.
+     * @throws IllegalArgumentException  if limit isn't positive.
+     * @throws TaskTrackerException  if an error occurred during the retrieval.
+     */
+    public StoryBatch getStoryBatchAfter(int priority,
+                                         long oid,
+                                         int limit) throws TaskTrackerException
+    {
+        if(limit <= 0)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("DBPageSizeInvalid", limit));
+        }
+        
+        try(Connection connection = this.openConnection())
+        {
+            //Derby can't compare (PRIORITY, OID) pairs, and ORing the two
+            //  conditions together makes it scan the rest of the table.  So we
+            //  read the rest of the story's priority and then the later
+            //  priorities as two ranges of the index.
+            StoryBatch stories = new StoryBatch();
+            PreparedStatement samePriorityStatement = connection.prepareStatement(GET_STORIES_AFTER_OID);
+            samePriorityStatement.setInt(1, priority);
+            samePriorityStatement.setLong(2, oid);
+            samePriorityStatement.setInt(3, limit);
+            StoryDB.addStories(stories, samePriorityStatement.executeQuery());
+            
+            if(stories.size() < limit)
+            {
+                PreparedStatement laterPriorityStatement = connection.prepareStatement(GET_STORIES_AFTER_PRIORITY);
+                laterPriorityStatement.setInt(1, priority);
+                laterPriorityStatement.setInt(2, limit - stories.size());
+                StoryDB.addStories(stories, laterPriorityStatement.executeQuery());
+            }
+            
+            return stories;
+        }
+        catch(SQLException e)
+        {
+            throw new TaskTrackerException(e);
+        }
+    }
+    
+    
+    /**
+     * Opens a cursor over all stories in the stories database, in the same
+     * order as {@link #getAllStoriesInPriorityOrder()}.  The stories are read
+     * as the cursor moves, a fetch's worth of rows at a time (see
+     * {@link #setFetchSize(int)}), so the whole table is never held at once.
+     * The caller must close the cursor if it doesn't read to the end.
+     * @return  the cursor, before the first story.
+     * @throws TaskTrackerException  if an error occurred running the query.
+     */
+    public StoryCursor openStoryCursor() throws TaskTrackerException
+    {
+        try
+        {
+            return new StoryCursor(this.openConnection(),
+                                   GET_ALL_STORY_COLUMNS,
+                                   this.fetchSize);
+        }
+        catch(SQLException e)
+        {
+            throw new TaskTrackerException(e);
+        }
+    }
+    
+    
+    /**
+     * Gets the number of rows a cursor fetches from the database at a time.
+     * @return  the fetch size.
+     */
+    public int getFetchSize()
+    {
+        return this.fetchSize;
+    }
+    
+    
+    /**
+     * Sets the number of rows a cursor fetches from the database at a time.
+     * Bigger fetches mean fewer round trips but more rows on the heap at once.
+     * @param fetchSize  the fetch size (0 lets the driver decide).
+     * @throws IllegalArgumentException  if the fetch size is negative.
+     */
+    public void setFetchSize(int fetchSize)
+    {
+        if(fetchSize < 0)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("DBFetchSizeNegative", fetchSize));
+        }
+        
+        this.fetchSize = fetchSize;
+    }
+    
+    
+    /**
+     * Gets the number of stories {@link #addStories(List)} inserts and
+     * commits at a time.
+     * @return  the batch size.
+     */
+    public int getBatchSize()
+    {
+        return this.batchSize;
+    }
+    
+    
+    /**
+     * Sets the number of stories {@link #addStories(List)} inserts and
+     * commits at a time.  Bigger batches mean fewer round trips and commits,
+     * but a failed story means re-sending more of them one at a time.
+     * @param batchSize  the batch size.
+     * @throws IllegalArgumentException  if the batch size isn't positive.
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if(batchSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                    Messages.getString("DBBatchSizeInvalid", batchSize));
+        }
+        
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Gets the number of changes made to the stories (adds and deletes,
+     * including ones that failed) through any StoryDB using the same data
+     * source.  This doesn't touch the database, so callers can cheaply check
+     * whether something they worked out from the stories is still up to date.
+     * @return  the number of changes.
+     */
+    public long getChangeCount()
+    {
+        return this.changeCount.get();
+    }
+    
+    
+    /**
+     * Gets the number of stories in the stories database
      * @throws TaskTrackerException  if an error occurred during the retrieval.
      */
     public int getStoryCount() throws TaskTrackerException
@@ -435,14 +955,102 @@ public class StoryDB
     //  HELPER METHODS
     //=========================================================================
     /**
-     * Opens a connection to the database
+     * Opens a connection to the database (closing it gives it back to the
+     * data source).  The schema is brought up to date the first time.
      * @return  the connection to the database
      * @throws SQLException  if there was a problem with the connection.
      */
     private Connection openConnection() throws SQLException
     {
-        return DriverManager.getConnection(StoryDB.DB_PROTOCOL
-                                               + ": "
-                                               + StoryDB.DB_NAME);
+        this.migrateSchemaOnFirstUse();
+        return this.dataSource.getConnection();
+    }
+    
+    
+    /**
+     * Sets the parameters of ADD_STORY to a story's fields.
+     * @param addStatement  the prepared ADD_STORY statement.
+     * @param story  the story.
+     * @throws SQLException  if the parameters could not be set.
+     */
+    private static void setStory(PreparedStatement addStatement,
+                                 Story story) throws SQLException
+    {
+        addStatement.setString(STORY_FIELDS.ID.getFieldNumber(), story.Id);
+        addStatement.setInt(STORY_FIELDS.POINTS.getFieldNumber(),
+                            story.Points);
+        addStatement.setInt(STORY_FIELDS.PRIORITY.getFieldNumber(),
+                            story.Priority);
+    }
+    
+    
+    /**
+     * Adds the stories in a result set to a batch.
+     * @param stories  the batch.
+     * @param results  the stories (with their OIDs).
+     * @throws SQLException  if the results could not be read.
+     */
+    private static void addStories(StoryBatch stories,
+                                   ResultSet results) throws SQLException
+    {
+        while(results.next())
+        {
+            stories.add(results.getString(STORY_FIELDS.ID.toString()),
+                        results.getInt(STORY_FIELDS.POINTS.toString()),
+                        results.getInt(STORY_FIELDS.PRIORITY.toString()),
+                        results.getLong(StoryDB.STORY_TABLE_PRIMARY_KEY));
+        }
+    }
+    
+    
+    /**
+     * Checks whether the database has a table.
+     * @param metaData  the database's metadata.
+     * @param table  the name of the table (as it appears in our SQL).
+     * @return  true if the table exists.
+     * @throws SQLException  if the metadata could not be read.
+     */
+    private static boolean hasTable(DatabaseMetaData metaData,
+                                    String table) throws SQLException
+    {
+        //Unquoted names are stored in upper case.
+        try(ResultSet tables = metaData.getTables(null,
+                                                  null,
+                                                  table.toUpperCase(),
+                                                  null))
+        {
+            return tables.next();
+        }
+    }
+    
+    
+    /**
+     * Checks whether a table has an index.
+     * @param metaData  the database's metadata.
+     * @param table  the name of the table (as it appears in our SQL).
+     * @param index  the name of the index (as it appears in our SQL).
+     * @return  true if the index exists.
+     * @throws SQLException  if the metadata could not be read.
+     */
+    private static boolean hasIndex(DatabaseMetaData metaData,
+                                    String table,
+                                    String index) throws SQLException
+    {
+        try(ResultSet indexes = metaData.getIndexInfo(null,
+                                                      null,
+                                                      table.toUpperCase(),
+                                                      false,
+                                                      true))
+        {
+            while(indexes.next())
+            {
+                if(index.toUpperCase().equals(indexes.getString("INDEX_NAME")))
+                {
+                    return true;
+                }
+            }
+            
+            return false;
+        }
     }
 }
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+
+/**
+ * Removes stories that can never be part of the optimal sprint before we hand
+ * the stories to a knapsack problem solver.
+ * 
+ * Every story costs at least 1 point, so at most (capacity / points) stories
+ * worth a given number of points can fit into a sprint.  Among the stories
+ * with the same point value, one with a lower priority number (or the same
+ * priority, but older) is always at least as good as one that comes after
+ * it, and the solvers break ties in favour of the earlier story.  So, the
+ * solvers only ever pick the first (capacity / points) stories of each point
+ * value and we can drop the rest without changing the plan.
+ */
+public class WeightClassPruner
+{
+    /**
+     * Hides the constructor
+     */
+    private WeightClassPruner()
+    {
+    }
+    
+    
+    /**
+     * Keeps the first floor(capacity / points) stories of each point value and
+     * drops the rest.  The solvers return the same plan for the pruned list
+     * as they do for the original list.
+     * @param stories  the stories to prune.  These must be in priority order
+     *          (then age), as returned by
+     *          {@link StoryDB#getAllStoriesInPriorityOrder()}.
+     * @param capacity  the capacity of the sprint.
+     * @return  the stories that could be part of the plan, in the same order
+     *          as they were given.  These are a {@link StoryBatch}, so no
+     *          stories are built if the stories given are a batch.
+     */
+    public static List<Story> prune(List<Story> stories,
+                                    int capacity)
+    {
+        StoryBatch candidates = new StoryBatch();
+        
+        //Nothing fits.
+        if(capacity <= 0 || stories == null)
+        {
+            return candidates;
+        }
+        
+        //The number of stories we have kept for each point value.
+        StoryBatch batch = StoryBatch.of(stories);
+        Map<Integer, Integer> numKept = new HashMap<>();
+        for(int k = 0; k < batch.size(); k++)
+        {
+            int points = batch.getPoints(k);
+            if(WeightClassPruner.keep(numKept, points, capacity))
+            {
+                candidates.add(batch.getId(k),
+                               points,
+                               batch.getPriority(k),
+                               batch.getOid(k));
+            }
+        }
+        
+        return candidates;
+    }
+    
+    
+    /**
+     * Keeps the first floor(capacity / points) stories of each point value
+     * from a cursor and drops the rest (see {@link #prune(List, int)}).  Only
+     * the stories that are kept are held on the heap, so the backlog is never
+     * read into memory all at once.
+     * @param stories  the cursor to read the stories from.  It is read to the
+     *          end.
+     * @param capacity  the capacity of the sprint.
+     * @return  the stories that could be part of the plan, in the order they
+     *          were read.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *          stories.
+     */
+    public static StoryBatch pruneFrom(StoryCursor stories,
+                                       int capacity) throws TaskTrackerException
+    {
+        StoryBatch candidates = new StoryBatch();
+        
+        //Nothing fits.
+        if(capacity <= 0)
+        {
+            return candidates;
+        }
+        
+        Map<Integer, Integer> numKept = new HashMap<>();
+        while(stories.advance())
+        {
+            int points = stories.getPoints();
+            if(WeightClassPruner.keep(numKept, points, capacity))
+            {
+                candidates.add(stories.getId(),
+                               points,
+                               stories.getPriority(),
+                               stories.getOid());
+            }
+        }
+        
+        return candidates;
+    }
+    
+    
+    /**
+     * Decides whether to keep the next story with a point value, and counts
+     * it if we do.
+     * @param numKept  the number of stories we have kept for each point value.
+     * @param points  the story's point value.
+     * @param capacity  the capacity of the sprint.
+     * @return  true if the story could be part of the plan.
+     */
+    static boolean keep(Map<Integer, Integer> numKept,
+                        int points,
+                        int capacity)
+    {
+        Integer kept = numKept.get(points);
+        int numSoFar = (kept == null) ? 0 : kept;
+        if(numSoFar >= capacity / points)
+        {
+            return false;
+        }
+        
+        numKept.put(points, numSoFar + 1);
+        return true;
+    }
+}
@@ -13,7 +13,9 @@ import static org.junit.Assert.fail;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -22,6 +24,8 @@ import org.junit.Test;
 
 import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
 import uk.co.bbc.iplayer.tracking.impl.Backlog;
+import uk.co.bbc.iplayer.tracking.impl.BitPackedKnapsackProblemSolver;
+import uk.co.bbc.iplayer.tracking.impl.LinearSpaceSprintSolver;
 import uk.co.bbc.iplayer.tracking.impl.StoryDB;
 import uk.co.bbc.iplayer.tracking.messages.Messages;
 import uk.co.bbc.iplayer.tracking.test.infrastructure.TestUsingDB;
@@ -374,6 +378,582 @@ public class BacklogTest extends TestUsingDB
                                 e.getMessage());
         }
     }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getSprint(int)}.
+     * 
+     * Tests that selecting the cardinality-first solver gives the same plan.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprint_cardinalityFirst() throws TaskTrackerException
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        int capacity = 6;
+        
+        this.backlog.setSolverMode(Backlog.SolverMode.CARDINALITY_FIRST);
+        this.getSprintRunner(capacity, stories, expected);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getSprints(int, int)}.
+     * 
+     * Tests that the plans for a range of capacities are the same as asking
+     * for each one, and that the curve holds their values.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprints() throws TaskTrackerException
+    {
+        Random random = new Random(21);
+        for(int k = 0; k < 100; k++)
+        {
+            this.storyDB.addStory(new Story(Integer.toString(k),
+                                            1 + random.nextInt(10),
+                                            1 + random.nextInt(50)));
+        }
+        
+        SprintPlanCurve curve = this.backlog.getSprints(35, 20);
+        
+        Assert.assertEquals(16, curve.Plans.size());
+        for(int capacity = 20; capacity <= 35; capacity++)
+        {
+            List<Story> expected = this.backlog.getSprint(capacity);
+            Assert.assertEquals(expected, curve.Plans.get(capacity));
+            
+            long value = 0;
+            for(Story story : expected)
+            {
+                value += Integer.MAX_VALUE - story.Priority;
+            }
+            
+            Assert.assertEquals(value, curve.getValue(capacity));
+        }
+        
+        try
+        {
+            this.backlog.getSprints(Arrays.asList(10, 0));
+            fail("Expected an exception for a capacity of 0");
+        }
+        catch(TaskTrackerException e)
+        {
+            //Expected
+        }
+        
+        try
+        {
+            this.backlog.getSprints(1, Integer.MAX_VALUE - 1);
+            fail("Expected an exception for too many capacities");
+        }
+        catch(TaskTrackerException e)
+        {
+            //Expected
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getSprints(int, int)}.
+     * 
+     * Tests that capacities whose table is too big for the heap are still
+     * planned in one table (outside the heap) when the operation budget
+     * allows it, so there can be more of them than would be planned
+     * separately.  Past the budget, they are planned separately.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprints_offHeap() throws TaskTrackerException
+    {
+        Random random = new Random(23);
+        for(int k = 0; k < 150; k++)
+        {
+            this.storyDB.addStory(new Story(Integer.toString(k),
+                                            1 + random.nextInt(20000),
+                                            1 + random.nextInt(50)));
+        }
+        
+        int highest = 600000;
+        int lowest = highest - Backlog.MAX_SEPARATE_SPRINT_PLANS;
+        try
+        {
+            this.backlog.getSprints(lowest, highest);
+            fail("Expected an exception for too many separate plans");
+        }
+        catch(TaskTrackerException e)
+        {
+            //Expected
+        }
+        
+        this.backlog.setOperationBudget(1L << 27);
+        Assert.assertEquals(1L << 27, this.backlog.getOperationBudget());
+        SprintPlanCurve curve = this.backlog.getSprints(lowest, highest);
+        
+        Assert.assertEquals(highest - lowest + 1, curve.Plans.size());
+        Assert.assertNotNull(curve.Values);
+        Assert.assertEquals(this.backlog.getSprint(highest), curve.Plans.get(highest));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getSprints(int, int)}.
+     * 
+     * Tests that capacities too big to plan in one table are each planned the
+     * way getSprint would, and that only a few can be planned that way.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprints_separatePlans() throws TaskTrackerException
+    {
+        Random random = new Random(22);
+        for(int k = 0; k < 30; k++)
+        {
+            this.storyDB.addStory(new Story(Integer.toString(k),
+                                            100000000 + random.nextInt(100000000),
+                                            1 + random.nextInt(50)));
+        }
+        
+        int lowest = 1000000000;
+        int highest = lowest + Backlog.MAX_SEPARATE_SPRINT_PLANS - 1;
+        SprintPlanCurve curve = this.backlog.getSprints(lowest, highest);
+        
+        Assert.assertEquals(Backlog.MAX_SEPARATE_SPRINT_PLANS, curve.Plans.size());
+        for(int capacity = lowest; capacity <= highest; capacity++)
+        {
+            Assert.assertEquals(this.backlog.getSprint(capacity),
+                                curve.Plans.get(capacity));
+        }
+        
+        try
+        {
+            this.backlog.getSprints(lowest, highest + 1);
+            fail("Expected an exception for too many separate plans");
+        }
+        catch(TaskTrackerException e)
+        {
+            //Expected
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#planSprints(java.util.List)}.
+     * 
+     * Tests that planning several sprints doesn't change the backlog until
+     * the plan is committed, and that a plan can't be committed twice.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testPlanSprints() throws TaskTrackerException
+    {
+        List<Story> stories = Arrays.asList(new Story("1", 4, 1),
+                                            new Story("2", 3, 2),
+                                            new Story("3", 2, 3),
+                                            new Story("4", 3, 4),
+                                            new Story("5", 5, 5));
+        for(Story story : stories)
+        {
+            this.storyDB.addStory(story);
+        }
+        
+        MultiSprintPlan plan = this.backlog.planSprints(Arrays.asList(6, 6));
+        
+        //Every story but the last fits.
+        Assert.assertEquals(2, plan.Sprints.size());
+        Assert.assertEquals(4, plan.Sprints.get(0).size() + plan.Sprints.get(1).size());
+        Assert.assertTrue(plan.isOptimal());
+        Assert.assertEquals(5, this.storyDB.getStoryCount());
+        
+        this.backlog.commitSprints(plan);
+        Assert.assertEquals(Arrays.asList(stories.get(4)),
+                            this.storyDB.getAllStoriesInPriorityOrder());
+        
+        //The stories are gone, so nothing is removed.
+        this.storyDB.addStory(stories.get(0));
+        try
+        {
+            this.backlog.commitSprints(plan);
+            fail("Expected an exception committing the plan twice");
+        }
+        catch(TaskTrackerException e)
+        {
+            //Expected
+        }
+        
+        Assert.assertEquals(2, this.storyDB.getStoryCount());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#planSprints(java.util.List)}.
+     * 
+     * Tests that a missing list of capacities, a missing capacity, and too
+     * many capacities are rejected.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testPlanSprints_invalidCapacities() throws TaskTrackerException
+    {
+        this.storyDB.addStory(new Story("1", 4, 1));
+        
+        try
+        {
+            this.backlog.planSprints(null);
+            fail("Expected an exception for null capacities");
+        }
+        catch(TaskTrackerException e)
+        {
+            Assert.assertEquals(Messages.getString("BacklogNullCapacities"),
+                                e.getMessage());
+        }
+        
+        try
+        {
+            this.backlog.planSprints(Arrays.asList(6, null));
+            fail("Expected an exception for a null capacity");
+        }
+        catch(TaskTrackerException e)
+        {
+            Assert.assertEquals(Messages.getString("BacklogNullCapacity", 1),
+                                e.getMessage());
+        }
+        
+        try
+        {
+            this.backlog.planSprints(Collections.nCopies(Backlog.MAX_SPRINT_CAPACITIES + 1, 6));
+            fail("Expected an exception for too many capacities");
+        }
+        catch(TaskTrackerException e)
+        {
+            //Expected
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#setIncrementalPlanning(boolean)}.
+     * 
+     * Tests that incremental planning keeps finding the same plans as
+     * planning from scratch as stories are added and removed, including
+     * stories added behind its back.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprint_incremental() throws TaskTrackerException
+    {
+        Backlog fromScratch = new Backlog();
+        this.backlog.setIncrementalPlanning(true);
+        Assert.assertTrue(this.backlog.isIncrementalPlanning());
+        
+        Random random = new Random(9);
+        int capacity = 50;
+        for(int k = 0; k < 100; k++)
+        {
+            this.backlog.Add(new Story(Integer.toString(k),
+                                       1 + random.nextInt(10),
+                                       1 + random.nextInt(5)));
+            if(k % 10 == 9)
+            {
+                this.backlog.Remove(Integer.toString(k - random.nextInt(10)));
+            }
+            
+            Assert.assertEquals(fromScratch.getSprint(capacity),
+                                this.backlog.getSprint(capacity));
+        }
+        
+        this.storyDB.addStory(new Story("outside", 1, 1));
+        Assert.assertEquals(fromScratch.getSprint(capacity),
+                            this.backlog.getSprint(capacity));
+        
+        //Swapping a story leaves the number of stories the same.
+        this.storyDB.deleteStory("outside");
+        this.storyDB.addStory(new Story("swapped", 10, 1));
+        Assert.assertEquals(fromScratch.getSprint(capacity),
+                            this.backlog.getSprint(capacity));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#setPipelinedPlanning(boolean)}.
+     * 
+     * Tests that pipelined planning finds the same plans as reading the
+     * stories first, both when the table is small enough to pipeline and
+     * when it isn't.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprint_pipelined() throws TaskTrackerException
+    {
+        Backlog fromScratch = new Backlog();
+        this.backlog.setPipelinedPlanning(true);
+        Assert.assertTrue(this.backlog.isPipelinedPlanning());
+        
+        Random random = new Random(17);
+        for(int k = 0; k < 2000; k++)
+        {
+            this.storyDB.addStory(new Story(Integer.toString(k),
+                                            1 + random.nextInt(40),
+                                            1 + random.nextInt(20)));
+        }
+        
+        this.backlog.setFetchSize(7);
+        for(int capacity : new int[] {1, 37, 500, 7999, 20000})
+        {
+            Assert.assertEquals("Plans differ for a capacity of " + capacity,
+                                fromScratch.getSprint(capacity),
+                                this.backlog.getSprint(capacity));
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getSprintPlan(int)}.
+     * 
+     * Tests that a backlog small enough to plan exactly reports an optimal
+     * plan.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprintPlan() throws TaskTrackerException
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        for(Story story : stories)
+        {
+            this.storyDB.addStory(story);
+        }
+        
+        SprintPlan plan = this.backlog.getSprintPlan(6);
+        
+        Assert.assertEquals(expected, plan.Stories);
+        Assert.assertEquals(0, plan.Epsilon, 0);
+        Assert.assertEquals(2L * Integer.MAX_VALUE - 4, plan.Value);
+        Assert.assertTrue(plan.isOptimal());
+        Assert.assertEquals(1, plan.getAchievedBound(), 0);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getSprintPlan(int, long)}.
+     * 
+     * Tests that we get the optimal plan when there is plenty of time, and a
+     * plan that fits when there is none.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprintPlan_timeLimit() throws TaskTrackerException
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        for(Story story : stories)
+        {
+            this.storyDB.addStory(story);
+        }
+        
+        SprintPlan plan = this.backlog.getSprintPlan(6, 60000);
+        Assert.assertEquals(expected, plan.Stories);
+        Assert.assertTrue(plan.isOptimal());
+        
+        plan = this.backlog.getSprintPlan(6, 0);
+        int points = 0;
+        for(Story story : plan.Stories)
+        {
+            points += story.Points;
+        }
+        
+        Assert.assertTrue(points <= 6);
+        Assert.assertTrue(plan.Value <= plan.UpperBound);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getSprintPlan(int)}.
+     * 
+     * Tests that the FPTAS approximation of a backlog too big to plan exactly
+     * fits in the sprint and reports a bound within its epsilon.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprintPlan_fptas() throws TaskTrackerException
+    {
+        Random random = new Random(5);
+        int[] pointValues = new int[] {1, 2, 3, 5, 8, 13, 21};
+        for(int k = 0; k < 2000; k++)
+        {
+            this.storyDB.addStory(new Story(Integer.toString(k),
+                                            pointValues[random.nextInt(pointValues.length)],
+                                            1 + random.nextInt(1000000)));
+        }
+        
+        //Too big to plan exactly without recomputing the rows.
+        int capacity = 10000;
+        this.backlog.unregisterSolver(LinearSpaceSprintSolver.NAME);
+        this.backlog.setApproximationMode(Backlog.ApproximationMode.FPTAS);
+        this.backlog.setEpsilon(0.1);
+        SprintPlan plan = this.backlog.getSprintPlan(capacity);
+        
+        int points = 0;
+        for(Story story : plan.Stories)
+        {
+            points += story.Points;
+        }
+        
+        Assert.assertTrue(points <= capacity);
+        Assert.assertTrue(plan.Epsilon <= 0.1);
+        Assert.assertTrue(plan.Value <= plan.UpperBound);
+        Assert.assertTrue(plan.getAchievedBound() >= 1 - plan.Epsilon - 1e-9);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getSprintPlan(int)}.
+     * 
+     * Tests that a backlog whose table is too big for the dynamic programming
+     * solver is still planned exactly by recomputing the rows, and that it
+     * would only be approximated without that.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testGetSprintPlan_linearSpace() throws TaskTrackerException
+    {
+        Random random = new Random(5);
+        int[] pointValues = new int[] {1, 2, 3, 5, 8, 13, 21};
+        for(int k = 0; k < 2000; k++)
+        {
+            this.storyDB.addStory(new Story(Integer.toString(k),
+                                            pointValues[random.nextInt(pointValues.length)],
+                                            1 + random.nextInt(1000000)));
+        }
+        
+        int capacity = 10000;
+        List<Story> stories = this.storyDB.getAllStoriesInPriorityOrder();
+        Assert.assertTrue((long) stories.size() * (capacity + 1) > Backlog.PACKING_APPROXIMATION_THRESHOLD);
+        
+        SprintPlan plan = this.backlog.getSprintPlan(capacity);
+        Assert.assertTrue(plan.isOptimal());
+        Assert.assertEquals(BitPackedKnapsackProblemSolver.solve(stories, capacity),
+                            plan.Stories);
+        
+        Assert.assertTrue(this.backlog.unregisterSolver(LinearSpaceSprintSolver.NAME));
+        Assert.assertFalse(this.backlog.getSprintPlan(capacity).isOptimal());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#registerSolver(ISprintSolver)}.
+     * 
+     * Tests that a registered solver is used when it is the most accurate and
+     * cheapest, and that the built-in solvers plan the sprint again once it
+     * is unregistered.
+     * @throws TaskTrackerException  if there was a problem setting up the story
+     *                  database.
+     */
+    @Test
+    public void testRegisterSolver() throws TaskTrackerException
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        for(Story story : stories)
+        {
+            this.storyDB.addStory(story);
+        }
+        
+        //Claims to be exact and cheaper than the built-in solvers, but plans
+        //  an empty sprint, so we can tell it was used.
+        this.backlog.registerSolver(new ISprintSolver()
+        {
+            @Override
+            public String getName()
+            {
+                return "empty";
+            }
+            
+            @Override
+            public SolverEstimate estimateCost(SprintProblem problem)
+            {
+                return new SolverEstimate(problem.size(), 0, 0);
+            }
+            
+            @Override
+            public SprintPlan solve(SprintProblem problem)
+            {
+                return new SprintPlan();
+            }
+        });
+        
+        Assert.assertEquals(7, this.backlog.getSolvers().size());
+        Assert.assertEquals(new ArrayList<Story>(), this.backlog.getSprint(6));
+        
+        Assert.assertTrue(this.backlog.unregisterSolver("empty"));
+        Assert.assertEquals(expected, this.backlog.getSprint(6));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#setEpsilon(double)}.
+     * 
+     * Tests that epsilon must be strictly between 0 and 1.
+     */
+    @Test
+    public void testSetEpsilon_invalid()
+    {
+        for(double epsilon : new double[] {0, 1, -0.5, Double.NaN})
+        {
+            try
+            {
+                this.backlog.setEpsilon(epsilon);
+                fail("Epsilon " + epsilon + " should not be allowed.");
+            }
+            catch(IllegalArgumentException e)
+            {
+                Assert.assertEquals(Backlog.DEFAULT_EPSILON,
+                                    this.backlog.getEpsilon(),
+                                    0);
+            }
+        }
+    }
      
     
     
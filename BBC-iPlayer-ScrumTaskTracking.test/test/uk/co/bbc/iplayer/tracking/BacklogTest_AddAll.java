@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+import uk.co.bbc.iplayer.tracking.impl.Backlog;
+import uk.co.bbc.iplayer.tracking.impl.StoryDB;
+import uk.co.bbc.iplayer.tracking.test.infrastructure.TestUsingDB;
+
+/**
+ * Tests adding several stories at once with
+ * {@link Backlog#addAll(java.util.Collection)}.
+ */
+public class BacklogTest_AddAll extends TestUsingDB
+{
+    //-------------------------------------------------------------------------
+    //  DATA MEMBERS
+    //-------------------------------------------------------------------------
+    /**
+     * The backlog under test.
+     */
+    private Backlog backlog;
+    
+    /**
+     * The database containing the stories
+     */
+    private StoryDB storyDB;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  TEST SET-UP / TEAR-DOWN
+    //-------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    @Before
+    @Override
+    public void setUp() throws InstantiationException,
+                               IllegalAccessException,
+                               SQLException, TaskTrackerException
+    {
+        super.setUp();
+        this.backlog = new Backlog();
+        this.storyDB = new StoryDB();
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  TEST CASES
+    //-------------------------------------------------------------------------
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#addAll(java.util.Collection)}.
+     * 
+     * Checks that the stories are all added, in order, across several
+     * batches.
+     * @throws TaskTrackerException  if there was a problem adding the
+     *          stories.
+     */
+    @Test
+    public void testAddAll() throws TaskTrackerException
+    {
+        this.backlog.setBatchSize(7);
+        
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 50; k++)
+        {
+            stories.add(new Story(Integer.toString(k), 1 + k % 9, 1 + k % 4));
+        }
+        
+        AddAllResult result = this.backlog.addAll(stories);
+        Assert.assertTrue("Stories failed: " + result.Failures, result.isComplete());
+        Assert.assertEquals(stories.size(), result.Added);
+        
+        //Ties in priority are in the order the stories were added.
+        List<Story> expected = new ArrayList<>();
+        for(int priority = 1; priority <= 4; priority++)
+        {
+            for(Story story : stories)
+            {
+                if(story.Priority == priority)
+                {
+                    expected.add(story);
+                }
+            }
+        }
+        Assert.assertEquals(expected, this.storyDB.getAllStoriesInPriorityOrder());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#addAll(java.util.Collection)}.
+     * 
+     * Checks that invalid stories and taken Ids are reported by position
+     * without stopping the other stories (in the same batch or later ones).
+     * @throws TaskTrackerException  if there was a problem adding the
+     *          stories.
+     */
+    @Test
+    public void testAddAll_failures() throws TaskTrackerException
+    {
+        this.backlog.setBatchSize(3);
+        this.backlog.Add(new Story("taken", 1, 1));
+        
+        List<Story> stories = Arrays.asList(new Story("a",       1, 1),
+                                            new Story(null,      1, 1),     //Invalid Id
+                                            new Story("b",       0, 1),     //Invalid points
+                                            new Story("c",       1, 2),
+                                            new Story("taken",   1, 2),     //Id in the backlog
+                                            new Story("d",       1, 2),
+                                            new Story("e",       1, -1),    //Invalid priority
+                                            new Story("c",       5, 5),     //Id earlier in the collection
+                                            new Story("f",       1, 3));
+        
+        AddAllResult result = this.backlog.addAll(stories);
+        Assert.assertFalse("Failures not reported", result.isComplete());
+        Assert.assertEquals(Arrays.asList(1, 2, 4, 6, 7),
+                            new ArrayList<>(result.Failures.keySet()));
+        Assert.assertEquals(4, result.Added);
+        
+        Assert.assertEquals(Arrays.asList(new Story("taken", 1, 1),
+                                          new Story("a",     1, 1),
+                                          new Story("c",     1, 2),
+                                          new Story("d",     1, 2),
+                                          new Story("f",     1, 3)),
+                            this.storyDB.getAllStoriesInPriorityOrder());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#addAll(java.util.Collection)}.
+     * 
+     * Checks that adding stories updates a sprint plan that has already been
+     * made incrementally.
+     * @throws TaskTrackerException  if there was a problem adding the
+     *          stories.
+     */
+    @Test
+    public void testAddAll_incrementalPlanning() throws TaskTrackerException
+    {
+        this.backlog.setIncrementalPlanning(true);
+        this.backlog.Add(new Story("old", 5, 2));
+        Assert.assertEquals(Arrays.asList(new Story("old", 5, 2)), this.backlog.getSprint(5));
+        
+        this.backlog.addAll(Arrays.asList(new Story("new", 5, 1)));
+        Assert.assertEquals(Arrays.asList(new Story("new", 5, 1)), this.backlog.getSprint(5));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#addAll(java.util.Collection)}.
+     * 
+     * Checks that adding no stories does nothing.
+     * @throws TaskTrackerException  if there was a problem adding the
+     *          stories.
+     */
+    @Test
+    public void testAddAll_empty() throws TaskTrackerException
+    {
+        AddAllResult result = this.backlog.addAll(Collections.<Story>emptyList());
+        
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(0, result.Added);
+        Assert.assertEquals(0, this.storyDB.getStoryCount());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#setBatchSize(int)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetBatchSize_invalid()
+    {
+        this.backlog.setBatchSize(0);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+import uk.co.bbc.iplayer.tracking.impl.Backlog;
+import uk.co.bbc.iplayer.tracking.impl.StoryDB;
+import uk.co.bbc.iplayer.tracking.test.infrastructure.TestUsingDB;
+
+/**
+ * Loads large backlogs with addAll.  The time the test report gives for each
+ * size is the time the bulk load took.
+ */
+@RunWith(Parameterized.class)
+public class BacklogTest_AddAllStressTest extends TestUsingDB
+{
+    
+    /**
+     * The number of stories we want to load.
+     * @return  A collection of backlog sizes.
+     */
+    @Parameters
+    public static Collection<Object[]> testExecutionValues()
+    {
+        Object[][] data = new Object[][]
+                {
+                    //backlogSize
+                    {    1000},
+                    {   10000},
+                    {  100000},
+                };
+        return Arrays.asList(data);
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  DATA MEMBERS
+    //-------------------------------------------------------------------------
+    /**
+     * The size of the backlog to test.
+     */
+    private int backlogSize;
+    
+    
+    /**
+     * The backlog database.
+     */
+    private StoryDB storyDB;
+    
+    /**
+     * The backlog under test.
+     */
+    private Backlog backlog;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  CONSTRUCTORS
+    //-------------------------------------------------------------------------
+    /**
+     * Constructor
+     * @param backlogSize  the number of stories to load.
+     */
+    public BacklogTest_AddAllStressTest(int backlogSize)
+    {
+        this.backlogSize = backlogSize;
+        
+        this.storyDB  = new StoryDB();
+        this.backlog = new Backlog();
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  TEST CASES
+    //-------------------------------------------------------------------------
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#addAll(java.util.Collection)}.
+     * 
+     * Tests that a large backlog can be loaded in one go.
+     * @throws TaskTrackerException  if something went wrong.
+     */
+    @Test
+    public void testAddAll() throws TaskTrackerException
+    {
+        List<Story> stories = new ArrayList<>(this.backlogSize);
+        for(int k = 0; k < this.backlogSize; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  100,
+                                  Integer.MAX_VALUE - (k % 10)));
+        }
+        
+        AddAllResult result = this.backlog.addAll(stories);
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(this.backlogSize, result.Added);
+        Assert.assertEquals(this.backlogSize, this.storyDB.getStoryCount());
+    }
+}
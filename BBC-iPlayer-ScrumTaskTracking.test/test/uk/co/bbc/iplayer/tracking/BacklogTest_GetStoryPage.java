@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+import uk.co.bbc.iplayer.tracking.impl.Backlog;
+import uk.co.bbc.iplayer.tracking.impl.StoryDB;
+import uk.co.bbc.iplayer.tracking.test.infrastructure.TestUsingDB;
+
+/**
+ * Tests paging through the backlog with {@link Backlog#getStoryPage(int, String)}.
+ */
+public class BacklogTest_GetStoryPage extends TestUsingDB
+{
+    //-------------------------------------------------------------------------
+    //  DATA MEMBERS
+    //-------------------------------------------------------------------------
+    /**
+     * The backlog under test.
+     */
+    private Backlog backlog;
+    
+    /**
+     * The database containing the stories
+     */
+    private StoryDB storyDB;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  TEST SET-UP / TEAR-DOWN
+    //-------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     * 
+     * Adds stories with many shared priorities, so pages split priorities.
+     */
+    @Before
+    @Override
+    public void setUp() throws InstantiationException,
+                               IllegalAccessException,
+                               SQLException, TaskTrackerException
+    {
+        super.setUp();
+        this.backlog = new Backlog();
+        this.storyDB = new StoryDB();
+        
+        Random random = new Random(11);
+        for(int k = 0; k < 60; k++)
+        {
+            this.backlog.Add(new Story(Integer.toString(k),
+                                       1 + random.nextInt(10),
+                                       1 + random.nextInt(8)));
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  TEST CASES
+    //-------------------------------------------------------------------------
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getStoryPage(int, java.lang.String)}.
+     * 
+     * Checks that the pages, one after another, hold every story in priority
+     * order.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *          backlog.
+     */
+    @Test
+    public void testGetStoryPage() throws TaskTrackerException
+    {
+        List<Story> expected = this.storyDB.getAllStoriesInPriorityOrder();
+        
+        for(int pageSize : new int[] {1, 7, 20, 59, 60, 61, Backlog.MAX_PAGE_SIZE})
+        {
+            List<Story> stories = new ArrayList<>();
+            StoryPage page = this.backlog.getStoryPage(pageSize, null);
+            stories.addAll(page.Stories);
+            while(!page.isLastPage())
+            {
+                Assert.assertEquals("Page not full", pageSize, page.Stories.size());
+                page = this.backlog.getStoryPage(pageSize, page.ContinuationToken);
+                stories.addAll(page.Stories);
+            }
+            
+            Assert.assertEquals("Wrong stories with a page size of " + pageSize,
+                                expected,
+                                stories);
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getStoryPage(int, java.lang.String)}.
+     * 
+     * Checks that adding and removing stories between pages doesn't repeat
+     * or skip the stories after the last page.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *          backlog.
+     */
+    @Test
+    public void testGetStoryPage_changedBetweenPages() throws TaskTrackerException
+    {
+        List<Story> expected = this.storyDB.getAllStoriesInPriorityOrder();
+        StoryPage first = this.backlog.getStoryPage(25, null);
+        Assert.assertEquals(expected.subList(0, 25), first.Stories);
+        
+        //Remove one story that has been seen and one that hasn't, and add one
+        //  before and one after where paging is up to.
+        this.backlog.Remove(expected.get(3).Id);
+        this.backlog.Remove(expected.get(40).Id);
+        this.backlog.Add(new Story("before", 1, 1));
+        this.backlog.Add(new Story("after", 1, 8));
+        
+        List<Story> rest = new ArrayList<>(expected.subList(25, expected.size()));
+        rest.remove(40 - 25);
+        rest.add(new Story("after", 1, 8));
+        
+        StoryPage second = this.backlog.getStoryPage(Backlog.MAX_PAGE_SIZE,
+                                                     first.ContinuationToken);
+        Assert.assertEquals(rest, second.Stories);
+        Assert.assertTrue("Not the last page", second.isLastPage());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getStoryPage(int, java.lang.String)}.
+     * 
+     * Checks that an empty backlog has one empty page.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *          backlog.
+     */
+    @Test
+    public void testGetStoryPage_empty() throws TaskTrackerException
+    {
+        for(Story story : this.storyDB.getAllStoriesInPriorityOrder())
+        {
+            this.backlog.Remove(story.Id);
+        }
+        
+        StoryPage page = this.backlog.getStoryPage(10, null);
+        Assert.assertTrue("Stories on an empty backlog", page.Stories.isEmpty());
+        Assert.assertTrue("Not the last page", page.isLastPage());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getStoryPage(int, java.lang.String)}.
+     * 
+     * Checks that page sizes outside [1, MAX_PAGE_SIZE] are rejected.
+     */
+    @Test
+    public void testGetStoryPage_invalidPageSize()
+    {
+        for(int pageSize : new int[] {Integer.MIN_VALUE, -1, 0, Backlog.MAX_PAGE_SIZE + 1})
+        {
+            try
+            {
+                this.backlog.getStoryPage(pageSize, null);
+                Assert.fail("Page size " + pageSize + " accepted");
+            }
+            catch(TaskTrackerException e)
+            {
+                //Expected.
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.Backlog#getStoryPage(int, java.lang.String)}.
+     * 
+     * Checks that tokens the backlog didn't make are rejected.
+     */
+    @Test
+    public void testGetStoryPage_invalidToken()
+    {
+        for(String token : new String[] {"", ".", "abc", "1.2.3", "0.5", "-1.2", "1.-2", "1.zzzzzzzzzzzzzzzzz"})
+        {
+            try
+            {
+                this.backlog.getStoryPage(10, token);
+                Assert.fail("Token \"" + token + "\" accepted");
+            }
+            catch(TaskTrackerException e)
+            {
+                //Expected.
+            }
+        }
+    }
+}
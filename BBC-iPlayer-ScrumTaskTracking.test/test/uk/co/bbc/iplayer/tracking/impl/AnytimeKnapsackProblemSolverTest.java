@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the anytime knapsack problem solver returns the optimal plan
+ * when it has time, and a plan that fits (with an honest bound) when it
+ * doesn't.
+ */
+public class AnytimeKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.AnytimeKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Tests that the solver returns the correct values (and order).
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        SprintPlan plan = AnytimeKnapsackProblemSolver.solve(stories,
+                                                             6,
+                                                             KnapsackProblemSolver.NO_DEADLINE);
+        
+        Assert.assertEquals(expected, plan.Stories);
+        Assert.assertTrue(plan.isOptimal());
+        Assert.assertEquals(0, plan.Epsilon, 0);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.AnytimeKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Checks that we get an empty plan if the set of stories is null or the
+     * capacity is negative.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            AnytimeKnapsackProblemSolver.solve(null,
+                                                               6,
+                                                               KnapsackProblemSolver.NO_DEADLINE).Stories);
+        Assert.assertEquals(expected,
+                            AnytimeKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                               -1,
+                                                               KnapsackProblemSolver.NO_DEADLINE).Stories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.AnytimeKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Compares the plans against the full-table solver when there is no
+     * deadline.  The last shape is too big for the table, so it is solved with
+     * branch-and-bound.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(3);
+        
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity
+                    {    500,        999},
+                    {     40,         63},
+                    {  10000,      30000}
+                };
+        
+        for(int[] shape : shapes)
+        {
+            List<Story> stories = new ArrayList<>();
+            for(int k = 0; k < shape[0]; k++)
+            {
+                stories.add(new Story(Integer.toString(k),
+                                      1 + random.nextInt(50),
+                                      1 + random.nextInt(1000)));
+            }
+            
+            SprintPlan plan = AnytimeKnapsackProblemSolver.solve(stories,
+                                                                 shape[1],
+                                                                 KnapsackProblemSolver.NO_DEADLINE);
+            Assert.assertEquals("Plans differ for " + shape[0] + " stories and "
+                                    + "a capacity of " + shape[1],
+                                BitPackedKnapsackProblemSolver.solve(stories, shape[1]),
+                                plan.Stories);
+            Assert.assertTrue(plan.isOptimal());
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.AnytimeKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Checks that we still get a plan that fits, with a bound that holds, if
+     * the deadline has already passed.
+     */
+    @Test
+    public void testSolve_deadlinePassed()
+    {
+        Random random = new Random(13);
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 1000; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(50),
+                                  1 + random.nextInt(1000)));
+        }
+        
+        int capacity = 2000;
+        SprintPlan plan = AnytimeKnapsackProblemSolver.solve(stories,
+                                                             capacity,
+                                                             System.nanoTime() - 1);
+        long optimalValue = KnapsackProblemSolver.getTotalValue(
+                BitPackedKnapsackProblemSolver.solve(stories, capacity));
+        
+        int points = 0;
+        for(Story story : plan.Stories)
+        {
+            points += story.Points;
+        }
+        
+        Assert.assertFalse(plan.Stories.isEmpty());
+        Assert.assertTrue(points <= capacity);
+        Assert.assertEquals(KnapsackProblemSolver.getTotalValue(plan.Stories), plan.Value);
+        Assert.assertTrue(plan.Value <= optimalValue);
+        Assert.assertTrue(optimalValue <= plan.UpperBound);
+        Assert.assertFalse(plan.isOptimal());
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the FPTAS knapsack problem solver returns plans that fit and are
+ * within (1 - epsilon) of the plans from {@link KnapsackProblemSolver}.
+ */
+public class ApproximateKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ApproximateKnapsackProblemSolver#solve(java.util.List, int, double)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null or the
+     * capacity is negative.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            ApproximateKnapsackProblemSolver.solve(null, 6, 0.1));
+        Assert.assertEquals(expected,
+                            ApproximateKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                                   -1,
+                                                                   0.1));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ApproximateKnapsackProblemSolver#solve(java.util.List, int, double)}.
+     * 
+     * Checks that epsilon must be strictly between 0 and 1.
+     */
+    @Test
+    public void testSolve_invalidEpsilon()
+    {
+        List<Story> stories = Arrays.asList(new Story("1", 1, 1));
+        
+        for(double epsilon : new double[] {0, 1, -0.1, 2, Double.NaN})
+        {
+            try
+            {
+                ApproximateKnapsackProblemSolver.solve(stories, 6, epsilon);
+                Assert.fail("Epsilon " + epsilon + " should not be allowed.");
+            }
+            catch(IllegalArgumentException e)
+            {
+                //Expected
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ApproximateKnapsackProblemSolver#solve(java.util.List, int, double)}.
+     * 
+     * Checks that stories that don't fit on their own are never picked.
+     */
+    @Test
+    public void testSolve_nothingFits()
+    {
+        List<Story> stories = Arrays.asList(new Story("1", 7, 1),
+                                            new Story("2", 8, 2));
+        
+        Assert.assertEquals(new ArrayList<Story>(),
+                            ApproximateKnapsackProblemSolver.solve(stories, 6, 0.1));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ApproximateKnapsackProblemSolver#solve(java.util.List, int, double)}.
+     * 
+     * Compares the plans against the full-table solver.  The plans must fit
+     * and be worth at least (1 - epsilon) of the optimal plans.  We use a wide
+     * range of priorities so the values are far apart.
+     */
+    @Test
+    public void testSolve_withinEpsilon()
+    {
+        Random random = new Random(3);
+        
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity
+                    {     50,         200},
+                    {    300,        1000},
+                    {   1000,        5000}
+                };
+        double[] epsilons = new double[] {0.5, 0.1, 0.01};
+        
+        for(int[] shape : shapes)
+        {
+            List<Story> stories = new ArrayList<>();
+            for(int k = 0; k < shape[0]; k++)
+            {
+                stories.add(new Story(Integer.toString(k),
+                                      1 + random.nextInt(50),
+                                      1 + random.nextInt(Integer.MAX_VALUE - 1)));
+            }
+            
+            long optimalValue = KnapsackProblemSolver.getTotalValue(KnapsackProblemSolver.solve(stories,
+                                                                                                 shape[1]));
+            for(double epsilon : epsilons)
+            {
+                List<Story> plan = ApproximateKnapsackProblemSolver.solve(stories,
+                                                                          shape[1],
+                                                                          epsilon);
+                
+                Assert.assertTrue(KnapsackProblemSolver.getTotalPoints(plan) <= shape[1]);
+                Assert.assertTrue("Plan for " + shape[0] + " stories is not within "
+                                      + epsilon + " of optimal",
+                                  KnapsackProblemSolver.getTotalValue(plan)
+                                      >= (1 - epsilon) * optimalValue);
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ApproximateKnapsackProblemSolver#getSmallestEpsilon(int, long)}.
+     * 
+     * Checks that the smallest epsilon grows with the number of stories and
+     * that no epsilon will do if the table can't hold a row.
+     */
+    @Test
+    public void testGetSmallestEpsilon()
+    {
+        double small = ApproximateKnapsackProblemSolver.getSmallestEpsilon(100, 1L << 28);
+        double large = ApproximateKnapsackProblemSolver.getSmallestEpsilon(1000, 1L << 28);
+        
+        Assert.assertTrue(small > 0);
+        Assert.assertTrue(small < large);
+        Assert.assertTrue(large < 1);
+        Assert.assertTrue(ApproximateKnapsackProblemSolver.getSmallestEpsilon(1000, 1000) >= 1);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.SprintPlanCurve;
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
+
+/**
+ * Checks that the bit-packed knapsack problem solver returns exactly the same
+ * plans as {@link KnapsackProblemSolver}.
+ */
+public class BitPackedKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BitPackedKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Tests that the solver returns the correct values (and order).
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        List<Story> optStories = BitPackedKnapsackProblemSolver.solve(stories, 6);
+        
+        Assert.assertEquals(expected, optStories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BitPackedKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null or the
+     * capacity is negative.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            BitPackedKnapsackProblemSolver.solve(null, 6));
+        Assert.assertEquals(expected,
+                            BitPackedKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                                 -1));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BitPackedKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that a huge capacity doesn't need a huge table when the stories
+     * don't add up to it.
+     */
+    @Test
+    public void testSolve_hugeCapacity()
+    {
+        List<Story> stories = Arrays.asList(new Story("1", 3, 3),
+                                            new Story("2", 1, 3),
+                                            new Story("3", 1, 2),
+                                            new Story("4", 40, 1));
+        
+        Assert.assertEquals(stories,
+                            BitPackedKnapsackProblemSolver.solve(stories,
+                                                                 Integer.MAX_VALUE - 1));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BitPackedKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Compares the plans against the full-table solver.  We use a small range
+     * of priorities and points so there are lots of ties to break, and
+     * capacities that don't line up with the 64-bit words.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(7);
+        
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity
+                    {   1000,        999},
+                    {    300,       4001},
+                    {   5000,         63}
+                };
+        
+        for(int[] shape : shapes)
+        {
+            List<Story> stories = new ArrayList<>();
+            for(int k = 0; k < shape[0]; k++)
+            {
+                stories.add(new Story(Integer.toString(k),
+                                      1 + random.nextInt(50),
+                                      1 + random.nextInt(5)));
+            }
+            
+            Assert.assertEquals("Plans differ for " + shape[0] + " stories and "
+                                    + "a capacity of " + shape[1],
+                                KnapsackProblemSolver.solve(stories, shape[1]),
+                                BitPackedKnapsackProblemSolver.solve(stories,
+                                                                     shape[1]));
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BitPackedKnapsackProblemSolver#solve(java.util.List, int[])}.
+     * 
+     * Checks that the plans for several capacities from one table match the
+     * full-table solver at each capacity, and that the curve holds their
+     * values (including past the total number of points).
+     */
+    @Test
+    public void testSolve_severalCapacities()
+    {
+        Random random = new Random(19);
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 200; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(20),
+                                  1 + random.nextInt(5)));
+        }
+        
+        int[] capacities = new int[] {35, 0, 20, 25, 30, 10000};
+        SprintPlanCurve curve = BitPackedKnapsackProblemSolver.solve(stories,
+                                                                     capacities);
+        
+        Assert.assertEquals(capacities.length, curve.Plans.size());
+        for(int capacity : capacities)
+        {
+            List<Story> expected = KnapsackProblemSolver.solve(stories, capacity);
+            Assert.assertEquals("Plans differ for a capacity of " + capacity,
+                                expected,
+                                curve.Plans.get(capacity));
+            Assert.assertEquals(KnapsackProblemSolver.getTotalValue(expected),
+                                curve.getValue(capacity));
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BitPackedKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that stories given as a batch (and as part of a batch) give the
+     * same plans as the same stories in a list.
+     */
+    @Test
+    public void testSolve_batch()
+    {
+        Random random = new Random(23);
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 500; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(30),
+                                  1 + random.nextInt(5)));
+        }
+        
+        StoryBatch batch = StoryBatch.of(stories);
+        Assert.assertEquals(stories, batch);
+        Assert.assertEquals(KnapsackProblemSolver.solve(stories, 777),
+                            BitPackedKnapsackProblemSolver.solve(batch, 777));
+        Assert.assertEquals(KnapsackProblemSolver.solve(stories.subList(100, 400), 250),
+                            BitPackedKnapsackProblemSolver.solve(batch.subList(100, 400), 250));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BitPackedKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that a table too big for the heap still gives the same plan as
+     * the linear-space solver.
+     */
+    @Test
+    public void testSolve_offHeap()
+    {
+        Random random = new Random(41);
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 1000; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(200),
+                                  1 + random.nextInt(5)));
+        }
+        
+        int capacity = 70000;
+        Assert.assertTrue(1000L * DecisionTable.getWordsPerRow(capacity + 1) * 8
+                            > DecisionTable.HEAP_TABLE_LIMIT);
+        Assert.assertEquals(LinearSpaceKnapsackProblemSolver.solve(stories, capacity),
+                            BitPackedKnapsackProblemSolver.solve(stories, capacity));
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the branch-and-bound knapsack problem solver returns exactly the
+ * same plans as {@link KnapsackProblemSolver}.
+ */
+public class BranchAndBoundKnapsackProblemSolverTest
+{
+    /**
+     * Enough nodes for every search in these tests.
+     */
+    private static final long NODE_LIMIT = 10000000L;
+    
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BranchAndBoundKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Tests that the solver returns the correct values (and order).
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        List<Story> optStories = BranchAndBoundKnapsackProblemSolver.solve(stories,
+                                                                           6,
+                                                                           NODE_LIMIT);
+        
+        Assert.assertEquals(expected, optStories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BranchAndBoundKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null or the
+     * capacity is negative.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            BranchAndBoundKnapsackProblemSolver.solve(null, 6, NODE_LIMIT));
+        Assert.assertEquals(expected,
+                            BranchAndBoundKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                                      -1,
+                                                                      NODE_LIMIT));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BranchAndBoundKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Checks that the search gives up (returns null) when it runs out of
+     * nodes.  The bounds can't settle this backlog on their own, so it needs
+     * more than one node.
+     */
+    @Test
+    public void testSolve_nodeLimit()
+    {
+        Random random = new Random(11);
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 200; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(50),
+                                  1 + random.nextInt(5)));
+        }
+        
+        Assert.assertNull(BranchAndBoundKnapsackProblemSolver.solve(stories, 1000, 1));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BranchAndBoundKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Checks that a huge capacity doesn't cost anything when there are only a
+     * few stories.
+     */
+    @Test
+    public void testSolve_hugeCapacity()
+    {
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 40; k++)
+        {
+            stories.add(new Story(Integer.toString(k), 100000000 + k, 1 + k));
+        }
+        
+        //Only 21 of the stories fit, so the best plan is the first 21.
+        List<Story> plan = BranchAndBoundKnapsackProblemSolver.solve(stories,
+                                                                     Integer.MAX_VALUE - 1,
+                                                                     NODE_LIMIT);
+        
+        Assert.assertEquals(stories.subList(0, 21), plan);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BranchAndBoundKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Compares the plans against the full-table solver.  We use a small range
+     * of priorities and points so there are ties to break.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(11);
+        
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity,   maxPoints,  maxPriority
+                    {     30,         100,         20,          5},
+                    {     60,        5000,       1000,       1000},
+                    {     80,         500,         30,         10}
+                };
+        
+        for(int[] shape : shapes)
+        {
+            for(int trial = 0; trial < 20; trial++)
+            {
+                List<Story> stories = new ArrayList<>();
+                for(int k = 0; k < shape[0]; k++)
+                {
+                    stories.add(new Story(Integer.toString(k),
+                                          1 + random.nextInt(shape[2]),
+                                          1 + random.nextInt(shape[3])));
+                }
+                
+                Assert.assertEquals("Plans differ for " + shape[0] + " stories and "
+                                        + "a capacity of " + shape[1],
+                                    KnapsackProblemSolver.solve(stories, shape[1]),
+                                    BranchAndBoundKnapsackProblemSolver.solve(stories,
+                                                                              shape[1],
+                                                                              NODE_LIMIT));
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.BranchAndBoundKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Compares the plans against the full-table solver for backlogs that look
+     * like the ones getSprint passes in:  lots of stories in priority order,
+     * with the usual point values.
+     */
+    @Test
+    public void testSolve_matchesFullTable_priorityOrder()
+    {
+        Random random = new Random(1);
+        int[] pointValues = new int[] {1, 2, 3, 5, 8, 13, 21};
+        
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity
+                    {    500,       20000},
+                    {   1000,        3000},
+                    {   4000,         800}
+                };
+        
+        for(int[] shape : shapes)
+        {
+            Story[] stories = new Story[shape[0]];
+            for(int k = 0; k < shape[0]; k++)
+            {
+                stories[k] = new Story(Integer.toString(k),
+                                       pointValues[random.nextInt(pointValues.length)],
+                                       1 + random.nextInt(1000000));
+            }
+            Arrays.sort(stories, new Comparator<Story>()
+            {
+                @Override
+                public int compare(Story thisStory, Story thatStory)
+                {
+                    return Integer.compare(thisStory.Priority, thatStory.Priority);
+                }
+            });
+            
+            Assert.assertEquals("Plans differ for " + shape[0] + " stories and "
+                                    + "a capacity of " + shape[1],
+                                KnapsackProblemSolver.solve(Arrays.asList(stories), shape[1]),
+                                BranchAndBoundKnapsackProblemSolver.solve(Arrays.asList(stories),
+                                                                          shape[1],
+                                                                          NODE_LIMIT));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the cardinality-first knapsack problem solver returns exactly the
+ * same plans as {@link KnapsackProblemSolver}.
+ */
+public class CardinalityFirstKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.CardinalityFirstKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Tests that the solver returns the correct values (and order).
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        List<Story> optStories = CardinalityFirstKnapsackProblemSolver.solve(stories, 6);
+        
+        Assert.assertEquals(expected, optStories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.CardinalityFirstKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null, the
+     * capacity is negative, or nothing fits.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            CardinalityFirstKnapsackProblemSolver.solve(null, 6));
+        Assert.assertEquals(expected,
+                            CardinalityFirstKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                                        -1));
+        Assert.assertEquals(expected,
+                            CardinalityFirstKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 10, 1)),
+                                                                        9));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.CardinalityFirstKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * When the priorities are huge, one fewer story can be worth more, so the
+     * solver has to fall back to the general algorithm.
+     */
+    @Test
+    public void testSolve_hugePriorities()
+    {
+        List<Story> expected = Arrays.asList(new Story("1", 2, 1));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.addAll(expected);
+        stories.add(new Story("2", 1, Integer.MAX_VALUE - 1));
+        stories.add(new Story("3", 1, Integer.MAX_VALUE - 1));
+        
+        Assert.assertEquals(expected,
+                            CardinalityFirstKnapsackProblemSolver.solve(stories, 2));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.CardinalityFirstKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Compares the plans against the full-table solver for stories whose point
+     * values are close together (so the smaller table is used).  There are
+     * only a few priorities, so there are lots of ties to break.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(13);
+        
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity,   minPoints,  pointRange
+                    {   2000,       1000,       95,         11},
+                    {   5000,        500,       20,          3},
+                    {    500,        100,        1,         40},
+                    {    100,      10000,      100,          1}
+                };
+        
+        for(int[] shape : shapes)
+        {
+            List<Story> stories = new ArrayList<>();
+            for(int k = 0; k < shape[0]; k++)
+            {
+                stories.add(new Story(Integer.toString(k),
+                                      shape[2] + random.nextInt(shape[3]),
+                                      1 + random.nextInt(4)));
+            }
+            
+            Assert.assertEquals("Plans differ for " + shape[0] + " stories and "
+                                    + "a capacity of " + shape[1],
+                                KnapsackProblemSolver.solve(stories, shape[1]),
+                                CardinalityFirstKnapsackProblemSolver.solve(stories,
+                                                                            shape[1]));
+        }
+    }
+}
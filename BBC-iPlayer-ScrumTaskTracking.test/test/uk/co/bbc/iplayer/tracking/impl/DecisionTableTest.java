@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that every decision table backend stores the same bits, and that
+ * the backend is picked by the size of the table.
+ */
+public class DecisionTableTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.DecisionTable#allocate(int, int, uk.co.bbc.iplayer.tracking.impl.DecisionTable.Backend)}.
+     * 
+     * Sets random rows in each backend and reads every bit back.  The number
+     * of columns doesn't line up with the 64-bit words.
+     */
+    @Test
+    public void testSetRow()
+    {
+        int rows = 5;
+        int columns = 200;
+        int wordsPerRow = DecisionTable.getWordsPerRow(columns);
+        Assert.assertEquals(4, wordsPerRow);
+        
+        for(DecisionTable.Backend backend : DecisionTable.Backend.values())
+        {
+            Random random = new Random(37);
+            long[][] expected = new long[rows][wordsPerRow];
+            try(DecisionTable table = DecisionTable.allocate(rows, columns, backend))
+            {
+                Assert.assertEquals(backend, table.getBackend());
+                
+                for(int row = 0; row < rows; row++)
+                {
+                    for(int word = 0; word < wordsPerRow; word++)
+                    {
+                        expected[row][word] = random.nextLong();
+                    }
+                    
+                    table.setRow(row, expected[row]);
+                }
+                
+                for(int row = 0; row < rows; row++)
+                {
+                    for(int column = 0; column < columns; column++)
+                    {
+                        boolean isSet = (expected[row][column / Long.SIZE]
+                                            & (1L << (column % Long.SIZE))) != 0;
+                        Assert.assertEquals(backend + " (" + row + ", " + column + ")",
+                                            isSet,
+                                            table.isSet(row, column));
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.DecisionTable#allocate(int, int)}.
+     * 
+     * Checks that small tables live on the heap and big ones don't.
+     */
+    @Test
+    public void testAllocate()
+    {
+        try(DecisionTable table = DecisionTable.allocate(100, 1000))
+        {
+            Assert.assertEquals(DecisionTable.Backend.HEAP, table.getBackend());
+        }
+        
+        //16MB
+        try(DecisionTable table = DecisionTable.allocate(2, 1 << 26))
+        {
+            Assert.assertNotEquals(DecisionTable.Backend.HEAP, table.getBackend());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the incremental knapsack problem solver returns exactly the
+ * same plans as {@link KnapsackProblemSolver} as stories are added and
+ * removed.
+ */
+public class IncrementalKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.IncrementalKnapsackProblemSolver#solve()}.
+     * 
+     * Tests that the solver returns the correct values (and order).
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        IncrementalKnapsackProblemSolver solver = new IncrementalKnapsackProblemSolver(6);
+        solver.add(new Story("1", 4, 3));
+        solver.add(expected.get(0));
+        solver.add(new Story("2", 3, 4));
+        solver.add(expected.get(1));
+        
+        Assert.assertEquals(expected, solver.solve());
+        Assert.assertEquals(4, solver.size());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.IncrementalKnapsackProblemSolver#IncrementalKnapsackProblemSolver(int)}.
+     * 
+     * Checks that we can't plan for a negative or huge capacity.
+     */
+    @Test
+    public void testConstructor_invalidCapacity()
+    {
+        for(int capacity : new int[] {-1, Integer.MAX_VALUE})
+        {
+            try
+            {
+                new IncrementalKnapsackProblemSolver(capacity);
+                Assert.fail("Expected an exception for a capacity of " + capacity);
+            }
+            catch(IllegalArgumentException e)
+            {
+                //Expected
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.IncrementalKnapsackProblemSolver#remove(java.lang.String)}.
+     * 
+     * Checks that removing a story that isn't there does nothing.
+     */
+    @Test
+    public void testRemove_notFound()
+    {
+        IncrementalKnapsackProblemSolver solver =
+                new IncrementalKnapsackProblemSolver(Arrays.asList(new Story("1", 1, 1)),
+                                                     6);
+        
+        Assert.assertFalse(solver.remove("2"));
+        Assert.assertTrue(solver.remove("1"));
+        Assert.assertEquals(new ArrayList<Story>(), solver.solve());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.IncrementalKnapsackProblemSolver#solve()}.
+     * 
+     * Adds and removes stories at random (across checkpoint boundaries) and
+     * compares the plans against the full-table solver after each change.
+     * We use a small range of priorities and points so there are lots of ties
+     * to break.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(17);
+        int capacity = 300;
+        Comparator<Story> byPriority = new Comparator<Story>()
+        {
+            @Override
+            public int compare(Story thisStory, Story thatStory)
+            {
+                return Integer.compare(thisStory.Priority, thatStory.Priority);
+            }
+        };
+        
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 400; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(30),
+                                  1 + random.nextInt(20)));
+        }
+        
+        //The sort is stable, so this is the order the database would use.
+        Collections.sort(stories, byPriority);
+        IncrementalKnapsackProblemSolver solver =
+                new IncrementalKnapsackProblemSolver(stories, capacity);
+        
+        for(int k = 400; k < 600; k++)
+        {
+            if(random.nextInt(3) == 0)
+            {
+                Story story = stories.remove(random.nextInt(stories.size()));
+                Assert.assertTrue(solver.remove(story.Id));
+            }
+            else
+            {
+                Story story = new Story(Integer.toString(k),
+                                        1 + random.nextInt(30),
+                                        1 + random.nextInt(20));
+                stories.add(story);
+                Collections.sort(stories, byPriority);
+                solver.add(story);
+            }
+            
+            Assert.assertEquals("Plans differ after change " + k,
+                                KnapsackProblemSolver.solve(stories, capacity),
+                                solver.solve());
+        }
+    }
+}
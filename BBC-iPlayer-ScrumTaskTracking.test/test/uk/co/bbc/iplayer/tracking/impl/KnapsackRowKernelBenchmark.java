@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.Random;
+
+/**
+ * Compares the number of dynamic programming cells per second computed by the
+ * {@link KnapsackRowKernel} against the original (branching, 2D-indexed)
+ * loop.  This isn't run as part of the unit tests.  Run it with:
+ * 
+ *   java -cp [test classpath] uk.co.bbc.iplayer.tracking.impl.KnapsackRowKernelBenchmark
+ * 
+ * Each shape is warmed up before it is timed so the JIT has compiled both
+ * loops.
+ */
+public class KnapsackRowKernelBenchmark
+{
+    /**
+     * The number of untimed runs of each loop.
+     */
+    private static final int WARM_UP_ITERATIONS = 5;
+    
+    /**
+     * The number of timed runs of each loop.
+     */
+    private static final int MEASURED_ITERATIONS = 10;
+    
+    
+    /**
+     * Runs the benchmark.
+     * @param args  ignored.
+     */
+    public static void main(String[] args)
+    {
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity
+                    {   1000,       1000},
+                    {   1000,      10000},
+                    {    100,     100000}
+                };
+        
+        System.out.println(String.format("%10s  %10s  %15s  %15s",
+                                         "stories", "capacity",
+                                         "original c/s", "kernel c/s"));
+        for(int[] shape : shapes)
+        {
+            int[] weights = new int[shape[0]];
+            long[] values = new long[shape[0]];
+            Random random = new Random(1);
+            for(int k = 0; k < shape[0]; k++)
+            {
+                weights[k] = 1 + random.nextInt(100);
+                values[k] = Integer.MAX_VALUE - (1 + random.nextInt(10));
+            }
+            long[][] table = new long[shape[0] + 1][shape[1] + 1];
+            
+            double original = 0;
+            double kernel = 0;
+            for(int k = 0; k < WARM_UP_ITERATIONS + MEASURED_ITERATIONS; k++)
+            {
+                long start = System.nanoTime();
+                KnapsackRowKernelBenchmark.fillOriginal(table, weights, values);
+                long middle = System.nanoTime();
+                KnapsackRowKernelBenchmark.fillKernel(table, weights, values);
+                long end = System.nanoTime();
+                
+                if(k >= WARM_UP_ITERATIONS)
+                {
+                    original += middle - start;
+                    kernel += end - middle;
+                }
+            }
+            
+            double cells = (double) shape[0] * (shape[1] + 1) * MEASURED_ITERATIONS;
+            System.out.println(String.format("%10d  %10d  %15.3e  %15.3e",
+                                             shape[0],
+                                             shape[1],
+                                             cells / (original / 1e9),
+                                             cells / (kernel / 1e9)));
+        }
+    }
+    
+    
+    /**
+     * Fills the table with the loop KnapsackProblemSolver.setUpTable
+     * originally used.
+     * @param table  the table to fill.
+     * @param weights  the stories' points.
+     * @param values  the stories' values.
+     */
+    private static void fillOriginal(long[][] table,
+                                     int[] weights,
+                                     long[] values)
+    {
+        for(int i = 1; i < table.length; i++)
+        {
+            int weight = weights[i - 1];
+            long value = values[i - 1];
+            for(int j = 0; j < table[i].length; j++)
+            {
+                if(weight > j)
+                {
+                    table[i][j] = table[i-1][j];
+                }
+                else
+                {
+                    table[i][j] = Math.max(table[i - 1][j],
+                                           table[i - 1][j - weight] + value);
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * Fills the table using the row kernel.
+     * @param table  the table to fill.
+     * @param weights  the stories' points.
+     * @param values  the stories' values.
+     */
+    private static void fillKernel(long[][] table,
+                                   int[] weights,
+                                   long[] values)
+    {
+        for(int i = 1; i < table.length; i++)
+        {
+            KnapsackRowKernel.computeRow(table[i - 1],
+                                         table[i],
+                                         weights[i - 1],
+                                         values[i - 1],
+                                         0,
+                                         table[i].length);
+        }
+    }
+}
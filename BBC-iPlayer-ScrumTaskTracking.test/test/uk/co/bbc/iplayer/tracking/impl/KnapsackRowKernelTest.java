@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the row kernel against the textbook (branching) version of the inner
+ * loop.
+ */
+public class KnapsackRowKernelTest
+{
+    /**
+     * The number of columns in the rows we test with.
+     */
+    private static final int CAPACITY_BOUND = 300;
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.KnapsackRowKernel#computeRow(long[], long[], int, long, int, int)}.
+     * 
+     * Tests every way the column range can fall relative to the weight (all
+     * before it, straddling it, all after it, and past the end of the row).
+     */
+    @Test
+    public void testComputeRow()
+    {
+        long[] previousRow = KnapsackRowKernelTest.getPreviousRow();
+        long value = 1000;
+        
+        int[] weights = new int[] {1, 7, 150, CAPACITY_BOUND - 1, CAPACITY_BOUND,
+                                   CAPACITY_BOUND + 5};
+        int[][] ranges = new int[][] {{0, CAPACITY_BOUND}, {0, 5}, {64, 128},
+                                      {149, 151}, {200, CAPACITY_BOUND},
+                                      {10, 10}};
+        
+        for(int weight : weights)
+        {
+            for(int[] range : ranges)
+            {
+                long[] expected = new long[CAPACITY_BOUND];
+                for(int j = range[0]; j < range[1]; j++)
+                {
+                    if(weight > j)
+                    {
+                        expected[j] = previousRow[j];
+                    }
+                    else
+                    {
+                        expected[j] = Math.max(previousRow[j],
+                                               previousRow[j - weight] + value);
+                    }
+                }
+                
+                long[] currentRow = new long[CAPACITY_BOUND];
+                KnapsackRowKernel.computeRow(previousRow,
+                                             currentRow,
+                                             weight,
+                                             value,
+                                             range[0],
+                                             range[1]);
+                
+                Assert.assertArrayEquals("Weight " + weight + ", columns ["
+                                             + range[0] + ", " + range[1] + ")",
+                                         expected,
+                                         currentRow);
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.KnapsackRowKernel#recordDecisions(long[], long[], long[], long, int, int)}.
+     * 
+     * Tests that exactly the cells that changed are recorded, including when
+     * the row doesn't start on a word boundary.
+     */
+    @Test
+    public void testRecordDecisions()
+    {
+        long[] previousRow = KnapsackRowKernelTest.getPreviousRow();
+        long[] currentRow = new long[CAPACITY_BOUND];
+        KnapsackRowKernel.computeRow(previousRow,
+                                     currentRow,
+                                     13,
+                                     1000,
+                                     0,
+                                     CAPACITY_BOUND);
+        
+        long rowStartBit = 37;
+        long[] decisions = new long[(CAPACITY_BOUND + (int) rowStartBit) / 64 + 1];
+        KnapsackRowKernel.recordDecisions(previousRow,
+                                          currentRow,
+                                          decisions,
+                                          rowStartBit,
+                                          0,
+                                          CAPACITY_BOUND);
+        
+        for(int j = 0; j < CAPACITY_BOUND; j++)
+        {
+            long bit = rowStartBit + j;
+            boolean isSet = (decisions[(int) (bit / 64)] & (1L << bit)) != 0;
+            Assert.assertEquals("Column " + j,
+                                previousRow[j] != currentRow[j],
+                                isSet);
+        }
+    }
+    
+    
+    /**
+     * Makes a non-decreasing row like the ones the dynamic programming
+     * algorithm produces.
+     * @return  the row.
+     */
+    private static long[] getPreviousRow()
+    {
+        Random random = new Random(3);
+        long[] row = new long[CAPACITY_BOUND];
+        for(int j = 1; j < CAPACITY_BOUND; j++)
+        {
+            row[j] = row[j - 1] + random.nextInt(300);
+        }
+        
+        return row;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Stress tests the linear-space knapsack problem solver with the problem sizes
+ * that {@link KnapsackProblemSolver} runs out of memory on.
+ */
+@RunWith(Parameterized.class)
+public class LinearSpaceKnapsackProblemSolverStressTest
+{
+    
+    /**
+     * The number of stories and the capacity I want to try.
+     * @return  A collection of backlog sizes (the number of items to put in the
+     *          backpack) and the max capacity I want to attempt.
+     */
+    @Parameters
+    public static Collection<Object[]> testExecutionValues()
+    {
+        Object[][] data = new Object[][]
+                {
+                    //backlogSize,  sprintCapacity
+                    {    1000,      1000},
+                    {   10000,      1000},
+                    {  100000,      1000},
+                    { 1000000,       500},
+                    { 1000000,      1000},
+                    {  100000,     10000}
+                };
+        return Arrays.asList(data);
+    }
+
+    
+    
+    //-------------------------------------------------------------------------
+    //  DATA MEMBERS
+    //-------------------------------------------------------------------------
+    /**
+     * The size of the backlog to test.
+     */
+    private int backlogSize;
+    
+    
+    /**
+     * The capacity of the backlog.
+     */
+    private int capacity;
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  CONSTRUCTORS
+    //-------------------------------------------------------------------------
+    /**
+     * Constructor
+     * @param backlogSize  the number of stories available to put into the 
+     *                     sprint.
+     * @param capacity  the expected sprint size.
+     */
+    public LinearSpaceKnapsackProblemSolverStressTest(int backlogSize, int capacity)
+    {
+        this.backlogSize = backlogSize;
+        this.capacity    = capacity;
+    }
+    
+    
+
+    //-------------------------------------------------------------------------
+    //  TEST CASES
+    //-------------------------------------------------------------------------
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.LinearSpaceKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Tests that it can solve a large problem without keeping the whole table
+     * in memory.
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> backlog = new ArrayList<>();
+        for(int k = 0; k < this.backlogSize; k++)
+        {
+            backlog.add(new Story(Integer.toString(k),
+                                  100, 
+                                  Integer.MAX_VALUE - (k % 10)));
+        }
+
+        try
+        {
+            //I don't care about the value, just that I didn't run out of 
+            //  memory.
+            LinearSpaceKnapsackProblemSolver.solve(backlog, 
+                                                   this.capacity);
+        }
+        catch(OutOfMemoryError e)
+        {
+            Assert.fail("Ran out of memory when using a backlog of size " 
+                        + backlog.size() 
+                        + ", capacity of " 
+                        + this.capacity 
+                        + ", and maximum JVM memory size of " 
+                        + Runtime.getRuntime().maxMemory());
+        }
+    }
+}
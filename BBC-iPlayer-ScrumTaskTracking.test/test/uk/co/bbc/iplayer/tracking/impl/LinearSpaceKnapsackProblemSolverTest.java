@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the linear-space knapsack problem solver returns exactly the same
+ * plans as {@link KnapsackProblemSolver}.
+ */
+public class LinearSpaceKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.LinearSpaceKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Tests that the solver returns the correct values (and order).
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        List<Story> optStories = LinearSpaceKnapsackProblemSolver.solve(stories, 6);
+        
+        Assert.assertEquals(expected, optStories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.LinearSpaceKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null or the
+     * capacity is negative.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            LinearSpaceKnapsackProblemSolver.solve(null, 6));
+        Assert.assertEquals(expected,
+                            LinearSpaceKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                                   -1));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.LinearSpaceKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Compares the plans against the full-table solver for problems big enough
+     * that the solver has to divide them up.  We use a small range of
+     * priorities and points so there are lots of ties to break.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(42);
+        
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity
+                    {   3000,       1000},
+                    {    700,       4000},
+                    {  20000,         60}
+                };
+        
+        for(int[] shape : shapes)
+        {
+            List<Story> stories = new ArrayList<>();
+            for(int k = 0; k < shape[0]; k++)
+            {
+                stories.add(new Story(Integer.toString(k),
+                                      1 + random.nextInt(50),
+                                      1 + random.nextInt(5)));
+            }
+            
+            Assert.assertEquals("Plans differ for " + shape[0] + " stories and "
+                                    + "a capacity of " + shape[1],
+                                KnapsackProblemSolver.solve(stories, shape[1]),
+                                LinearSpaceKnapsackProblemSolver.solve(stories,
+                                                                       shape[1]));
+        }
+    }
+}
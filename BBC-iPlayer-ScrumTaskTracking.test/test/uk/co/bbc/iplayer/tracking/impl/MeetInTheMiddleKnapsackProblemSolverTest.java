@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the meet-in-the-middle knapsack problem solver returns exactly
+ * the same plans as {@link KnapsackProblemSolver}.
+ */
+public class MeetInTheMiddleKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MeetInTheMiddleKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Tests that the solver returns the correct values (and order).
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        List<Story> optStories = MeetInTheMiddleKnapsackProblemSolver.solve(stories, 6);
+        
+        Assert.assertEquals(expected, optStories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MeetInTheMiddleKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null or the
+     * capacity is negative, and that too many stories are rejected.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            MeetInTheMiddleKnapsackProblemSolver.solve(null, 6));
+        Assert.assertEquals(expected,
+                            MeetInTheMiddleKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                                       -1));
+        
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k <= MeetInTheMiddleKnapsackProblemSolver.MAX_STORIES; k++)
+        {
+            stories.add(new Story(Integer.toString(k), 1, 1));
+        }
+        try
+        {
+            MeetInTheMiddleKnapsackProblemSolver.solve(stories, 6);
+            Assert.fail("Expected an IllegalArgumentException for too many stories");
+        }
+        catch(IllegalArgumentException e)
+        {
+            //Expected
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MeetInTheMiddleKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Compares the plans against the full-table solver.  We use a small range
+     * of priorities and points so there are lots of ties to break, and odd
+     * numbers of stories so the halves differ in size.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(31);
+        
+        for(int trial = 0; trial < 40; trial++)
+        {
+            int numStories = 1 + random.nextInt(20);
+            List<Story> stories = new ArrayList<>();
+            for(int k = 0; k < numStories; k++)
+            {
+                stories.add(new Story(Integer.toString(k),
+                                      1 + random.nextInt(10),
+                                      1 + random.nextInt(3)));
+            }
+            int capacity = random.nextInt(60);
+            
+            Assert.assertEquals("Plans differ for " + numStories + " stories and "
+                                    + "a capacity of " + capacity,
+                                KnapsackProblemSolver.solve(stories, capacity),
+                                MeetInTheMiddleKnapsackProblemSolver.solve(stories,
+                                                                           capacity));
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MeetInTheMiddleKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks a small backlog with a capacity in the millions against the
+     * bit-packed solver.
+     */
+    @Test
+    public void testSolve_hugeCapacity()
+    {
+        Random random = new Random(37);
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 30; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(1000000),
+                                  1 + random.nextInt(5)));
+        }
+        
+        Assert.assertEquals(BitPackedKnapsackProblemSolver.solve(stories, 3000000),
+                            MeetInTheMiddleKnapsackProblemSolver.solve(stories, 3000000));
+    }
+}
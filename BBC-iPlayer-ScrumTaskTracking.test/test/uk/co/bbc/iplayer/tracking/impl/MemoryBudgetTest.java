@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that memory reservations are only granted while they fit in the
+ * budget, and that waiting reservations are granted once memory is released.
+ */
+public class MemoryBudgetTest
+{
+    /**
+     * A budget whose heap headroom is set by the test.
+     */
+    private static class FixedHeadroomBudget extends MemoryBudget
+    {
+        /**
+         * The headroom to report.
+         */
+        private long headroom;
+        
+        
+        /**
+         * Constructor
+         * @param budgetBytes  the most bytes that may be reserved at once.
+         * @param headroom  the headroom to report.
+         */
+        FixedHeadroomBudget(long budgetBytes,
+                            long headroom)
+        {
+            super(budgetBytes);
+            this.headroom = headroom;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected long getHeadroom()
+        {
+            return this.headroom;
+        }
+    }
+    
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MemoryBudget#tryReserve(long)}.
+     * 
+     * Checks that reservations add up against the budget and are given back
+     * when released.
+     */
+    @Test
+    public void testTryReserve()
+    {
+        MemoryBudget budget = new MemoryBudget(1000);
+        
+        Assert.assertTrue(budget.tryReserve(600));
+        Assert.assertFalse(budget.tryReserve(600));
+        Assert.assertTrue(budget.tryReserve(400));
+        Assert.assertEquals(1000, budget.getReservedBytes());
+        Assert.assertTrue(budget.tryReserve(0));
+        
+        budget.release(600);
+        Assert.assertTrue(budget.tryReserve(600));
+        
+        budget.release(600);
+        budget.release(400);
+        Assert.assertEquals(0, budget.getReservedBytes());
+        Assert.assertFalse(budget.tryReserve(1001));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MemoryBudget#getAvailableBytes()}.
+     * 
+     * Checks that memory a solve has reserved and already allocated (so it
+     * is gone from the headroom) isn't counted against the headroom again.
+     */
+    @Test
+    public void testGetAvailableBytes_reservedAndAllocated()
+    {
+        FixedHeadroomBudget budget = new FixedHeadroomBudget(1000, 1000);
+        Assert.assertTrue(budget.tryReserve(600));
+        Assert.assertEquals(400, budget.getAvailableBytes());
+        
+        //The solve allocates what it reserved.
+        budget.headroom = 400;
+        Assert.assertEquals(400, budget.getAvailableBytes());
+        Assert.assertTrue(budget.tryReserve(400));
+        
+        //Something else fills the heap.
+        budget.release(400);
+        budget.headroom = 100;
+        Assert.assertEquals(100, budget.getAvailableBytes());
+        Assert.assertFalse(budget.tryReserve(200));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MemoryBudget#reserve(long, long)}.
+     * 
+     * Checks that a reservation waits for another thread to release its
+     * memory, times out if it doesn't, and doesn't wait at all if it will
+     * never fit.
+     * @throws InterruptedException  if the test is interrupted.
+     */
+    @Test
+    public void testReserve() throws InterruptedException
+    {
+        final MemoryBudget budget = new MemoryBudget(1000);
+        Assert.assertTrue(budget.tryReserve(800));
+        
+        Assert.assertFalse(budget.reserve(500, 50));
+        
+        long start = System.nanoTime();
+        Assert.assertFalse(budget.reserve(2000, 60000));
+        Assert.assertTrue(System.nanoTime() - start < 30000000000L);
+        
+        Thread releaser = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch(InterruptedException e)
+                {
+                    //Release early.
+                }
+                
+                budget.release(800);
+            }
+        };
+        releaser.start();
+        
+        Assert.assertTrue(budget.reserve(500, 60000));
+        Assert.assertEquals(500, budget.getReservedBytes());
+        releaser.join();
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.MultiSprintPlan;
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the multiple knapsack problem solver returns plans that fit,
+ * don't plan any story twice, and are optimal when it says they are.
+ */
+public class MultipleKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MultipleKnapsackProblemSolver#solve(java.util.List, int[])}.
+     * 
+     * Checks that planning one sprint gives the same plan as the
+     * single-sprint solver.
+     */
+    @Test
+    public void testSolve_oneSprint()
+    {
+        List<Story> stories = MultipleKnapsackProblemSolverTest.getStories(new Random(23),
+                                                                           100);
+        
+        MultiSprintPlan plan = MultipleKnapsackProblemSolver.solve(stories,
+                                                                   new int[] {40});
+        
+        Assert.assertEquals(1, plan.Sprints.size());
+        Assert.assertEquals(KnapsackProblemSolver.solve(stories, 40),
+                            plan.Sprints.get(0));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MultipleKnapsackProblemSolver#solve(java.util.List, int[])}.
+     * 
+     * Checks that we get an empty sprint for each capacity if there are no
+     * stories.
+     */
+    @Test
+    public void testSolve_noStories()
+    {
+        MultiSprintPlan plan = MultipleKnapsackProblemSolver.solve(null,
+                                                                   new int[] {5, 6});
+        
+        Assert.assertEquals(2, plan.Sprints.size());
+        Assert.assertTrue(plan.Sprints.get(0).isEmpty());
+        Assert.assertTrue(plan.Sprints.get(1).isEmpty());
+        Assert.assertTrue(plan.isOptimal());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MultipleKnapsackProblemSolver#solve(java.util.List, int[])}.
+     * 
+     * Compares small plans against trying every assignment of stories to
+     * sprints.
+     */
+    @Test
+    public void testSolve_matchesBruteForce()
+    {
+        Random random = new Random(29);
+        
+        for(int trial = 0; trial < 20; trial++)
+        {
+            List<Story> stories = MultipleKnapsackProblemSolverTest.getStories(random,
+                                                                               9);
+            int[] capacities = new int[2 + random.nextInt(2)];
+            for(int sprint = 0; sprint < capacities.length; sprint++)
+            {
+                capacities[sprint] = 5 + random.nextInt(15);
+            }
+            
+            MultiSprintPlan plan = MultipleKnapsackProblemSolver.solve(stories,
+                                                                       capacities);
+            
+            MultipleKnapsackProblemSolverTest.checkPlan(stories, capacities, plan);
+            Assert.assertTrue(plan.isOptimal());
+            Assert.assertEquals("Trial " + trial,
+                                MultipleKnapsackProblemSolverTest.getBestValue(stories,
+                                                                               capacities,
+                                                                               0,
+                                                                               capacities.clone()),
+                                plan.Value);
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.MultipleKnapsackProblemSolver#solve(java.util.List, int[])}.
+     * 
+     * Checks that a plan with too many stories to search is still valid and
+     * bounded.
+     */
+    @Test
+    public void testSolve_large()
+    {
+        List<Story> stories = MultipleKnapsackProblemSolverTest.getStories(new Random(31),
+                                                                           1000);
+        int[] capacities = new int[] {100, 80, 120};
+        
+        MultiSprintPlan plan = MultipleKnapsackProblemSolver.solve(stories,
+                                                                   capacities);
+        
+        MultipleKnapsackProblemSolverTest.checkPlan(stories, capacities, plan);
+        Assert.assertTrue(plan.Value <= plan.UpperBound);
+        Assert.assertTrue(plan.getAchievedBound() > 0.9);
+    }
+    
+    
+    
+    /**
+     * Makes random stories with lots of ties.
+     * @param random  the random number generator.
+     * @param numStories  the number of stories to make.
+     * @return  the stories, in priority order.
+     */
+    private static List<Story> getStories(Random random,
+                                          int numStories)
+    {
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < numStories; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(10),
+                                  1 + k / 3));
+        }
+        
+        return stories;
+    }
+    
+    
+    /**
+     * Checks that each sprint fits, is in priority order, and that no story
+     * is planned twice.
+     * @param stories  the stories that were planned.
+     * @param capacities  the capacity of each sprint.
+     * @param plan  the plan.
+     */
+    private static void checkPlan(List<Story> stories,
+                                  int[] capacities,
+                                  MultiSprintPlan plan)
+    {
+        Assert.assertEquals(capacities.length, plan.Sprints.size());
+        
+        Set<Story> planned = Collections.newSetFromMap(new IdentityHashMap<Story, Boolean>());
+        long value = 0;
+        for(int sprint = 0; sprint < capacities.length; sprint++)
+        {
+            int points = 0;
+            int lastIndex = -1;
+            for(Story story : plan.Sprints.get(sprint))
+            {
+                Assert.assertTrue(planned.add(story));
+                Assert.assertTrue(stories.indexOf(story) > lastIndex);
+                lastIndex = stories.indexOf(story);
+                points += story.Points;
+                value += KnapsackProblemSolver.getValue(story);
+            }
+            
+            Assert.assertTrue(points <= capacities[sprint]);
+        }
+        
+        Assert.assertEquals(value, plan.Value);
+    }
+    
+    
+    /**
+     * Gets the value of the best plan by trying every assignment.
+     * @param stories  the stories to plan.
+     * @param capacities  the capacity of each sprint.
+     * @param index  the next story to assign.
+     * @param capacityLeft  the capacity left in each sprint.
+     * @return  the value of the best plan for the stories from index on.
+     */
+    private static long getBestValue(List<Story> stories,
+                                     int[] capacities,
+                                     int index,
+                                     int[] capacityLeft)
+    {
+        if(index == stories.size())
+        {
+            return 0;
+        }
+        
+        Story story = stories.get(index);
+        long best = MultipleKnapsackProblemSolverTest.getBestValue(stories,
+                                                                   capacities,
+                                                                   index + 1,
+                                                                   capacityLeft);
+        for(int sprint = 0; sprint < capacityLeft.length; sprint++)
+        {
+            if(story.Points <= capacityLeft[sprint])
+            {
+                capacityLeft[sprint] -= story.Points;
+                best = Math.max(best,
+                                KnapsackProblemSolver.getValue(story)
+                                    + MultipleKnapsackProblemSolverTest.getBestValue(stories,
+                                                                                     capacities,
+                                                                                     index + 1,
+                                                                                     capacityLeft));
+                capacityLeft[sprint] += story.Points;
+            }
+        }
+        
+        return best;
+    }
+}
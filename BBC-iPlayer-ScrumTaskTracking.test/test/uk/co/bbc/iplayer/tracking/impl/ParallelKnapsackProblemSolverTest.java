@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the parallel knapsack problem solver returns exactly the same
+ * plans as {@link KnapsackProblemSolver}.
+ */
+public class ParallelKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ParallelKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Tests that the solver returns the correct values (and order) for a
+     * problem too small to split up.
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        List<Story> optStories = ParallelKnapsackProblemSolver.solve(stories, 6);
+        
+        Assert.assertEquals(expected, optStories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ParallelKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null or the
+     * capacity is negative.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            ParallelKnapsackProblemSolver.solve(null, 6));
+        Assert.assertEquals(expected,
+                            ParallelKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                                -1));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ParallelKnapsackProblemSolver#solve(java.util.List, int, java.util.concurrent.ForkJoinPool)}.
+     * 
+     * Compares the plans against the full-table solver for capacities large
+     * enough that the rows are split up across the pool.  Capacities that
+     * don't line up with the 64-bit words make sure the split points are
+     * handled.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(11);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        
+        int[][] shapes = new int[][]
+                {
+                    //numStories,   capacity
+                    {    200,      20000},
+                    {    100,      ParallelKnapsackProblemSolver.SEQUENTIAL_CUTOFF * 3 + 17},
+                    {     50,      ParallelKnapsackProblemSolver.SEQUENTIAL_CUTOFF}
+                };
+        
+        try
+        {
+            for(int[] shape : shapes)
+            {
+                List<Story> stories = new ArrayList<>();
+                for(int k = 0; k < shape[0]; k++)
+                {
+                    stories.add(new Story(Integer.toString(k),
+                                          1 + random.nextInt(1000),
+                                          1 + random.nextInt(5)));
+                }
+                
+                Assert.assertEquals("Plans differ for " + shape[0] + " stories "
+                                        + "and a capacity of " + shape[1],
+                                    KnapsackProblemSolver.solve(stories, shape[1]),
+                                    ParallelKnapsackProblemSolver.solve(stories,
+                                                                        shape[1],
+                                                                        pool));
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
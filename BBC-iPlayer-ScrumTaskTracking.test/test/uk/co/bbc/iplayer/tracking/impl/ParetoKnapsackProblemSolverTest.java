@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Checks that the Pareto-frontier knapsack problem solver returns exactly the
+ * same plans as {@link KnapsackProblemSolver}.
+ */
+public class ParetoKnapsackProblemSolverTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ParetoKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Tests that the solver returns the correct values (and order).
+     */
+    @Test
+    public void testSolve()
+    {
+        List<Story> expected = Arrays.asList(new Story("3", 2, 2),
+                                             new Story("4", 3, 2));
+        
+        List<Story> stories = new ArrayList<>();
+        stories.add(expected.get(0));
+        stories.add(new Story("1", 4, 3));
+        stories.add(new Story("2", 3, 4));
+        stories.addAll(expected.subList(1, expected.size()));
+        
+        List<Story> optStories = ParetoKnapsackProblemSolver.solve(stories, 6);
+        
+        Assert.assertEquals(expected, optStories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ParetoKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null or the
+     * capacity is negative.
+     */
+    @Test
+    public void testSolve_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected,
+                            ParetoKnapsackProblemSolver.solve(null, 6));
+        Assert.assertEquals(expected,
+                            ParetoKnapsackProblemSolver.solve(Arrays.asList(new Story("1", 1, 1)),
+                                                              -1));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ParetoKnapsackProblemSolver#solve(java.util.List, int)}.
+     * 
+     * Compares the plans against the full-table solver, both for a few large
+     * point values (where the frontier is small) and for dense point values
+     * with lots of ties to break.
+     */
+    @Test
+    public void testSolve_matchesFullTable()
+    {
+        Random random = new Random(29);
+        int[] sparsePoints = new int[] {100, 200, 500};
+        
+        for(int trial = 0; trial < 20; trial++)
+        {
+            boolean sparse = trial % 2 == 0;
+            List<Story> stories = new ArrayList<>();
+            for(int k = 0; k < 200; k++)
+            {
+                int points = sparse ? sparsePoints[random.nextInt(sparsePoints.length)]
+                                    : 1 + random.nextInt(30);
+                stories.add(new Story(Integer.toString(k),
+                                      points,
+                                      1 + random.nextInt(5)));
+            }
+            int capacity = sparse ? 100 * random.nextInt(200) + random.nextInt(100)
+                                  : random.nextInt(1000);
+            
+            Assert.assertEquals("Plans differ for a capacity of " + capacity,
+                                KnapsackProblemSolver.solve(stories, capacity),
+                                ParetoKnapsackProblemSolver.solve(stories, capacity));
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.ParetoKnapsackProblemSolver#solve(java.util.List, int, long)}.
+     * 
+     * Checks that the solver gives up once it keeps too many states, and
+     * that a huge capacity is fine when the frontier is small.  The bigger
+     * stories are worth more, so few states are dominated.
+     */
+    @Test
+    public void testSolve_stateLimit()
+    {
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 20; k++)
+        {
+            stories.add(new Story(Integer.toString(k), 1 << k, 20 - k));
+        }
+        
+        Assert.assertNull(ParetoKnapsackProblemSolver.solve(stories,
+                                                            Integer.MAX_VALUE - 1,
+                                                            1000));
+        
+        List<Story> sparse = stories.subList(0, 5);
+        Assert.assertEquals(sparse,
+                            ParetoKnapsackProblemSolver.solve(sparse,
+                                                              Integer.MAX_VALUE - 1,
+                                                              1000));
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+import uk.co.bbc.iplayer.tracking.test.infrastructure.TestUsingDB;
+
+/**
+ * Checks that the pipelined knapsack problem solver returns exactly the same
+ * plans as {@link KnapsackProblemSolver} for the stories in the database.
+ */
+public class PipelinedKnapsackProblemSolverTest extends TestUsingDB
+{
+    /**
+     * A cursor that returns made-up stories and then fails partway through.
+     */
+    private static class FailingCursor extends StoryCursor
+    {
+        /**
+         * The number of stories to return before failing.
+         */
+        private int remaining;
+        
+        /**
+         * The error to fail with.
+         */
+        private final RuntimeException failure;
+        
+        
+        /**
+         * Constructor
+         * @param connection  a connection for the (unused) results.
+         * @param numStories  the number of stories to return before failing.
+         * @param failure  the error to fail with.
+         * @throws SQLException  if the query could not be run.
+         */
+        FailingCursor(Connection connection,
+                      int numStories,
+                      RuntimeException failure) throws SQLException
+        {
+            super(connection, "VALUES 1", 0);
+            this.remaining = numStories;
+            this.failure = failure;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean advance() throws TaskTrackerException
+        {
+            if(this.remaining == 0)
+            {
+                throw this.failure;
+            }
+            
+            this.remaining--;
+            return true;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getId()
+        {
+            return Integer.toString(this.remaining);
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getPoints()
+        {
+            return 1 + (this.remaining % 7);
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getPriority()
+        {
+            return 1;
+        }
+        
+        
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getOid()
+        {
+            return this.remaining;
+        }
+    }
+    
+    
+    
+    /**
+     * The database holding the stories.
+     */
+    protected StoryDB storyDB;
+    
+    
+    
+    /**
+     * {@inheritDoc}
+     * @throws TaskTrackerException  if the stories could not be added.
+     */
+    @Before
+    @Override
+    public void setUp() throws InstantiationException,
+                               IllegalAccessException,
+                               SQLException, TaskTrackerException
+    {
+        super.setUp();
+        
+        this.storyDB = new StoryDB();
+        Random random = new Random(47);
+        for(int k = 0; k < 500; k++)
+        {
+            this.storyDB.addStory(new Story(Integer.toString(k),
+                                            1 + random.nextInt(30),
+                                            1 + random.nextInt(5)));
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.PipelinedKnapsackProblemSolver#solve(uk.co.bbc.iplayer.tracking.impl.StoryCursor, int, int, int, int)}.
+     * 
+     * Compares the plans against the full-table solver, with batches and a
+     * queue small enough that the producer has to wait for the solver.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *                  database.
+     */
+    @Test
+    public void testSolve() throws TaskTrackerException
+    {
+        List<Story> stories = this.storyDB.getAllStoriesInPriorityOrder();
+        
+        for(int capacity : new int[] {1, 29, 300, 9000})
+        {
+            this.storyDB.setFetchSize(capacity % 50);
+            Assert.assertEquals("Plans differ for a capacity of " + capacity,
+                                KnapsackProblemSolver.solve(stories, capacity),
+                                PipelinedKnapsackProblemSolver.solve(this.storyDB.openStoryCursor(),
+                                                                     capacity,
+                                                                     stories.size(),
+                                                                     3,
+                                                                     2));
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.PipelinedKnapsackProblemSolver#solve(uk.co.bbc.iplayer.tracking.impl.StoryCursor, int, int)}.
+     * 
+     * Checks that we give up if there are more stories that could be in the
+     * plan than we made room for, and that the database is still usable
+     * afterwards.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *                  database.
+     */
+    @Test
+    public void testSolve_tooManyStories() throws TaskTrackerException
+    {
+        Assert.assertNull(PipelinedKnapsackProblemSolver.solve(this.storyDB.openStoryCursor(),
+                                                               1000,
+                                                               100));
+        Assert.assertEquals(500, this.storyDB.getStoryCount());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.PipelinedKnapsackProblemSolver#solve(uk.co.bbc.iplayer.tracking.impl.StoryCursor, int, int, int, int)}.
+     * 
+     * Checks that an unexpected error partway through reading the stories is
+     * thrown to the caller rather than leaving it waiting for the end.
+     * @throws SQLException  if there was a problem connecting to the database.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *                  database.
+     */
+    @Test(timeout = 10000)
+    public void testSolve_cursorFails() throws SQLException, TaskTrackerException
+    {
+        IllegalStateException failure = new IllegalStateException("failed");
+        StoryCursor stories = new FailingCursor(StoryConnectionPool.getShared().getConnection(),
+                                                100,
+                                                failure);
+        try
+        {
+            PipelinedKnapsackProblemSolver.solve(stories, 50, 1000, 3, 2);
+            Assert.fail("Expected the cursor's error");
+        }
+        catch(IllegalStateException e)
+        {
+            Assert.assertSame(failure, e);
+        }
+        
+        //The cursor's connection went back to the pool.
+        Assert.assertEquals(500, this.storyDB.getStoryCount());
+    }
+}
@@ -0,0 +1,462 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.ISprintSolver;
+import uk.co.bbc.iplayer.tracking.SolverEstimate;
+import uk.co.bbc.iplayer.tracking.SprintPlan;
+import uk.co.bbc.iplayer.tracking.SprintProblem;
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.exceptions.InsufficientMemoryException;
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+
+/**
+ * Checks that the sprint solver planner picks solvers by their estimates and
+ * falls back when a solver gives up.
+ */
+public class SprintSolverPlannerTest
+{
+    //-------------------------------------------------------------------------
+    //  INNER CLASSES
+    //-------------------------------------------------------------------------
+    /**
+     * A solver with a fixed estimate that returns a fixed plan (or gives up)
+     * and counts how many times it was asked to solve.
+     */
+    private static class FixedSolver implements ISprintSolver
+    {
+        /**
+         * The name of the solver.
+         */
+        private final String name;
+        
+        /**
+         * The estimate for every sprint, or null to never offer.
+         */
+        private final SolverEstimate estimate;
+        
+        /**
+         * The plan for every sprint, or null to always give up.
+         */
+        private final SprintPlan plan;
+        
+        /**
+         * The number of times solve was called.
+         */
+        private int calls = 0;
+        
+        
+        
+        /**
+         * Constructor
+         * @param name  the name of the solver.
+         * @param estimate  the estimate for every sprint.
+         * @param plan  the plan for every sprint.
+         */
+        private FixedSolver(String name, SolverEstimate estimate, SprintPlan plan)
+        {
+            this.name = name;
+            this.estimate = estimate;
+            this.plan = plan;
+        }
+        
+        
+        @Override
+        public String getName()
+        {
+            return this.name;
+        }
+        
+        
+        @Override
+        public SolverEstimate estimateCost(SprintProblem problem)
+        {
+            return this.estimate;
+        }
+        
+        
+        @Override
+        public SprintPlan solve(SprintProblem problem)
+        {
+            this.calls++;
+            return this.plan;
+        }
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  TESTS
+    //-------------------------------------------------------------------------
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.SprintSolverPlanner#getSolverOrder(java.util.List, int)}.
+     * 
+     * Checks that the built-in solvers are tried in the same order the
+     * backlog used to hard-code:  dynamic programming if the table fits in
+     * the budget, then branch-and-bound, then the FPTAS (if registered), then
+     * the greedy prefix.
+     */
+    @Test
+    public void testGetSolverOrder()
+    {
+        SprintSolverPlanner planner = SprintSolverPlannerTest.createPlanner();
+        List<Story> stories = SprintSolverPlannerTest.createStories(1000, 11);
+        
+        Assert.assertEquals(Arrays.asList(DynamicProgrammingSprintSolver.NAME,
+                                          BranchAndBoundSprintSolver.NAME,
+                                          GreedyPrefixSprintSolver.NAME),
+                            planner.getSolverOrder(stories, 100));
+        Assert.assertEquals(Arrays.asList(BranchAndBoundSprintSolver.NAME,
+                                          GreedyPrefixSprintSolver.NAME),
+                            planner.getSolverOrder(stories, 50000));
+        
+        planner.register(new ApproximateSprintSolver(0.1, DecisionTable.BOUNDED_TABLE_BITS));
+        Assert.assertEquals(Arrays.asList(BranchAndBoundSprintSolver.NAME,
+                                          ApproximateSprintSolver.NAME,
+                                          GreedyPrefixSprintSolver.NAME),
+                            planner.getSolverOrder(stories, 50000));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.SprintSolverPlanner#getSolverOrder(java.util.List, int)}.
+     * 
+     * Checks that the cardinality-first table is estimated from the spread
+     * of the point values, so it is picked when the points are close together
+     * even though the full table would be too big.
+     */
+    @Test
+    public void testGetSolverOrder_cardinalityFirst()
+    {
+        SprintSolverPlanner planner = new SprintSolverPlanner(Backlog.PACKING_APPROXIMATION_THRESHOLD);
+        planner.register(new BranchAndBoundSprintSolver(Backlog.BRANCH_AND_BOUND_NODE_LIMIT));
+        planner.register(new DynamicProgrammingSprintSolver(Backlog.SolverMode.CARDINALITY_FIRST));
+        
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 2000; k++)
+        {
+            stories.add(new Story(Integer.toString(k), 100 + k % 3, 1 + k % 7));
+        }
+        
+        Assert.assertEquals(Arrays.asList(DynamicProgrammingSprintSolver.NAME,
+                                          BranchAndBoundSprintSolver.NAME),
+                            planner.getSolverOrder(stories, 10020));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.SprintSolverPlanner#getSolverOrder(java.util.List, int)}.
+     * 
+     * Checks that the Pareto solver is picked when the point values share a
+     * large common divisor even though the full table would be too big, and
+     * that it still comes after the table when they don't.
+     * @throws TaskTrackerException  if no solver could plan the sprint.
+     */
+    @Test
+    public void testGetSolverOrder_sparsePoints() throws TaskTrackerException
+    {
+        SprintSolverPlanner planner = SprintSolverPlannerTest.createPlanner();
+        planner.register(new ParetoSprintSolver(Backlog.PARETO_STATE_LIMIT));
+        
+        Assert.assertEquals(Arrays.asList(DynamicProgrammingSprintSolver.NAME,
+                                          ParetoSprintSolver.NAME,
+                                          BranchAndBoundSprintSolver.NAME,
+                                          GreedyPrefixSprintSolver.NAME),
+                            planner.getSolverOrder(SprintSolverPlannerTest.createStories(1000, 11),
+                                                   100));
+        
+        Random random = new Random(13);
+        int[] pointValues = new int[] {100, 200, 500};
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 1000; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  pointValues[random.nextInt(pointValues.length)],
+                                  1 + random.nextInt(1000)));
+        }
+        
+        Assert.assertEquals(Arrays.asList(ParetoSprintSolver.NAME,
+                                          BranchAndBoundSprintSolver.NAME,
+                                          GreedyPrefixSprintSolver.NAME),
+                            planner.getSolverOrder(stories, 50000));
+        
+        SprintPlan plan = planner.solve(stories, 50000);
+        Assert.assertEquals(0, plan.Epsilon, 0);
+        Assert.assertEquals(BitPackedKnapsackProblemSolver.solve(stories, 50000),
+                            plan.Stories);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.SprintSolverPlanner#getSolverOrder(java.util.List, int)}.
+     * 
+     * Checks that meet-in-the-middle is picked for a small backlog with a
+     * capacity in the millions, and not for a big one.
+     * @throws TaskTrackerException  if no solver could plan the sprint.
+     */
+    @Test
+    public void testGetSolverOrder_smallBacklog() throws TaskTrackerException
+    {
+        SprintSolverPlanner planner = SprintSolverPlannerTest.createPlanner();
+        planner.register(new MeetInTheMiddleSprintSolver(Backlog.MEET_IN_THE_MIDDLE_STORY_LIMIT));
+        
+        Random random = new Random(43);
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 30; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(1000000),
+                                  1 + random.nextInt(1000)));
+        }
+        
+        Assert.assertEquals(Arrays.asList(MeetInTheMiddleSprintSolver.NAME,
+                                          BranchAndBoundSprintSolver.NAME,
+                                          GreedyPrefixSprintSolver.NAME),
+                            planner.getSolverOrder(stories, 5000000));
+        
+        SprintPlan plan = planner.solve(stories, 5000000);
+        Assert.assertEquals(0, plan.Epsilon, 0);
+        Assert.assertEquals(BitPackedKnapsackProblemSolver.solve(stories, 5000000),
+                            plan.Stories);
+        
+        Assert.assertEquals(Arrays.asList(BranchAndBoundSprintSolver.NAME,
+                                          GreedyPrefixSprintSolver.NAME),
+                            planner.getSolverOrder(SprintSolverPlannerTest.createStories(1000, 11),
+                                                   50000));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.SprintSolverPlanner#solve(java.util.List, int)}.
+     * 
+     * Checks that the planner falls back to the next solver when one gives
+     * up, and never asks solvers that don't offer or need too much memory.
+     * @throws TaskTrackerException  if no solver could plan the sprint.
+     */
+    @Test
+    public void testSolve_fallsBack() throws TaskTrackerException
+    {
+        SprintSolverPlanner planner = SprintSolverPlannerTest.createPlanner();
+        FixedSolver givesUp = new FixedSolver("gives-up",
+                                              new SolverEstimate(0, 0, 0),
+                                              null);
+        FixedSolver neverOffers = new FixedSolver("never-offers", null, new SprintPlan());
+        FixedSolver tooBig = new FixedSolver("too-big",
+                                             new SolverEstimate(0, Long.MAX_VALUE, 0),
+                                             new SprintPlan());
+        planner.register(givesUp);
+        planner.register(neverOffers);
+        planner.register(tooBig);
+        
+        List<Story> stories = SprintSolverPlannerTest.createStories(200, 13);
+        SprintPlan plan = planner.solve(stories, 150);
+        
+        Assert.assertEquals(KnapsackProblemSolver.solve(stories, 150), plan.Stories);
+        Assert.assertTrue(plan.isOptimal());
+        Assert.assertEquals(1, givesUp.calls);
+        Assert.assertEquals(0, neverOffers.calls);
+        Assert.assertEquals(0, tooBig.calls);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.SprintSolverPlanner#solve(java.util.List, int)}.
+     * 
+     * Checks that the greedy prefix plans backlogs too big for the exact
+     * solvers, and that we get an exception if every solver gives up.
+     * @throws TaskTrackerException  if no solver could plan the sprint.
+     */
+    @Test
+    public void testSolve_noExactPlan() throws TaskTrackerException
+    {
+        SprintSolverPlanner planner = new SprintSolverPlanner(1000);
+        DynamicProgrammingSprintSolver exactSolver =
+                new DynamicProgrammingSprintSolver(Backlog.SolverMode.DYNAMIC_PROGRAMMING);
+        planner.register(exactSolver);
+        planner.register(new GreedyPrefixSprintSolver(exactSolver));
+        
+        List<Story> stories = SprintSolverPlannerTest.createStories(100, 17);
+        SprintPlan plan = planner.solve(stories, 100);
+        
+        int points = 0;
+        for(Story story : plan.Stories)
+        {
+            points += story.Points;
+        }
+        
+        Assert.assertTrue(points <= 100);
+        Assert.assertEquals(1, plan.Epsilon, 0);
+        Assert.assertTrue(plan.Value <= plan.UpperBound);
+        
+        Assert.assertTrue(planner.unregister(GreedyPrefixSprintSolver.NAME));
+        try
+        {
+            planner.solve(stories, 100);
+            fail("No solver should have planned the sprint.");
+        }
+        catch(TaskTrackerException e)
+        {
+            //Expected.
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.SprintSolverPlanner#solve(java.util.List, int)}.
+     * 
+     * Checks that a solver whose memory isn't available is skipped for a
+     * cheaper one, that the request waits for memory if only that solver can
+     * plan the sprint, and that it is rejected if the memory never comes.
+     * @throws TaskTrackerException  if no solver could plan the sprint.
+     * @throws InterruptedException  if the test is interrupted.
+     */
+    @Test
+    public void testSolve_memoryAdmission() throws TaskTrackerException,
+                                                   InterruptedException
+    {
+        List<Story> stories = SprintSolverPlannerTest.createStories(200, 29);
+        SprintPlan bigPlan = new SprintPlan(stories.subList(0, 1), 0, 0);
+        final MemoryBudget budget = new MemoryBudget(100000);
+        
+        //Downgrade.
+        SprintSolverPlanner planner = SprintSolverPlannerTest.createPlanner();
+        planner.setMemoryBudget(budget);
+        FixedSolver big = new FixedSolver("big",
+                                          new SolverEstimate(0, 60000, 0),
+                                          bigPlan);
+        planner.register(big);
+        Assert.assertTrue(budget.tryReserve(50000));
+        
+        Assert.assertEquals(KnapsackProblemSolver.solve(stories, 150),
+                            planner.solve(stories, 150).Stories);
+        Assert.assertEquals(0, big.calls);
+        Assert.assertEquals(50000, budget.getReservedBytes());
+        
+        //Queue until the other reservation is released.
+        planner = new SprintSolverPlanner(Backlog.PACKING_APPROXIMATION_THRESHOLD);
+        planner.setMemoryBudget(budget);
+        planner.setMemoryWaitMillis(60000);
+        planner.register(big);
+        
+        Thread releaser = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch(InterruptedException e)
+                {
+                    //Release early.
+                }
+                
+                budget.release(50000);
+            }
+        };
+        releaser.start();
+        
+        Assert.assertSame(bigPlan, planner.solve(stories, 150));
+        Assert.assertEquals(1, big.calls);
+        Assert.assertEquals(0, budget.getReservedBytes());
+        releaser.join();
+        
+        //Reject.
+        planner.register(new FixedSolver("big",
+                                         new SolverEstimate(0, 200000, 0),
+                                         bigPlan));
+        try
+        {
+            planner.solve(stories, 150);
+            fail("The sprint should have been rejected.");
+        }
+        catch(InsufficientMemoryException e)
+        {
+            Assert.assertEquals(200000, e.getRequestedBytes());
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.SprintSolverPlanner#register(uk.co.bbc.iplayer.tracking.ISprintSolver)}.
+     * 
+     * Checks that registering a solver with the same name replaces it in
+     * place, and that unregistering tells us whether it was registered.
+     */
+    @Test
+    public void testRegister()
+    {
+        SprintSolverPlanner planner = SprintSolverPlannerTest.createPlanner();
+        FixedSolver replacement = new FixedSolver(BranchAndBoundSprintSolver.NAME,
+                                                  null,
+                                                  null);
+        planner.register(replacement);
+        
+        Assert.assertEquals(3, planner.getSolvers().size());
+        Assert.assertSame(replacement, planner.getSolvers().get(1));
+        
+        Assert.assertTrue(planner.unregister(BranchAndBoundSprintSolver.NAME));
+        Assert.assertFalse(planner.unregister(BranchAndBoundSprintSolver.NAME));
+        Assert.assertEquals(2, planner.getSolvers().size());
+    }
+    
+    
+    
+    //-------------------------------------------------------------------------
+    //  HELPER METHODS
+    //-------------------------------------------------------------------------
+    /**
+     * Creates a planner with the built-in solvers the backlog registers by
+     * default.
+     * @return  the planner.
+     */
+    private static SprintSolverPlanner createPlanner()
+    {
+        SprintSolverPlanner planner = new SprintSolverPlanner(Backlog.PACKING_APPROXIMATION_THRESHOLD);
+        DynamicProgrammingSprintSolver exactSolver =
+                new DynamicProgrammingSprintSolver(Backlog.SolverMode.DYNAMIC_PROGRAMMING);
+        planner.register(exactSolver);
+        planner.register(new BranchAndBoundSprintSolver(Backlog.BRANCH_AND_BOUND_NODE_LIMIT));
+        planner.register(new GreedyPrefixSprintSolver(exactSolver));
+        
+        return planner;
+    }
+    
+    
+    /**
+     * Creates random stories.
+     * @param numStories  the number of stories.
+     * @param seed  the seed for the random number generator.
+     * @return  the stories, with points from 1 to 50.
+     */
+    private static List<Story> createStories(int numStories, long seed)
+    {
+        Random random = new Random(seed);
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < numStories; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  1 + random.nextInt(50),
+                                  1 + random.nextInt(1000)));
+        }
+        
+        return stories;
+    }
+}
@@ -0,0 +1,420 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+import uk.co.bbc.iplayer.tracking.test.infrastructure.TestUsingDB;
+
+/**
+ * Checks that the connection pool reuses, bounds, validates, and evicts its
+ * connections.
+ */
+public class StoryConnectionPoolTest extends TestUsingDB
+{
+    /**
+     * The JDBC URL of the stories database.
+     */
+    private static final String URL = StoryDB.DB_PROTOCOL + ": " + StoryDB.DB_NAME;
+    
+    
+    /**
+     * The pool under test.
+     */
+    protected StoryConnectionPool pool;
+    
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Before
+    @Override
+    public void setUp() throws InstantiationException,
+                               IllegalAccessException,
+                               SQLException, TaskTrackerException
+    {
+        super.setUp();
+        
+        this.pool = new StoryConnectionPool(URL, 2, 100, 60000);
+    }
+    
+    
+    /**
+     * {@inheritDoc}
+     */
+    @After
+    @Override
+    public void tearDown() throws SQLException
+    {
+        this.pool.close();
+        
+        super.tearDown();
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#getConnection()}.
+     * 
+     * Checks that a returned connection is handed out again.
+     * @throws SQLException  if there was a problem with the pool.
+     */
+    @Test
+    public void testGetConnection_reused() throws SQLException
+    {
+        Connection first = this.pool.getConnection();
+        Connection real = first.unwrap(Connection.class);
+        first.close();
+        first.close();
+        Assert.assertTrue("Closed connection still open", first.isClosed());
+        Assert.assertEquals("Connection not returned", 1, this.pool.getIdleConnections());
+        
+        try(Connection second = this.pool.getConnection())
+        {
+            Assert.assertSame("Connection not reused", real, second.unwrap(Connection.class));
+            Assert.assertEquals("Wrong number of open connections", 1, this.pool.getOpenConnections());
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#getConnection()}.
+     * 
+     * Checks that a closed connection can't be used.
+     * @throws SQLException  if there was a problem with the pool.
+     */
+    @Test(expected = SQLException.class)
+    public void testGetConnection_useAfterClose() throws SQLException
+    {
+        Connection connection = this.pool.getConnection();
+        connection.close();
+        connection.createStatement();
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#getConnection()}.
+     * 
+     * Checks that borrowers give up after the maximum wait once every
+     * connection is borrowed.
+     * @throws SQLException  if there was a problem with the pool.
+     */
+    @Test
+    public void testGetConnection_timeout() throws SQLException
+    {
+        try(Connection first = this.pool.getConnection();
+            Connection second = this.pool.getConnection())
+        {
+            Assert.assertNotSame(first, second);
+            
+            long start = System.nanoTime();
+            try
+            {
+                this.pool.getConnection();
+                Assert.fail("Borrowed more connections than the pool holds");
+            }
+            catch(SQLTransientConnectionException e)
+            {
+                Assert.assertTrue("Gave up too soon",
+                                  System.nanoTime() - start >= 90 * 1000000L);
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#getConnection()}.
+     * 
+     * Checks that a waiting borrower gets the connection another thread
+     * returns.
+     * @throws Exception  if there was a problem with the pool.
+     */
+    @Test
+    public void testGetConnection_waits() throws Exception
+    {
+        this.pool.setMaxConnections(1);
+        this.pool.setMaxWaitMillis(10000);
+        
+        final Connection first = this.pool.getConnection();
+        Connection real = first.unwrap(Connection.class);
+        Thread returner = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(50);
+                    first.close();
+                }
+                catch(InterruptedException | SQLException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        returner.start();
+        
+        try(Connection second = this.pool.getConnection())
+        {
+            Assert.assertSame("Connection not handed over", real, second.unwrap(Connection.class));
+        }
+        returner.join();
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#getConnection()}.
+     * 
+     * Checks that a connection which went bad while it was idle is replaced.
+     * @throws SQLException  if there was a problem with the pool.
+     */
+    @Test
+    public void testGetConnection_invalid() throws SQLException
+    {
+        Connection first = this.pool.getConnection();
+        Connection real = first.unwrap(Connection.class);
+        first.close();
+        real.close();
+        
+        try(Connection second = this.pool.getConnection())
+        {
+            Assert.assertNotSame("Invalid connection handed out", real, second.unwrap(Connection.class));
+            Assert.assertTrue("Replacement not valid", second.isValid(1));
+            Assert.assertEquals("Wrong number of open connections", 1, this.pool.getOpenConnections());
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#evictIdleConnections()}.
+     * @throws Exception  if there was a problem with the pool.
+     */
+    @Test
+    public void testEvictIdleConnections() throws Exception
+    {
+        this.pool.setIdleTimeoutMillis(20);
+        Connection connection = this.pool.getConnection();
+        Connection real = connection.unwrap(Connection.class);
+        connection.close();
+        
+        this.pool.evictIdleConnections();
+        Assert.assertEquals("Evicted too soon", 1, this.pool.getIdleConnections());
+        
+        Thread.sleep(50);
+        this.pool.evictIdleConnections();
+        Assert.assertEquals("Not evicted", 0, this.pool.getIdleConnections());
+        Assert.assertEquals("Wrong number of open connections", 0, this.pool.getOpenConnections());
+        Assert.assertTrue("Evicted connection still open", real.isClosed());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#getConnection()}.
+     * 
+     * Checks that returning a connection closes its statements and rolls back
+     * its transaction.
+     * @throws SQLException  if there was a problem with the pool.
+     * @throws TaskTrackerException  if the story could not be read back.
+     */
+    @Test
+    public void testGetConnection_cleanedOnReturn() throws SQLException, TaskTrackerException
+    {
+        Statement statement;
+        try(Connection connection = this.pool.getConnection())
+        {
+            connection.setAutoCommit(false);
+            statement = connection.createStatement();
+            statement.executeUpdate("INSERT INTO " + StoryDB.STORY_TABLE
+                                    + " (" + StoryDB.STORY_FIELDS.ID + ", "
+                                    + StoryDB.STORY_FIELDS.POINTS + ", "
+                                    + StoryDB.STORY_FIELDS.PRIORITY
+                                    + ") VALUES ('rolledBack', 1, 1)");
+        }
+        Assert.assertTrue("Statement left open", statement.isClosed());
+        
+        try(Connection connection = this.pool.getConnection())
+        {
+            Assert.assertTrue("Auto-commit not restored", connection.getAutoCommit());
+        }
+        
+        StoryDB storyDB = new StoryDB(this.pool);
+        Assert.assertEquals("Transaction not rolled back", 0, storyDB.getStoryCount());
+        storyDB.addStory(new Story("kept", 1, 1));
+        Assert.assertEquals("Story not added through the pool", 1, storyDB.getStoryCount());
+        Assert.assertEquals("Pool grew", 1, this.pool.getOpenConnections());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#setMaxConnections(int)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetMaxConnections_invalid()
+    {
+        this.pool.setMaxConnections(0);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#close()}.
+     * @throws SQLException  expected.
+     */
+    @Test(expected = SQLException.class)
+    public void testClose() throws SQLException
+    {
+        this.pool.close();
+        this.pool.getConnection();
+    }
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#getStatementCacheHits()}.
+     * 
+     * Checks that the stories database only prepares each of its statements
+     * once on a pooled connection.
+     * @throws TaskTrackerException  if there was a problem with the database.
+     */
+    @Test
+    public void testGetStatementCacheHits() throws TaskTrackerException
+    {
+        StoryDB storyDB = new StoryDB(this.pool);
+        for(int k = 0; k < 10; k++)
+        {
+            storyDB.addStory(new Story(Integer.toString(k), 1 + k, 1 + k));
+        }
+        for(int k = 0; k < 10; k++)
+        {
+            Assert.assertEquals("Wrong story selected",
+                                Integer.toString(k),
+                                storyDB.selectStory(Integer.toString(k)).Id);
+        }
+        storyDB.deleteStory("0");
+        
+        Assert.assertEquals("Wrong number of misses", 3, this.pool.getStatementCacheMisses());
+        Assert.assertEquals("Wrong number of hits", 18, this.pool.getStatementCacheHits());
+        Assert.assertEquals("Wrong number of open connections", 1, this.pool.getOpenConnections());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#getConnection()}.
+     * 
+     * Checks that closing a cached statement keeps it for the next borrower,
+     * and that a statement in use isn't handed out twice.
+     * @throws SQLException  if there was a problem with the pool.
+     */
+    @Test
+    public void testPrepareStatement_reused() throws SQLException
+    {
+        String sql = "SELECT COUNT(*) FROM " + StoryDB.STORY_TABLE;
+        PreparedStatement real;
+        try(Connection connection = this.pool.getConnection())
+        {
+            PreparedStatement first = connection.prepareStatement(sql);
+            PreparedStatement second = connection.prepareStatement(sql);
+            real = first.unwrap(PreparedStatement.class);
+            Assert.assertNotSame("Statement in use handed out twice",
+                                 real, second.unwrap(PreparedStatement.class));
+            Assert.assertSame("Wrong connection", connection, first.getConnection());
+            
+            ResultSet results = first.executeQuery();
+            first.close();
+            Assert.assertTrue("Statement still open", first.isClosed());
+            Assert.assertTrue("Results still open", results.isClosed());
+            Assert.assertFalse("Cached statement closed", real.isClosed());
+            try
+            {
+                first.executeQuery();
+                Assert.fail("Used a closed statement");
+            }
+            catch(SQLException e)
+            {
+                //Expected.
+            }
+        }
+        
+        try(Connection connection = this.pool.getConnection())
+        {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            Assert.assertSame("Statement not reused", real, statement.unwrap(PreparedStatement.class));
+            try(ResultSet results = statement.executeQuery())
+            {
+                Assert.assertTrue("No count", results.next());
+                Assert.assertEquals("Wrong count", 0, results.getInt(1));
+            }
+        }
+        Assert.assertEquals("Wrong number of misses", 2, this.pool.getStatementCacheMisses());
+        Assert.assertEquals("Wrong number of hits", 1, this.pool.getStatementCacheHits());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#setStatementCacheSize(int)}.
+     * 
+     * Checks that the least recently used statement is closed to make room.
+     * @throws SQLException  if there was a problem with the pool.
+     */
+    @Test
+    public void testSetStatementCacheSize() throws SQLException
+    {
+        this.pool.setStatementCacheSize(1);
+        try(Connection connection = this.pool.getConnection())
+        {
+            PreparedStatement first = connection.prepareStatement("VALUES 1");
+            PreparedStatement real = first.unwrap(PreparedStatement.class);
+            first.close();
+            
+            connection.prepareStatement("VALUES 2");
+            Assert.assertTrue("Least recently used statement not closed", real.isClosed());
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#setStatementCacheSize(int)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetStatementCacheSize_negative()
+    {
+        this.pool.setStatementCacheSize(-1);
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryConnectionPool#evictIdleConnections()}.
+     * 
+     * Checks that an evicted connection's cached statements are closed.
+     * @throws Exception  if there was a problem with the pool.
+     */
+    @Test
+    public void testEvictIdleConnections_statements() throws Exception
+    {
+        this.pool.setIdleTimeoutMillis(0);
+        PreparedStatement real;
+        try(Connection connection = this.pool.getConnection())
+        {
+            real = connection.prepareStatement("VALUES 1").unwrap(PreparedStatement.class);
+        }
+        
+        this.pool.evictIdleConnections();
+        Assert.assertTrue("Cached statement still open", real.isClosed());
+    }
+}
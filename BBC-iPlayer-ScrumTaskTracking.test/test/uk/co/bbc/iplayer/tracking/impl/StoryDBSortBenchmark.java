@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Random;
+
+import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
+
+/**
+ * Compares how long reading every story in priority order (as getSprint
+ * does) takes with the stories table sorted on every read against reading
+ * it through the planning index.  This isn't run as part of the unit tests.
+ * Run it with:
+ * 
+ *   java -cp [test classpath] uk.co.bbc.iplayer.tracking.impl.StoryDBSortBenchmark
+ * 
+ * The "sorted" times are from the table as it was before the planning index
+ * (the index is dropped); the "indexed" times are after migrateSchema adds it
+ * back.  Each is warmed up before it is timed.
+ */
+public class StoryDBSortBenchmark
+{
+    /**
+     * The number of untimed reads of each layout.
+     */
+    private static final int WARM_UP_ITERATIONS = 3;
+    
+    /**
+     * The number of timed reads of each layout.
+     */
+    private static final int MEASURED_ITERATIONS = 10;
+    
+    
+    /**
+     * Runs the benchmark.
+     * @param args  ignored.
+     * @throws SQLException  if the database could not be set up.
+     * @throws TaskTrackerException  if the stories could not be read.
+     */
+    public static void main(String[] args) throws SQLException, TaskTrackerException
+    {
+        int[] storyCounts = new int[] {1000, 10000, 50000};
+        
+        System.out.println(String.format("%10s  %15s  %15s",
+                                         "stories", "sorted ms", "indexed ms"));
+        for(int storyCount : storyCounts)
+        {
+            try(Connection connection = DriverManager.getConnection(StoryDB.DB_PROTOCOL
+                                                                        + ": "
+                                                                        + StoryDB.DB_NAME
+                                                                        + ";create=true"))
+            {
+                StoryDB storyDB = new StoryDB();
+                storyDB.migrateSchema();
+                
+                Random random = new Random(1);
+                for(int k = 0; k < storyCount; k++)
+                {
+                    storyDB.addStory(new Story(Integer.toString(k),
+                                               1 + random.nextInt(100),
+                                               1 + random.nextInt(storyCount)));
+                }
+                
+                connection.createStatement().execute("DROP INDEX "
+                                                     + StoryDB.STORY_TABLE_PLANNING_INDEX);
+                double sorted = StoryDBSortBenchmark.time(storyDB);
+                
+                storyDB.migrateSchema();
+                double indexed = StoryDBSortBenchmark.time(storyDB);
+                
+                System.out.println(String.format("%10d  %15.3f  %15.3f",
+                                                 storyCount,
+                                                 sorted / 1e6,
+                                                 indexed / 1e6));
+            }
+            
+            StoryDBSortBenchmark.dropDatabase();
+        }
+    }
+    
+    
+    /**
+     * Times reading every story in priority order.
+     * @param storyDB  the stories database.
+     * @return  the mean time of a read, in nanoseconds.
+     * @throws TaskTrackerException  if the stories could not be read.
+     */
+    private static double time(StoryDB storyDB) throws TaskTrackerException
+    {
+        long total = 0;
+        for(int k = 0; k < WARM_UP_ITERATIONS + MEASURED_ITERATIONS; k++)
+        {
+            long start = System.nanoTime();
+            storyDB.getStoryBatchInPriorityOrder();
+            long end = System.nanoTime();
+            
+            if(k >= WARM_UP_ITERATIONS)
+            {
+                total += end - start;
+            }
+        }
+        
+        return (double) total / MEASURED_ITERATIONS;
+    }
+    
+    
+    /**
+     * Drops the in-memory database so the next size starts empty.
+     * @throws SQLException  if the database could not be dropped.
+     */
+    private static void dropDatabase() throws SQLException
+    {
+        try
+        {
+            DriverManager.getConnection(StoryDB.DB_PROTOCOL
+                                            + ": "
+                                            + StoryDB.DB_NAME
+                                            + ";drop=true").close();
+        }
+        catch(SQLException e)
+        {
+            //We expect an SQL state of 08006 as this indicates success.
+            if(!e.getSQLState().equals("08006"))
+            {
+                throw e;
+            }
+        }
+    }
+}
@@ -8,7 +8,10 @@
  */
 package uk.co.bbc.iplayer.tracking.impl;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -20,6 +23,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import uk.co.bbc.iplayer.tracking.Story;
+import uk.co.bbc.iplayer.tracking.StoryBatch;
 import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
 import uk.co.bbc.iplayer.tracking.impl.StoryDB;
 import uk.co.bbc.iplayer.tracking.test.infrastructure.TestUsingDB;
@@ -162,4 +166,260 @@ public class StoryDBTest extends TestUsingDB
         
         Assert.assertEquals(expectedOrderedStories, orderedStories);
     }
+
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryDB#getStoryBatchInPriorityOrder()}.
+     * 
+     * Tests that the batch holds the same stories in the same order as the
+     * list, and that the OIDs (which are in insertion order) break ties
+     * between stories with the same priority.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *                  database.
+     */
+    @Test
+    public void testGetStoryBatchInPriorityOrder() throws TaskTrackerException
+    {
+        StoryBatch batch = storyDB.getStoryBatchInPriorityOrder();
+        
+        Assert.assertEquals(storyDB.getAllStoriesInPriorityOrder(), batch);
+        for(int k = 1; k < batch.size(); k++)
+        {
+            if(batch.getPriority(k - 1) == batch.getPriority(k))
+            {
+                Assert.assertTrue(batch.getOid(k - 1) < batch.getOid(k));
+            }
+        }
+        
+        StoryBatch tail = batch.subList(1, batch.size());
+        Assert.assertEquals(batch.getId(1), tail.getId(0));
+        Assert.assertEquals(batch.getTotalPoints() - batch.getPoints(0),
+                            tail.getTotalPoints());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryDB#openStoryCursor()}.
+     * 
+     * Tests that the cursor reads the same stories in the same order as the
+     * batch (with the same OIDs), whether it is used as an iterator or
+     * stepped through, even when it fetches fewer rows at a time than there
+     * are stories.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *                  database.
+     */
+    @Test
+    public void testOpenStoryCursor() throws TaskTrackerException
+    {
+        StoryBatch batch = storyDB.getStoryBatchInPriorityOrder();
+        storyDB.setFetchSize(2);
+        
+        List<Story> iterated = new ArrayList<>();
+        try(StoryCursor cursor = storyDB.openStoryCursor())
+        {
+            while(cursor.hasNext())
+            {
+                iterated.add(cursor.next());
+            }
+            Assert.assertFalse(cursor.advance());
+        }
+        Assert.assertEquals(batch, iterated);
+        
+        try(StoryCursor cursor = storyDB.openStoryCursor())
+        {
+            for(int k = 0; k < batch.size(); k++)
+            {
+                Assert.assertTrue(cursor.advance());
+                Assert.assertEquals(batch.getId(k), cursor.getId());
+                Assert.assertEquals(batch.getPoints(k), cursor.getPoints());
+                Assert.assertEquals(batch.getPriority(k), cursor.getPriority());
+                Assert.assertEquals(batch.getOid(k), cursor.getOid());
+            }
+            Assert.assertFalse(cursor.hasNext());
+        }
+        
+        //Closing a cursor part way through is fine, and we can open another.
+        try(StoryCursor cursor = storyDB.openStoryCursor())
+        {
+            Assert.assertEquals(batch.get(0), cursor.next());
+        }
+        Assert.assertEquals(batch.size(), storyDB.getStoryCount());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.WeightClassPruner#pruneFrom(uk.co.bbc.iplayer.tracking.impl.StoryCursor, int)}.
+     * 
+     * Tests that pruning stories as they are streamed keeps the same stories
+     * (and OIDs) as pruning the whole batch.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *                  database.
+     */
+    @Test
+    public void testOpenStoryCursor_prune() throws TaskTrackerException
+    {
+        StoryBatch batch = storyDB.getStoryBatchInPriorityOrder();
+        
+        for(int capacity : new int[] {0, 1, 4, 75, 1000})
+        {
+            StoryBatch expected = (StoryBatch) WeightClassPruner.prune(batch, capacity);
+            StoryBatch pruned;
+            try(StoryCursor cursor = storyDB.openStoryCursor())
+            {
+                pruned = WeightClassPruner.pruneFrom(cursor, capacity);
+            }
+            
+            Assert.assertEquals(expected, pruned);
+            for(int k = 0; k < expected.size(); k++)
+            {
+                Assert.assertEquals(expected.getOid(k), pruned.getOid(k));
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryDB#getStoryBatchAfter(int, long, int)}.
+     * 
+     * Tests that starting after each story gets the stories that follow it
+     * (with their OIDs), across priorities.
+     * @throws TaskTrackerException  if there was a problem reading the
+     *                  database.
+     */
+    @Test
+    public void testGetStoryBatchAfter() throws TaskTrackerException
+    {
+        StoryBatch all = storyDB.getStoryBatchInPriorityOrder();
+        Assert.assertEquals(all.subList(0, 3), storyDB.getStoryBatchAfter(0, StoryBatch.NO_OID, 3));
+        
+        for(int k = 0; k < all.size(); k++)
+        {
+            StoryBatch expected = all.subList(k + 1, Math.min(k + 4, all.size()));
+            StoryBatch after = storyDB.getStoryBatchAfter(all.getPriority(k), all.getOid(k), 3);
+            
+            Assert.assertEquals("Wrong stories after " + all.getId(k), expected, after);
+            for(int j = 0; j < expected.size(); j++)
+            {
+                Assert.assertEquals(expected.getOid(j), after.getOid(j));
+            }
+        }
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryDB#migrateSchema()}.
+     * 
+     * Tests that the priority-ordered stories are read through the planning
+     * index without a sort.
+     * @throws SQLException  if the query plan could not be read.
+     */
+    @Test
+    public void testMigrateSchema() throws SQLException
+    {
+        String plan = this.getPlanningQueryPlan();
+        
+        Assert.assertTrue("Planning index not used: " + plan,
+                          plan.contains(StoryDB.STORY_TABLE_PLANNING_INDEX.toUpperCase()));
+        Assert.assertFalse("Stories sorted: " + plan, plan.contains("Sort ResultSet"));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryDB#migrateSchema()}.
+     * 
+     * Tests that a table created without the planning index gets it, keeping
+     * its stories, and that migrating an up-to-date schema does nothing.
+     * @throws SQLException  if the index could not be dropped.
+     * @throws TaskTrackerException  if the schema could not be migrated.
+     */
+    @Test
+    public void testMigrateSchema_oldSchema() throws SQLException, TaskTrackerException
+    {
+        try(Connection connection = StoryConnectionPool.getShared().getConnection())
+        {
+            connection.createStatement().execute("DROP INDEX " + StoryDB.STORY_TABLE_PLANNING_INDEX);
+        }
+        Assert.assertTrue("Stories sorted without the index",
+                          this.getPlanningQueryPlan().contains("Sort ResultSet"));
+        
+        storyDB.migrateSchema();
+        storyDB.migrateSchema();
+        
+        Assert.assertFalse("Index not added", this.getPlanningQueryPlan().contains("Sort ResultSet"));
+        Assert.assertEquals(storiesInDB.size(), storyDB.getStoryCount());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.StoryDB#StoryDB(javax.sql.DataSource)}.
+     * 
+     * Tests that the schema is created the first time a new data source is
+     * used, without calling migrateSchema.
+     * @throws SQLException  if the table could not be dropped.
+     * @throws TaskTrackerException  if the schema was not created.
+     */
+    @Test
+    public void testMigrateSchema_firstUse() throws SQLException, TaskTrackerException
+    {
+        try(Connection connection = StoryConnectionPool.getShared().getConnection())
+        {
+            connection.createStatement().execute("DROP TABLE " + StoryDB.STORY_TABLE);
+        }
+        
+        StoryConnectionPool pool = new StoryConnectionPool(StoryDB.DB_PROTOCOL + ": " + StoryDB.DB_NAME,
+                                                           2,
+                                                           100,
+                                                           60000);
+        try
+        {
+            StoryDB newStoryDB = new StoryDB(pool);
+            Assert.assertEquals(0, newStoryDB.getStoryCount());
+            
+            newStoryDB.addStory(storiesInDB.get(0));
+            Assert.assertEquals(storiesInDB.get(0), newStoryDB.selectStory(storiesInDB.get(0).Id));
+            Assert.assertFalse("Index not created", this.getPlanningQueryPlan().contains("Sort ResultSet"));
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+    
+    
+    /**
+     * Gets the plan Derby used to read the stories in priority order.
+     * @return  the plan.
+     * @throws SQLException  if the plan could not be read.
+     */
+    private String getPlanningQueryPlan() throws SQLException
+    {
+        try(Connection connection = StoryConnectionPool.getShared().getConnection())
+        {
+            Statement statement = connection.createStatement();
+            statement.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+            try
+            {
+                try(ResultSet results = statement.executeQuery("SELECT ID, POINTS, PRIORITY FROM "
+                                                               + StoryDB.STORY_TABLE
+                                                               + " ORDER BY PRIORITY ASC, "
+                                                               + StoryDB.STORY_TABLE_PRIMARY_KEY + " ASC"))
+                {
+                    while(results.next())
+                    {
+                        //Read them all so the plan is complete.
+                    }
+                }
+                
+                try(ResultSet results = statement.executeQuery("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()"))
+                {
+                    results.next();
+                    return results.getString(1);
+                }
+            }
+            finally
+            {
+                statement.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)");
+            }
+        }
+    }
 }
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2014, Ian J. De Silva
+ * All rights reserved.
+ * 
+ * Use, distribution, and modification of this work for any purpose is strictly
+ * prohibited without the express consent of the copyright holder except as 
+ * permitted by law.
+ */
+package uk.co.bbc.iplayer.tracking.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.co.bbc.iplayer.tracking.Story;
+
+/**
+ * Tests the pruning pass that runs before the knapsack problem solvers.
+ */
+public class WeightClassPrunerTest
+{
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.WeightClassPruner#prune(java.util.List, int)}.
+     * 
+     * Tests that we keep the first (capacity / points) stories of each point
+     * value, in the order they were given.
+     */
+    @Test
+    public void testPrune()
+    {
+        List<Story> stories = Arrays.asList(new Story("1", 4, 1),
+                                            new Story("2", 3, 1),
+                                            new Story("3", 4, 2),
+                                            new Story("4", 4, 2),
+                                            new Story("5", 3, 3),
+                                            new Story("6", 11, 3),
+                                            new Story("7", 3, 4),
+                                            new Story("8", 3, 5));
+        
+        List<Story> expected = Arrays.asList(stories.get(0),
+                                             stories.get(1),
+                                             stories.get(2),
+                                             stories.get(4),
+                                             stories.get(6));
+        
+        Assert.assertEquals(expected, WeightClassPruner.prune(stories, 10));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.WeightClassPruner#prune(java.util.List, int)}.
+     * 
+     * Tests the shape of the getSprint stress test:  lots of stories with the
+     * same point value only need (capacity / points) rows.
+     */
+    @Test
+    public void testPrune_stressTestShape()
+    {
+        List<Story> stories = new ArrayList<>();
+        for(int k = 0; k < 100000; k++)
+        {
+            stories.add(new Story(Integer.toString(k),
+                                  100,
+                                  Integer.MAX_VALUE - (k % 10)));
+        }
+        
+        Assert.assertEquals(10, WeightClassPruner.prune(stories, 1000).size());
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.WeightClassPruner#prune(java.util.List, int)}.
+     * 
+     * Checks that we get an empty list if the set of stories is null or nothing
+     * can fit.
+     */
+    @Test
+    public void testPrune_invalidInputs()
+    {
+        List<Story> expected = new ArrayList<>();
+        
+        Assert.assertEquals(expected, WeightClassPruner.prune(null, 10));
+        Assert.assertEquals(expected,
+                            WeightClassPruner.prune(Arrays.asList(new Story("1", 1, 1)),
+                                                    0));
+    }
+    
+    
+    /**
+     * Test method for {@link uk.co.bbc.iplayer.tracking.impl.WeightClassPruner#prune(java.util.List, int)}.
+     * 
+     * Checks that solving the pruned stories gives the same plan as solving all
+     * of them.  There are only a few point values and priorities so the
+     * classes are big and there are lots of ties.
+     */
+    @Test
+    public void testPrune_samePlan()
+    {
+        Random random = new Random(5);
+        
+        for(int capacity : new int[] {1, 17, 100, 250})
+        {
+            List<Story> stories = new ArrayList<>();
+            for(int k = 0; k < 2000; k++)
+            {
+                stories.add(new Story(Integer.toString(k),
+                                      1 + random.nextInt(12),
+                                      1 + random.nextInt(4)));
+            }
+            
+            //Put them in the order the DB gives them to us (the sort is
+            //  stable, so the ids stay in age order).
+            Collections.sort(stories, new Comparator<Story>()
+            {
+                @Override
+                public int compare(Story thisStory, Story thatStory)
+                {
+                    return Integer.compare(thisStory.Priority,
+                                           thatStory.Priority);
+                }
+            });
+            
+            Assert.assertEquals("Plans differ for a capacity of " + capacity,
+                                KnapsackProblemSolver.solve(stories, capacity),
+                                KnapsackProblemSolver.solve(WeightClassPruner.prune(stories,
+                                                                                    capacity),
+                                                            capacity));
+        }
+    }
+}
@@ -11,7 +11,6 @@ package uk.co.bbc.iplayer.tracking.test.infrastructure;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.Properties;
 
 import org.junit.After;
@@ -20,7 +19,6 @@ import org.apache.derby.jdbc.EmbeddedDriver;
 
 import uk.co.bbc.iplayer.tracking.exceptions.TaskTrackerException;
 import uk.co.bbc.iplayer.tracking.impl.StoryDB;
-import uk.co.bbc.iplayer.tracking.impl.StoryDB.STORY_FIELDS;
 
 
 /**
@@ -33,26 +31,6 @@ import uk.co.bbc.iplayer.tracking.impl.StoryDB.STORY_FIELDS;
  */
 public class TestUsingDB
 {
-    //-------------------------------------------------------------------------
-    //  CONSTANTS
-    //-------------------------------------------------------------------------
-    /**
-     * The SQL to create the stories table in the DB.
-     */
-    private static final String CREATE_TABLE_SQL = "CREATE TABLE " 
-            + StoryDB.STORY_TABLE 
-            + "( " + StoryDB.STORY_TABLE_PRIMARY_KEY 
-                + " INTEGER GENERATED ALWAYS AS IDENTITY"
-                + " (START WITH 1, INCREMENT BY 1), "
-            + " " + STORY_FIELDS.ID.toString() + " varchar(" + StoryDB.ID_FIELD_SIZE + ") UNIQUE,"
-            + " " + STORY_FIELDS.POINTS.toString() + " int NOT NULL"
-                + " CHECK (" + STORY_FIELDS.POINTS.toString() + ">0)"
-                +","
-            + " " + STORY_FIELDS.PRIORITY.toString() + " int NOT NULL"
-                + " CHECK ("+ STORY_FIELDS.PRIORITY.toString() + ">0)"
-            + ")"; 
-
-    
     //-------------------------------------------------------------------------
     //  TEST SET-UP / TEAR-DOWN
     //-------------------------------------------------------------------------
@@ -84,14 +62,12 @@ public class TestUsingDB
         Properties connectionProperties = new Properties();
         connectionProperties.put("create", "true");
         
-        try(Connection connection = DriverManager.getConnection(StoryDB.DB_PROTOCOL
-                                                                    + ": "
-                                                                    + StoryDB.DB_NAME,
-                                                                connectionProperties))
-        {
-            Statement createStatement = connection.createStatement();
-            createStatement.execute(CREATE_TABLE_SQL);
-        }
+        DriverManager.getConnection(StoryDB.DB_PROTOCOL + ": " + StoryDB.DB_NAME,
+                                    connectionProperties).close();
+        
+        //The stories database creates its own tables, but only checks once
+        //  per data source, and the last test dropped them.
+        new StoryDB().migrateSchema();
     }
 
 